@@ -0,0 +1,107 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.aws.s3archivebuilder.benchmarks;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+/* Handles on the archive builder classes. They live in the default package, which cannot be imported from here,
+ * and JMH does not accept benchmarks in the default package. Handles are resolved once and held in static finals,
+ * so the JIT inlines them like direct calls.
+ */
+final class ArchiveClasses {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	static final Class<?> SQS_CONTEXT = load("SQSContext");
+	static final Class<?> S3_ARCHIVE_OBJECT = load("S3ArchiveObject");
+	static final Class<?> ARCHIVE_CODEC = load("ArchiveCodec");
+	static final Class<?> ARCHIVE_JOURNAL = load("ArchiveJournal");
+	static final Class<?> PARSED_KEY = load("ParsedKey");
+	static final Class<?> CONTEXT_HANDLER = load("S3ObjectGrouper$ContextHandler");
+	
+	// SQSContext(prefix, year, localDirectory, localArchiveName)
+	static final MethodHandle NEW_CONTEXT = constructor("SQSContext", String.class, String.class, String.class, String.class);
+	static final MethodHandle ADD_OBJECT = method("SQSContext", "addS3ArchiveObject", S3_ARCHIVE_OBJECT);
+	// S3ArchiveObject(key, size, sqsReceiveHandle, localDirectory, localFileName, date)
+	static final MethodHandle NEW_OBJECT = constructor("S3ArchiveObject", String.class, String.class, String.class, String.class, String.class, Date.class);
+	static final MethodHandle OBJECT_KEY = method("S3ArchiveObject", "getKey");
+	static final MethodHandle OBJECT_DATE = method("S3ArchiveObject", "getDate");
+	static final MethodHandle CONTEXT_OBJECTS = method("SQSContext", "getS3ArchiveObjects");
+	// ArchiveCodecs.create(codec, level, bufferSize, workers)
+	static final MethodHandle CREATE_CODEC = method("ArchiveCodecs", "create", String.class, int.class, int.class, int.class);
+	static final MethodHandle COMPRESS = method("ArchiveCodec", "compress", OutputStream.class, ExecutorService.class);
+	// ArchiveManifest.newDigest(algorithm)
+	static final MethodHandle NEW_DIGEST = method("ArchiveManifest", "newDigest", String.class);
+	// S3TarGzBuilder(ctx, archiveOut, codec, compressionExecutor, journal, checkpointBytes, manifestChecksum)
+	static final MethodHandle NEW_TAR = constructor("S3TarGzBuilder", SQS_CONTEXT, OutputStream.class, ARCHIVE_CODEC, ExecutorService.class, ARCHIVE_JOURNAL, long.class,
+			String.class);
+	static final MethodHandle SET_COPY_BUFFER = method("S3TarGzBuilder", "setCopyBuffer", int.class);
+	static final MethodHandle ADD_ENTRY = method("S3TarGzBuilder", "addInputStreamToArchive", InputStream.class, String.class, String.class);
+	static final MethodHandle CLOSE_TAR = method("S3TarGzBuilder", "closeTarGzArchive");
+	// GroupingStrategies.compile(strategy, pattern)
+	static final MethodHandle COMPILE_STRATEGY = method("GroupingStrategies", "compile", String.class, String.class);
+	static final MethodHandle NEW_PARSED_KEY = constructor("ParsedKey");
+	static final MethodHandle PARSE = method("GroupingStrategy", "parse", String.class, long.class, PARSED_KEY);
+	static final MethodHandle FILE_NAME_START = method("ParsedKey", "getFileNameStart");
+	static final MethodHandle GROUP = method("ParsedKey", "getGroup");
+	static final MethodHandle DATE = method("ParsedKey", "getDate");
+	// S3ObjectGrouper(spillDirectory, bufferBytes, handler, logger)
+	static final MethodHandle NEW_GROUPER = constructor("S3ObjectGrouper", File.class, long.class, CONTEXT_HANDLER, Logger.class);
+	static final MethodHandle GROUPER_ADD = method("S3ObjectGrouper", "add", S3_ARCHIVE_OBJECT, String.class);
+	static final MethodHandle GROUPER_CLOSE = method("S3ObjectGrouper", "close");
+	
+	private ArchiveClasses() {
+	}
+	
+	private static Class<?> load(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("s3archivebuilder classes are not on the classpath: " + name, e);
+		}
+	}
+	
+	// Package-private members are opened with setAccessible, the builder classes are not in a named module
+	private static MethodHandle constructor(String className, Class<?>... parameters) {
+		try {
+			Constructor<?> constructor = load(className).getDeclaredConstructor(parameters);
+			constructor.setAccessible(true);
+			return LOOKUP.unreflectConstructor(constructor);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No constructor " + className + " matching the benchmarks", e);
+		}
+	}
+	
+	private static MethodHandle method(String className, String name, Class<?>... parameters) {
+		try {
+			Method method = load(className).getDeclaredMethod(name, parameters);
+			method.setAccessible(true);
+			return LOOKUP.unreflect(method);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No method " + className + "." + name + " matching the benchmarks", e);
+		}
+	}
+}
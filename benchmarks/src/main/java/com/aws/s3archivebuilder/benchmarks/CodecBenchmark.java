@@ -0,0 +1,196 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.aws.s3archivebuilder.benchmarks;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Every ArchiveCodec and archiveManifest checksum on sample data, to pick archiveCodec and archiveCodecLevel for a bucket
+ * 		compress:	the sample objects back to back into one codec frame, per codec:level and compressionThreads
+ * 		checksum:	a fresh digest per sample object like the archive manifest, crc32c, sha256 and the MD5 of ETag verification
+ * Without a sample 64 MB of generated sensor log lines are used, -p sample=<file or directory> reads the objects of
+ * a bucket instead, up to 256 MB. The score is samples per second, inputBytes is MB/s of input and
+ * inputBytes / archiveBytes the compression ratio.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class CodecBenchmark {
+	private static final long MAX_SAMPLE_BYTES = 256L * 1024 * 1024;
+	
+	@State(Scope.Benchmark)
+	public static class sample {
+		@Param({""})
+		public String sample;
+		private List<byte[]> objects;
+		private long bytes;
+		
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			this.objects = this.sample.isEmpty() ? generateSample(64 * 1024 * 1024) : readSample(new File(this.sample));
+			for(byte[] object : this.objects)
+				this.bytes += object.length;
+		}
+	}
+	
+	@State(Scope.Benchmark)
+	public static class codec {
+		@Param({"none:-1", "gzip:1", "gzip:6", "gzip:9", "zstd:1", "zstd:3", "zstd:9", "lz4:-1", "xz:1", "xz:6"})
+		public String codec;
+		@Param({"0"})
+		public int compressionThreads;
+		private Object archiveCodec;
+		private ExecutorService executor;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Throwable {
+			String[] parts = this.codec.split(":");
+			this.archiveCodec = ArchiveClasses.CREATE_CODEC.invoke(parts[0], Integer.parseInt(parts[1]), 0, this.compressionThreads);
+			if(this.compressionThreads > 0)
+				this.executor = Executors.newFixedThreadPool(this.compressionThreads);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			if(this.executor != null)
+				this.executor.shutdown();
+		}
+	}
+	
+	@State(Scope.Benchmark)
+	public static class checksum {
+		@Param({"crc32c", "sha256", "md5"})
+		public String algorithm;
+	}
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class processed {
+		public long inputBytes;
+		public long archiveBytes;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.inputBytes = 0;
+			this.archiveBytes = 0;
+		}
+	}
+	
+	@Benchmark
+	public long compress(sample sample, codec codec, processed counters) throws Throwable {
+		TarArchiveBenchmark.countingOutputStream counter = new TarArchiveBenchmark.countingOutputStream();
+		OutputStream out = (OutputStream) ArchiveClasses.COMPRESS.invoke(codec.archiveCodec, (OutputStream) counter, codec.executor);
+		for(byte[] object : sample.objects)
+			out.write(object);
+		out.close();
+		counters.inputBytes += sample.bytes;
+		counters.archiveBytes += counter.count;
+		return counter.count;
+	}
+	
+	@Benchmark
+	public long checksum(sample sample, checksum checksum, processed counters) throws Throwable {
+		long digests = 0;
+		for(byte[] object : sample.objects) {
+			MessageDigest digest = (MessageDigest) ArchiveClasses.NEW_DIGEST.invoke(checksum.algorithm);
+			digest.update(object);
+			digests += digest.digest()[0];
+		}
+		counters.inputBytes += sample.bytes;
+		return digests;
+	}
+	
+	private static List<byte[]> readSample(File path) throws IOException {
+		List<byte[]> sample = new ArrayList<byte[]>();
+		List<File> files = new ArrayList<File>();
+		files.add(path);
+		long sampleBytes = 0;
+		for(int i = 0; i < files.size() && sampleBytes < MAX_SAMPLE_BYTES; i++) {
+			File file = files.get(i);
+			if(file.isDirectory()) {
+				File[] children = file.listFiles();
+				if(children != null)
+					for(File child : children)
+						files.add(child);
+			}
+			else if(file.isFile()) {
+				byte[] object = Files.readAllBytes(file.toPath());
+				sample.add(object);
+				sampleBytes += object.length;
+			}
+		}
+		if(sample.isEmpty())
+			throw new IOException("No sample data found in " + path);
+		return sample;
+	}
+	
+	// Sensor log lines like the ones archived from IoT buckets: timestamps, device ids and readings
+	private static List<byte[]> generateSample(int sampleBytes) {
+		Random random = new Random(42);
+		String[] levels = { "INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR" };
+		String[] metrics = { "temperature", "humidity", "pressure", "voltage", "rpm" };
+		List<byte[]> sample = new ArrayList<byte[]>();
+		StringBuilder object = new StringBuilder();
+		long timestamp = 1640995200000L;
+		int generated = 0;
+		while(generated < sampleBytes) {
+			object.setLength(0);
+			String device = String.format("device-%05d", random.nextInt(2000));
+			// Objects of 64 KB to 1 MB
+			int objectBytes = 64 * 1024 + random.nextInt(960 * 1024);
+			while(object.length() < objectBytes) {
+				timestamp += random.nextInt(250);
+				String metric = metrics[random.nextInt(metrics.length)];
+				object.append(timestamp).append(' ').append(levels[random.nextInt(levels.length)]).append(' ')
+					.append(device).append(" metric=").append(metric).append(" value=")
+					.append(String.format("%.3f", random.nextGaussian() * 10 + 50)).append(" seq=")
+					.append(random.nextInt(1000000)).append(" session=").append(Long.toHexString(random.nextLong())).append('\n');
+			}
+			byte[] bytes = object.toString().getBytes(StandardCharsets.UTF_8);
+			sample.add(bytes);
+			generated += bytes.length;
+		}
+		return sample;
+	}
+}
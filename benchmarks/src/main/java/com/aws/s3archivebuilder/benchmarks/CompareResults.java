@@ -0,0 +1,113 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.aws.s3archivebuilder.benchmarks;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/* Compares two JMH result files written with -rf json, e.g. of the deployed build and of a candidate
+ * 		java -cp target/benchmarks.jar com.aws.s3archivebuilder.benchmarks.CompareResults <baseline.json> <candidate.json> [thresholdPercent]
+ * Prints every score (primary and aux counters) found in both files with its change. A change is marked when it
+ * exceeds thresholdPercent (default 5) and the score +/- error intervals do not overlap.
+ * Exits with 1 when a score got worse, higher is better for throughput and lower for time per operation.
+ */
+public class CompareResults {
+	// One score of one benchmark and parameter set
+	private static class score {
+		private String mode;
+		private String unit;
+		private double value;
+		private double error;
+		
+		score(String mode, JsonObject metric) {
+			this.mode = mode;
+			this.unit = metric.get("scoreUnit").getAsString();
+			this.value = metric.get("score").getAsDouble();
+			JsonElement error = metric.get("scoreError");
+			// Single iterations report "NaN" as their error
+			this.error = error == null || !error.isJsonPrimitive() || !error.getAsJsonPrimitive().isNumber() ? 0 : error.getAsDouble();
+			if(Double.isNaN(this.error))
+				this.error = 0;
+		}
+		
+		boolean higherIsBetter() {
+			return "thrpt".equals(this.mode);
+		}
+	}
+	
+	static Map<String, score> read(String file) throws IOException {
+		Map<String, score> scores = new LinkedHashMap<String, score>();
+		try (Reader reader = new FileReader(file)) {
+			JsonArray results = new JsonParser().parse(reader).getAsJsonArray();
+			for(JsonElement element : results) {
+				JsonObject result = element.getAsJsonObject();
+				String mode = result.get("mode").getAsString();
+				StringBuilder name = new StringBuilder(result.get("benchmark").getAsString());
+				if(result.has("params")) {
+					for(Map.Entry<String, JsonElement> param : result.getAsJsonObject("params").entrySet())
+						name.append(' ').append(param.getKey()).append('=').append(param.getValue().getAsString());
+				}
+				scores.put(name.toString(), new score(mode, result.getAsJsonObject("primaryMetric")));
+				if(result.has("secondaryMetrics")) {
+					for(Map.Entry<String, JsonElement> metric : result.getAsJsonObject("secondaryMetrics").entrySet())
+						scores.put(name + " :" + metric.getKey(), new score(mode, metric.getValue().getAsJsonObject()));
+				}
+			}
+		}
+		return scores;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.out.println("Usage: CompareResults <baseline.json> <candidate.json> [thresholdPercent]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+		Map<String, score> baseline = read(args[0]);
+		Map<String, score> candidate = read(args[1]);
+		int regressions = 0;
+		for(Map.Entry<String, score> entry : candidate.entrySet()) {
+			score before = baseline.get(entry.getKey());
+			if(before == null)
+				continue;
+			score after = entry.getValue();
+			double change = before.value == 0 ? 0 : (after.value - before.value) * 100 / before.value;
+			boolean significant = Math.abs(change) > threshold
+					&& Math.abs(after.value - before.value) > before.error + after.error;
+			String verdict = "";
+			if(significant) {
+				boolean better = after.higherIsBetter() ? change > 0 : change < 0;
+				verdict = better ? "  improved" : "  REGRESSED";
+				if(!better)
+					regressions++;
+			}
+			System.out.println(String.format("%-90s %14.3f %14.3f %-10s %+8.1f%%%s", entry.getKey(), before.value, after.value,
+					after.unit, change, verdict));
+		}
+		System.out.println(regressions + " Regressed Scores");
+		System.exit(regressions > 0 ? 1 : 0);
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.aws.s3archivebuilder.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.google.gson.Gson;
+
+/* Gson round trip of an SQSContext holding <objects> S3ArchiveObjects, as the producer sends and the consumers receive it.
+ * Contexts over 256 KB (about 1500 objects) do not fit into one SQS message, the larger sizes show the trend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ContextSerializationBenchmark {
+	@Param({"100", "1000", "10000"})
+	public int objects;
+	private Gson gson = new Gson();
+	private Object context;
+	private String json;
+	
+	@Setup
+	public void setup() throws Throwable {
+		this.context = ArchiveClasses.NEW_CONTEXT.invoke("device-000001", "2020", (String) null, (String) null);
+		for(int i=0; i<this.objects; i++) {
+			Object obj = ArchiveClasses.NEW_OBJECT.invoke(String.format("device-000001/3-%d-2020-%08d.log", i % 28 + 1, i), Integer.toString(1024 + i),
+					(String) null, (String) null, String.format("3-%d-2020-%08d.log", i % 28 + 1, i), new Date(1584230400000L + i * 60000L));
+			ArchiveClasses.ADD_OBJECT.invoke(this.context, obj);
+		}
+		this.json = this.gson.toJson(this.context);
+	}
+	
+	@Benchmark
+	public String serialize() {
+		return this.gson.toJson(this.context);
+	}
+	
+	@Benchmark
+	public Object deserialize() {
+		return this.gson.fromJson(this.json, ArchiveClasses.SQS_CONTEXT);
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.aws.s3archivebuilder.benchmarks;
+import java.io.File;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Baseline for ProducerBenchmark: the producer path before GroupingStrategy and S3ObjectGrouper, kept here as it was
+ * 		parse:	generateFileName() and generateDate(), a java.io.File per Key and the deprecated Date setters
+ * 		group:	parse, build the S3ArchiveObject and insertSortedSet() it into the date sorted TreeSet, which builds
+ * 				the contexts per year whenever the prefix changes
+ * Same listing, counters and score as ProducerBenchmark, so the filename-date scores compare directly.
+ * Dates start from new Date(), Keys of one day collide in the TreeSet and are dropped like they were then.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class LegacyProducerBenchmark {
+	@Param({"1000000", "5000000"})
+	public int keys;
+	private String[] listing;
+	private TreeSet<Object> dateSortedSet;
+	private long contexts;
+	
+	@Setup
+	public void setup() {
+		this.listing = ProducerBenchmark.listing(this.keys);
+		this.dateSortedSet = new TreeSet<Object>(new dateComparator());
+	}
+	
+	private static class dateComparator implements Comparator<Object> {
+		@Override
+		public int compare(Object o1, Object o2) {
+			Date date1 = objectDate(o1);
+			Date date2 = objectDate(o2);
+			if(date1.equals(date2))
+				return 0;
+			else if(date1.after(date2))
+				return 1;
+			else
+				return -1;
+		}
+	}
+	
+	private static Date objectDate(Object obj) {
+		try {
+			return (Date) ArchiveClasses.OBJECT_DATE.invoke(obj);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String generatePrefix(String key) {
+		File absPath = new File(key);
+		return absPath.getParent();
+	}
+	
+	private static String generateFileName(String key) {
+		File absPath = new File(key);
+		return absPath.getName();
+	}
+	
+	@SuppressWarnings("deprecation")
+	private static Date generateDate(String fileName) {
+		Date date = new Date();
+		String dateString = fileName.split("[.]")[0];
+		String dateValues [] = dateString.split("-");
+		date.setMonth(Integer.valueOf(dateValues[0]));
+		date.setDate(Integer.valueOf(dateValues[1]));
+		date.setYear(Integer.valueOf(dateValues[2]));
+		return date;
+	}
+	
+	private void insertSortedSet(Object obj) throws Throwable {
+		if(!this.dateSortedSet.isEmpty()) {
+			String lastPrefix = generatePrefix((String) ArchiveClasses.OBJECT_KEY.invoke(this.dateSortedSet.last()));
+			String curPrefix = generatePrefix((String) ArchiveClasses.OBJECT_KEY.invoke(obj));
+			if(lastPrefix.compareTo(curPrefix) != 0)
+				buildS3ArchiveContext();
+		}
+		this.dateSortedSet.add(obj);
+	}
+	
+	// Counts the contexts instead of sending them
+	@SuppressWarnings("deprecation")
+	private void buildS3ArchiveContext() throws Throwable {
+		Object first = this.dateSortedSet.first();
+		String prefix = generatePrefix((String) ArchiveClasses.OBJECT_KEY.invoke(first));
+		String prevYear = String.valueOf(objectDate(first).getYear());
+		Object ctx = ArchiveClasses.NEW_CONTEXT.invoke(prefix, prevYear, (String) null, (String) null);
+		Iterator<Object> itr = this.dateSortedSet.iterator();
+		while(itr.hasNext()) {
+			Object obj = itr.next();
+			String curYear = String.valueOf(objectDate(obj).getYear());
+			if(curYear.compareTo(prevYear) != 0) {
+				this.contexts++;
+				prefix = generatePrefix((String) ArchiveClasses.OBJECT_KEY.invoke(obj));
+				ctx = ArchiveClasses.NEW_CONTEXT.invoke(prefix, curYear, (String) null, (String) null);
+			}
+			ArchiveClasses.ADD_OBJECT.invoke(ctx, obj);
+			prevYear = curYear;
+		}
+		if(!((List<?>) ArchiveClasses.CONTEXT_OBJECTS.invoke(ctx)).isEmpty())
+			this.contexts++;
+		this.dateSortedSet.clear();
+	}
+	
+	@Benchmark
+	public long parse(ProducerBenchmark.listed counters) {
+		long checksum = 0;
+		for(String key : this.listing) {
+			String fileName = generateFileName(key);
+			checksum += fileName.length() + generateDate(fileName).getTime();
+		}
+		counters.keys += this.listing.length;
+		return checksum;
+	}
+	
+	@Benchmark
+	public long group(ProducerBenchmark.listed counters) throws Throwable {
+		this.contexts = 0;
+		for(String key : this.listing) {
+			String fileName = generateFileName(key);
+			Date date = generateDate(fileName);
+			insertSortedSet(ArchiveClasses.NEW_OBJECT.invoke(key, "1024", (String) null, (String) null, fileName, date));
+		}
+		if(!this.dateSortedSet.isEmpty())
+			buildS3ArchiveContext();
+		counters.keys += this.listing.length;
+		return this.contexts;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.aws.s3archivebuilder.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* The producer's work per listed Key, over a generated listing of millions of Keys
+ * 		parse:	GroupingStrategy.parse() of every Key, the file name, group and date SQSProducer takes from it
+ * 		group:	parse, build the S3ArchiveObject and add it to an S3ObjectGrouper, which hands out the contexts
+ * Keys are in listing order, about 1000 per prefix, named <M-D-YYYY>-<n>.log so every strategy matches them.
+ * The score is listings per second, the keys counter is Keys per second. LegacyProducerBenchmark runs the
+ * same listing through the producer path these replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class ProducerBenchmark {
+	private static final int KEYS_PER_PREFIX = 1000;
+	private static final long GROUPING_BUFFER_BYTES = 64L * 1024 * 1024;
+	@Param({"1000000", "5000000"})
+	public int keys;
+	@Param({"filename-date", "last-modified-month", "regex"})
+	public String strategy;
+	private String[] listing;
+	private long[] lastModified;
+	private Object groupingStrategy;
+	private Object parsed;
+	private File spillDirectory;
+	private Logger logger;
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class listed {
+		public long keys;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.keys = 0;
+		}
+	}
+	
+	// Counts the contexts the grouper hands out
+	private static class contextCounter implements InvocationHandler {
+		private long contexts = 0;
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if(method.getName().equals("handle"))
+				this.contexts++;
+			return null;
+		}
+	}
+	
+	@Setup
+	public void setup() throws Throwable {
+		this.listing = listing(this.keys);
+		this.lastModified = new long[this.keys];
+		for(int i=0; i<this.keys; i++)
+			this.lastModified[i] = 1420070400000L + i * 60000L;
+		this.groupingStrategy = ArchiveClasses.COMPILE_STRATEGY.invoke(this.strategy, "^([^/]+)/\\d+-\\d+-(\\d{4})");
+		this.parsed = ArchiveClasses.NEW_PARSED_KEY.invoke();
+		this.spillDirectory = Files.createTempDirectory("producer-benchmark").toFile();
+		this.logger = Logger.getLogger("ProducerBenchmark");
+		this.logger.setLevel(java.util.logging.Level.OFF);
+	}
+	
+	// Sorted like a listing, shared with LegacyProducerBenchmark
+	static String[] listing(int keys) {
+		String[] listing = new String[keys];
+		for(int i=0; i<keys; i++) {
+			int day = i % 28 + 1;
+			int month = i / 28 % 12 + 1;
+			int year = 2015 + i / 336 % 8;
+			listing[i] = String.format("device-%06d/%d-%d-%d-%08d.log", i / KEYS_PER_PREFIX, month, day, year, i);
+		}
+		Arrays.sort(listing);
+		return listing;
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		File[] runs = this.spillDirectory.listFiles();
+		if(runs != null)
+			for(File run : runs)
+				run.delete();
+		Files.deleteIfExists(this.spillDirectory.toPath());
+	}
+	
+	@Benchmark
+	public long parse(listed counters) throws Throwable {
+		long checksum = 0;
+		for(int i=0; i<this.listing.length; i++) {
+			String key = this.listing[i];
+			if(!(boolean) ArchiveClasses.PARSE.invoke(this.groupingStrategy, key, this.lastModified[i], this.parsed))
+				continue;
+			String fileName = key.substring((int) ArchiveClasses.FILE_NAME_START.invoke(this.parsed));
+			checksum += fileName.length() + ((String) ArchiveClasses.GROUP.invoke(this.parsed)).length() + (long) ArchiveClasses.DATE.invoke(this.parsed);
+		}
+		counters.keys += this.listing.length;
+		return checksum;
+	}
+	
+	@Benchmark
+	public long group(listed counters) throws Throwable {
+		contextCounter handler = new contextCounter();
+		Object contextHandler = Proxy.newProxyInstance(ArchiveClasses.CONTEXT_HANDLER.getClassLoader(), new Class<?>[] {ArchiveClasses.CONTEXT_HANDLER}, handler);
+		Object grouper = ArchiveClasses.NEW_GROUPER.invoke(this.spillDirectory, GROUPING_BUFFER_BYTES, contextHandler, this.logger);
+		for(int i=0; i<this.listing.length; i++) {
+			String key = this.listing[i];
+			if(!(boolean) ArchiveClasses.PARSE.invoke(this.groupingStrategy, key, this.lastModified[i], this.parsed))
+				continue;
+			String fileName = key.substring((int) ArchiveClasses.FILE_NAME_START.invoke(this.parsed));
+			Object obj = ArchiveClasses.NEW_OBJECT.invoke(key, "1024", (String) null, (String) null, fileName,
+					new Date((long) ArchiveClasses.DATE.invoke(this.parsed)));
+			ArchiveClasses.GROUPER_ADD.invoke(grouper, obj, (String) ArchiveClasses.GROUP.invoke(this.parsed));
+		}
+		ArchiveClasses.GROUPER_CLOSE.invoke(grouper);
+		counters.keys += this.listing.length;
+		return handler.contexts;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.aws.s3archivebuilder.benchmarks;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Builds whole archives with S3TarGzBuilder into a byte counting stream, no S3 or disk involved
+ * 		entries:		<entry size>x<entry count>, 64 MB split into many small or a few large objects, and one 1 GB object
+ * 		copyBufferKB:	buffer objects are copied into the tar through (archiveCopyBufferKB)
+ * 		codec, level:	archiveCodec and archiveCodecLevel
+ * The score is archives per second, inputBytes and archiveBytes are bytes per second in and out of the archive.
+ * Objects are log-like text that compresses about 4:1 and does not repeat within the 32 KB gzip window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class TarArchiveBenchmark {
+	private static final int PATTERN_SIZE = 4 * 1024 * 1024;
+	@Param({"1KBx65536", "64KBx1024", "8MBx8", "1GBx1"})
+	public String entries;
+	@Param({"4", "64", "1024"})
+	public int copyBufferKB;
+	@Param({"gzip"})
+	public String codec;
+	@Param({"1", "6", "9"})
+	public int level;
+	private long entrySize;
+	private int entryCount;
+	private byte[] pattern;
+	private Object archiveCodec;
+	private Object context;
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class archived {
+		public long inputBytes;
+		public long archiveBytes;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.inputBytes = 0;
+			this.archiveBytes = 0;
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() throws Throwable {
+		String[] parts = this.entries.split("x");
+		this.entrySize = parseSize(parts[0]);
+		this.entryCount = Integer.parseInt(parts[1]);
+		this.pattern = logLines(PATTERN_SIZE);
+		this.archiveCodec = ArchiveClasses.CREATE_CODEC.invoke(this.codec, this.level, 0, 0);
+		this.context = ArchiveClasses.NEW_CONTEXT.invoke("benchmark", "2020", (String) null, "benchmark.tar");
+	}
+	
+	@Benchmark
+	public boolean archive(archived counters) throws Throwable {
+		countingOutputStream out = new countingOutputStream();
+		Object tar = ArchiveClasses.NEW_TAR.invoke(this.context, (OutputStream) out, this.archiveCodec, (ExecutorService) null, (Object) null, 0L, (String) null);
+		ArchiveClasses.SET_COPY_BUFFER.invoke(tar, this.copyBufferKB * 1024);
+		for(int i=0; i<this.entryCount; i++) {
+			InputStream object = new patternInputStream(this.pattern, (int) ((i * 7919L) % this.pattern.length), this.entrySize);
+			ArchiveClasses.ADD_ENTRY.invoke(tar, object, "object-" + i, Long.toString(this.entrySize));
+		}
+		boolean closed = (boolean) ArchiveClasses.CLOSE_TAR.invoke(tar);
+		counters.inputBytes += this.entrySize * this.entryCount;
+		counters.archiveBytes += out.count;
+		return closed;
+	}
+	
+	static long parseSize(String size) {
+		long unit = 1;
+		if(size.endsWith("KB"))
+			unit = 1024L;
+		else if(size.endsWith("MB"))
+			unit = 1024L * 1024;
+		else if(size.endsWith("GB"))
+			unit = 1024L * 1024 * 1024;
+		return unit * Long.parseLong(unit == 1 ? size : size.substring(0, size.length() - 2));
+	}
+	
+	// Same seed for every run, so results of two builds are comparable
+	static byte[] logLines(int size) {
+		String[] words = {"GET", "PUT", "INFO", "WARN", "ERROR", "device", "sensor", "reading", "temperature", "status", "ok", "retry"};
+		Random random = new Random(42);
+		StringBuilder lines = new StringBuilder(size + 256);
+		while(lines.length() < size) {
+			lines.append("2020-").append(1 + random.nextInt(12)).append('-').append(1 + random.nextInt(28)).append(' ');
+			for(int i=0; i<6; i++)
+				lines.append(words[random.nextInt(words.length)]).append(' ');
+			lines.append(random.nextInt(1000000)).append('\n');
+		}
+		byte[] bytes = new byte[size];
+		for(int i=0; i<size; i++)
+			bytes[i] = (byte) lines.charAt(i);
+		return bytes;
+	}
+	
+	// size bytes of pattern starting at offset, wrapping around
+	static class patternInputStream extends InputStream {
+		private byte[] pattern;
+		private int position;
+		private long remaining;
+		
+		patternInputStream(byte[] pattern, int offset, long size) {
+			this.pattern = pattern;
+			this.position = offset;
+			this.remaining = size;
+		}
+		
+		@Override
+		public int read() {
+			if(this.remaining == 0)
+				return -1;
+			byte[] one = new byte[1];
+			read(one, 0, 1);
+			return one[0] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(this.remaining == 0)
+				return -1;
+			int count = (int) Math.min(Math.min(len, this.remaining), this.pattern.length - this.position);
+			System.arraycopy(this.pattern, this.position, b, off, count);
+			this.position = (this.position + count) % this.pattern.length;
+			this.remaining -= count;
+			return count;
+		}
+	}
+	
+	static class countingOutputStream extends OutputStream {
+		long count = 0;
+		
+		@Override
+		public void write(int b) {
+			this.count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.count += len;
+		}
+	}
+}
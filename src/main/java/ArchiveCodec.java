@@ -0,0 +1,41 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
+/* Compresses the tar stream of an archive
+ * Codecs are created once from configuration by ArchiveCodecs and shared by all consumer threads.
+ * Every codec writes self-delimiting frames that decompress as one stream when concatenated,
+ * so a checkpointed archive may consist of several frames.
+ */
+public interface ArchiveCodec {
+	// Name of the codec as configured in archiveCodec
+	String getName();
+	
+	// File extension of the archive, e.g. ".tar.gz"
+	String getExtension();
+	
+	// Starts a new frame over out, closing the returned stream finishes the frame and closes out.
+	// executor is the shared compression pool, null when compressionThreads is 0
+	OutputStream compress(OutputStream out, ExecutorService executor) throws IOException;
+	
+	// Reads the tar stream back from one or more concatenated frames
+	InputStream decompress(InputStream in) throws IOException;
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
+
+/* Built-in ArchiveCodec implementations, selected by the "archiveCodec" configuration
+ * 		gzip:	.tar.gz, level 1-9 (default 6), block-parallel on the shared compression pool when there is one (default),
+ * 				supports CompressionBypass
+ * 		zstd:	.tar.zst, level 1-22 (default 3), compressed by "archiveCodecWorkers" native threads per archive
+ * 		lz4:	.tar.lz4, LZ4 frame format, fast compressor by default, level 1-17 selects LZ4 HC
+ * 		xz:		.tar.xz, preset 0-9 (default 6)
+ * 		none:	.tar, uncompressed
+ * A level of -1 selects the codec's default.
+ */
+public final class ArchiveCodecs {
+	private ArchiveCodecs() {
+	}
+	
+	public static ArchiveCodec create(String codec, int level, int bufferSize, int workers) {
+		if(codec == null || codec.isEmpty() || codec.equals("gzip"))
+			return new gzipCodec(level < 0 ? Deflater.DEFAULT_COMPRESSION : level, bufferSize);
+		if(codec.equals("zstd"))
+			return new zstdCodec(level < 0 ? 3 : level, workers);
+		if(codec.equals("lz4"))
+			return new lz4Codec(level, bufferSize);
+		if(codec.equals("xz"))
+			return new xzCodec(level < 0 ? 6 : level);
+		if(codec.equals("none"))
+			return new noneCodec();
+		throw new IllegalArgumentException("Unsupported archiveCodec: " + codec);
+	}
+	
+	// Codec of an archive by its name's extension, null when none matches
+	public static ArchiveCodec forArchive(String archiveName) {
+		for(String codec : new String[] {"gzip", "zstd", "lz4", "xz", "none"}) {
+			ArchiveCodec archiveCodec = create(codec, -1, 0, 0);
+			if(archiveName.endsWith(archiveCodec.getExtension()))
+				return archiveCodec;
+		}
+		return null;
+	}
+	
+	private static class gzipCodec implements ArchiveCodec {
+		private int level;
+		private int bufferSize;
+		
+		gzipCodec(int level, int bufferSize) {
+			this.level = level;
+			this.bufferSize = bufferSize;
+		}
+		
+		@Override
+		public String getName() {
+			return "gzip";
+		}
+		
+		@Override
+		public String getExtension() {
+			return ".tar.gz";
+		}
+		
+		@Override
+		public OutputStream compress(OutputStream out, ExecutorService executor) throws IOException {
+			if(executor != null)
+				return new ParallelGzipOutputStream(out, executor, this.level,
+						this.bufferSize > 0 ? this.bufferSize : ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, 2 * getPoolSize(executor));
+			return new bypassGzipOutputStream(out, this.level, this.bufferSize > 0 ? this.bufferSize : 512);
+		}
+		
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return new GzipCompressorInputStream(in, true);
+		}
+	}
+	
+	// Bypassed ranges are deflated at level 0, which copies them into stored blocks
+	private static class bypassGzipOutputStream extends GZIPOutputStream implements CompressionBypass {
+		private int level;
+		private boolean bypass = false;
+		
+		bypassGzipOutputStream(OutputStream out, int level, int bufferSize) throws IOException {
+			super(out, bufferSize);
+			this.level = level;
+			this.def.setLevel(level);
+		}
+		
+		@Override
+		public void setBypass(boolean bypass) throws IOException {
+			if(bypass == this.bypass)
+				return;
+			// Input already given to the deflater is flushed with the previous level
+			int length;
+			while((length = this.def.deflate(this.buf, 0, this.buf.length, Deflater.SYNC_FLUSH)) > 0) {
+				this.out.write(this.buf, 0, length);
+				if(length < this.buf.length)
+					break;
+			}
+			this.def.setLevel(bypass ? Deflater.NO_COMPRESSION : this.level);
+			this.bypass = bypass;
+		}
+	}
+	
+	private static class zstdCodec implements ArchiveCodec {
+		private int level;
+		private int workers;
+		
+		zstdCodec(int level, int workers) {
+			this.level = level;
+			this.workers = workers;
+		}
+		
+		@Override
+		public String getName() {
+			return "zstd";
+		}
+		
+		@Override
+		public String getExtension() {
+			return ".tar.zst";
+		}
+		
+		@Override
+		public OutputStream compress(OutputStream out, ExecutorService executor) throws IOException {
+			ZstdOutputStream zstd = new ZstdOutputStream(out, this.level);
+			zstd.setChecksum(true);
+			if(this.workers > 0)
+				zstd.setWorkers(this.workers);
+			return zstd;
+		}
+		
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return new ZstdInputStream(in);
+		}
+	}
+	
+	private static class lz4Codec implements ArchiveCodec {
+		private LZ4FrameOutputStream.BLOCKSIZE blockSize;
+		private LZ4Compressor compressor;
+		
+		lz4Codec(int level, int bufferSize) {
+			// Smallest frame block size holding bufferSize, 4 MB by default
+			this.blockSize = LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB;
+			if(bufferSize > 0 && bufferSize <= 64 * 1024)
+				this.blockSize = LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB;
+			else if(bufferSize > 0 && bufferSize <= 256 * 1024)
+				this.blockSize = LZ4FrameOutputStream.BLOCKSIZE.SIZE_256KB;
+			else if(bufferSize > 0 && bufferSize <= 1024 * 1024)
+				this.blockSize = LZ4FrameOutputStream.BLOCKSIZE.SIZE_1MB;
+			LZ4Factory factory = LZ4Factory.fastestInstance();
+			this.compressor = level > 0 ? factory.highCompressor(level) : factory.fastCompressor();
+		}
+		
+		@Override
+		public String getName() {
+			return "lz4";
+		}
+		
+		@Override
+		public String getExtension() {
+			return ".tar.lz4";
+		}
+		
+		@Override
+		public OutputStream compress(OutputStream out, ExecutorService executor) throws IOException {
+			return new LZ4FrameOutputStream(out, this.blockSize, -1L, this.compressor, XXHashFactory.fastestInstance().hash32(),
+					LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE, LZ4FrameOutputStream.FLG.Bits.CONTENT_CHECKSUM);
+		}
+		
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return new LZ4FrameInputStream(in);
+		}
+	}
+	
+	private static class xzCodec implements ArchiveCodec {
+		private int preset;
+		
+		xzCodec(int preset) {
+			this.preset = preset;
+		}
+		
+		@Override
+		public String getName() {
+			return "xz";
+		}
+		
+		@Override
+		public String getExtension() {
+			return ".tar.xz";
+		}
+		
+		@Override
+		public OutputStream compress(OutputStream out, ExecutorService executor) throws IOException {
+			return new XZCompressorOutputStream(out, this.preset);
+		}
+		
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return new XZCompressorInputStream(in, true);
+		}
+	}
+	
+	private static class noneCodec implements ArchiveCodec {
+		@Override
+		public String getName() {
+			return "none";
+		}
+		
+		@Override
+		public String getExtension() {
+			return ".tar";
+		}
+		
+		@Override
+		public OutputStream compress(OutputStream out, ExecutorService executor) throws IOException {
+			return out;
+		}
+		
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return in;
+		}
+	}
+	
+	private static int getPoolSize(ExecutorService executor) {
+		if(executor instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+		return Runtime.getRuntime().availableProcessors();
+	}
+}
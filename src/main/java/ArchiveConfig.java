@@ -29,8 +29,76 @@ public class ArchiveConfig {
 	private String s3ListingPrefix;
 	private String s3ListingMarker;
 	private String s3ListingFilter;
+	private String s3ListingConcurrency;
+	private String groupingBufferMB;
+	private String groupingStrategy;
+	private String groupingPattern;
+	private String producerJournal;
+	private String inventoryManifest;
+	private String inventoryThreads;
+	private String archiveTargetMB;
+	private String archiveTargetObjects;
+	private String archivePackPolicy;
 	private String sqsProducerMode;
 	private String s3MaxConCount;
+	private String s3PrefetchMB;
+	private String s3PrefetchConCount;
+	private String s3ProcessPrefetchMB;
+	private String s3ProcessPrefetchConCount;
+	private String s3BufferObjectKB;
+	private String s3RangedGetThresholdMB;
+	private String s3RangeSizeMB;
+	private String s3RangeConCount;
+	private String archiveUploadMode;
+	private String s3PartSizeMB;
+	private String s3MaxPartsInFlight;
+	private String compressionThreads;
+	private String archiveEntryOrder;
+	private String archiveCheckpointMB;
+	private String archiveExpiryHours;
+	private String archiveCodec;
+	private String archiveCodecLevel;
+	private String archiveCodecBufferKB;
+	private String archiveCodecWorkers;
+	private String compressionBypass;
+	private String compressionBypassTarOnlyPercent;
+	private String archiveLayout;
+	private String seekableFrameKB;
+	private String archiveStorageClass;
+	private String extractArchive;
+	private String extractKey;
+	private String producerInput;
+	private String restoreBucket;
+	private String restoreUploadThreads;
+	private String restoreBufferMB;
+	private String restoreSpillMB;
+	private String sourceDeletion;
+	private String deleteBatchConcurrency;
+	private String deleteMaxRetries;
+	private String archiveManifest;
+	private String verifySourceETags;
+	private String metrics;
+	private String metricsPort;
+	private String archiveCopyBufferKB;
+	private String storeType;
+	private String storeRoot;
+	private String loadDevices;
+	private String loadKeysPerDevice;
+	private String loadYears;
+	private String loadObjectSizeKB;
+	private String loadSizeDistribution;
+	private String loadS3LatencyMs;
+	private String loadS3BandwidthMBps;
+	private String loadS3RequestRate;
+	private String loadSQSLatencyMs;
+	private String loadVisibilityTimeoutSeconds;
+	private String executionMode;
+	private String consumerThreads;
+	private String sqsWaitTimeSeconds;
+	private String sqsMaxEmptyReceives;
+	private String sqsPrefetchCount;
+	private String sqsSendQueueSize;
+	private String sqsSendBatchesInFlight;
 	
 	public String getType() {
 		return this.type;
@@ -128,6 +196,86 @@ public class ArchiveConfig {
 		this.s3ListingFilter = s3ListingFilter;
 	}
 
+	public String getS3ListingConcurrency() {
+		return this.s3ListingConcurrency;
+	}
+
+	public void setS3ListingConcurrency(String s3ListingConcurrency) {
+		this.s3ListingConcurrency = s3ListingConcurrency;
+	}
+
+	public String getGroupingBufferMB() {
+		return this.groupingBufferMB;
+	}
+
+	public void setGroupingBufferMB(String groupingBufferMB) {
+		this.groupingBufferMB = groupingBufferMB;
+	}
+
+	public String getGroupingStrategy() {
+		return this.groupingStrategy;
+	}
+
+	public void setGroupingStrategy(String groupingStrategy) {
+		this.groupingStrategy = groupingStrategy;
+	}
+
+	public String getGroupingPattern() {
+		return this.groupingPattern;
+	}
+
+	public void setGroupingPattern(String groupingPattern) {
+		this.groupingPattern = groupingPattern;
+	}
+
+	public String getProducerJournal() {
+		return this.producerJournal;
+	}
+
+	public void setProducerJournal(String producerJournal) {
+		this.producerJournal = producerJournal;
+	}
+
+	public String getInventoryManifest() {
+		return this.inventoryManifest;
+	}
+
+	public void setInventoryManifest(String inventoryManifest) {
+		this.inventoryManifest = inventoryManifest;
+	}
+
+	public String getInventoryThreads() {
+		return this.inventoryThreads;
+	}
+
+	public void setInventoryThreads(String inventoryThreads) {
+		this.inventoryThreads = inventoryThreads;
+	}
+
+	public String getArchiveTargetMB() {
+		return this.archiveTargetMB;
+	}
+
+	public void setArchiveTargetMB(String archiveTargetMB) {
+		this.archiveTargetMB = archiveTargetMB;
+	}
+
+	public String getArchiveTargetObjects() {
+		return this.archiveTargetObjects;
+	}
+
+	public void setArchiveTargetObjects(String archiveTargetObjects) {
+		this.archiveTargetObjects = archiveTargetObjects;
+	}
+
+	public String getArchivePackPolicy() {
+		return this.archivePackPolicy;
+	}
+
+	public void setArchivePackPolicy(String archivePackPolicy) {
+		this.archivePackPolicy = archivePackPolicy;
+	}
+
 	public String getSqsProducerMode() {
 		return this.sqsProducerMode;
 	}
@@ -142,5 +290,469 @@ public class ArchiveConfig {
 
 	public void setS3ThreadNum(String s3MaxConCount) {
 		this.s3MaxConCount = s3MaxConCount;
-	}	  
+	}
+
+	public String getS3PrefetchMB() {
+		return this.s3PrefetchMB;
+	}
+
+	public void setS3PrefetchMB(String s3PrefetchMB) {
+		this.s3PrefetchMB = s3PrefetchMB;
+	}
+
+	public String getS3PrefetchConCount() {
+		return this.s3PrefetchConCount;
+	}
+
+	public void setS3PrefetchConCount(String s3PrefetchConCount) {
+		this.s3PrefetchConCount = s3PrefetchConCount;
+	}
+
+	public String getS3ProcessPrefetchMB() {
+		return this.s3ProcessPrefetchMB;
+	}
+
+	public void setS3ProcessPrefetchMB(String s3ProcessPrefetchMB) {
+		this.s3ProcessPrefetchMB = s3ProcessPrefetchMB;
+	}
+
+	public String getS3ProcessPrefetchConCount() {
+		return this.s3ProcessPrefetchConCount;
+	}
+
+	public void setS3ProcessPrefetchConCount(String s3ProcessPrefetchConCount) {
+		this.s3ProcessPrefetchConCount = s3ProcessPrefetchConCount;
+	}
+
+	public String getS3BufferObjectKB() {
+		return this.s3BufferObjectKB;
+	}
+
+	public void setS3BufferObjectKB(String s3BufferObjectKB) {
+		this.s3BufferObjectKB = s3BufferObjectKB;
+	}
+
+	public String getS3RangedGetThresholdMB() {
+		return this.s3RangedGetThresholdMB;
+	}
+
+	public void setS3RangedGetThresholdMB(String s3RangedGetThresholdMB) {
+		this.s3RangedGetThresholdMB = s3RangedGetThresholdMB;
+	}
+
+	public String getS3RangeSizeMB() {
+		return this.s3RangeSizeMB;
+	}
+
+	public void setS3RangeSizeMB(String s3RangeSizeMB) {
+		this.s3RangeSizeMB = s3RangeSizeMB;
+	}
+
+	public String getS3RangeConCount() {
+		return this.s3RangeConCount;
+	}
+
+	public void setS3RangeConCount(String s3RangeConCount) {
+		this.s3RangeConCount = s3RangeConCount;
+	}
+
+	public String getArchiveUploadMode() {
+		return this.archiveUploadMode;
+	}
+
+	public void setArchiveUploadMode(String archiveUploadMode) {
+		this.archiveUploadMode = archiveUploadMode;
+	}
+
+	public String getS3PartSizeMB() {
+		return this.s3PartSizeMB;
+	}
+
+	public void setS3PartSizeMB(String s3PartSizeMB) {
+		this.s3PartSizeMB = s3PartSizeMB;
+	}
+
+	public String getS3MaxPartsInFlight() {
+		return this.s3MaxPartsInFlight;
+	}
+
+	public void setS3MaxPartsInFlight(String s3MaxPartsInFlight) {
+		this.s3MaxPartsInFlight = s3MaxPartsInFlight;
+	}
+
+	public String getCompressionThreads() {
+		return this.compressionThreads;
+	}
+
+	public void setCompressionThreads(String compressionThreads) {
+		this.compressionThreads = compressionThreads;
+	}
+
+	public String getArchiveEntryOrder() {
+		return this.archiveEntryOrder;
+	}
+
+	public void setArchiveEntryOrder(String archiveEntryOrder) {
+		this.archiveEntryOrder = archiveEntryOrder;
+	}
+
+	public String getArchiveCheckpointMB() {
+		return this.archiveCheckpointMB;
+	}
+
+	public void setArchiveCheckpointMB(String archiveCheckpointMB) {
+		this.archiveCheckpointMB = archiveCheckpointMB;
+	}
+
+	public String getArchiveExpiryHours() {
+		return this.archiveExpiryHours;
+	}
+
+	public void setArchiveExpiryHours(String archiveExpiryHours) {
+		this.archiveExpiryHours = archiveExpiryHours;
+	}
+
+	public String getArchiveCodec() {
+		return this.archiveCodec;
+	}
+
+	public void setArchiveCodec(String archiveCodec) {
+		this.archiveCodec = archiveCodec;
+	}
+
+	public String getArchiveCodecLevel() {
+		return this.archiveCodecLevel;
+	}
+
+	public void setArchiveCodecLevel(String archiveCodecLevel) {
+		this.archiveCodecLevel = archiveCodecLevel;
+	}
+
+	public String getArchiveCodecBufferKB() {
+		return this.archiveCodecBufferKB;
+	}
+
+	public void setArchiveCodecBufferKB(String archiveCodecBufferKB) {
+		this.archiveCodecBufferKB = archiveCodecBufferKB;
+	}
+
+	public String getArchiveCodecWorkers() {
+		return this.archiveCodecWorkers;
+	}
+
+	public void setArchiveCodecWorkers(String archiveCodecWorkers) {
+		this.archiveCodecWorkers = archiveCodecWorkers;
+	}
+
+	public String getCompressionBypass() {
+		return this.compressionBypass;
+	}
+
+	public void setCompressionBypass(String compressionBypass) {
+		this.compressionBypass = compressionBypass;
+	}
+
+	public String getCompressionBypassTarOnlyPercent() {
+		return this.compressionBypassTarOnlyPercent;
+	}
+
+	public void setCompressionBypassTarOnlyPercent(String compressionBypassTarOnlyPercent) {
+		this.compressionBypassTarOnlyPercent = compressionBypassTarOnlyPercent;
+	}
+
+	public String getArchiveLayout() {
+		return this.archiveLayout;
+	}
+
+	public void setArchiveLayout(String archiveLayout) {
+		this.archiveLayout = archiveLayout;
+	}
+
+	public String getSeekableFrameKB() {
+		return this.seekableFrameKB;
+	}
+
+	public void setSeekableFrameKB(String seekableFrameKB) {
+		this.seekableFrameKB = seekableFrameKB;
+	}
+
+	public String getArchiveStorageClass() {
+		return this.archiveStorageClass;
+	}
+
+	public void setArchiveStorageClass(String archiveStorageClass) {
+		this.archiveStorageClass = archiveStorageClass;
+	}
+
+	public String getExtractArchive() {
+		return this.extractArchive;
+	}
+
+	public void setExtractArchive(String extractArchive) {
+		this.extractArchive = extractArchive;
+	}
+
+	public String getExtractKey() {
+		return this.extractKey;
+	}
+
+	public void setExtractKey(String extractKey) {
+		this.extractKey = extractKey;
+	}
+
+	public String getProducerInput() {
+		return this.producerInput;
+	}
+
+	public void setProducerInput(String producerInput) {
+		this.producerInput = producerInput;
+	}
+
+	public String getRestoreBucket() {
+		return this.restoreBucket;
+	}
+
+	public void setRestoreBucket(String restoreBucket) {
+		this.restoreBucket = restoreBucket;
+	}
+
+	public String getRestoreUploadThreads() {
+		return this.restoreUploadThreads;
+	}
+
+	public void setRestoreUploadThreads(String restoreUploadThreads) {
+		this.restoreUploadThreads = restoreUploadThreads;
+	}
+
+	public String getRestoreBufferMB() {
+		return this.restoreBufferMB;
+	}
+
+	public void setRestoreBufferMB(String restoreBufferMB) {
+		this.restoreBufferMB = restoreBufferMB;
+	}
+
+	public String getRestoreSpillMB() {
+		return this.restoreSpillMB;
+	}
+
+	public void setRestoreSpillMB(String restoreSpillMB) {
+		this.restoreSpillMB = restoreSpillMB;
+	}
+
+	public String getSourceDeletion() {
+		return this.sourceDeletion;
+	}
+
+	public void setSourceDeletion(String sourceDeletion) {
+		this.sourceDeletion = sourceDeletion;
+	}
+
+	public String getDeleteBatchConcurrency() {
+		return this.deleteBatchConcurrency;
+	}
+
+	public void setDeleteBatchConcurrency(String deleteBatchConcurrency) {
+		this.deleteBatchConcurrency = deleteBatchConcurrency;
+	}
+
+	public String getDeleteMaxRetries() {
+		return this.deleteMaxRetries;
+	}
+
+	public void setDeleteMaxRetries(String deleteMaxRetries) {
+		this.deleteMaxRetries = deleteMaxRetries;
+	}
+
+	public String getArchiveManifest() {
+		return this.archiveManifest;
+	}
+
+	public void setArchiveManifest(String archiveManifest) {
+		this.archiveManifest = archiveManifest;
+	}
+
+	public String getVerifySourceETags() {
+		return this.verifySourceETags;
+	}
+
+	public void setVerifySourceETags(String verifySourceETags) {
+		this.verifySourceETags = verifySourceETags;
+	}
+
+	public String getMetrics() {
+		return this.metrics;
+	}
+
+	public void setMetrics(String metrics) {
+		this.metrics = metrics;
+	}
+
+	public String getMetricsPort() {
+		return this.metricsPort;
+	}
+
+	public void setMetricsPort(String metricsPort) {
+		this.metricsPort = metricsPort;
+	}
+
+	public String getArchiveCopyBufferKB() {
+		return this.archiveCopyBufferKB;
+	}
+
+	public void setArchiveCopyBufferKB(String archiveCopyBufferKB) {
+		this.archiveCopyBufferKB = archiveCopyBufferKB;
+	}
+
+	public String getStoreType() {
+		return this.storeType;
+	}
+
+	public void setStoreType(String storeType) {
+		this.storeType = storeType;
+	}
+
+	public String getStoreRoot() {
+		return this.storeRoot;
+	}
+
+	public void setStoreRoot(String storeRoot) {
+		this.storeRoot = storeRoot;
+	}
+
+	public String getLoadDevices() {
+		return this.loadDevices;
+	}
+
+	public void setLoadDevices(String loadDevices) {
+		this.loadDevices = loadDevices;
+	}
+
+	public String getLoadKeysPerDevice() {
+		return this.loadKeysPerDevice;
+	}
+
+	public void setLoadKeysPerDevice(String loadKeysPerDevice) {
+		this.loadKeysPerDevice = loadKeysPerDevice;
+	}
+
+	public String getLoadYears() {
+		return this.loadYears;
+	}
+
+	public void setLoadYears(String loadYears) {
+		this.loadYears = loadYears;
+	}
+
+	public String getLoadObjectSizeKB() {
+		return this.loadObjectSizeKB;
+	}
+
+	public void setLoadObjectSizeKB(String loadObjectSizeKB) {
+		this.loadObjectSizeKB = loadObjectSizeKB;
+	}
+
+	public String getLoadSizeDistribution() {
+		return this.loadSizeDistribution;
+	}
+
+	public void setLoadSizeDistribution(String loadSizeDistribution) {
+		this.loadSizeDistribution = loadSizeDistribution;
+	}
+
+	public String getLoadS3LatencyMs() {
+		return this.loadS3LatencyMs;
+	}
+
+	public void setLoadS3LatencyMs(String loadS3LatencyMs) {
+		this.loadS3LatencyMs = loadS3LatencyMs;
+	}
+
+	public String getLoadS3BandwidthMBps() {
+		return this.loadS3BandwidthMBps;
+	}
+
+	public void setLoadS3BandwidthMBps(String loadS3BandwidthMBps) {
+		this.loadS3BandwidthMBps = loadS3BandwidthMBps;
+	}
+
+	public String getLoadS3RequestRate() {
+		return this.loadS3RequestRate;
+	}
+
+	public void setLoadS3RequestRate(String loadS3RequestRate) {
+		this.loadS3RequestRate = loadS3RequestRate;
+	}
+
+	public String getLoadSQSLatencyMs() {
+		return this.loadSQSLatencyMs;
+	}
+
+	public void setLoadSQSLatencyMs(String loadSQSLatencyMs) {
+		this.loadSQSLatencyMs = loadSQSLatencyMs;
+	}
+
+	public String getLoadVisibilityTimeoutSeconds() {
+		return this.loadVisibilityTimeoutSeconds;
+	}
+
+	public void setLoadVisibilityTimeoutSeconds(String loadVisibilityTimeoutSeconds) {
+		this.loadVisibilityTimeoutSeconds = loadVisibilityTimeoutSeconds;
+	}
+
+	public String getExecutionMode() {
+		return this.executionMode;
+	}
+
+	public void setExecutionMode(String executionMode) {
+		this.executionMode = executionMode;
+	}
+
+	public String getConsumerThreads() {
+		return this.consumerThreads;
+	}
+
+	public void setConsumerThreads(String consumerThreads) {
+		this.consumerThreads = consumerThreads;
+	}
+
+	public String getSqsWaitTimeSeconds() {
+		return this.sqsWaitTimeSeconds;
+	}
+
+	public void setSqsWaitTimeSeconds(String sqsWaitTimeSeconds) {
+		this.sqsWaitTimeSeconds = sqsWaitTimeSeconds;
+	}
+
+	public String getSqsMaxEmptyReceives() {
+		return this.sqsMaxEmptyReceives;
+	}
+
+	public void setSqsMaxEmptyReceives(String sqsMaxEmptyReceives) {
+		this.sqsMaxEmptyReceives = sqsMaxEmptyReceives;
+	}
+
+	public String getSqsPrefetchCount() {
+		return this.sqsPrefetchCount;
+	}
+
+	public void setSqsPrefetchCount(String sqsPrefetchCount) {
+		this.sqsPrefetchCount = sqsPrefetchCount;
+	}
+
+	public String getSqsSendQueueSize() {
+		return this.sqsSendQueueSize;
+	}
+
+	public void setSqsSendQueueSize(String sqsSendQueueSize) {
+		this.sqsSendQueueSize = sqsSendQueueSize;
+	}
+
+	public String getSqsSendBatchesInFlight() {
+		return this.sqsSendBatchesInFlight;
+	}
+
+	public void setSqsSendBatchesInFlight(String sqsSendBatchesInFlight) {
+		this.sqsSendBatchesInFlight = sqsSendBatchesInFlight;
+	}
 }
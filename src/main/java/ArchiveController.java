@@ -19,7 +19,9 @@
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.logging.Logger;
+import javax.management.JMException;
 import com.google.gson.Gson;
 
 public class ArchiveController {	
@@ -28,6 +30,9 @@ public class ArchiveController {
 	DISKInterface disk = null;
 	SQSProducer producer = null;
 	SQSConsumer consumer = null;
+	LoadHarness harness = null;
+	S3Interface producerS3 = null;
+	int exitStatus = 0;
 	Logger logger = null; 
 	private static int processors = Runtime.getRuntime().availableProcessors();
 	
@@ -42,27 +47,137 @@ public class ArchiveController {
 		String logName = "sqs-" + type;
 		this.logger = new ArchiveLogger(logName, logDir.getAbsolutePath()).getLogger();
 		this.logger.info("SQS Controller invoked on Base Directory: " + baseDir);
+		exportMetrics(configCTX);
+		
+		// Load Tests replace S3 and SQS with their simulation. The producer shuts its S3Interface down once it listed
+		// everything, so it gets its own; created first, the executor metrics are the ones of the consumers
+		if(type.compareTo("loadtest") == 0) {
+			this.harness = createLoadHarness(configCTX);
+			this.producerS3 = new S3Interface(this.harness.getObjectStore(), configCTX.getSourceBucket(), configCTX.getTargetBucket(),
+					configCTX.getArchiveFileFolder(), Integer.valueOf(configCTX.getS3MaxConCount()));
+		}
 		
 		// Create S3/SQS Interfaces Required by Producer/Consumer 
-		this.s3 = new S3Interface(configCTX.getSourceBucket(), configCTX.getTargetBucket(),configCTX.getRegion(), 
-				configCTX.getArchiveFileFolder(),Integer.valueOf(configCTX.getS3MaxConCount()), configCTX.getAuthType());
-		this.sqs = new SQSInterface(configCTX.getQueue(), configCTX.getRegion(), configCTX.getAuthType());
+		this.s3 = new S3Interface(this.harness != null ? this.harness.getObjectStore() : createObjectStore(configCTX), configCTX.getSourceBucket(), configCTX.getTargetBucket(),
+				configCTX.getArchiveFileFolder(),Integer.valueOf(configCTX.getS3MaxConCount()));
+		this.s3.setMultipartUpload(intOption(configCTX.getS3PartSizeMB(), 8), intOption(configCTX.getS3MaxPartsInFlight(), 4));
+		this.s3.setRangedGet(intOption(configCTX.getS3RangedGetThresholdMB(), 0), intOption(configCTX.getS3RangeSizeMB(), 8),
+				intOption(configCTX.getS3RangeConCount(), 8));
+		this.s3.setArchiveStorageClass(configCTX.getArchiveStorageClass());
+		this.s3.setVirtualThreads(virtualThreads(configCTX));
+		if(this.harness != null)
+			this.sqs = new SQSInterface(configCTX.getQueue(), this.harness.getSQS());
+		else
+			this.sqs = new SQSInterface(configCTX.getQueue(), configCTX.getRegion(), configCTX.getAuthType());
 		
 		// Initialize Producer
 		if(type.compareTo("producer") == 0) {
 			this.logger.info("SQS Controller Initializing SQS Producer ... ");
-			initSQSProducer(configCTX);
+			initSQSProducer(configCTX, this.s3);
 		}
 		// Initialize Consumer
 		else if(type.compareTo("consumer") == 0) {
 			this.logger.info("SQS Controller Initializing SQS Consumers ... ");
 			initSQSConsumer(configCTX);
 		}
+		// Unpack archives back into their S3 Keys
+		else if(type.compareTo("restore") == 0) {
+			this.logger.info("SQS Controller Initializing SQS Restore Consumers ... ");
+			initRestoreConsumer(configCTX);
+		}
+		// Restore a single object from a seekable archive
+		else if(type.compareTo("extract") == 0) {
+			this.logger.info("SQS Controller Extracting " + configCTX.getExtractKey() + " From " + configCTX.getExtractArchive() + " ... ");
+			extractObject(configCTX);
+		}
+		// Run Producer and Consumers against simulated S3 and SQS
+		else if(type.compareTo("loadtest") == 0) {
+			this.logger.info("SQS Controller Initializing Load Test ... ");
+			runLoadTest(configCTX);
+		}
 		else
 			this.logger.info("SQS Controller found an unsupported type = " + type + " Exiting ...");
 	}
 	
-	private void initSQSProducer(ArchiveConfig configCTX) {
+	// Optional numeric configuration values fall back to their default when left empty
+	private static int intOption(String value, int defaultValue) {
+		if(value == null || value.trim().isEmpty())
+			return defaultValue;
+		return Integer.valueOf(value.trim());
+	}
+	
+	// executionMode "virtual" runs S3 GETs and consumer threads on virtual threads bounded by semaphores (Java 21)
+	private static boolean virtualThreads(ArchiveConfig configCTX) {
+		String executionMode = configCTX.getExecutionMode();
+		if(executionMode == null || executionMode.isEmpty() || "pools".equals(executionMode))
+			return false;
+		if("virtual".equals(executionMode))
+			return true;
+		throw new IllegalArgumentException("Unsupported executionMode: " + executionMode);
+	}
+	
+	// storeType "filesystem" archives from and to bucket directories under storeRoot instead of S3
+	private ObjectStore createObjectStore(ArchiveConfig configCTX) {
+		String storeType = configCTX.getStoreType();
+		if(storeType == null || storeType.isEmpty() || "s3".equals(storeType))
+			return new S3ObjectStore(configCTX.getRegion(), Integer.valueOf(configCTX.getS3MaxConCount()), configCTX.getAuthType());
+		if("filesystem".equals(storeType)) {
+			if(configCTX.getStoreRoot() == null || configCTX.getStoreRoot().isEmpty())
+				throw new IllegalArgumentException("storeType filesystem requires storeRoot");
+			this.logger.info("SQS Controller Using File System Object Store On: " + configCTX.getStoreRoot());
+			return new FileSystemObjectStore(configCTX.getStoreRoot());
+		}
+		throw new IllegalArgumentException("Unsupported storeType: " + storeType);
+	}
+	
+	private LoadHarness createLoadHarness(ArchiveConfig configCTX) {
+		LoadHarness harness = new LoadHarness(configCTX.getSourceBucket(), intOption(configCTX.getLoadDevices(), 100),
+				intOption(configCTX.getLoadKeysPerDevice(), 10000), intOption(configCTX.getLoadYears(), 2),
+				configCTX.getLoadSizeDistribution(), intOption(configCTX.getLoadObjectSizeKB(), 16) * 1024L, this.logger);
+		harness.setS3Simulation(intOption(configCTX.getLoadS3LatencyMs(), 20), intOption(configCTX.getLoadS3RequestRate(), 5500),
+				intOption(configCTX.getLoadS3BandwidthMBps(), 0));
+		harness.setSQSSimulation(intOption(configCTX.getLoadSQSLatencyMs(), 10), intOption(configCTX.getLoadVisibilityTimeoutSeconds(), 30));
+		return harness;
+	}
+	
+	// The producer lists in its own thread while the consumers drain the queue, consumers stop once it is empty
+	private void runLoadTest(ArchiveConfig configCTX) {
+		this.harness.start();
+		Thread producerThread = new Thread(() -> {
+			try {
+				initSQSProducer(configCTX, this.producerS3);
+			} finally {
+				this.harness.producerDone();
+			}
+		}, "load-test-producer");
+		producerThread.start();
+		initSQSConsumer(configCTX);
+		try {
+			producerThread.join();
+		} catch (InterruptedException e) {
+			this.logger.info("S3ArchiveBuilder Controller Thread Interrupted");
+		}
+		this.harness.report(new File(configCTX.getBaseDirectory() + "/LoadTest/report.txt"));
+	}
+	
+	// Metrics are always recorded, "jmx" (default) registers the MBean and "prometheus" also serves the scrape endpoint
+	private void exportMetrics(ArchiveConfig configCTX) {
+		String metrics = configCTX.getMetrics();
+		if("off".equals(metrics))
+			return;
+		try {
+			ArchiveMetrics.exportJMX();
+			if("prometheus".equals(metrics)) {
+				int port = intOption(configCTX.getMetricsPort(), 9404);
+				ArchiveMetrics.exportPrometheus(port);
+				this.logger.info("SQS Controller Serving Prometheus Metrics On Port: " + port);
+			}
+		} catch (IOException | JMException e) {
+			this.logger.info("SQS Controller Failed Exporting Metrics: " + e.getMessage());
+		}
+	}
+	
+	private void initSQSProducer(ArchiveConfig configCTX, S3Interface s3) {
 	    // Create Directory Structure for Producer:
 		this.logger.info("SQS Controller Creating SQS Producer Directory Structure Over Base Directory ... ");
 	    String baseDir = configCTX.getBaseDirectory();
@@ -72,12 +187,26 @@ public class ArchiveController {
 	    
 	    // Create Required Producer Object
 	    this.logger.info("SQS Controller Creating Classes required by SQS Producer ... ");
-	    this.producer = new SQSProducer(configCTX.getSourceBucket(), this.s3, this.sqs, 
+	    this.producer = new SQSProducer(configCTX.getSourceBucket(), s3, this.sqs, 
 	    		this.logger,logPath.getAbsolutePath(), configCTX.getSqsProducerMode());
+	    this.producer.setSendPipeline(intOption(configCTX.getSqsSendQueueSize(), 100),
+	    		intOption(configCTX.getSqsSendBatchesInFlight(), 4));
+	    this.producer.setListingConcurrency(intOption(configCTX.getS3ListingConcurrency(), 4));
+	    this.producer.setGroupingBuffer(intOption(configCTX.getGroupingBufferMB(), 64) * 1024L * 1024);
+	    this.producer.setGroupingStrategy(GroupingStrategies.compile(configCTX.getGroupingStrategy(), configCTX.getGroupingPattern()));
+	    this.producer.setJournal(!"disabled".equals(configCTX.getProducerJournal()));
+	    this.producer.setArchiveInput("archives".equals(configCTX.getProducerInput()));
+	    this.producer.setArchivePlan(intOption(configCTX.getArchiveTargetMB(), 0) * 1024L * 1024,
+	    		intOption(configCTX.getArchiveTargetObjects(), 0), configCTX.getArchivePackPolicy());
+	    if(configCTX.getInventoryManifest() != null && !configCTX.getInventoryManifest().isEmpty())
+	    	this.producer.setInventory(configCTX.getInventoryManifest(),
+	    			intOption(configCTX.getInventoryThreads(), Runtime.getRuntime().availableProcessors()));
 	    
 	    // Start SQSProducer Thread
 	    this.logger.info("SQS Controller Starting SQS Producer Thread  ... ");
 	    this.producer.produce(configCTX.getS3ListingPrefix(), configCTX.getS3ListingMarker(), configCTX.getS3ListingFilter());
+	    if(this.producer.getFailedPartitions() > 0 || this.producer.getFailedContexts() > 0)
+	    	this.exitStatus = 1;
 	}
 	
 	private void initSQSConsumer(ArchiveConfig configCTX) {
@@ -90,14 +219,82 @@ public class ArchiveController {
 	    
 	    // Create Required Consumer Object
 	    this.logger.info("SQS Controller Creating SQS Consumers Directory Structure Over Base Directory ... ");
-	    this.disk = new DISKInterface(archiveDir.getAbsolutePath() + "/", configCTX.getArchiveFilePrefix());
-		this.consumer = new SQSConsumer(this.s3, this.sqs, this.disk, processors, this.logger);
+	    ArchiveCodec codec = ArchiveCodecs.create(configCTX.getArchiveCodec(), intOption(configCTX.getArchiveCodecLevel(), -1),
+	    		intOption(configCTX.getArchiveCodecBufferKB(), 0) * 1024, intOption(configCTX.getArchiveCodecWorkers(), 0));
+	    this.disk = new DISKInterface(archiveDir.getAbsolutePath() + "/", configCTX.getArchiveFilePrefix(), codec.getExtension());
+		int consumerThreads = intOption(configCTX.getConsumerThreads(), processors);
+		this.consumer = new SQSConsumer(this.s3, this.sqs, this.disk, consumerThreads, this.logger);
+		this.consumer.setVirtualThreads(virtualThreads(configCTX));
+		this.consumer.setArchiveCodec(codec);
+		this.consumer.setCompressionBypass(configCTX.getCompressionBypass(), intOption(configCTX.getCompressionBypassTarOnlyPercent(), 90));
+		this.consumer.setArchiveLayout(configCTX.getArchiveLayout(), intOption(configCTX.getSeekableFrameKB(), 0) * 1024L);
+		this.consumer.setArchiveManifest(configCTX.getArchiveManifest(), !"disabled".equals(configCTX.getVerifySourceETags()));
+		this.consumer.setStreamingUpload("stream".equals(configCTX.getArchiveUploadMode()));
+		int s3MaxConCount = Integer.valueOf(configCTX.getS3MaxConCount());
+		this.consumer.setPrefetchWindow(intOption(configCTX.getS3PrefetchMB(), 256) * 1024L * 1024,
+				intOption(configCTX.getS3PrefetchConCount(), s3MaxConCount),
+				intOption(configCTX.getS3ProcessPrefetchMB(), 1024) * 1024L * 1024,
+				intOption(configCTX.getS3ProcessPrefetchConCount(), s3MaxConCount),
+				intOption(configCTX.getS3BufferObjectKB(), 0) * 1024);
+		this.consumer.setArchiveEntryOrder(configCTX.getArchiveEntryOrder());
+		this.consumer.setCopyBuffer(intOption(configCTX.getArchiveCopyBufferKB(), 4) * 1024);
+		this.consumer.setCompressionThreads(intOption(configCTX.getCompressionThreads(), 0));
+		this.consumer.setArchiveCheckpoint(intOption(configCTX.getArchiveCheckpointMB(), 256) * 1024L * 1024);
+		this.consumer.setArchiveExpiry(intOption(configCTX.getArchiveExpiryHours(), 336));
+		String sourceDeletion = configCTX.getSourceDeletion();
+		if("run".equals(sourceDeletion) || "dry-run".equals(sourceDeletion))
+			this.consumer.setSourceDeletion(new S3BatchDeleter(this.s3, configCTX.getSourceBucket(), "dry-run".equals(sourceDeletion),
+					intOption(configCTX.getDeleteBatchConcurrency(), 4), intOption(configCTX.getDeleteMaxRetries(), 3), this.logger,
+					new ArchiveLogger("sqs-deletion-results", baseDir + "/Consumer/").getLogger()));
+		this.consumer.setReceive(intOption(configCTX.getSqsWaitTimeSeconds(), 20),
+				intOption(configCTX.getSqsMaxEmptyReceives(), 3),
+				intOption(configCTX.getSqsPrefetchCount(), consumerThreads));
 		
 		// Start SQSConsumer Threads
 		this.logger.info("SQS Controller Starting SQS Consumer Threads  ... ");
 		this.consumer.consume();
+		awaitSQSConsumers();
+		if(this.consumer.compressionExecutor != null)
+			this.consumer.compressionExecutor.shutdown();
+		if(this.consumer.deleter != null)
+			this.consumer.deleter.shutdown();
+		this.logger.info("Successfully Shutdown SQS Consumer Threads ...");
+	}
+	
+	// Restore Consumers name Contexts without an archive name like the consumers that built them,
+	// so archiveFilePrefix, archiveCodec and compressionBypass must match the archiving run
+	private void initRestoreConsumer(ArchiveConfig configCTX) {
+		this.logger.info("SQS Controller Creating Classes required by SQS Restore Consumers ... ");
+	    File restoreDir = new File(configCTX.getBaseDirectory() + "/Restore/");
+	    if(!restoreDir.exists())
+	    	restoreDir.mkdirs();
+	    ArchiveCodec codec = ArchiveCodecs.create(configCTX.getArchiveCodec(), -1, 0, 0);
+	    this.disk = new DISKInterface(restoreDir.getAbsolutePath() + "/", configCTX.getArchiveFilePrefix(), codec.getExtension());
+	    String restoreBucket = configCTX.getRestoreBucket();
+	    if(restoreBucket == null || restoreBucket.isEmpty())
+	    	restoreBucket = configCTX.getSourceBucket();
+	    ArchiveRestorer restorer = new ArchiveRestorer(this.s3, restoreBucket, intOption(configCTX.getRestoreUploadThreads(), 16),
+	    		intOption(configCTX.getRestoreBufferMB(), 256) * 1024L * 1024, intOption(configCTX.getRestoreSpillMB(), 0) * 1024L * 1024, this.logger);
+		int consumerThreads = intOption(configCTX.getConsumerThreads(), processors);
+		this.consumer = new SQSConsumer(this.s3, this.sqs, this.disk, consumerThreads, this.logger);
+		this.consumer.setVirtualThreads(virtualThreads(configCTX));
+		this.consumer.setArchiveCodec(codec);
+		this.consumer.setCompressionBypass(configCTX.getCompressionBypass(), intOption(configCTX.getCompressionBypassTarOnlyPercent(), 90));
+		this.consumer.setRestore(restorer);
+		this.consumer.setReceive(intOption(configCTX.getSqsWaitTimeSeconds(), 20),
+				intOption(configCTX.getSqsMaxEmptyReceives(), 3),
+				intOption(configCTX.getSqsPrefetchCount(), consumerThreads));
 		
-		// Wait for Consumers to Shutdown and Terminate
+		// Start SQSConsumer Threads
+		this.logger.info("SQS Controller Starting SQS Restore Consumer Threads  ... ");
+		this.consumer.consume();
+		awaitSQSConsumers();
+		restorer.shutdown();
+		this.logger.info("Successfully Shutdown SQS Restore Consumer Threads ...");
+	}
+	
+	// Wait for Consumers to Shutdown and Terminate
+	private void awaitSQSConsumers() {
 		while(!this.consumer.executor.isTerminated()){
 			this.logger.info("SQS Consumers Actively Working ...");
 			try {
@@ -106,7 +303,18 @@ public class ArchiveController {
 				this.logger.info("S3ArchiveBuilder Controller Thread Interrupted");
 			}
 		}
-		this.logger.info("Successfully Shutdown SQS Consumer Threads ...");
+	}
+
+	private void extractObject(ArchiveConfig configCTX) {
+		File extractDir = new File(configCTX.getBaseDirectory() + "/Extract/");
+		if(!extractDir.exists())
+			extractDir.mkdirs();
+		try {
+			new ArchiveExtractor(this.logger).extract(configCTX.getExtractArchive(), configCTX.getExtractKey(), extractDir);
+		} catch (IOException e) {
+			this.logger.info("SQS Controller Failed Extracting " + configCTX.getExtractKey() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
 	}
 
 	// Main Method
@@ -137,7 +345,8 @@ public class ArchiveController {
 		
 		// Ensure s3 executor is closed
 		controller.s3.executor.shutdownNow();
-		while(!controller.s3.executor.isTerminated()) {
+		controller.s3.uploadExecutor.shutdownNow();
+		while(!controller.s3.executor.isTerminated() || !controller.s3.uploadExecutor.isTerminated()) {
 			controller.logger.info("Waiting for S3 Executors to ShutDown ...");
 			try {
 				Thread.sleep(5000);
@@ -147,8 +356,12 @@ public class ArchiveController {
 		}
 		
 		// Archive Controller Exits
+		ArchiveMetrics.stopPrometheus();
 		controller.logger.info("Successfully Shutdown S3 Interface Executors ...");
 		controller.logger.info("SQS Controller All " + configCTX.getType() + " threads have exited ...");
 		controller.logger.info("SQS Controller Exiting ...");
+		// Non-zero when Keys were left unqueued, e.g. a listing partition failed
+		if(controller.exitStatus != 0)
+			System.exit(controller.exitStatus);
 	}
 }
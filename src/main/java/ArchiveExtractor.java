@@ -0,0 +1,85 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+
+/* Restores single objects from seekable archives, reading only the frame that holds each of them
+ * 		1. The index sidecar <archive name>.index.json is read from the target bucket
+ * 		2. The frame of the object is fetched with one ranged GET of its offset and length
+ * 		3. The frame is decompressed and its tar records are read up to the entry, which is checked against its size and CRC-32
+ * Archives in Glacier Flexible Retrieval or Deep Archive must be restored before their ranges can be read.
+ */
+public class ArchiveExtractor {
+	private Logger logger = null;
+	
+	ArchiveExtractor(Logger logger) {
+		this.logger = logger;
+	}
+	
+	// Returns the restored file, null when the object is not in the archive or the restored copy does not match the index
+	public File extract(String archiveName, String keyOrName, File targetDirectory) throws IOException {
+		ArchiveIndex index = ArchiveIndex.read(S3Interface.s3GetArchiveIndex(archiveName));
+		ArchiveIndex.Entry entry = index.find(keyOrName);
+		if(entry == null) {
+			this.logger.info("Object: " + keyOrName + " Is Not In Archive: " + archiveName);
+			return null;
+		}
+		File target = new File(targetDirectory, entry.name).getCanonicalFile();
+		if(!target.toPath().startsWith(targetDirectory.getCanonicalFile().toPath()))
+			throw new IOException("Entry " + entry.name + " would be restored outside of " + targetDirectory);
+		target.getParentFile().mkdirs();
+		
+		this.logger.info("Restoring Object: " + entry.name + " From Archive: " + archiveName + " Bytes " + entry.offset + "-" + (entry.offset + entry.length - 1));
+		S3Object range = S3Interface.s3GetArchiveRange(archiveName, entry.offset, entry.offset + entry.length - 1);
+		ArchiveCodec codec = ArchiveCodecs.create(index.getCodec(), -1, 0, 0);
+		try (InputStream in = codec.decompress(range.getObjectContent());
+				TarArchiveInputStream tarIn = new TarArchiveInputStream(in)) {
+			TarArchiveEntry tarEntry;
+			while((tarEntry = tarIn.getNextTarEntry()) != null) {
+				if(!tarEntry.getName().equals(entry.name))
+					continue;
+				CRC32 crc = new CRC32();
+				long size;
+				try (OutputStream out = new CheckedOutputStream(new FileOutputStream(target), crc)) {
+					size = IOUtils.copy(tarIn, out);
+				}
+				if(size != entry.size || !String.format("%08x", crc.getValue()).equals(entry.crc32)) {
+					this.logger.info("Restored Object: " + entry.name + " Does Not Match The Archive Index ... Discarding");
+					target.delete();
+					return null;
+				}
+				this.logger.info("Restored Object: " + entry.name + " (" + size + " Bytes) To: " + target + " Reading " + entry.length + " Archive Bytes");
+				return target;
+			}
+		}
+		this.logger.info("Object: " + entry.name + " Was Not Found In Its Archive Frame");
+		return null;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import com.google.gson.Gson;
+
+/* Index sidecar of a seekable archive, uploaded next to it as <archive name>.index.json
+ * Every entry records the codec frame holding it: offset and length of the frame in the archive object. A ranged GET
+ * of those bytes decompresses on its own into the tar records of the frame, the entry's records are among them.
+ * size and crc32 are the uncompressed size and CRC-32 of the object.
+ */
+public class ArchiveIndex {
+	static final String SUFFIX = ".index.json";
+	private static final Gson gson = new Gson();
+	private String archive;
+	private String codec;
+	private List<Entry> entries = new ArrayList<Entry>();
+	
+	static class Entry {
+		String name;
+		String key;
+		long offset;
+		long length;
+		long size;
+		String crc32;
+		
+		Entry(String name, String key, long offset, long size, String crc32) {
+			this.name = name;
+			this.key = key;
+			this.offset = offset;
+			this.size = size;
+			this.crc32 = crc32;
+		}
+		
+		// Journal record of the entry
+		String toJson() {
+			return gson.toJson(this);
+		}
+		
+		static Entry fromJson(String json) {
+			return gson.fromJson(json, Entry.class);
+		}
+	}
+	
+	ArchiveIndex(String archive, String codec) {
+		this.archive = archive;
+		this.codec = codec;
+	}
+	
+	public String getArchive() {
+		return this.archive;
+	}
+	
+	public String getCodec() {
+		return this.codec;
+	}
+	
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+	
+	// Looks an object up by its S3 Key or by its entry name in the archive
+	public Entry find(String keyOrName) {
+		for(Entry entry : this.entries)
+			if(keyOrName.equals(entry.key))
+				return entry;
+		for(Entry entry : this.entries)
+			if(keyOrName.equals(entry.name))
+				return entry;
+		return null;
+	}
+	
+	public void write(File file) throws IOException {
+		Files.write(file.toPath(), gson.toJson(this).getBytes(StandardCharsets.UTF_8));
+	}
+	
+	public static ArchiveIndex read(InputStream in) throws IOException {
+		try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+			return gson.fromJson(reader, ArchiveIndex.class);
+		}
+	}
+}
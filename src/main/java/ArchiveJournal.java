@@ -0,0 +1,286 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import com.amazonaws.services.s3.model.PartETag;
+
+/* Progress journal of one Consumer archive, kept in the local directory of its SQS Context
+ * 		U	uploadId				Multipart upload the archive is streamed into
+ * 		E	entryName	eTag	versionId	Entry written since the previous checkpoint, with the ETag and version ID of the
+ * 										source object read into it (empty when not known)
+ * 		P	partNumber	eTag		Part uploaded since the previous checkpoint
+ * 		I	indexEntry				ArchiveIndex entry (JSON) of a seekable archive, written since the previous checkpoint
+ * 		M	manifestEntry			ArchiveManifest entry (JSON), written since the previous checkpoint
+ * 		C	archiveBytes			Checkpoint: the records above are committed, the archive ends at archiveBytes
+ * Records after the last checkpoint belong to a run that died and are ignored on replay.
+ * The journal stays locked while a consumer builds the archive, a redelivered context is never built twice at once.
+ */
+public class ArchiveJournal {
+	private static final String JOURNAL_NAME = "archive.journal";
+	private Logger logger = null;
+	private FileChannel channel = null;
+	private FileLock lock = null;
+	private String uploadId = null;
+	// Entry name -> its E record
+	private Map<String, String> committedEntries = new HashMap<String, String>();
+	private List<PartETag> committedParts = new ArrayList<PartETag>();
+	private List<String> committedIndex = new ArrayList<String>();
+	private List<String> committedManifest = new ArrayList<String>();
+	private long archiveBytes = 0;
+	private boolean checkpointed = false;
+	
+	private ArchiveJournal(FileChannel channel, FileLock lock, Logger logger) {
+		this.channel = channel;
+		this.lock = lock;
+		this.logger = logger;
+	}
+	
+	// Returns null when another consumer holds the journal of this context
+	public static ArchiveJournal open(String directory, Logger logger) throws IOException {
+		File journalFile = new File(directory, JOURNAL_NAME);
+		FileChannel channel = new RandomAccessFile(journalFile, "rw").getChannel();
+		FileLock lock = null;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			lock = null;
+		}
+		if(lock == null) {
+			channel.close();
+			return null;
+		}
+		ArchiveJournal journal = new ArchiveJournal(channel, lock, logger);
+		journal.replay();
+		return journal;
+	}
+	
+	private void replay() throws IOException {
+		ByteBuffer content = ByteBuffer.allocate((int) this.channel.size());
+		while(content.hasRemaining() && this.channel.read(content, content.position()) > 0);
+		byte[] journal = content.array();
+		int length = content.position();
+		// Journal bytes up to and including the last checkpoint record
+		int committedLength = 0;
+		int skipped = 0;
+		String pendingUpload = null;
+		List<String> pendingEntries = new ArrayList<String>();
+		List<PartETag> pendingParts = new ArrayList<PartETag>();
+		List<String> pendingIndex = new ArrayList<String>();
+		List<String> pendingManifest = new ArrayList<String>();
+		for(int start = 0; start < length; ) {
+			int end = start;
+			while(end < length && journal[end] != '\n')
+				end++;
+			// A torn last record has no line end, its fields may be cut short so it is ignored
+			if(end == length) {
+				skipped++;
+				break;
+			}
+			String line = new String(journal, start, end - start, StandardCharsets.UTF_8);
+			start = end + 1;
+			String[] fields = line.split("\t", -1);
+			if(fields[0].equals("U") && fields.length == 2)
+				pendingUpload = fields[1];
+			else if(fields[0].equals("E") && fields.length == 2)
+				pendingEntries.add(entry(ProducerJournal.unescape(fields[1]), null, null));
+			else if(fields[0].equals("E") && fields.length == 4)
+				pendingEntries.add(line.substring(2));
+			else if(fields[0].equals("P") && fields.length == 3 && ProducerJournal.isNumber(fields[1], 9))
+				pendingParts.add(new PartETag(Integer.parseInt(fields[1]), fields[2]));
+			else if(fields[0].equals("I") && fields.length == 2)
+				pendingIndex.add(fields[1]);
+			else if(fields[0].equals("M") && fields.length == 2)
+				pendingManifest.add(fields[1]);
+			else if(fields[0].equals("C") && fields.length == 2 && ProducerJournal.isNumber(fields[1], 18)) {
+				if(pendingUpload != null)
+					this.uploadId = pendingUpload;
+				commitEntries(pendingEntries);
+				this.committedParts.addAll(pendingParts);
+				this.committedIndex.addAll(pendingIndex);
+				this.committedManifest.addAll(pendingManifest);
+				this.archiveBytes = Long.parseLong(fields[1]);
+				this.checkpointed = true;
+				committedLength = start;
+				pendingEntries.clear();
+				pendingParts.clear();
+				pendingIndex.clear();
+				pendingManifest.clear();
+			}
+			else if(!line.isEmpty())
+				skipped++;
+		}
+		if(skipped > 0)
+			this.logger.warning("Skipped " + skipped + " Malformed Archive Journal Records");
+		// Drop the records of the run that died after its last checkpoint, the committed records stay in place so a
+		// crash during replay never loses them
+		if(committedLength < length) {
+			this.channel.truncate(committedLength);
+			this.channel.force(true);
+		}
+		if(this.checkpointed)
+			this.logger.info("Resuming Archive after " + this.committedEntries.size() + " Entries, " + this.archiveBytes + " Bytes");
+	}
+	
+	// Forgets all progress, the archive is built from scratch
+	public void reset() throws IOException {
+		this.uploadId = null;
+		this.committedEntries.clear();
+		this.committedParts.clear();
+		this.committedIndex.clear();
+		this.committedManifest.clear();
+		this.archiveBytes = 0;
+		this.checkpointed = false;
+		this.channel.truncate(0);
+		this.channel.force(true);
+	}
+	
+	public boolean hasCheckpoint() {
+		return this.checkpointed;
+	}
+	public String getUploadId() {
+		return this.uploadId;
+	}
+	public List<PartETag> getCommittedParts() {
+		return this.committedParts;
+	}
+	public List<String> getCommittedIndex() {
+		return this.committedIndex;
+	}
+	public List<String> getCommittedManifest() {
+		return this.committedManifest;
+	}
+	public long getArchiveBytes() {
+		return this.archiveBytes;
+	}
+	public boolean isCommitted(String entryName) {
+		return this.committedEntries.containsKey(entryName);
+	}
+	
+	// ETag and version ID of the source object read into a committed entry, null when not known
+	public String getCommittedETag(String entryName) {
+		return entryField(entryName, 1);
+	}
+	public String getCommittedVersionId(String entryName) {
+		return entryField(entryName, 2);
+	}
+	
+	private String entryField(String entryName, int field) {
+		String record = this.committedEntries.get(entryName);
+		if(record == null)
+			return null;
+		String value = record.split("\t", -1)[field];
+		return value.isEmpty() ? null : ProducerJournal.unescape(value);
+	}
+	
+	// E record of an entry, passed to checkpoint
+	public static String entry(String entryName, String eTag, String versionId) {
+		return ProducerJournal.escape(entryName) + "\t" + (eTag == null ? "" : ProducerJournal.escape(eTag)) + "\t"
+				+ (versionId == null ? "" : ProducerJournal.escape(versionId));
+	}
+	
+	private void commitEntries(List<String> entries) {
+		for(String entry : entries)
+			this.committedEntries.put(ProducerJournal.unescape(entry.substring(0, entry.indexOf('\t'))), entry);
+	}
+	
+	// Commits the entries (see entry()), parts, index entries of a seekable archive and manifest entries written since
+	// the previous checkpoint, synced before returning
+	public void checkpoint(String uploadId, List<String> entries, List<PartETag> parts, List<String> index, List<String> manifest, long archiveBytes) throws IOException {
+		append(uploadId, entries, parts, index, manifest, archiveBytes);
+		this.uploadId = uploadId;
+		commitEntries(entries);
+		this.committedParts.addAll(parts);
+		this.committedIndex.addAll(index);
+		this.committedManifest.addAll(manifest);
+		this.archiveBytes = archiveBytes;
+		this.checkpointed = true;
+	}
+	
+	private void append(String uploadId, List<String> entries, List<PartETag> parts, List<String> index, List<String> manifest, long archiveBytes) throws IOException {
+		StringBuilder records = new StringBuilder();
+		if(uploadId != null)
+			records.append("U\t").append(uploadId).append('\n');
+		for(String entry : entries)
+			records.append("E\t").append(entry).append('\n');
+		for(PartETag part : parts)
+			records.append("P\t").append(part.getPartNumber()).append('\t').append(part.getETag()).append('\n');
+		for(String entry : index)
+			records.append("I\t").append(entry).append('\n');
+		for(String entry : manifest)
+			records.append("M\t").append(entry).append('\n');
+		records.append("C\t").append(archiveBytes).append('\n');
+		ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+		long position = this.channel.size();
+		while(buffer.hasRemaining())
+			position += this.channel.write(buffer, position);
+		this.channel.force(false);
+	}
+	
+	// Called at consumer startup: removes the context directories under baseDirectory whose journal was last written
+	// before cutoff and is not held by a running consumer, returns how many were removed
+	public static int removeExpired(File baseDirectory, long cutoff, Logger logger) {
+		File[] directories = baseDirectory.listFiles();
+		if(directories == null)
+			return 0;
+		int removed = 0;
+		for(File directory : directories) {
+			File journalFile = new File(directory, JOURNAL_NAME);
+			if(!journalFile.isFile() || journalFile.lastModified() >= cutoff)
+				continue;
+			// The lock is held while the directory is deleted, a consumer opening it meanwhile finds it gone
+			try (FileChannel channel = new RandomAccessFile(journalFile, "rw").getChannel()) {
+				FileLock lock = null;
+				try {
+					lock = channel.tryLock();
+				} catch (OverlappingFileLockException e) {
+					lock = null;
+				}
+				if(lock == null)
+					continue;
+				FileUtils.deleteDirectory(directory);
+				removed++;
+			} catch (IOException e) {
+				logger.warning("Could Not Remove Expired Archive Journal: " + directory + " " + e.getMessage());
+			}
+		}
+		return removed;
+	}
+	
+	// Releases the lock, the journal file is removed with the context's local directory
+	public void close() {
+		try {
+			this.lock.release();
+			this.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Checksum;
+import com.google.gson.Gson;
+
+/* Integrity manifest of an archive, uploaded next to it as <archive name>.manifest.json
+ * Every checksum is computed while the objects are copied into the archive, nothing is read twice:
+ * 		entries:	size and checksum (crc32c or sha256, hex) of every object. eTagVerified is true when the MD5 of the
+ * 					copied bytes matched the source ETag, absent when the ETag is not an MD5 (multipart, SSE-KMS or SSE-C
+ * 					uploads) or verification is disabled. A mismatch fails the archive instead.
+ * 		archive:	checksum and length of the archive object, the checksum is absent for archives resumed from a checkpoint
+ */
+public class ArchiveManifest {
+	static final String SUFFIX = ".manifest.json";
+	private static final Gson gson = new Gson();
+	private String archive;
+	private String codec;
+	private String algorithm;
+	private String archiveChecksum;
+	private long archiveBytes;
+	private List<Entry> entries = new ArrayList<Entry>();
+	
+	static class Entry {
+		String name;
+		String key;
+		long size;
+		String checksum;
+		String eTag;
+		Boolean eTagVerified;
+		
+		Entry(String name, String key, long size, String checksum, String eTag, Boolean eTagVerified) {
+			this.name = name;
+			this.key = key;
+			this.size = size;
+			this.checksum = checksum;
+			this.eTag = eTag;
+			this.eTagVerified = eTagVerified;
+		}
+		
+		// Journal record of the entry
+		String toJson() {
+			return gson.toJson(this);
+		}
+		
+		static Entry fromJson(String json) {
+			return gson.fromJson(json, Entry.class);
+		}
+	}
+	
+	ArchiveManifest(String archive, String codec, String algorithm) {
+		this.archive = archive;
+		this.codec = codec;
+		this.algorithm = algorithm;
+	}
+	
+	public String getArchive() {
+		return this.archive;
+	}
+	
+	public String getCodec() {
+		return this.codec;
+	}
+	
+	public String getAlgorithm() {
+		return this.algorithm;
+	}
+	
+	public String getArchiveChecksum() {
+		return this.archiveChecksum;
+	}
+	
+	public long getArchiveBytes() {
+		return this.archiveBytes;
+	}
+	
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+	
+	public void setArchive(String checksum, long archiveBytes) {
+		this.archiveChecksum = checksum;
+		this.archiveBytes = archiveBytes;
+	}
+	
+	public void write(File file) throws IOException {
+		Files.write(file.toPath(), gson.toJson(this).getBytes(StandardCharsets.UTF_8));
+	}
+	
+	public static ArchiveManifest read(InputStream in) throws IOException {
+		try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+			return gson.fromJson(reader, ArchiveManifest.class);
+		}
+	}
+	
+	// Digest of a manifest algorithm: crc32c, sha256 or md5
+	static MessageDigest newDigest(String algorithm) {
+		try {
+			if("crc32c".equals(algorithm))
+				return new checksumDigest("CRC32C", newCRC32C());
+			if("sha256".equals(algorithm))
+				return MessageDigest.getInstance("SHA-256");
+			if("md5".equals(algorithm))
+				return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		throw new IllegalArgumentException("Unsupported archiveManifest checksum: " + algorithm);
+	}
+	
+	static String hex(byte[] digest) {
+		StringBuilder hex = new StringBuilder(digest.length * 2);
+		for(byte b : digest)
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return hex.toString();
+	}
+	
+	// The JDK's CRC32C (Java 9+) is an intrinsic, Java 8 falls back to the table driven crc32c below
+	private static Checksum newCRC32C() {
+		try {
+			return (Checksum) Class.forName("java.util.zip.CRC32C").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			return new crc32c();
+		}
+	}
+	
+	// Lets DigestInputStream and DigestOutputStream update a 32 bit Checksum, digest() is its big-endian value
+	private static class checksumDigest extends MessageDigest {
+		private Checksum checksum;
+		
+		checksumDigest(String algorithm, Checksum checksum) {
+			super(algorithm);
+			this.checksum = checksum;
+		}
+		
+		@Override
+		protected void engineUpdate(byte input) {
+			this.checksum.update(input);
+		}
+		
+		@Override
+		protected void engineUpdate(byte[] input, int offset, int len) {
+			this.checksum.update(input, offset, len);
+		}
+		
+		@Override
+		protected byte[] engineDigest() {
+			long value = this.checksum.getValue();
+			this.checksum.reset();
+			return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+		}
+		
+		@Override
+		protected void engineReset() {
+			this.checksum.reset();
+		}
+	}
+	
+	// CRC-32C (Castagnoli), slicing-by-8
+	static class crc32c implements Checksum {
+		private static final int[][] TABLE = new int[8][256];
+		private int crc = 0;
+		
+		static {
+			for(int i=0; i<256; i++) {
+				int c = i;
+				for(int k=0; k<8; k++)
+					c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+				TABLE[0][i] = c;
+			}
+			for(int i=0; i<256; i++)
+				for(int t=1; t<8; t++)
+					TABLE[t][i] = (TABLE[t - 1][i] >>> 8) ^ TABLE[0][TABLE[t - 1][i] & 0xff];
+		}
+		
+		@Override
+		public void update(int b) {
+			int c = ~this.crc;
+			this.crc = ~((c >>> 8) ^ TABLE[0][(c ^ b) & 0xff]);
+		}
+		
+		@Override
+		public void update(byte[] b, int off, int len) {
+			int c = ~this.crc;
+			while(len >= 8) {
+				c ^= (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+				c = TABLE[7][c & 0xff] ^ TABLE[6][(c >>> 8) & 0xff] ^ TABLE[5][(c >>> 16) & 0xff] ^ TABLE[4][c >>> 24]
+						^ TABLE[3][b[off + 4] & 0xff] ^ TABLE[2][b[off + 5] & 0xff] ^ TABLE[1][b[off + 6] & 0xff] ^ TABLE[0][b[off + 7] & 0xff];
+				off += 8;
+				len -= 8;
+			}
+			while(len-- > 0)
+				c = (c >>> 8) ^ TABLE[0][(c ^ b[off++]) & 0xff];
+			this.crc = ~c;
+		}
+		
+		@Override
+		public long getValue() {
+			return this.crc & 0xffffffffL;
+		}
+		
+		@Override
+		public void reset() {
+			this.crc = 0;
+		}
+	}
+}
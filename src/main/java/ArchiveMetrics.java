@@ -0,0 +1,413 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/* Process wide metrics of every pipeline stage, exported through JMX (S3ArchiveBuilder:type=ArchiveMetrics)
+ * and optionally as Prometheus text on http://<host>:<metricsPort>/metrics
+ * 		counters:	totals (bytes, keys, contexts), rates are taken by the reader, e.g. rate() in Prometheus
+ * 		gauges:		up/down values, or values read when scraped (executor queue depth and active threads, ratios)
+ * 		histograms:	latencies in seconds, cumulative buckets in Prometheus, count, sum, p50 and p99 bucket bounds in JMX
+ * Every value is a LongAdder, recording never locks so metrics are always recorded and only exported when enabled.
+ * Metrics are named s3archive_<name>, labels are given as name=value[,name=value].
+ */
+public class ArchiveMetrics {
+	static final String PREFIX = "s3archive_";
+	static final String JMX_NAME = "S3ArchiveBuilder:type=ArchiveMetrics";
+	// Requests from 1 ms to 1 minute
+	static final double[] LATENCY_SECONDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+	// Whole archives from 1 second to 1 hour
+	static final double[] ARCHIVE_SECONDS = {1, 5, 15, 30, 60, 120, 300, 600, 1200, 1800, 3600};
+	private static final ConcurrentSkipListMap<String, family> families = new ConcurrentSkipListMap<String, family>();
+	private static HttpServer server = null;
+	
+	// Metrics sharing a name, one per set of labels
+	private static class family {
+		private String type;
+		private String help;
+		private ConcurrentSkipListMap<String, metric> metrics = new ConcurrentSkipListMap<String, metric>();
+		
+		family(String type, String help) {
+			this.type = type;
+			this.help = help;
+		}
+	}
+	
+	static abstract class metric {
+		// Prometheus samples of the metric, labels already quoted
+		abstract void render(StringBuilder out, String name, String labels);
+		
+		// JMX attributes of the metric
+		abstract void attributes(Map<String, Object> out, String name);
+	}
+	
+	static class counter extends metric {
+		private LongAdder value = new LongAdder();
+		
+		public void increment() {
+			this.value.increment();
+		}
+		
+		public void add(long n) {
+			this.value.add(n);
+		}
+		
+		public long get() {
+			return this.value.sum();
+		}
+		
+		@Override
+		void render(StringBuilder out, String name, String labels) {
+			sample(out, name, labels, get());
+		}
+		
+		@Override
+		void attributes(Map<String, Object> out, String name) {
+			out.put(name, get());
+		}
+	}
+	
+	// Either counted up and down, or read from supplier when scraped
+	static class gauge extends metric {
+		private LongAdder value = new LongAdder();
+		private DoubleSupplier supplier;
+		
+		gauge(DoubleSupplier supplier) {
+			this.supplier = supplier;
+		}
+		
+		public void add(long n) {
+			this.value.add(n);
+		}
+		
+		public double get() {
+			return this.supplier != null ? this.supplier.getAsDouble() : this.value.sum();
+		}
+		
+		@Override
+		void render(StringBuilder out, String name, String labels) {
+			sample(out, name, labels, get());
+		}
+		
+		@Override
+		void attributes(Map<String, Object> out, String name) {
+			out.put(name, get());
+		}
+	}
+	
+	static class histogram extends metric {
+		private double[] bounds;
+		private long[] boundNanos;
+		// One bucket per bound plus +Inf, not cumulative
+		private LongAdder[] buckets;
+		private LongAdder sumNanos = new LongAdder();
+		
+		histogram(double[] bounds) {
+			this.bounds = bounds;
+			this.boundNanos = new long[bounds.length];
+			this.buckets = new LongAdder[bounds.length + 1];
+			for(int i=0; i<bounds.length; i++)
+				this.boundNanos[i] = (long) (bounds[i] * 1e9);
+			for(int i=0; i<this.buckets.length; i++)
+				this.buckets[i] = new LongAdder();
+		}
+		
+		public void observe(long nanos) {
+			int i = 0;
+			while(i < this.boundNanos.length && nanos > this.boundNanos[i])
+				i++;
+			this.buckets[i].increment();
+			this.sumNanos.add(nanos);
+		}
+		
+		// start is a System.nanoTime()
+		public void since(long start) {
+			observe(System.nanoTime() - start);
+		}
+		
+		private long[] counts() {
+			long[] counts = new long[this.buckets.length];
+			for(int i=0; i<counts.length; i++)
+				counts[i] = this.buckets[i].sum();
+			return counts;
+		}
+		
+		public long count() {
+			long count = 0;
+			for(LongAdder bucket : this.buckets)
+				count += bucket.sum();
+			return count;
+		}
+		
+		// Upper bound of the bucket holding quantile q, 0 without observations
+		public double quantile(double q) {
+			long[] counts = counts();
+			long count = 0;
+			for(long c : counts)
+				count += c;
+			return count == 0 ? 0.0 : quantile(this.bounds, counts, count, q);
+		}
+		
+		// Upper bound of the bucket holding the quantile, +Inf beyond the last bound
+		private static double quantile(double[] bounds, long[] counts, long count, double q) {
+			long rank = (long) Math.ceil(q * count);
+			long seen = 0;
+			for(int i=0; i<bounds.length; i++) {
+				seen += counts[i];
+				if(seen >= rank)
+					return bounds[i];
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+		
+		@Override
+		void render(StringBuilder out, String name, String labels) {
+			long[] counts = counts();
+			long cumulative = 0;
+			String separator = labels.isEmpty() ? "" : ",";
+			for(int i=0; i<this.bounds.length; i++) {
+				cumulative += counts[i];
+				sample(out, name + "_bucket", labels + separator + "le=\"" + this.bounds[i] + "\"", cumulative);
+			}
+			cumulative += counts[this.bounds.length];
+			sample(out, name + "_bucket", labels + separator + "le=\"+Inf\"", cumulative);
+			sample(out, name + "_sum", labels, this.sumNanos.sum() / 1e9);
+			sample(out, name + "_count", labels, cumulative);
+		}
+		
+		@Override
+		void attributes(Map<String, Object> out, String name) {
+			long[] counts = counts();
+			long count = 0;
+			for(long c : counts)
+				count += c;
+			out.put(name + ".count", count);
+			out.put(name + ".sum", this.sumNanos.sum() / 1e9);
+			out.put(name + ".p50", count == 0 ? 0.0 : quantile(this.bounds, counts, count, 0.5));
+			out.put(name + ".p99", count == 0 ? 0.0 : quantile(this.bounds, counts, count, 0.99));
+		}
+	}
+	
+	// The metric already registered under name and labels is shared, replace registers metric in its place
+	private static metric register(String name, String labels, String type, String help, metric metric, boolean replace) {
+		family registered = families.get(PREFIX + name);
+		if(registered == null) {
+			family created = new family(type, help);
+			registered = families.putIfAbsent(PREFIX + name, created);
+			if(registered == null)
+				registered = created;
+		}
+		if(replace) {
+			registered.metrics.put(labels, metric);
+			return metric;
+		}
+		metric existing = registered.metrics.putIfAbsent(labels, metric);
+		return existing == null ? metric : existing;
+	}
+	
+	public static counter counter(String name, String labels, String help) {
+		return (counter) register(name, labels, "counter", help, new counter(), false);
+	}
+	
+	public static gauge gauge(String name, String labels, String help) {
+		return (gauge) register(name, labels, "gauge", help, new gauge(null), false);
+	}
+	
+	// Replaces the gauge of a previous instance, e.g. of a recreated executor
+	public static gauge gauge(String name, String labels, String help, DoubleSupplier supplier) {
+		return (gauge) register(name, labels, "gauge", help, new gauge(supplier), true);
+	}
+	
+	public static histogram histogram(String name, String labels, String help, double[] bounds) {
+		return (histogram) register(name, labels, "histogram", help, new histogram(bounds), false);
+	}
+	
+	// The metric registered under name and labels, null when there is none
+	static metric find(String name, String labels) {
+		family registered = families.get(PREFIX + name);
+		return registered == null ? null : registered.metrics.get(labels);
+	}
+	
+	// Queue depth, active threads and threads of a pool
+	public static void executor(String pool, ThreadPoolExecutor executor) {
+		gauge("executor_queue_depth", "pool=" + pool, "Tasks waiting in the executor queue", () -> executor.getQueue().size());
+		gauge("executor_active_threads", "pool=" + pool, "Threads running a task", () -> executor.getActiveCount());
+		gauge("executor_pool_threads", "pool=" + pool, "Threads of the executor", () -> executor.getPoolSize());
+	}
+	
+	// Same gauges for executionMode "virtual": tasks waiting for a permit, running tasks and the permits
+	public static void executor(String pool, VirtualThreadExecutor executor) {
+		gauge("executor_queue_depth", "pool=" + pool, "Tasks waiting in the executor queue", () -> executor.getWaitingCount());
+		gauge("executor_active_threads", "pool=" + pool, "Threads running a task", () -> executor.getActiveCount());
+		gauge("executor_pool_threads", "pool=" + pool, "Threads of the executor", () -> executor.getMaxConcurrency());
+	}
+	
+	private static void sample(StringBuilder out, String name, String labels, double value) {
+		out.append(name);
+		if(!labels.isEmpty())
+			out.append('{').append(labels).append('}');
+		out.append(' ');
+		if(value == Math.rint(value) && !Double.isInfinite(value))
+			out.append((long) value);
+		else
+			out.append(value);
+		out.append('\n');
+	}
+	
+	// name=value,name=value -> name="value",name="value"
+	private static String quote(String labels) {
+		if(labels.isEmpty())
+			return labels;
+		StringBuilder quoted = new StringBuilder();
+		for(String label : labels.split(",")) {
+			int eq = label.indexOf('=');
+			if(quoted.length() > 0)
+				quoted.append(',');
+			quoted.append(label, 0, eq + 1).append('"').append(label.substring(eq + 1)).append('"');
+		}
+		return quoted.toString();
+	}
+	
+	// Prometheus text exposition format 0.0.4
+	public static String render() {
+		StringBuilder out = new StringBuilder();
+		for(Map.Entry<String, family> entry : families.entrySet()) {
+			family f = entry.getValue();
+			out.append("# HELP ").append(entry.getKey()).append(' ').append(f.help).append('\n');
+			out.append("# TYPE ").append(entry.getKey()).append(' ').append(f.type).append('\n');
+			for(Map.Entry<String, metric> m : f.metrics.entrySet())
+				m.getValue().render(out, entry.getKey(), quote(m.getKey()));
+		}
+		return out.toString();
+	}
+	
+	public static Map<String, Object> attributes() {
+		Map<String, Object> out = new LinkedHashMap<String, Object>();
+		for(Map.Entry<String, family> entry : families.entrySet()) {
+			for(Map.Entry<String, metric> m : entry.getValue().metrics.entrySet())
+				m.getValue().attributes(out, m.getKey().isEmpty() ? entry.getKey() : entry.getKey() + "{" + m.getKey() + "}");
+		}
+		return out;
+	}
+	
+	// Read only attributes, the attribute set grows as metrics are registered
+	private static class metricsMBean implements DynamicMBean {
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Object value = attributes().get(attribute);
+			if(value == null)
+				throw new AttributeNotFoundException(attribute);
+			return value;
+		}
+		
+		@Override
+		public AttributeList getAttributes(String[] names) {
+			Map<String, Object> snapshot = attributes();
+			AttributeList list = new AttributeList();
+			for(String name : names) {
+				if(snapshot.containsKey(name))
+					list.add(new Attribute(name, snapshot.get(name)));
+			}
+			return list;
+		}
+		
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Read only metric: " + attribute.getName());
+		}
+		
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+		
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+		
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			Map<String, Object> snapshot = attributes();
+			MBeanAttributeInfo[] infos = new MBeanAttributeInfo[snapshot.size()];
+			int i = 0;
+			for(Map.Entry<String, Object> entry : snapshot.entrySet())
+				infos[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false);
+			return new MBeanInfo(ArchiveMetrics.class.getName(), "S3 Archive Builder pipeline metrics", infos, null, null, null);
+		}
+	}
+	
+	// Called by ArchiveController
+	public static void exportJMX() throws JMException {
+		MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(JMX_NAME);
+		if(!mbeans.isRegistered(name))
+			mbeans.registerMBean(new metricsMBean(), name);
+	}
+	
+	private static class prometheusHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			byte[] body = render().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+	
+	// Called by ArchiveController: scrapes are answered by the server's own dispatcher thread
+	public static synchronized void exportPrometheus(int port) throws IOException {
+		if(server != null)
+			return;
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/metrics", new prometheusHandler());
+		server.start();
+	}
+	
+	public static synchronized void stopPrometheus() {
+		if(server == null)
+			return;
+		server.stop(0);
+		server = null;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Plans SQS Contexts against a target archive size and object count
+ * 		1. A (prefix, group) over either target is split into the fewest parts that fit, of about even size
+ * 		2. With the "device" pack policy a Context under the target is packed with the following Contexts
+ * 		   of the same device and group until the next one would not fit
+ * 		3. Every planned archive gets the next part number of its device and group, so names never collide
+ * Packed Contexts span prefixes, their objects are archived under the full Key.
+ */
+public class ArchivePlanner {
+	// Receives every planned Context with the callback to run once SQS accepted it
+	public interface PlannedContextHandler {
+		void send(SQSContext ctx, Runnable onSent) throws IOException;
+	}
+	
+	private long targetBytes;
+	private long targetObjects;
+	private boolean packByDevice;
+	private ProducerJournal journal = null;
+	private Map<String, Integer> lastParts = new HashMap<String, Integer>();
+	
+	// A target of 0 leaves that dimension unbounded
+	ArchivePlanner(long targetBytes, long targetObjects, String packPolicy) {
+		this.targetBytes = targetBytes > 0 ? targetBytes : Long.MAX_VALUE;
+		this.targetObjects = targetObjects > 0 ? targetObjects : Long.MAX_VALUE;
+		this.packByDevice = "device".equals(packPolicy);
+	}
+	
+	// Part numbers given by previous runs are read from and recorded to the journal
+	public void setJournal(ProducerJournal journal) {
+		this.journal = journal;
+	}
+	
+	private boolean fits(long bytes, long objects) {
+		return bytes <= this.targetBytes && objects <= this.targetObjects;
+	}
+	
+	// Splits at cumulative thresholds of the limiting dimension so every part holds about an even share,
+	// neither target is ever exceeded unless a single object does
+	public List<SQSContext> split(SQSContext ctx) {
+		List<SQSContext> parts = new ArrayList<SQSContext>();
+		List<S3ArchiveObject> objects = ctx.getS3ArchiveObjects();
+		if(fits(ctx.getTotalBytes(), objects.size())) {
+			parts.add(ctx);
+			return parts;
+		}
+		long byteParts = ceilDiv(ctx.getTotalBytes(), this.targetBytes);
+		long objectParts = ceilDiv(objects.size(), this.targetObjects);
+		long count = Math.max(byteParts, objectParts);
+		long bytes = 0;
+		SQSContext part = null;
+		for(int i=0; i<objects.size(); i++) {
+			S3ArchiveObject obj = objects.get(i);
+			long size = Long.parseLong(obj.getSize());
+			if(part == null || !fits(part.getTotalBytes() + size, part.getS3ArchiveObjects().size() + 1)
+					|| (parts.size() < count && (byteParts >= objectParts ? bytes >= parts.size() * ctx.getTotalBytes() / count
+							: i >= ceilDiv(parts.size() * (long) objects.size(), count)))) {
+				part = new SQSContext(ctx.getPrefix(), ctx.getYear(), null, null);
+				parts.add(part);
+			}
+			part.addS3ArchiveObject(obj);
+			bytes += size;
+		}
+		return parts;
+	}
+	
+	private static long ceilDiv(long value, long divisor) {
+		return divisor == Long.MAX_VALUE ? 1 : (value + divisor - 1) / divisor;
+	}
+	
+	private synchronized int nextPart(SQSContext ctx) {
+		String archive = DISKInterface.generateDeviceName(ctx.getPrefix()) + "_" + ctx.getYear();
+		Integer last = this.lastParts.get(archive);
+		if(last == null)
+			last = this.journal == null ? 0 : this.journal.getLastPart(archive);
+		int part = last + 1;
+		this.lastParts.put(archive, part);
+		if(this.journal != null)
+			this.journal.partAssigned(archive, part);
+		return part;
+	}
+	
+	// One Packer per listing partition, it is not thread safe
+	public Packer newPacker(PlannedContextHandler handler) {
+		return new Packer(handler);
+	}
+	
+	public class Packer {
+		private PlannedContextHandler handler;
+		// Open pack per device and group, kept in the order they were opened
+		private Map<String, pack> packs = new LinkedHashMap<String, pack>();
+		
+		Packer(PlannedContextHandler handler) {
+			this.handler = handler;
+		}
+		
+		private class pack {
+			private List<SQSContext> members = new ArrayList<SQSContext>();
+			private List<Runnable> onSent = new ArrayList<Runnable>();
+			private long bytes = 0;
+			private long objects = 0;
+		}
+		
+		public void add(SQSContext ctx, Runnable onSent) throws IOException {
+			if(!packByDevice) {
+				send(ctx, onSent);
+				return;
+			}
+			String packKey = DISKInterface.generateDeviceName(ctx.getPrefix()) + "\n" + ctx.getYear();
+			pack open = this.packs.get(packKey);
+			if(open != null && !fits(open.bytes + ctx.getTotalBytes(), open.objects + ctx.getS3ArchiveObjects().size())) {
+				this.packs.remove(packKey);
+				send(open);
+				open = null;
+			}
+			if(open == null) {
+				open = new pack();
+				this.packs.put(packKey, open);
+			}
+			open.members.add(ctx);
+			if(onSent != null)
+				open.onSent.add(onSent);
+			open.bytes += ctx.getTotalBytes();
+			open.objects += ctx.getS3ArchiveObjects().size();
+		}
+		
+		// Sends every open pack, called once the partition's groups were all handed out
+		public void flush() throws IOException {
+			List<pack> open = new ArrayList<pack>(this.packs.values());
+			this.packs.clear();
+			for(pack next : open)
+				send(next);
+		}
+		
+		private void send(SQSContext ctx, Runnable onSent) throws IOException {
+			ctx.setPart(nextPart(ctx));
+			this.handler.send(ctx, onSent);
+		}
+		
+		private void send(pack full) throws IOException {
+			if(full.members.size() == 1) {
+				send(full.members.get(0), full.onSent.isEmpty() ? null : full.onSent.get(0));
+				return;
+			}
+			String prefix = full.members.get(0).getPrefix();
+			for(SQSContext member : full.members)
+				prefix = commonPath(prefix, member.getPrefix());
+			SQSContext packed = new SQSContext(prefix, full.members.get(0).getYear(), null, null);
+			for(SQSContext member : full.members) {
+				for(S3ArchiveObject obj : member.getS3ArchiveObjects()) {
+					obj.setLocalFileName(obj.getKey());
+					packed.addS3ArchiveObject(obj);
+				}
+			}
+			final List<Runnable> onSent = full.onSent;
+			send(packed, onSent.isEmpty() ? null : new Runnable() {
+				@Override
+				public void run() {
+					for(Runnable member : onSent)
+						member.run();
+				}
+			});
+		}
+	}
+	
+	// Longest common prefix ending on a "folder", both prefixes share their device
+	private static String commonPath(String prefix1, String prefix2) {
+		if(prefix1 == null || prefix2 == null)
+			return null;
+		int end = 0;
+		int length = Math.min(prefix1.length(), prefix2.length());
+		while(end < length && prefix1.charAt(end) == prefix2.charAt(end))
+			end++;
+		if(end == prefix1.length() && (end == prefix2.length() || prefix2.charAt(end) == '/'))
+			return prefix1;
+		if(end == prefix2.length() && prefix1.charAt(end) == '/')
+			return prefix2;
+		int folder = prefix1.lastIndexOf('/', end - 1);
+		return folder < 0 ? DISKInterface.generateDeviceName(prefix1) : prefix1.substring(0, folder);
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.StorageClass;
+
+/* Unpacks archives back into S3 Keys, one SQS Context per archive so any number of nodes restore in parallel
+ * 		1. The archive is streamed from the target bucket (as concurrent ranged GETs when large) and decompressed on the fly
+ * 		   by the codec of its extension
+ * 		2. Every tar entry is mapped back to its Key: from the objects of the Context, else from the archive index or
+ * 		   manifest, else from its entry name when that is the Key; an archive with entries of no known Key is not restored
+ * 		3. Entries up to the part size are buffered and uploaded by a bounded pool of PUTs, larger entries are streamed
+ * 		   into multipart uploads, or spilled to local disk and uploaded in the background while spillBytes allows
+ * At most bufferBytes of entries are held in memory, the archive is only read as fast as the uploads drain.
+ * Archives in Glacier Flexible Retrieval or Deep Archive must be restored (RestoreObject) before they can be read.
+ */
+public class ArchiveRestorer {
+	private S3Interface s3 = null;
+	private String bucket;
+	private Logger logger = null;
+	private ExecutorService uploadExecutor = null;
+	// Permits are KB so buffers beyond 2GB can be counted
+	private Semaphore bufferKB;
+	private Semaphore spillKB;
+	private long putThreshold;
+	
+	ArchiveRestorer(S3Interface s3, String bucket, int uploadThreads, long bufferBytes, long spillBytes, Logger logger) {
+		this.s3 = s3;
+		this.bucket = bucket;
+		this.logger = logger;
+		this.uploadExecutor = Executors.newFixedThreadPool(Math.max(1, uploadThreads));
+		this.bufferKB = new Semaphore((int) Math.max(1, bufferBytes / 1024));
+		this.spillKB = new Semaphore((int) (spillBytes / 1024));
+		// An entry buffered for a PUT must fit into the buffer on its own
+		this.putThreshold = Math.min(s3.getPartSize(), bufferBytes);
+	}
+	
+	// One restore of an archive, the first failed upload stops reading it
+	private class archiveRestore {
+		private String archiveName;
+		private File spillDirectory;
+		private List<Future<Long>> uploads = new ArrayList<Future<Long>>();
+		private volatile Exception failure = null;
+		
+		archiveRestore(String archiveName, File spillDirectory) {
+			this.archiveName = archiveName;
+			this.spillDirectory = spillDirectory;
+		}
+		
+		void add(TarArchiveInputStream tarIn, String key, long size) throws IOException {
+			if(size <= putThreshold)
+				buffer(tarIn, key, size);
+			else if(spillKB.tryAcquire(kilobytes(size)))
+				spill(tarIn, key, size);
+			else
+				stream(tarIn, key, size);
+		}
+		
+		private void buffer(TarArchiveInputStream tarIn, String key, long size) throws IOException {
+			int permits = kilobytes(size);
+			try {
+				bufferKB.acquire(permits);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted waiting for restore buffer: " + key, e);
+			}
+			byte[] data = new byte[(int) size];
+			try {
+				IOUtils.readFully(tarIn, data);
+			} catch (IOException e) {
+				bufferKB.release(permits);
+				throw e;
+			}
+			this.uploads.add(uploadExecutor.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					try {
+						S3Interface.s3PutObject(bucket, key, new ByteArrayInputStream(data), size, StorageClass.Standard);
+						return size;
+					} catch (Exception e) {
+						failure = e;
+						throw e;
+					} finally {
+						bufferKB.release(permits);
+					}
+				}
+			}));
+		}
+		
+		private void spill(TarArchiveInputStream tarIn, String key, long size) throws IOException {
+			int permits = kilobytes(size);
+			File spilled = null;
+			try {
+				spilled = File.createTempFile("restore", ".spill", this.spillDirectory);
+				try (OutputStream out = new FileOutputStream(spilled)) {
+					IOUtils.copyLarge(tarIn, out);
+				}
+			} catch (IOException e) {
+				if(spilled != null)
+					spilled.delete();
+				spillKB.release(permits);
+				throw e;
+			}
+			final File file = spilled;
+			this.uploads.add(uploadExecutor.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					try (InputStream in = new FileInputStream(file)) {
+						return upload(in, key, size);
+					} catch (Exception e) {
+						failure = e;
+						throw e;
+					} finally {
+						file.delete();
+						spillKB.release(permits);
+					}
+				}
+			}));
+		}
+		
+		// Without spill space the reader uploads the entry itself, its parts still go up concurrently
+		private void stream(TarArchiveInputStream tarIn, String key, long size) throws IOException {
+			this.uploads.add(CompletableFuture.completedFuture(upload(tarIn, key, size)));
+		}
+		
+		// Waits for every upload, true when all of them succeeded
+		boolean await() {
+			boolean restored = true;
+			for(Future<Long> upload : this.uploads) {
+				try {
+					upload.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					restored = false;
+				} catch (ExecutionException e) {
+					restored = false;
+				}
+			}
+			if(this.failure != null)
+				logger.info("Failed Restoring Object From Archive: " + this.archiveName + ": " + this.failure.getMessage());
+			return restored;
+		}
+	}
+	
+	private static int kilobytes(long size) {
+		return (int) Math.max(1, (size + 1023) / 1024);
+	}
+	
+	private long upload(InputStream in, String key, long size) throws IOException {
+		try (S3MultipartOutputStream out = this.s3.createObjectStream(this.bucket, key, size)) {
+			return IOUtils.copyLarge(in, out);
+		}
+	}
+	
+	// Returns true once every entry of the archive was uploaded, a failed restore leaves its Context on the queue
+	// and the redelivered Context overwrites the objects already restored
+	public boolean restore(SQSContext ctx) {
+		String archiveName = ctx.getLocalArchiveName();
+		ArchiveCodec codec = ArchiveCodecs.forArchive(archiveName);
+		if(codec == null) {
+			this.logger.info("Archive: " + archiveName + " Has No Supported Codec Extension ... Skipping");
+			return false;
+		}
+		archiveRestore job = new archiveRestore(archiveName, new File(ctx.getLocalDirectory()));
+		long entries = 0;
+		boolean read = false;
+		try {
+			Map<String, String> keys = entryKeys(ctx, archiveName);
+			this.logger.info("Restoring Archive: " + archiveName + " Into S3 Bucket: [" + this.bucket + "]");
+			try (InputStream in = codec.decompress(this.s3.openArchive(archiveName));
+					TarArchiveInputStream tarIn = new TarArchiveInputStream(in)) {
+				TarArchiveEntry entry;
+				while(job.failure == null && (entry = tarIn.getNextTarEntry()) != null) {
+					if(!entry.isFile())
+						continue;
+					String key = resolveKey(ctx, keys, entry.getName());
+					if(key == null) {
+						job.failure = new IOException("No Key recorded for entry " + entry.getName()
+								+ ", archive it with archiveLayout seekable or archiveManifest to restore it");
+						break;
+					}
+					job.add(tarIn, key, entry.getSize());
+					entries++;
+				}
+			}
+			read = job.failure == null;
+		} catch (IOException | AmazonClientException e) {
+			this.logger.info("Failed Reading Archive: " + archiveName + ": " + e.getMessage());
+		}
+		boolean restored = job.await() && read;
+		if(restored)
+			this.logger.info("Restored Archive: " + archiveName + " [" + entries + "] Objects");
+		return restored;
+	}
+	
+	// Entry names of the Context's objects, else of the index of a seekable archive, else of its manifest;
+	// empty when none of them exists
+	private Map<String, String> entryKeys(SQSContext ctx, String archiveName) throws IOException {
+		Map<String, String> keys = new HashMap<String, String>();
+		if(ctx.getS3ArchiveObjects() != null && !ctx.getS3ArchiveObjects().isEmpty()) {
+			for(S3ArchiveObject obj : ctx.getS3ArchiveObjects())
+				keys.put(obj.getLocalFileName(), obj.getKey());
+			return keys;
+		}
+		try {
+			for(ArchiveIndex.Entry entry : ArchiveIndex.read(S3Interface.s3GetArchiveIndex(archiveName)).getEntries()) {
+				if(entry.key != null)
+					keys.put(entry.name, entry.key);
+			}
+			return keys;
+		} catch (AmazonS3Exception e) {
+			if(e.getStatusCode() != 404)
+				throw e;
+		}
+		try {
+			for(ArchiveManifest.Entry entry : ArchiveManifest.read(S3Interface.s3GetArchiveManifest(archiveName)).getEntries()) {
+				if(entry.key != null)
+					keys.put(entry.name, entry.key);
+			}
+		} catch (AmazonS3Exception e) {
+			if(e.getStatusCode() != 404)
+				throw e;
+			this.logger.info("Archive: " + archiveName + " Has No Index Or Manifest ... Only Entries Named By Their Key Are Restored");
+		}
+		return keys;
+	}
+	
+	// Packed archives name their entries by Key, the others by file name under the Context's prefix;
+	// null when the Key is not known, a file name alone is never restored to a guessed Key
+	private static String resolveKey(SQSContext ctx, Map<String, String> keys, String name) {
+		String key = keys.get(name);
+		if(key != null)
+			return key;
+		if(name.contains("/"))
+			return name;
+		if(ctx.getPrefix() == null)
+			return null;
+		return ctx.getPrefix() + "/" + name;
+	}
+	
+	public void shutdown() {
+		this.uploadExecutor.shutdown();
+	}
+}
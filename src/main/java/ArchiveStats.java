@@ -0,0 +1,81 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+/* Per archive record of the compression bypass decisions, logged by SQSConsumer when the archive is closed
+ * 		mode:		"adaptive" when every entry is sampled, "tar-only" when the whole context was archived uncompressed
+ * 		stored:		entries and bytes written without compression
+ * 		extension, magic, entropy: entries bypassed by each CompressibilityEstimator check
+ * A resumed archive counts the entries written since it was resumed.
+ */
+public class ArchiveStats {
+	static final String ADAPTIVE = "adaptive";
+	static final String TAR_ONLY = "tar-only";
+	private String archive;
+	private String mode;
+	private long entries = 0;
+	private long bytes = 0;
+	private long storedEntries = 0;
+	private long storedBytes = 0;
+	private long extension = 0;
+	private long magic = 0;
+	private long entropy = 0;
+	
+	ArchiveStats(String archive, String mode) {
+		this.archive = archive;
+		this.mode = mode;
+	}
+	
+	public String getMode() {
+		return this.mode;
+	}
+	
+	// bypass is the CompressibilityEstimator check that stored the entry, null for a compressed entry
+	public void addEntry(long size, String bypass) {
+		this.entries++;
+		this.bytes += size;
+		if(bypass == null && !TAR_ONLY.equals(this.mode))
+			return;
+		this.storedEntries++;
+		this.storedBytes += size;
+		if(CompressibilityEstimator.EXTENSION.equals(bypass))
+			this.extension++;
+		else if(CompressibilityEstimator.MAGIC.equals(bypass))
+			this.magic++;
+		else if(CompressibilityEstimator.ENTROPY.equals(bypass))
+			this.entropy++;
+	}
+	
+	public long getEntries() {
+		return this.entries;
+	}
+	
+	public long getStoredEntries() {
+		return this.storedEntries;
+	}
+	
+	public long getStoredBytes() {
+		return this.storedBytes;
+	}
+	
+	@Override
+	public String toString() {
+		return "archive=" + this.archive + " mode=" + this.mode + " entries=" + this.entries + " bytes=" + this.bytes
+				+ " storedEntries=" + this.storedEntries + " storedBytes=" + this.storedBytes
+				+ " extension=" + this.extension + " magic=" + this.magic + " entropy=" + this.entropy;
+	}
+}
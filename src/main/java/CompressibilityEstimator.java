@@ -0,0 +1,130 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/* Decides from the name and the first bytes of an entry whether compressing it is worth the CPU
+ * 		1. extension:	the Key ends with the extension of a compressed format (.gz, .jpg, .parquet, ...)
+ * 		2. magic:		the sample starts with the signature of a compressed format
+ * 		3. entropy:		the order-0 entropy of the sample is close to 8 bits per byte
+ * classify() returns the first check that matched, null when the entry should be compressed.
+ */
+public final class CompressibilityEstimator {
+	static final int SAMPLE_SIZE = 64 * 1024;
+	// Entries smaller than this are always compressed, switching modes would cost more than it saves
+	static final int MIN_BYPASS_SIZE = 8 * 1024;
+	static final String EXTENSION = "extension";
+	static final String MAGIC = "magic";
+	static final String ENTROPY = "entropy";
+	private static final double ENTROPY_BITS_PER_BYTE = 7.5;
+	private static final double[] LOG2 = new double[SAMPLE_SIZE + 1];
+	private static final Set<String> EXTENSIONS = new HashSet<String>(Arrays.asList(
+			"gz", "tgz", "bz2", "xz", "zst", "lz4", "lzma", "snappy", "zip", "7z", "rar", "jar", "docx", "xlsx", "pptx",
+			"jpg", "jpeg", "png", "gif", "webp", "heic", "avif", "mp3", "aac", "m4a", "ogg", "opus", "flac",
+			"mp4", "m4v", "mov", "mkv", "webm", "avi", "parquet", "orc"));
+	private static final byte[][] MAGICS = {
+			{(byte) 0x1f, (byte) 0x8b},								// gzip
+			{(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd},	// zstd
+			{(byte) 0xfd, '7', 'z', 'X', 'Z', 0},					// xz
+			{'B', 'Z', 'h'},										// bzip2
+			{(byte) 0x04, (byte) 0x22, (byte) 0x4d, (byte) 0x18},	// lz4 frame
+			{'P', 'K', 3, 4},										// zip, jar, docx
+			{'7', 'z', (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c},		// 7z
+			{'R', 'a', 'r', '!'},									// rar
+			{(byte) 0xff, (byte) 0xd8, (byte) 0xff},				// jpeg
+			{(byte) 0x89, 'P', 'N', 'G'},							// png
+			{'G', 'I', 'F', '8'},									// gif
+			{'P', 'A', 'R', '1'},									// parquet
+			{'O', 'R', 'C'},										// orc
+			{'O', 'g', 'g', 'S'},									// ogg
+			{'f', 'L', 'a', 'C'},									// flac
+			{'I', 'D', '3'}											// mp3
+	};
+	
+	static {
+		for(int i = 1; i <= SAMPLE_SIZE; i++)
+			LOG2[i] = Math.log(i) / Math.log(2);
+	}
+	
+	private CompressibilityEstimator() {
+	}
+	
+	public static String classify(String name, byte[] sample, int length) {
+		if(hasIncompressibleExtension(name))
+			return EXTENSION;
+		if(hasIncompressibleMagic(sample, length))
+			return MAGIC;
+		if(length >= MIN_BYPASS_SIZE && entropy(sample, length) >= ENTROPY_BITS_PER_BYTE)
+			return ENTROPY;
+		return null;
+	}
+	
+	public static boolean hasIncompressibleExtension(String name) {
+		int dot = name.lastIndexOf('.');
+		if(dot < 0 || dot < name.lastIndexOf('/'))
+			return false;
+		return EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+	
+	// mp4 and mov carry "ftyp" at offset 4, webp "WEBP" at offset 8
+	private static boolean hasIncompressibleMagic(byte[] sample, int length) {
+		for(byte[] magic : MAGICS)
+			if(startsWith(sample, length, 0, magic))
+				return true;
+		return startsWith(sample, length, 4, new byte[] {'f', 't', 'y', 'p'})
+				|| (startsWith(sample, length, 0, new byte[] {'R', 'I', 'F', 'F'}) && startsWith(sample, length, 8, new byte[] {'W', 'E', 'B', 'P'}));
+	}
+	
+	private static boolean startsWith(byte[] sample, int length, int offset, byte[] magic) {
+		if(length < offset + magic.length)
+			return false;
+		for(int i = 0; i < magic.length; i++)
+			if(sample[offset + i] != magic[i])
+				return false;
+		return true;
+	}
+	
+	// Shannon entropy of the byte histogram in bits per byte, 8 for random data, 4-5 for text and logs
+	static double entropy(byte[] sample, int length) {
+		if(length == 0)
+			return 0;
+		int[] counts = new int[256];
+		for(int i = 0; i < length; i++)
+			counts[sample[i] & 0xff]++;
+		double sum = 0;
+		for(int count : counts)
+			sum += count * LOG2[count];
+		return LOG2[length] - sum / length;
+	}
+	
+	// Share of the context's bytes whose Keys have the extension of a compressed format, 0-100
+	public static int incompressiblePercent(SQSContext ctx) {
+		long total = 0;
+		long incompressible = 0;
+		for(S3ArchiveObject object : ctx.getS3ArchiveObjects()) {
+			long size = Long.valueOf(object.getSize());
+			total += size;
+			if(hasIncompressibleExtension(object.getKey()))
+				incompressible += size;
+		}
+		return total == 0 ? 0 : (int) (incompressible * 100 / total);
+	}
+}
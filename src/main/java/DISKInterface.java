@@ -18,22 +18,34 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 import org.apache.commons.io.FileUtils;
 
 public class DISKInterface {
 	private String baseDir;
 	private String archivePrefix;
+	private String archiveExtension;
 	
 	DISKInterface(String baseDir, String archivePrefix) {
+		this(baseDir, archivePrefix, ".tar.gz");
+	}
+	
+	// Archive names end with the extension of the ArchiveCodec
+	DISKInterface(String baseDir, String archivePrefix, String archiveExtension) {
 		this.baseDir = baseDir;
 		this.archivePrefix = archivePrefix;
+		this.archiveExtension = archiveExtension;
 	}
 	
 	private String getBaseDir() {
 		return this.baseDir;
 	}
 	
+	public File getBaseDirectory() {
+		return new File(this.baseDir);
+	}
+	
 	private String getArchivePrefix() {
 		return this.archivePrefix;
 	}
@@ -60,12 +72,41 @@ public class DISKInterface {
 		return localDirectory;
 	}
 	
-	// Called by SQS Consumers to build the Archive Name
+	// Called by SQS Consumers that journal archive progress: a redelivered context maps to the same directory
+	public String createLocalDirectory(SQSContext ctx) {
+		StringBuilder identity = new StringBuilder(generateArchiveName(ctx));
+		identity.append('\n').append(ctx.getPrefix()).append('\n').append(ctx.getYear());
+		for(S3ArchiveObject obj : ctx.getS3ArchiveObjects())
+			identity.append('\n').append(obj.getKey());
+		UUID uuid = UUID.nameUUIDFromBytes(identity.toString().getBytes(StandardCharsets.UTF_8));
+		String localDirectory = this.getBaseDir() + uuid.toString() + "/";
+		File theDir = new File(localDirectory);
+		if (!theDir.exists()){
+		    theDir.mkdirs();
+		}
+		return localDirectory;
+	}
+	
+	// Device of a Context: the first "folder" of its prefix, "" for Keys at the top of the bucket
+	public static String generateDeviceName(String prefix) {
+		if(prefix == null)
+			return "";
+		int deviceEnd = prefix.indexOf('/');
+		return deviceEnd < 0 ? prefix : prefix.substring(0, deviceEnd);
+	}
+	
+	// Called by SQS Consumers to build the Archive Name, planned archives carry their part number
 	public String generateArchiveName(SQSContext ctx) {
-		String prefix = ctx.getPrefix();
+		return generateArchiveName(ctx, this.archiveExtension);
+	}
+	
+	// Archive Name of a context compressed by another codec than the configured one
+	public String generateArchiveName(SQSContext ctx, String archiveExtension) {
+		String device = generateDeviceName(ctx.getPrefix());
 		String year = ctx.getYear();
-		String device = prefix.split("/")[0];
-		String archiveName = this.getArchivePrefix() + "_" + device + "_" + year + ".tar.gz";
-		return archiveName;
+		String archiveName = this.getArchivePrefix() + "_" + device + "_" + year;
+		if(ctx.getPart() > 0)
+			archiveName += String.format("_part%04d", ctx.getPart());
+		return archiveName + archiveExtension;
 	}
 }
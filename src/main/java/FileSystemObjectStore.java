@@ -0,0 +1,467 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.StorageClass;
+
+/* ObjectStore over a local or network file system (EBS, NFS, ...)
+ * Every bucket is a directory under storeRoot, every Key a file path below it. Keys are listed in the order
+ * S3 lists them and storage classes are ignored.
+ * Uploads are written next to the buckets into storeRoot/.uploads, a directory of parts per upload and a .key file
+ * naming its bucket and Key, and moved into place once complete, parts are
+ * joined and staged archives copied with FileChannel.transferTo so their bytes never pass through the heap.
+ * ETags are the size and modification time of the file, they never match an MD5 so objects are not verified by
+ * verifySourceETags, but a ranged GET still detects a file that changed between its ranges.
+ */
+public class FileSystemObjectStore implements ObjectStore {
+	private static final String UPLOADS = ".uploads";
+	private static final String UPLOAD_KEY = ".key";
+	private static final int MAX_KEYS = 1000;
+	private File root;
+	private File uploads;
+	
+	FileSystemObjectStore(String storeRoot) {
+		this.root = new File(storeRoot).getAbsoluteFile();
+		this.uploads = new File(this.root, UPLOADS);
+		if(!this.uploads.isDirectory() && !this.uploads.mkdirs())
+			throw new AmazonClientException("Cannot create the upload directory " + this.uploads);
+	}
+	
+	// Keys that are no plain relative path cannot be files
+	private File file(String bucket, String key) {
+		String path = "/" + key + "/";
+		if(key.isEmpty() || key.endsWith("/") || path.contains("//") || path.contains("/./") || path.contains("/../"))
+			throw new AmazonClientException("Key cannot be stored as a file: " + key);
+		return new File(bucket(bucket), key);
+	}
+	
+	private File bucket(String bucket) {
+		if(bucket == null || bucket.isEmpty() || bucket.startsWith(".") || bucket.contains("/"))
+			throw new AmazonClientException("Bucket cannot be stored as a directory: " + bucket);
+		return new File(this.root, bucket);
+	}
+	
+	private static AmazonS3Exception notFound(String code, String message) {
+		AmazonS3Exception e = new AmazonS3Exception(message);
+		e.setStatusCode(404);
+		e.setErrorCode(code);
+		return e;
+	}
+	
+	private static String eTag(File file) {
+		return Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified());
+	}
+	
+	private static ObjectMetadata metadata(File file) {
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(file.length());
+		metadata.setLastModified(new Date(file.lastModified()));
+		metadata.setHeader("ETag", eTag(file));
+		return metadata;
+	}
+	
+	// Collects one listing page while walking a bucket directory in Key order
+	private static class listingPage {
+		private String prefix;
+		private String delimiter;
+		private String after;
+		private int maxKeys;
+		private List<S3ObjectSummary> summaries = new ArrayList<S3ObjectSummary>();
+		private List<String> commonPrefixes = new ArrayList<String>();
+		private String last = null;
+		private boolean truncated = false;
+		
+		listingPage(String prefix, String delimiter, String after, int maxKeys) {
+			this.prefix = prefix;
+			this.delimiter = delimiter == null || delimiter.isEmpty() ? null : delimiter;
+			this.after = after;
+			this.maxKeys = maxKeys;
+		}
+		
+		// The common prefix the Key (or every Key of a directory) is rolled up into, null when none
+		private String commonPrefix(String key) {
+			if(this.delimiter == null)
+				return null;
+			int end = key.indexOf(this.delimiter, this.prefix.length());
+			return end < 0 ? null : key.substring(0, end + this.delimiter.length());
+		}
+		
+		// Returns false once the page is full. Names are sorted with a "/" after directories, so the depth-first
+		// walk returns every Key in order and skips directories that lie wholly before after or outside the prefix
+		boolean walk(File directory, String path, String bucket) {
+			String[] names = directory.list();
+			if(names == null)
+				return true;
+			List<String> entries = new ArrayList<String>(names.length);
+			for(String name : names)
+				entries.add(new File(directory, name).isDirectory() ? name + "/" : name);
+			Collections.sort(entries);
+			for(String entry : entries) {
+				String key = path + entry;
+				boolean isDirectory = entry.endsWith("/");
+				if(!key.startsWith(this.prefix) && !(isDirectory && this.prefix.startsWith(key)))
+					continue;
+				String element = key.startsWith(this.prefix) ? commonPrefix(key) : null;
+				if(isDirectory && element == null) {
+					if(key.compareTo(this.after) < 0 && !this.after.startsWith(key))
+						continue;
+					if(!walk(new File(directory, entry), key, bucket))
+						return false;
+					continue;
+				}
+				if(isDirectory && !containsFile(new File(directory, entry)))
+					continue;
+				boolean isCommonPrefix = element != null;
+				if(element == null)
+					element = key;
+				// A common prefix holding after is still listed, like the partition the listing resumes in
+				boolean resumes = isCommonPrefix && this.after.startsWith(element) && !this.after.equals(element);
+				if((element.compareTo(this.after) <= 0 && !resumes) || element.equals(this.last))
+					continue;
+				if(this.summaries.size() + this.commonPrefixes.size() == this.maxKeys) {
+					this.truncated = true;
+					return false;
+				}
+				if(!isCommonPrefix) {
+					File file = new File(directory, entry);
+					S3ObjectSummary summary = new S3ObjectSummary();
+					summary.setBucketName(bucket);
+					summary.setKey(key);
+					summary.setSize(file.length());
+					summary.setLastModified(new Date(file.lastModified()));
+					summary.setETag(eTag(file));
+					summary.setStorageClass(StorageClass.Standard.toString());
+					this.summaries.add(summary);
+				}
+				else
+					this.commonPrefixes.add(element);
+				this.last = element;
+			}
+			return true;
+		}
+		
+		// Directories without files hold no Keys
+		private static boolean containsFile(File directory) {
+			File[] files = directory.listFiles();
+			if(files == null)
+				return false;
+			for(File file : files) {
+				if(!file.isDirectory() || containsFile(file))
+					return true;
+			}
+			return false;
+		}
+	}
+	
+	// The continuation token is the last Key or common prefix of the previous page
+	@Override
+	public ListObjectsV2Result listObjects(ListObjectsV2Request req) {
+		File bucket = bucket(req.getBucketName());
+		if(!bucket.isDirectory())
+			throw notFound("NoSuchBucket", "No bucket directory " + bucket);
+		String prefix = req.getPrefix() == null ? "" : req.getPrefix();
+		String after = req.getContinuationToken() != null ? req.getContinuationToken() : req.getStartAfter();
+		int maxKeys = req.getMaxKeys() == null ? MAX_KEYS : Math.min(MAX_KEYS, req.getMaxKeys());
+		listingPage page = new listingPage(prefix, req.getDelimiter(), after == null ? "" : after, maxKeys);
+		page.walk(bucket, "", req.getBucketName());
+		ListObjectsV2Result listing = new ListObjectsV2Result();
+		listing.setBucketName(req.getBucketName());
+		listing.setPrefix(req.getPrefix());
+		listing.setDelimiter(req.getDelimiter());
+		listing.setStartAfter(req.getStartAfter());
+		listing.setContinuationToken(req.getContinuationToken());
+		listing.setMaxKeys(maxKeys);
+		listing.getObjectSummaries().addAll(page.summaries);
+		listing.setCommonPrefixes(page.commonPrefixes);
+		listing.setKeyCount(page.summaries.size() + page.commonPrefixes.size());
+		listing.setTruncated(page.truncated);
+		if(page.truncated)
+			listing.setNextContinuationToken(page.last);
+		return listing;
+	}
+	
+	// Ranges are read from a FileChannel positioned at their start
+	@Override
+	public S3Object getObject(GetObjectRequest req) {
+		File file = file(req.getBucketName(), req.getKey());
+		if(!file.isFile())
+			throw notFound("NoSuchKey", "No file " + file);
+		ObjectMetadata metadata = metadata(file);
+		if(!req.getMatchingETagConstraints().isEmpty() && !req.getMatchingETagConstraints().contains(metadata.getETag()))
+			return null;
+		long start = 0;
+		long length = file.length();
+		long[] range = req.getRange();
+		if(range != null) {
+			start = range[0];
+			length = Math.min(range[1], file.length() - 1) - start + 1;
+			if(start >= file.length()) {
+				AmazonS3Exception e = new AmazonS3Exception("Range " + start + "-" + range[1] + " outside of " + file);
+				e.setStatusCode(416);
+				e.setErrorCode("InvalidRange");
+				throw e;
+			}
+		}
+		metadata.setContentLength(length);
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			channel.position(start);
+			S3Object obj = new S3Object();
+			obj.setBucketName(req.getBucketName());
+			obj.setKey(req.getKey());
+			obj.setObjectMetadata(metadata);
+			obj.setObjectContent(new BoundedInputStream(Channels.newInputStream(channel), length));
+			return obj;
+		} catch (NoSuchFileException e) {
+			throw notFound("NoSuchKey", "No file " + file);
+		} catch (IOException e) {
+			throw new AmazonClientException("Failed reading " + file, e);
+		}
+	}
+	
+	@Override
+	public ObjectMetadata getObjectMetadata(String bucket, String key) {
+		File file = file(bucket, key);
+		if(!file.isFile())
+			throw notFound("NoSuchKey", "No file " + file);
+		return metadata(file);
+	}
+	
+	@Override
+	public String putObject(String bucket, String key, InputStream data, long length, StorageClass storageClass) {
+		File target = file(bucket, key);
+		File staged = new File(this.uploads, UUID.randomUUID().toString());
+		try {
+			Files.copy(data, staged.toPath());
+			moveIntoPlace(staged, target);
+			return eTag(target);
+		} catch (IOException e) {
+			staged.delete();
+			throw new AmazonClientException("Failed writing " + key + " into " + bucket, e);
+		}
+	}
+	
+	@Override
+	public String putFile(String bucket, String key, File file, StorageClass storageClass) {
+		File target = file(bucket, key);
+		File staged = new File(this.uploads, UUID.randomUUID().toString());
+		try {
+			try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(staged.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				transfer(in, out);
+			}
+			moveIntoPlace(staged, target);
+			return eTag(target);
+		} catch (IOException e) {
+			staged.delete();
+			throw new AmazonClientException("Failed copying " + file + " to " + key + " in " + bucket, e);
+		}
+	}
+	
+	// transferTo may move fewer bytes than asked for
+	private static void transfer(FileChannel in, FileChannel out) throws IOException {
+		long position = 0;
+		long size = in.size();
+		while(position < size)
+			position += in.transferTo(position, size - position, out);
+	}
+	
+	// Readers see the complete file or none, falls back to a copy when the bucket is on another file system
+	private static void moveIntoPlace(File staged, File target) throws IOException {
+		File parent = target.getParentFile();
+		if(!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory())
+			throw new IOException("Cannot create directory " + parent);
+		try {
+			Files.move(staged.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(staged.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	private File upload(String uploadId) {
+		File upload = new File(this.uploads, uploadId);
+		if(uploadId.contains("/") || uploadId.startsWith(".") || !upload.isDirectory())
+			throw notFound("NoSuchUpload", "No upload " + uploadId);
+		return upload;
+	}
+	
+	@Override
+	public String initiateMultipartUpload(String bucket, String key, StorageClass storageClass) {
+		file(bucket, key);
+		String uploadId = UUID.randomUUID().toString();
+		if(!new File(this.uploads, uploadId).mkdir())
+			throw new AmazonClientException("Cannot create upload directory for " + key);
+		try {
+			Files.write(new File(this.uploads, uploadId + UPLOAD_KEY).toPath(), (bucket + "\n" + key).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new AmazonClientException("Cannot record upload of " + key, e);
+		}
+		return uploadId;
+	}
+	
+	@Override
+	public PartETag uploadPart(String bucket, String key, String uploadId, int partNumber, InputStream data, long length) {
+		File part = new File(upload(uploadId), Integer.toString(partNumber));
+		try {
+			Files.copy(data, part.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new AmazonClientException("Failed writing part " + partNumber + " of " + key, e);
+		}
+		return new PartETag(partNumber, eTag(part));
+	}
+	
+	@Override
+	public Map<Integer, String> listParts(String bucket, String key, String uploadId) {
+		Map<Integer, String> uploaded = new HashMap<Integer, String>();
+		for(File part : upload(uploadId).listFiles())
+			uploaded.put(Integer.valueOf(part.getName()), eTag(part));
+		return uploaded;
+	}
+	
+	// Parts are joined in the order given into one staged file
+	@Override
+	public String completeMultipartUpload(String bucket, String key, String uploadId, List<PartETag> parts) {
+		File target = file(bucket, key);
+		File upload = upload(uploadId);
+		File staged = new File(this.uploads, UUID.randomUUID().toString());
+		try {
+			try (FileChannel out = FileChannel.open(staged.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				for(PartETag part : parts) {
+					File partFile = new File(upload, Integer.toString(part.getPartNumber()));
+					if(!partFile.isFile() || !eTag(partFile).equals(part.getETag())) {
+						AmazonS3Exception e = new AmazonS3Exception("Part " + part.getPartNumber() + " of " + key + " is missing or changed");
+						e.setStatusCode(400);
+						e.setErrorCode("InvalidPart");
+						throw e;
+					}
+					try (FileChannel in = FileChannel.open(partFile.toPath(), StandardOpenOption.READ)) {
+						transfer(in, out);
+					}
+				}
+			}
+			moveIntoPlace(staged, target);
+			FileUtils.deleteDirectory(upload);
+			Files.deleteIfExists(new File(this.uploads, uploadId + UPLOAD_KEY).toPath());
+			return eTag(target);
+		} catch (IOException e) {
+			staged.delete();
+			throw new AmazonClientException("Failed completing " + key + " in " + bucket, e);
+		} catch (RuntimeException e) {
+			staged.delete();
+			throw e;
+		}
+	}
+	
+	@Override
+	public void abortMultipartUpload(String bucket, String key, String uploadId) {
+		try {
+			FileUtils.deleteDirectory(upload(uploadId));
+			Files.deleteIfExists(new File(this.uploads, uploadId + UPLOAD_KEY).toPath());
+		} catch (IOException e) {
+			throw new AmazonClientException("Failed aborting upload of " + key, e);
+		}
+	}
+	
+	// The .key file is written when the upload is initiated, its modification time is the initiation time
+	@Override
+	public List<MultipartUpload> listMultipartUploads(String bucket, String prefix) {
+		List<MultipartUpload> uploads = new ArrayList<MultipartUpload>();
+		File[] files = this.uploads.listFiles();
+		if(files == null)
+			return uploads;
+		for(File file : files) {
+			String name = file.getName();
+			if(!name.endsWith(UPLOAD_KEY) || !new File(this.uploads, name.substring(0, name.length() - UPLOAD_KEY.length())).isDirectory())
+				continue;
+			String[] target;
+			try {
+				target = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).split("\n", 2);
+			} catch (IOException e) {
+				continue;
+			}
+			if(target.length < 2 || !target[0].equals(bucket) || (prefix != null && !target[1].startsWith(prefix)))
+				continue;
+			MultipartUpload upload = new MultipartUpload();
+			upload.setKey(target[1]);
+			upload.setUploadId(name.substring(0, name.length() - UPLOAD_KEY.length()));
+			upload.setInitiated(new Date(file.lastModified()));
+			uploads.add(upload);
+		}
+		Collections.sort(uploads, (a, b) -> a.getKey().compareTo(b.getKey()));
+		return uploads;
+	}
+	
+	// Deleting a missing Key succeeds like on S3, emptied directories are left behind and no longer listed
+	@Override
+	public void deleteObject(String bucket, String key) {
+		try {
+			Files.deleteIfExists(file(bucket, key).toPath());
+		} catch (IOException e) {
+			throw new AmazonClientException("Failed deleting " + key + " from " + bucket, e);
+		}
+	}
+	
+	// Files have no versions, version IDs are ignored
+	@Override
+	public List<DeleteError> deleteObjects(String bucket, List<KeyVersion> keys) {
+		List<DeleteError> errors = new ArrayList<DeleteError>();
+		for(KeyVersion key : keys) {
+			try {
+				deleteObject(bucket, key.getKey());
+			} catch (AmazonClientException e) {
+				DeleteError error = new DeleteError();
+				error.setKey(key.getKey());
+				error.setCode("InternalError");
+				error.setMessage(e.getMessage());
+				errors.add(error);
+			}
+		}
+		return errors;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/* Built-in GroupingStrategy implementations, selected by the "groupingStrategy" configuration
+ * 		filename-date:			File name starts with M-D-YYYY, grouped by year (default)
+ * 		last-modified-year:		Grouped by the year of the Object's LastModified
+ * 		last-modified-month:	Grouped by the year and month (YYYY-MM) of the Object's LastModified
+ * 		regex:					Grouped by the capture groups of "groupingPattern" joined with "-", dated by LastModified
+ * Keys are parsed with index arithmetic, dates are UTC epoch milliseconds.
+ */
+public final class GroupingStrategies {
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	private static final int FIRST_CACHED_YEAR = 1900;
+	private static final int CACHED_YEARS = 300;
+	// Group names are shared instead of formatted for every Key
+	private static final String[] YEARS = new String[CACHED_YEARS];
+	private static final String[] MONTHS = new String[CACHED_YEARS * 12];
+	
+	private GroupingStrategies() {
+	}
+	
+	public static GroupingStrategy compile(String strategy, String pattern) {
+		if(strategy == null || strategy.isEmpty() || strategy.equals("filename-date"))
+			return new fileNameDateStrategy();
+		if(strategy.equals("last-modified-year"))
+			return new lastModifiedStrategy(false);
+		if(strategy.equals("last-modified-month"))
+			return new lastModifiedStrategy(true);
+		if(strategy.equals("regex"))
+			return new regexStrategy(Pattern.compile(pattern));
+		throw new IllegalArgumentException("Unsupported groupingStrategy: " + strategy);
+	}
+	
+	// Days since 1970-01-01 of a proleptic Gregorian date
+	static long daysFromCivil(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yoe = y - era * 400;
+		int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468;
+	}
+	
+	// Year * 12 + (month - 1) of epoch milliseconds
+	static int yearMonthFromMillis(long millis) {
+		long days = Math.floorDiv(millis, MILLIS_PER_DAY) + 719468;
+		long era = (days >= 0 ? days : days - 146096) / 146097;
+		long doe = days - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+		return year * 12 + month - 1;
+	}
+	
+	static String yearName(int year) {
+		int index = year - FIRST_CACHED_YEAR;
+		if(index < 0 || index >= CACHED_YEARS)
+			return String.valueOf(year);
+		String name = YEARS[index];
+		if(name == null)
+			YEARS[index] = name = String.valueOf(year);
+		return name;
+	}
+	
+	static String monthName(int yearMonth) {
+		int index = yearMonth - FIRST_CACHED_YEAR * 12;
+		if(index < 0 || index >= MONTHS.length)
+			return formatMonth(yearMonth);
+		String name = MONTHS[index];
+		if(name == null)
+			MONTHS[index] = name = formatMonth(yearMonth);
+		return name;
+	}
+	
+	private static String formatMonth(int yearMonth) {
+		int month = yearMonth % 12 + 1;
+		return (yearMonth / 12) + (month < 10 ? "-0" : "-") + month;
+	}
+	
+	private static int fileNameStart(String key) {
+		return key.lastIndexOf('/') + 1;
+	}
+	
+	// Reads up to 4 digits at pos, returns (value << 32 | end) or -1 when there is no digit
+	private static long parseNumber(String key, int pos) {
+		int length = key.length();
+		int value = 0;
+		int end = pos;
+		while(end < length && end - pos < 4) {
+			char c = key.charAt(end);
+			if(c < '0' || c > '9')
+				break;
+			value = value * 10 + (c - '0');
+			end++;
+		}
+		if(end == pos)
+			return -1;
+		return ((long) value << 32) | end;
+	}
+	
+	private static boolean isDash(String key, int pos) {
+		return pos < key.length() && key.charAt(pos) == '-';
+	}
+	
+	// File names such as 8-14-2018.csv: M-D-YYYY followed by any non digit or the end of the Key
+	private static class fileNameDateStrategy implements GroupingStrategy {
+		@Override
+		public boolean parse(String key, long lastModified, ParsedKey parsed) {
+			int start = fileNameStart(key);
+			long month = parseNumber(key, start);
+			if(month < 0 || !isDash(key, (int) month))
+				return false;
+			long day = parseNumber(key, (int) month + 1);
+			if(day < 0 || !isDash(key, (int) day))
+				return false;
+			long year = parseNumber(key, (int) day + 1);
+			if(year < 0)
+				return false;
+			int end = (int) year;
+			if(end < key.length() && Character.isDigit(key.charAt(end)))
+				return false;
+			int m = (int) (month >>> 32), d = (int) (day >>> 32), y = (int) (year >>> 32);
+			if(m < 1 || m > 12 || d < 1 || d > 31)
+				return false;
+			parsed.set(start, yearName(y), daysFromCivil(y, m, d) * MILLIS_PER_DAY);
+			return true;
+		}
+	}
+	
+	private static class lastModifiedStrategy implements GroupingStrategy {
+		private boolean byMonth;
+		
+		lastModifiedStrategy(boolean byMonth) {
+			this.byMonth = byMonth;
+		}
+		
+		@Override
+		public boolean parse(String key, long lastModified, ParsedKey parsed) {
+			int yearMonth = yearMonthFromMillis(lastModified);
+			String group = this.byMonth ? monthName(yearMonth) : yearName(Math.floorDiv(yearMonth, 12));
+			parsed.set(fileNameStart(key), group, lastModified);
+			return true;
+		}
+	}
+	
+	private static class regexStrategy implements GroupingStrategy {
+		private Pattern pattern;
+		
+		regexStrategy(Pattern pattern) {
+			this.pattern = pattern;
+		}
+		
+		@Override
+		public boolean parse(String key, long lastModified, ParsedKey parsed) {
+			Matcher matcher = parsed.matcher(this.pattern, key);
+			if(!matcher.find())
+				return false;
+			String group;
+			if(matcher.groupCount() == 0)
+				group = matcher.group();
+			else if(matcher.groupCount() == 1)
+				group = matcher.group(1);
+			else {
+				StringBuilder name = new StringBuilder();
+				for(int i=1; i<=matcher.groupCount(); i++) {
+					if(i > 1)
+						name.append('-');
+					name.append(matcher.group(i));
+				}
+				group = name.toString();
+			}
+			parsed.set(fileNameStart(key), group, lastModified);
+			return true;
+		}
+	}
+}
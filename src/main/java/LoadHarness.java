@@ -0,0 +1,198 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import com.amazonaws.services.sqs.AmazonSQS;
+
+/* Offline load test (type "loadtest"): the producer and the consumers run in one process against SimulatedObjectStore
+ * and SimulatedSQS instead of S3 and SQS, configured as they would be in production, so s3MaxConCount, the prefetch
+ * windows, codecs and thread counts can be sized and regressions caught without AWS.
+ * The report is logged and written to <baseDirectory>/LoadTest/report.txt
+ * 		throughput:		objects, bytes and contexts per second until the last context was deleted from the queue
+ * 		utilization:	busy threads of every pool relative to its threads, peak busy and queued tasks sampled every
+ * 						second, and the use of the simulated GET and upload bandwidth
+ * 		latency:		p50, p99 and p99.9 of S3 and SQS requests and of whole contexts (ArchiveMetrics bucket bounds)
+ * 		simulation:		503 SlowDown answers, requests failed after their retries and SQS redeliveries
+ */
+public class LoadHarness {
+	private static final String[] POOLS = {"s3-get", "s3-upload", "consumer", "compression"};
+	private SimulatedObjectStore store;
+	private SimulatedSQS sqs;
+	private Logger logger;
+	private ScheduledExecutorService sampler = null;
+	// Per second: time, then busy threads, threads and queued tasks of every pool
+	private List<double[]> samples = new ArrayList<double[]>();
+	private long start;
+	private long producerEnd = 0;
+	
+	LoadHarness(String bucket, int devices, int keysPerDevice, int years, String sizeDistribution, long meanSize, Logger logger) {
+		this.store = new SimulatedObjectStore(bucket, devices, keysPerDevice, years, sizeDistribution, meanSize);
+		this.sqs = new SimulatedSQS(0, 30);
+		this.logger = logger;
+	}
+	
+	// Called by ArchiveController: median latency of S3 requests, requests per second and prefix before 503 SlowDown
+	// and the GET and upload bandwidth (0: unlimited)
+	public void setS3Simulation(int latencyMillis, int requestRate, int bandwidthMBps) {
+		this.store.setSimulation(latencyMillis, requestRate, bandwidthMBps * 1024L * 1024);
+	}
+	
+	// Called by ArchiveController: median latency of SQS requests and visibility timeout of received messages
+	public void setSQSSimulation(int latencyMillis, int visibilityTimeoutSeconds) {
+		this.sqs = new SimulatedSQS(latencyMillis, visibilityTimeoutSeconds);
+	}
+	
+	public ObjectStore getObjectStore() {
+		return this.store;
+	}
+	
+	public AmazonSQS getSQS() {
+		return this.sqs;
+	}
+	
+	public void start() {
+		this.start = System.nanoTime();
+		this.logger.info("Load Test Simulating " + this.store.getKeyCount() + " Keys");
+		this.sampler = Executors.newSingleThreadScheduledExecutor();
+		this.sampler.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+	}
+	
+	// Consumers stop waiting for contexts once the queue is drained
+	public void producerDone() {
+		this.producerEnd = System.nanoTime();
+		this.sqs.setProducing(false);
+	}
+	
+	private static double gauge(String name, String pool) {
+		ArchiveMetrics.metric gauge = ArchiveMetrics.find(name, "pool=" + pool);
+		return gauge == null ? 0 : ((ArchiveMetrics.gauge) gauge).get();
+	}
+	
+	private static long counter(String name, String labels) {
+		ArchiveMetrics.metric counter = ArchiveMetrics.find(name, labels);
+		return counter == null ? 0 : ((ArchiveMetrics.counter) counter).get();
+	}
+	
+	private void sample() {
+		double[] sample = new double[1 + POOLS.length * 3];
+		sample[0] = System.nanoTime();
+		for(int i=0; i<POOLS.length; i++) {
+			sample[1 + i * 3] = gauge("executor_active_threads", POOLS[i]);
+			sample[2 + i * 3] = gauge("executor_pool_threads", POOLS[i]);
+			sample[3 + i * 3] = gauge("executor_queue_depth", POOLS[i]);
+		}
+		synchronized(this.samples) {
+			this.samples.add(sample);
+		}
+	}
+	
+	private static String latency(double seconds) {
+		if(Double.isInfinite(seconds))
+			return String.format("%9s", "> 60 s");
+		return seconds < 1 ? String.format("%6.1f ms", seconds * 1000) : String.format("%7.1f s", seconds);
+	}
+	
+	private static String latencyLine(String name, String labels, String title) {
+		ArchiveMetrics.metric metric = ArchiveMetrics.find(name, labels);
+		if(metric == null || ((ArchiveMetrics.histogram) metric).count() == 0)
+			return String.format("  %-22s none", title);
+		ArchiveMetrics.histogram histogram = (ArchiveMetrics.histogram) metric;
+		return String.format("  %-22s %9d  p50 <= %s  p99 <= %s  p99.9 <= %s", title, histogram.count(),
+				latency(histogram.quantile(0.5)), latency(histogram.quantile(0.99)), latency(histogram.quantile(0.999)));
+	}
+	
+	// Throughput is measured until the last context was deleted, utilization over the samples taken until then
+	public void report(File reportFile) {
+		this.sampler.shutdownNow();
+		long end = this.sqs.getLastDelete() > 0 ? this.sqs.getLastDelete() : System.nanoTime();
+		double seconds = Math.max(1e-3, (end - this.start) / 1e9);
+		List<String> lines = new ArrayList<String>();
+		lines.add("Load Test Report");
+		lines.add(String.format("Workload:     %d Keys, %.1f MB", this.store.getKeyCount(), this.store.getTotalSize() / 1048576.0));
+		lines.add(String.format("Elapsed:      %.1f s, producer %.1f s", seconds, this.producerEnd == 0 ? 0 : (this.producerEnd - this.start) / 1e9));
+		long objects = counter("simulated_s3_objects_read_total", "");
+		long succeeded = counter("contexts_completed_total", "result=succeeded");
+		lines.add(String.format("Throughput:   %.1f objects/s, %.1f MB/s read, %.1f MB/s archived, %.2f contexts/s",
+				objects / seconds, counter("s3_get_bytes_total", "") / seconds / 1048576.0,
+				counter("s3_upload_bytes_total", "") / seconds / 1048576.0, succeeded / seconds));
+		lines.add(String.format("Totals:       %d Keys listed, %d contexts sent, %d succeeded, %d failed, %d objects read",
+				counter("listed_keys_total", "source=listing"), counter("contexts_sent_total", ""), succeeded,
+				counter("contexts_completed_total", "result=failed"), objects));
+		lines.add(String.format("Simulation:   %d SlowDown answers, %d requests failed after retries, %d SQS redeliveries",
+				counter("simulated_s3_throttled_total", ""), counter("simulated_s3_slowdown_failures_total", ""),
+				counter("simulated_sqs_redeliveries_total", "")));
+		lines.add("Utilization (busy / threads, peak busy, mean queued):");
+		List<double[]> window = new ArrayList<double[]>();
+		synchronized(this.samples) {
+			for(double[] sample : this.samples)
+				if(sample[0] <= end)
+					window.add(sample);
+		}
+		for(int i=0; i<POOLS.length; i++) {
+			double busy = 0;
+			double threads = 0;
+			double queued = 0;
+			double peak = 0;
+			for(double[] sample : window) {
+				busy += sample[1 + i * 3];
+				threads += sample[2 + i * 3];
+				queued += sample[3 + i * 3];
+				peak = Math.max(peak, sample[1 + i * 3]);
+			}
+			if(threads == 0)
+				lines.add(String.format("  %-22s idle", POOLS[i]));
+			else
+				lines.add(String.format("  %-22s %5.1f%% of %.1f threads, peak %.0f, queued %.1f", POOLS[i], busy * 100 / threads,
+						threads / window.size(), peak, queued / window.size()));
+		}
+		if(this.store.getBandwidth() > 0) {
+			double capacity = this.store.getBandwidth() * seconds;
+			lines.add(String.format("  %-22s %5.1f%% of %d MB/s", "GET bandwidth", this.store.getBytesRead() * 100 / capacity,
+					this.store.getBandwidth() / 1048576));
+			lines.add(String.format("  %-22s %5.1f%% of %d MB/s", "upload bandwidth", this.store.getBytesWritten() * 100 / capacity,
+					this.store.getBandwidth() / 1048576));
+		}
+		lines.add("Latency (requests, bucket bounds):");
+		lines.add(latencyLine("s3_get_seconds", "", "S3 GET"));
+		lines.add(latencyLine("s3_list_seconds", "", "S3 LIST"));
+		lines.add(latencyLine("s3_upload_seconds", "call=part", "S3 upload part"));
+		lines.add(latencyLine("s3_upload_seconds", "call=put", "S3 PUT"));
+		lines.add(latencyLine("s3_upload_seconds", "call=file", "S3 file upload"));
+		lines.add(latencyLine("sqs_request_seconds", "call=send_batch", "SQS send batch"));
+		lines.add(latencyLine("sqs_request_seconds", "call=receive", "SQS receive"));
+		lines.add(latencyLine("sqs_request_seconds", "call=delete", "SQS delete"));
+		lines.add(latencyLine("context_seconds", "", "context"));
+		for(String line : lines)
+			this.logger.info(line);
+		try {
+			reportFile.getParentFile().mkdirs();
+			Files.write(reportFile.toPath(), lines, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			this.logger.info("Failed Writing Load Test Report: " + e.getMessage());
+		}
+	}
+}
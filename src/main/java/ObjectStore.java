@@ -0,0 +1,76 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.StorageClass;
+
+/* Storage objects are archived from and archives are written to, addressed by bucket and Key like S3
+ * 		S3ObjectStore:			Amazon S3 (storeType "s3", the default)
+ * 		FileSystemObjectStore:	a directory per bucket under storeRoot, Keys are paths below it (storeType "filesystem")
+ * S3Interface builds ranged GETs, prefetching, streaming multipart uploads and metrics on top of the store.
+ * Requests and results are the SDK's S3 model classes, other stores fill in the fields the pipeline reads.
+ * Failures are thrown as AmazonClientException, missing Keys and uploads as AmazonS3Exception with status 404.
+ */
+public interface ObjectStore {
+	// One page of up to maxKeys (default 1000) Keys and common prefixes under the prefix of req, in Key order
+	// after its continuation token or startAfter. A truncated page carries the token of the next one
+	ListObjectsV2Result listObjects(ListObjectsV2Request req);
+	
+	// The object or the range of req, null when req has a matching ETag constraint the object no longer meets
+	S3Object getObject(GetObjectRequest req);
+	
+	ObjectMetadata getObjectMetadata(String bucket, String key);
+	
+	// Writes return the ETag of the object written
+	String putObject(String bucket, String key, InputStream data, long length, StorageClass storageClass);
+	
+	// Uploads a local file, e.g. an archive staged on disk
+	String putFile(String bucket, String key, File file, StorageClass storageClass);
+	
+	// Returns the uploadId
+	String initiateMultipartUpload(String bucket, String key, StorageClass storageClass);
+	
+	PartETag uploadPart(String bucket, String key, String uploadId, int partNumber, InputStream data, long length);
+	
+	// ETags of the parts uploaded so far by part number
+	Map<Integer, String> listParts(String bucket, String key, String uploadId);
+	
+	String completeMultipartUpload(String bucket, String key, String uploadId, List<PartETag> parts);
+	
+	void abortMultipartUpload(String bucket, String key, String uploadId);
+	
+	// Uploads initiated and neither completed nor aborted under prefix, with their Key, uploadId and initiation time
+	List<MultipartUpload> listMultipartUploads(String bucket, String prefix);
+	
+	void deleteObject(String bucket, String key);
+	
+	// Up to 1000 Keys, a Key with a version ID deletes only that version. Returns the Keys that failed
+	List<DeleteError> deleteObjects(String bucket, List<KeyVersion> keys);
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/* The ParallelGzipOutputStream writes a single gzip member using several cores (pigz style)
+ * 		1. The uncompressed stream is cut into fixed size blocks
+ * 		2. Every block is deflated on the shared executor, primed with the last 32KB of the previous block
+ * 		3. Blocks end on a sync flush and are written to the underlying stream in order
+ * Blocks submitted while the bypass is set are written as stored deflate blocks without running the deflater.
+ */
+public class ParallelGzipOutputStream extends OutputStream implements CompressionBypass {
+	static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final byte[] GZIP_HEADER = {(byte) 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+	private static final int MAX_STORED_BLOCK = 65535;
+	private OutputStream out;
+	private ExecutorService executor;
+	private int level;
+	private int blockSize;
+	private int maxBlocksInFlight;
+	// Block layout: [dictionary (DICTIONARY_SIZE) | block data (blockSize)]
+	private byte[] block = null;
+	private int dictionaryLength = 0;
+	private int position = 0;
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private ConcurrentLinkedQueue<byte[]> freeBlocks = new ConcurrentLinkedQueue<byte[]>();
+	private ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+	private CRC32 crc = new CRC32();
+	private long uncompressedSize = 0;
+	private boolean finished = false;
+	private boolean bypass = false;
+	
+	ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int level, int blockSize, int maxBlocksInFlight) throws IOException {
+		this.out = out;
+		this.executor = executor;
+		this.level = level;
+		this.blockSize = blockSize;
+		this.maxBlocksInFlight = Math.max(1, maxBlocksInFlight);
+		this.block = new byte[DICTIONARY_SIZE + blockSize];
+		this.out.write(GZIP_HEADER);
+	}
+	
+	private class blockDeflateCallable implements Callable<byte[]> {
+		private byte[] data = null;
+		private int dictionaryLength;
+		private int length;
+		private boolean last;
+		private boolean stored;
+		
+		blockDeflateCallable(byte[] data, int dictionaryLength, int length, boolean last, boolean stored) {
+			this.data = data;
+			this.dictionaryLength = dictionaryLength;
+			this.length = length;
+			this.last = last;
+			this.stored = stored;
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			if(this.stored) {
+				try {
+					return store(this.data, DICTIONARY_SIZE, this.length, this.last);
+				} finally {
+					freeBlocks.offer(this.data);
+				}
+			}
+			Deflater deflater = deflaters.poll();
+			if(deflater == null)
+				deflater = new Deflater(level, true);
+			try {
+				if(this.dictionaryLength > 0)
+					deflater.setDictionary(this.data, DICTIONARY_SIZE - this.dictionaryLength, this.dictionaryLength);
+				deflater.setInput(this.data, DICTIONARY_SIZE, this.length);
+				byte[] compressed = new byte[this.length + (this.length >> 3) + 64];
+				int compressedLength = 0;
+				if(this.last) {
+					deflater.finish();
+					while(!deflater.finished()) {
+						if(compressedLength == compressed.length)
+							compressed = Arrays.copyOf(compressed, compressed.length * 2);
+						compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+					}
+				}
+				else {
+					// Sync flush ends the block on a byte boundary so blocks can be concatenated
+					while(true) {
+						compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength, Deflater.SYNC_FLUSH);
+						if(compressedLength < compressed.length)
+							break;
+						compressed = Arrays.copyOf(compressed, compressed.length * 2);
+					}
+				}
+				return Arrays.copyOf(compressed, compressedLength);
+			} finally {
+				deflater.reset();
+				deflaters.offer(deflater);
+				freeBlocks.offer(this.data);
+			}
+		}
+	}
+	
+	// Stored deflate blocks of at most 64KB, each a byte aligned 3 bit header, LEN and NLEN followed by the data
+	private static byte[] store(byte[] data, int offset, int length, boolean last) {
+		int blocks = Math.max(1, (length + MAX_STORED_BLOCK - 1) / MAX_STORED_BLOCK);
+		byte[] stored = new byte[length + 5 * blocks];
+		int position = 0;
+		for(int block = 0; block < blocks; block++) {
+			int count = Math.min(MAX_STORED_BLOCK, length);
+			stored[position++] = (byte) (last && block == blocks - 1 ? 1 : 0);
+			stored[position++] = (byte) count;
+			stored[position++] = (byte) (count >>> 8);
+			stored[position++] = (byte) ~count;
+			stored[position++] = (byte) (~count >>> 8);
+			System.arraycopy(data, offset, stored, position, count);
+			position += count;
+			offset += count;
+			length -= count;
+		}
+		return stored;
+	}
+	
+	// Ends the current block so it keeps the previous mode
+	@Override
+	public void setBypass(boolean bypass) throws IOException {
+		if(bypass == this.bypass)
+			return;
+		if(this.position > 0)
+			submitBlock(false);
+		this.bypass = bypass;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		if(this.position == this.blockSize)
+			submitBlock(false);
+		this.block[DICTIONARY_SIZE + this.position++] = (byte) b;
+		this.crc.update(b);
+		this.uncompressedSize++;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		this.crc.update(b, off, len);
+		this.uncompressedSize += len;
+		while(len > 0) {
+			if(this.position == this.blockSize)
+				submitBlock(false);
+			int count = Math.min(len, this.blockSize - this.position);
+			System.arraycopy(b, off, this.block, DICTIONARY_SIZE + this.position, count);
+			this.position += count;
+			off += count;
+			len -= count;
+		}
+	}
+	
+	private void submitBlock(boolean last) throws IOException {
+		if(this.finished)
+			throw new IOException("Parallel gzip stream already finished");
+		byte[] current = this.block;
+		int currentDictionaryLength = this.dictionaryLength;
+		int currentLength = this.position;
+		this.pending.add(this.executor.submit(new blockDeflateCallable(current, currentDictionaryLength, currentLength, last, this.bypass)));
+		if(last)
+			return;
+		
+		// Next block is primed with the last 32KB of the uncompressed stream
+		byte[] next = this.freeBlocks.poll();
+		if(next == null)
+			next = new byte[DICTIONARY_SIZE + this.blockSize];
+		int available = currentDictionaryLength + currentLength;
+		this.dictionaryLength = Math.min(DICTIONARY_SIZE, available);
+		System.arraycopy(current, DICTIONARY_SIZE + currentLength - this.dictionaryLength, next, DICTIONARY_SIZE - this.dictionaryLength, this.dictionaryLength);
+		this.block = next;
+		this.position = 0;
+		
+		// Write finished blocks in order, block once too many are in flight
+		while(!this.pending.isEmpty() && (this.pending.peek().isDone() || this.pending.size() >= this.maxBlocksInFlight))
+			writeBlock();
+	}
+	
+	private void writeBlock() throws IOException {
+		Future<byte[]> head = this.pending.poll();
+		try {
+			this.out.write(head.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for compressed block", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed compressing block", e.getCause());
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		if(!this.finished && this.position > 0)
+			submitBlock(false);
+		while(!this.pending.isEmpty())
+			writeBlock();
+		this.out.flush();
+	}
+	
+	// Writes the final block and gzip trailer without closing the underlying stream
+	public void finish() throws IOException {
+		if(this.finished)
+			return;
+		submitBlock(true);
+		this.finished = true;
+		while(!this.pending.isEmpty())
+			writeBlock();
+		long crcValue = this.crc.getValue();
+		byte[] trailer = new byte[8];
+		for(int i = 0; i < 4; i++) {
+			trailer[i] = (byte) (crcValue >>> (8 * i));
+			trailer[4 + i] = (byte) (this.uncompressedSize >>> (8 * i));
+		}
+		this.out.write(trailer);
+		this.out.flush();
+		this.block = null;
+		this.freeBlocks.clear();
+		Deflater deflater;
+		while((deflater = this.deflaters.poll()) != null)
+			deflater.end();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			this.out.close();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Reusable result of GroupingStrategy.parse(), one instance per listing thread
+public class ParsedKey {
+	private int fileNameStart;
+	private String group;
+	private long date;
+	private Matcher matcher = null;
+	
+	// Get Methods for ParsedKey
+	public int getFileNameStart() {
+		return this.fileNameStart;
+	}
+	public String getGroup() {
+		return this.group;
+	}
+	public long getDate() {
+		return this.date;
+	}
+	
+	void set(int fileNameStart, String group, long date) {
+		this.fileNameStart = fileNameStart;
+		this.group = group;
+		this.date = date;
+	}
+	
+	// The Matcher of a regex strategy is reset for every Key instead of allocated
+	Matcher matcher(Pattern pattern, String key) {
+		if(this.matcher == null || this.matcher.pattern() != pattern)
+			this.matcher = pattern.matcher(key);
+		else
+			this.matcher.reset(key);
+		return this.matcher;
+	}
+}
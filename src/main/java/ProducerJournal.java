@@ -0,0 +1,343 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/* Append-only journal of a SQSProducer run, one tab separated record per line
+ * 		H	bucket	listingPrefix		Run the journal belongs to
+ * 		S	partition	firstKey		Context accepted by SQS, identified by its first Key
+ * 		C	partition	lastKey			Every Context of the partition up to lastKey was accepted by SQS
+ * 		D	partition					Partition completely listed and sent
+ * 		N	archive	part				Last part number given to a planned archive, never reused
+ * On restart the journal is replayed and compacted: done partitions are skipped, the others resume
+ * after their checkpoint Key and Contexts already accepted by SQS are not sent again.
+ * Checkpoints and done partitions are synced to disk, sent records are only flushed, so an OS crash
+ * may resend the Contexts accepted after the last checkpoint.
+ */
+public class ProducerJournal {
+	private File journalFile;
+	private Logger logger = null;
+	private Writer writer = null;
+	private FileOutputStream journalStream = null;
+	private Map<String, String> checkpoints = new HashMap<String, String>();
+	private Set<String> done = new HashSet<String>();
+	private Set<String> sent = new HashSet<String>();
+	// Sent records read on replay, first Key -> partition
+	private Map<String, String> replayedSent = new HashMap<String, String>();
+	private Map<String, Integer> parts = new HashMap<String, Integer>();
+	
+	ProducerJournal(File journalFile, String bucket, String listingPrefix, Logger logger) throws IOException {
+		this.journalFile = journalFile;
+		this.logger = logger;
+		String header = record("H", bucket, listingPrefix == null ? "" : listingPrefix);
+		if(journalFile.exists() && !replay(header)) {
+			File previous = new File(journalFile.getPath() + ".old");
+			Files.move(journalFile.toPath(), previous.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			this.logger.info("Producer Journal belongs to another Listing, moved to: " + previous.getName());
+		}
+		compact(header);
+		this.journalStream = new FileOutputStream(journalFile, true);
+		this.writer = new BufferedWriter(new OutputStreamWriter(this.journalStream, StandardCharsets.UTF_8));
+	}
+	
+	// Keys may hold any character, tabs and line breaks are escaped
+	static String escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for(int i=0; i<value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '\\')
+				escaped.append("\\\\");
+			else if(c == '\t')
+				escaped.append("\\t");
+			else if(c == '\n')
+				escaped.append("\\n");
+			else if(c == '\r')
+				escaped.append("\\r");
+			else
+				escaped.append(c);
+		}
+		return escaped.toString();
+	}
+	
+	static String unescape(String value) {
+		StringBuilder plain = new StringBuilder(value.length());
+		for(int i=0; i<value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				plain.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			}
+			else
+				plain.append(c);
+		}
+		return plain.toString();
+	}
+	
+	private static String record(String type, String... fields) {
+		StringBuilder line = new StringBuilder(type);
+		for(String field : fields)
+			line.append('\t').append(escape(field));
+		return line.append('\n').toString();
+	}
+	
+	// Returns false when the journal was written for another bucket or listing prefix
+	private boolean replay(String header) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.journalFile), StandardCharsets.UTF_8));
+		try {
+			String line = reader.readLine();
+			if(line == null)
+				return true;
+			if(!(line + "\n").equals(header))
+				return false;
+			int records = 0;
+			int skipped = 0;
+			// A torn last record has no line end, its fields may be cut short so it is ignored
+			boolean torn = endsTorn();
+			String next = reader.readLine();
+			while((line = next) != null) {
+				next = reader.readLine();
+				if(next == null && torn) {
+					skipped++;
+					break;
+				}
+				String[] fields = line.split("\t", -1);
+				if(fields[0].equals("S") && fields.length == 3)
+					this.replayedSent.put(unescape(fields[2]), unescape(fields[1]));
+				else if(fields[0].equals("C") && fields.length == 3)
+					this.checkpoints.put(unescape(fields[1]), unescape(fields[2]));
+				else if(fields[0].equals("D") && fields.length == 2)
+					this.done.add(unescape(fields[1]));
+				else if(fields[0].equals("N") && fields.length == 3 && isNumber(fields[2], 9))
+					this.parts.put(unescape(fields[1]), Math.max(getLastPart(unescape(fields[1])), Integer.parseInt(fields[2])));
+				else {
+					skipped++;
+					continue;
+				}
+				records++;
+			}
+			this.logger.info("Replayed Producer Journal: " + records + " Records, " + this.done.size() + " Partitions Done, "
+					+ this.checkpoints.size() + " Checkpoints");
+			if(skipped > 0)
+				this.logger.warning("Skipped " + skipped + " Malformed Producer Journal Records");
+			return true;
+		} finally {
+			reader.close();
+		}
+	}
+	
+	private boolean endsTorn() throws IOException {
+		RandomAccessFile file = new RandomAccessFile(this.journalFile, "r");
+		try {
+			if(file.length() == 0)
+				return false;
+			file.seek(file.length() - 1);
+			return file.read() != '\n';
+		} finally {
+			file.close();
+		}
+	}
+	
+	// Digits only, short enough to parse without overflow
+	static boolean isNumber(String field, int maxDigits) {
+		if(field.isEmpty() || field.length() > maxDigits)
+			return false;
+		for(int i=0; i<field.length(); i++) {
+			if(field.charAt(i) < '0' || field.charAt(i) > '9')
+				return false;
+		}
+		return true;
+	}
+	
+	// Rewrites the journal with only the records a resume needs,
+	// Contexts up to a partition's checkpoint are never listed again so their sent records are dropped
+	private void compact(String header) throws IOException {
+		File compacted = new File(this.journalFile.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(compacted);
+		Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+		try {
+			out.write(header);
+			for(String partition : this.done)
+				out.write(record("D", partition));
+			for(Map.Entry<String, Integer> part : this.parts.entrySet())
+				out.write(record("N", part.getKey(), String.valueOf(part.getValue())));
+			for(Map.Entry<String, String> checkpoint : this.checkpoints.entrySet()) {
+				if(!this.done.contains(checkpoint.getKey()))
+					out.write(record("C", checkpoint.getKey(), checkpoint.getValue()));
+			}
+			for(Map.Entry<String, String> sentContext : this.replayedSent.entrySet()) {
+				String partition = sentContext.getValue();
+				String checkpoint = this.checkpoints.get(partition);
+				if(this.done.contains(partition) || (checkpoint != null && sentContext.getKey().compareTo(checkpoint) <= 0))
+					continue;
+				this.sent.add(sentContext.getKey());
+				out.write(record("S", partition, sentContext.getKey()));
+			}
+			this.replayedSent.clear();
+			out.flush();
+			stream.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(compacted.toPath(), this.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	public synchronized boolean isDone(String partition) {
+		return this.done.contains(partition);
+	}
+	
+	// Key the partition resumes after, null when it starts from the beginning
+	public synchronized String getCheckpoint(String partition) {
+		return this.checkpoints.get(partition);
+	}
+	
+	public synchronized boolean isSent(SQSContext ctx) {
+		return this.sent.contains(firstKey(ctx));
+	}
+	
+	// Last part number given to the archive in this or a previous run, 0 when none
+	public synchronized int getLastPart(String archive) {
+		Integer part = this.parts.get(archive);
+		return part == null ? 0 : part;
+	}
+	
+	// Flushed before the Context is queued, so a resumed run never names two archives alike
+	public synchronized void partAssigned(String archive, int part) {
+		this.parts.put(archive, part);
+		append(record("N", archive, String.valueOf(part)), false);
+	}
+	
+	private static String firstKey(SQSContext ctx) {
+		return ctx.getS3ArchiveObjects().get(0).getKey();
+	}
+	
+	private void append(String line, boolean sync) {
+		try {
+			this.writer.write(line);
+			this.writer.flush();
+			if(sync)
+				this.journalStream.getFD().sync();
+		} catch (IOException e) {
+			this.logger.info("Failed Writing Producer Journal: " + e.getMessage());
+		}
+	}
+	
+	public synchronized void close() throws IOException {
+		this.writer.close();
+	}
+	
+	public PartitionCheckpoint partition(String partition) {
+		return new PartitionCheckpoint(partition);
+	}
+	
+	/* Tracks the Contexts of one partition until SQS accepted them
+	 * A prefix is checkpointed once it is complete and every Context of it and of the prefixes before it was sent,
+	 * a Context that finally fails holds the checkpoint back so a resume lists its prefix again.
+	 */
+	public class PartitionCheckpoint {
+		private String partition;
+		private ArrayDeque<prefixContexts> prefixes = new ArrayDeque<prefixContexts>();
+		private prefixContexts open = null;
+		private boolean finished = false;
+		
+		PartitionCheckpoint(String partition) {
+			this.partition = partition;
+		}
+		
+		private class prefixContexts {
+			private String lastKey = null;
+			private int pending = 0;
+			private boolean complete = false;
+		}
+		
+		private prefixContexts openPrefix() {
+			if(this.open == null) {
+				this.open = new prefixContexts();
+				this.prefixes.add(this.open);
+			}
+			return this.open;
+		}
+		
+		// Returns the callback the SQSBatchSender runs once the Context was accepted
+		public Runnable queued(final SQSContext ctx) {
+			final prefixContexts prefix;
+			synchronized(ProducerJournal.this) {
+				prefix = openPrefix();
+				prefix.pending++;
+			}
+			return new Runnable() {
+				@Override
+				public void run() {
+					synchronized(ProducerJournal.this) {
+						sent.add(firstKey(ctx));
+						append(record("S", partition, firstKey(ctx)), false);
+						prefix.pending--;
+						advance();
+					}
+				}
+			};
+		}
+		
+		public void prefixCompleted(String lastKey) {
+			synchronized(ProducerJournal.this) {
+				prefixContexts prefix = openPrefix();
+				prefix.lastKey = lastKey;
+				prefix.complete = true;
+				this.open = null;
+				advance();
+			}
+		}
+		
+		// Called once the partition has been listed completely
+		public void finish() {
+			synchronized(ProducerJournal.this) {
+				this.finished = true;
+				advance();
+			}
+		}
+		
+		private void advance() {
+			String lastKey = null;
+			while(!this.prefixes.isEmpty() && this.prefixes.peek().complete && this.prefixes.peek().pending == 0)
+				lastKey = this.prefixes.poll().lastKey;
+			if(lastKey != null) {
+				checkpoints.put(this.partition, lastKey);
+				append(record("C", this.partition, lastKey), true);
+			}
+			if(this.finished && this.prefixes.isEmpty() && done.add(this.partition))
+				append(record("D", this.partition), true);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/* The S3ArchiveAssembler writes the S3 Objects of a context into a tar archive
+ * 		1. S3 GETs are opened only while the consumer's S3PrefetchWindow has room
+ * 		2. "completion" order: every object is written the moment its stream is ready
+ * 		3. "listing" order: objects are written in context order for a deterministic archive
+ */
+public class S3ArchiveAssembler {
+	private S3Interface s3 = null;
+	private Logger logger = null;
+	private boolean ordered;
+	
+	S3ArchiveAssembler(S3Interface s3, Logger logger, boolean ordered) {
+		this.s3 = s3;
+		this.logger = logger;
+		this.ordered = ordered;
+	}
+	
+	// Returns false when any S3 Object could not be read into the archive
+	public boolean assemble(SQSContext ctx, S3TarGzBuilder tar, S3PrefetchWindow window) {
+		try {
+			if(this.ordered)
+				return assembleInListingOrder(ctx, tar, window);
+			else
+				return assembleInCompletionOrder(ctx, tar, window);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			Thread.currentThread().interrupt();
+			tar.abortTarGzArchive();
+			return false;
+		}
+	}
+	
+	// Objects committed to the archive by an earlier attempt of the context are not read again
+	private List<S3ArchiveObject> pendingObjects(SQSContext ctx, S3TarGzBuilder tar) {
+		List<S3ArchiveObject> pending = new ArrayList<S3ArchiveObject>();
+		for(S3ArchiveObject obj : ctx.getS3ArchiveObjects()) {
+			if(tar.isCommitted(obj.getLocalFileName()))
+				tar.setCommittedSource(obj);
+			else
+				pending.add(obj);
+		}
+		if(pending.size() < ctx.getS3ArchiveObjects().size())
+			this.logger.info("Resuming Tar Archive: " + ctx.getLocalArchiveName() + " Skipping " + (ctx.getS3ArchiveObjects().size() - pending.size()) + " Committed Objects");
+		return pending;
+	}
+	
+	// Blocks for room only when nothing is in flight, so a waiting consumer never holds reservations
+	private boolean reserve(S3PrefetchWindow window, S3ArchiveObject obj, boolean idle) throws InterruptedException {
+		long size = Long.valueOf(obj.getSize());
+		int connections = this.s3.getConnections(size);
+		if(idle) {
+			window.acquire(size, connections);
+			return true;
+		}
+		return window.tryAcquire(size, connections);
+	}
+	
+	// Once the archive failed no further GET is opened, only those in flight are drained
+	private static boolean submitting(List<S3ArchiveObject> objects, int next, boolean complete, S3TarGzBuilder tar) {
+		return next < objects.size() && complete && !tar.isFailed();
+	}
+	
+	private boolean assembleInListingOrder(SQSContext ctx, S3TarGzBuilder tar, S3PrefetchWindow window) throws InterruptedException {
+		List<S3ArchiveObject> objects = pendingObjects(ctx, tar);
+		ArrayDeque<S3InputStreamTuple> inStream3Tuple = new ArrayDeque<S3InputStreamTuple>();
+		int next = 0;
+		boolean complete = true;
+		try {
+			while(submitting(objects, next, complete, tar) || !inStream3Tuple.isEmpty()) {
+				while(submitting(objects, next, complete, tar) && reserve(window, objects.get(next), inStream3Tuple.isEmpty())) {
+					S3ArchiveObject obj = objects.get(next++);
+					obj.setLocalDirectory(ctx.getLocalDirectory());
+					Future<InputStream> s3ObjectFuture = this.s3.submitObjectIntoTar(obj, window);
+					inStream3Tuple.add(new S3InputStreamTuple(s3ObjectFuture, obj));
+				}
+				complete &= writeEntry(ctx, tar, inStream3Tuple.peek());
+				inStream3Tuple.poll();
+			}
+		} finally {
+			drain(ctx, tar, inStream3Tuple);
+		}
+		return complete && next == objects.size();
+	}
+	
+	private boolean assembleInCompletionOrder(SQSContext ctx, S3TarGzBuilder tar, S3PrefetchWindow window) throws InterruptedException {
+		List<S3ArchiveObject> objects = pendingObjects(ctx, tar);
+		CompletionService<InputStream> completion = this.s3.createCompletionService();
+		Map<Future<InputStream>, S3InputStreamTuple> inStream3Tuple = new HashMap<Future<InputStream>, S3InputStreamTuple>();
+		int next = 0;
+		boolean complete = true;
+		try {
+			while(submitting(objects, next, complete, tar) || !inStream3Tuple.isEmpty()) {
+				while(submitting(objects, next, complete, tar) && reserve(window, objects.get(next), inStream3Tuple.isEmpty())) {
+					S3ArchiveObject obj = objects.get(next++);
+					obj.setLocalDirectory(ctx.getLocalDirectory());
+					Future<InputStream> s3ObjectFuture = this.s3.submitObjectIntoTar(obj, window, completion);
+					inStream3Tuple.put(s3ObjectFuture, new S3InputStreamTuple(s3ObjectFuture, obj));
+				}
+				Future<InputStream> done = completion.take();
+				complete &= writeEntry(ctx, tar, inStream3Tuple.remove(done));
+			}
+		} finally {
+			drain(ctx, tar, inStream3Tuple.values());
+		}
+		return complete && next == objects.size();
+	}
+	
+	// Interrupted assembly: wait for GETs already in flight so their streams and reservations are released
+	private void drain(SQSContext ctx, S3TarGzBuilder tar, Collection<S3InputStreamTuple> inFlight) {
+		if(inFlight.isEmpty())
+			return;
+		tar.abortTarGzArchive();
+		boolean interrupted = Thread.interrupted();
+		for(S3InputStreamTuple entry : new ArrayList<S3InputStreamTuple>(inFlight)) {
+			while(true) {
+				try {
+					tar.addInputStreamToArchive(entry.future.get(), entry.key, entry.fileName, entry.objSize);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					break;
+				}
+			}
+		}
+		inFlight.clear();
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	// Failed reads abort the archive, later streams are still drained and closed by the builder
+	private boolean writeEntry(SQSContext ctx, S3TarGzBuilder tar, S3InputStreamTuple entry) throws InterruptedException {
+		try {
+			InputStream s3In = entry.future.get();
+			tar.addInputStreamToArchive(s3In, entry.key, entry.fileName, entry.objSize, entry.obj);
+			return true;
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+		this.logger.info("Failed Reading S3 Object: " + entry.fileName + " Into Archive: " + ctx.getLocalArchiveName());
+		tar.abortTarGzArchive();
+		return false;
+	}
+}
@@ -27,6 +27,10 @@ public class S3ArchiveObject {
 	private String localFileName;
 	private Date date;
 	private Future<?> future;	
+	// Set by the consumer's GET, never sent to SQS
+	private transient String sourceMD5;
+	private transient String sourceETag;
+	private transient String sourceVersionId;
 
 	S3ArchiveObject(String key, String size, String sqsReceiveHandle, String localDirectory, String localFileName, Date date) {
 		this.setKey(key);
@@ -82,4 +86,24 @@ public class S3ArchiveObject {
 	public void setS3Future(Future<?> future) {
 		this.future = future;
 	}		
+	
+	// MD5 of the object when its ETag is one (single part upload without SSE-KMS or SSE-C), otherwise null
+	public String getSourceMD5() {
+		return this.sourceMD5;
+	}
+	public void setSourceMD5(String sourceMD5) {
+		this.sourceMD5 = sourceMD5;
+	}
+	
+	// ETag and version ID (null in unversioned buckets) of the object the GET read, see S3BatchDeleter
+	public String getSourceETag() {
+		return this.sourceETag;
+	}
+	public String getSourceVersionId() {
+		return this.sourceVersionId;
+	}
+	public void setSourceVersion(String sourceETag, String sourceVersionId) {
+		this.sourceETag = sourceETag;
+		this.sourceVersionId = sourceVersionId;
+	}
 }
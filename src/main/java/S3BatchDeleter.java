@@ -0,0 +1,194 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+
+/* Deletes the source objects of archived contexts with multi-object DeleteObjects requests
+ * 		1. The Keys of a context are cut into batches of up to 1000 and the batches are sent concurrently
+ * 		2. Keys reported in the errors of a batch, or every Key of a failed request, are sent again with backoff up to maxRetries times
+ * 		3. Keys still failing are written to the deletion report, in dry-run every Key is reported instead of deleted
+ * Only the objects the archive read are deleted: in a versioned bucket the version the GET returned is deleted, newer
+ * versions stay. Without versions every Key is checked with a HEAD first and kept when its ETag changed since, the HEADs
+ * of a batch run concurrently on the S3 executor before its DeleteObjects request.
+ */
+public class S3BatchDeleter {
+	// S3 DeleteObjects limit
+	static final int MAX_BATCH_KEYS = 1000;
+	private static final long RETRY_BACKOFF_MS = 200;
+	private S3Interface s3 = null;
+	private String bucket;
+	private boolean dryRun;
+	private int maxRetries;
+	private ExecutorService executor = null;
+	private Logger logger = null;
+	private Logger report = null;
+	
+	S3BatchDeleter(S3Interface s3, String bucket, boolean dryRun, int concurrency, int maxRetries, Logger logger, Logger report) {
+		this.s3 = s3;
+		this.bucket = bucket;
+		this.dryRun = dryRun;
+		this.maxRetries = Math.max(0, maxRetries);
+		this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+		this.logger = logger;
+		this.report = report;
+	}
+	
+	// Sends one batch, returns the Keys that could not be deleted after every retry
+	private class batchCallable implements Callable<List<DeleteError>> {
+		private List<S3ArchiveObject> objects = null;
+		
+		batchCallable(List<S3ArchiveObject> objects) {
+			this.objects = objects;
+		}
+		
+		@Override
+		public List<DeleteError> call() throws Exception {
+			List<DeleteError> kept = new ArrayList<DeleteError>();
+			Map<String, KeyVersion> versions = new HashMap<String, KeyVersion>();
+			Map<S3ArchiveObject, Future<DeleteError>> checks = new HashMap<S3ArchiveObject, Future<DeleteError>>();
+			for(final S3ArchiveObject obj : this.objects) {
+				if(isVersioned(obj))
+					versions.put(obj.getKey(), new KeyVersion(obj.getKey(), obj.getSourceVersionId()));
+				else
+					checks.put(obj, s3.executor.submit(new Callable<DeleteError>() {
+						@Override
+						public DeleteError call() {
+							return readVersion(obj);
+						}
+					}));
+			}
+			for(Map.Entry<S3ArchiveObject, Future<DeleteError>> check : checks.entrySet()) {
+				DeleteError changed;
+				try {
+					changed = check.getValue().get();
+				} catch (ExecutionException e) {
+					changed = error(check.getKey().getKey(), "ClientError", String.valueOf(e.getCause()));
+				}
+				if(changed != null)
+					kept.add(changed);
+				else
+					versions.put(check.getKey().getKey(), new KeyVersion(check.getKey().getKey()));
+			}
+			List<KeyVersion> pending = new ArrayList<KeyVersion>(versions.values());
+			List<DeleteError> errors = null;
+			for(int attempt = 0; ; attempt++) {
+				if(pending.isEmpty()) {
+					errors = new ArrayList<DeleteError>();
+					break;
+				}
+				try {
+					errors = S3Interface.s3DeleteObjects(bucket, pending);
+				} catch (AmazonClientException e) {
+					errors = new ArrayList<DeleteError>();
+					for(KeyVersion key : pending)
+						errors.add(error(key.getKey(), "ClientError", e.getMessage()));
+				}
+				if(errors.isEmpty() || attempt >= maxRetries)
+					break;
+				pending = new ArrayList<KeyVersion>();
+				for(DeleteError error : errors)
+					pending.add(versions.get(error.getKey()));
+				Thread.sleep(RETRY_BACKOFF_MS << attempt);
+			}
+			kept.addAll(errors);
+			return kept;
+		}
+	}
+	
+	private static boolean isVersioned(S3ArchiveObject obj) {
+		return obj.getSourceVersionId() != null && !"null".equals(obj.getSourceVersionId());
+	}
+	
+	// Without a version ID the object must still have the ETag it had when read, otherwise it was overwritten since and
+	// is kept. Returns null when it can be deleted
+	private DeleteError readVersion(S3ArchiveObject obj) {
+		if(obj.getSourceETag() == null)
+			return error(obj.getKey(), "NotRead", "No ETag was recorded when the object was archived");
+		try {
+			String current = S3Interface.s3GetObjectETag(this.bucket, obj.getKey());
+			if(!obj.getSourceETag().equals(current))
+				return error(obj.getKey(), "ETagChanged", "Archived " + obj.getSourceETag() + ", now " + current);
+			return null;
+		} catch (AmazonClientException e) {
+			return error(obj.getKey(), "ClientError", e.getMessage());
+		}
+	}
+	
+	private static DeleteError error(String key, String code, String message) {
+		DeleteError error = new DeleteError();
+		error.setKey(key);
+		error.setCode(code);
+		error.setMessage(message);
+		return error;
+	}
+	
+	// Returns the number of objects that could not be deleted, archiveName only labels the report
+	public int delete(List<S3ArchiveObject> objects, String archiveName) {
+		if(this.dryRun) {
+			for(S3ArchiveObject obj : objects)
+				this.report.info("dry-run\t" + this.bucket + "\t" + obj.getKey() + "\t" + archiveName);
+			this.logger.info("Dry-Run: [" + objects.size() + "] Source Objects Of Archive: " + archiveName + " Would Be Deleted");
+			return 0;
+		}
+		List<Future<List<DeleteError>>> batches = new ArrayList<Future<List<DeleteError>>>();
+		for(int start = 0; start < objects.size(); start += MAX_BATCH_KEYS)
+			batches.add(this.executor.submit(new batchCallable(objects.subList(start, Math.min(objects.size(), start + MAX_BATCH_KEYS)))));
+		int failed = 0;
+		for(int i=0; i<batches.size(); i++) {
+			List<S3ArchiveObject> batch = objects.subList(i * MAX_BATCH_KEYS, Math.min(objects.size(), (i + 1) * MAX_BATCH_KEYS));
+			List<DeleteError> errors;
+			try {
+				errors = batches.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				errors = null;
+			} catch (ExecutionException e) {
+				errors = null;
+			}
+			// Every Key of a batch that did not finish is reported as not deleted
+			if(errors == null) {
+				for(S3ArchiveObject obj : batch)
+					this.report.info("failed\t" + this.bucket + "\t" + obj.getKey() + "\t" + archiveName + "\tInterrupted");
+				failed += batch.size();
+				continue;
+			}
+			for(DeleteError error : errors)
+				this.report.info("failed\t" + this.bucket + "\t" + error.getKey() + "\t" + archiveName + "\t" + error.getCode() + ": " + error.getMessage());
+			failed += errors.size();
+		}
+		this.logger.info("Deleted [" + (objects.size() - failed) + "] Source Objects Of Archive: " + archiveName
+				+ (failed > 0 ? " [" + failed + "] Failed, See The Deletion Report" : ""));
+		return failed;
+	}
+	
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+}
@@ -21,11 +21,19 @@ import java.util.concurrent.Future;
 
 public class S3InputStreamTuple {
 	Future<InputStream> future = null;
+	String key = null;
 	String fileName = null;
 	String objSize = null;
-	S3InputStreamTuple(Future<InputStream> future, String fileName, String objSize) {
+	S3ArchiveObject obj = null;
+	S3InputStreamTuple(Future<InputStream> future, String key, String fileName, String objSize) {
 		this.future = future;
+		this.key = key;
 		this.fileName = fileName;
 		this.objSize = objSize;
 	}
+	// The source MD5, ETag and version ID of obj are known once the future is done
+	S3InputStreamTuple(Future<InputStream> future, S3ArchiveObject obj) {
+		this(future, obj.getKey(), obj.getLocalFileName(), obj.getSize());
+		this.obj = obj;
+	}
 }
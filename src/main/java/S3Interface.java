@@ -16,63 +16,94 @@
  * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.auth.profile.ProfileCredentialsProvider;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
-import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.model.StorageClass;
-import com.amazonaws.services.s3.transfer.TransferManager;
-import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
-import com.amazonaws.services.s3.transfer.Upload;
 
+// Reads and writes through an ObjectStore, Amazon S3 unless storeType selects another one
 public class S3Interface {
-	static ProfileCredentialsProvider credentialsProvider;
-	private static AmazonS3 s3;
+	private static ObjectStore store;
 	private static String bucket;
 	private static String targetBucket;
-	private static String region;
 	private static String s3ArchiveFolder;
-	ThreadPoolExecutor executor = null;
+	// Set Archive Storage Class:
+	//  - DeepArchive
+	//  - Glacier
+	//  - GlacierInstantRetrieval
+	private static StorageClass archiveStorageClass = StorageClass.Glacier;
+	// S3 Multipart Limits: 5MB minimum part size, 10000 parts per upload
+	static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+	private static final int MAX_PART_COUNT = 10000;
+	private int partSize = 8 * 1024 * 1024;
+	private int maxPartsInFlight = 4;
+	private long rangedGetThreshold = 0;
+	private int rangeSize = 8 * 1024 * 1024;
+	private int maxRangesInFlight = 8;
+	private int maxConCount;
+	ExecutorService executor = null;
+	ExecutorService uploadExecutor = null;
+	private static final ArchiveMetrics.histogram GET_SECONDS = ArchiveMetrics.histogram("s3_get_seconds", "",
+			"S3 GETs (whole objects and ranges) until their response headers", ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.counter GET_BYTES = ArchiveMetrics.counter("s3_get_bytes_total", "", "Bytes of the S3 GET responses");
+	private static final ArchiveMetrics.histogram LIST_SECONDS = ArchiveMetrics.histogram("s3_list_seconds", "",
+			"S3 ListObjectsV2 pages", ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.counter LISTED_KEYS = ArchiveMetrics.counter("listed_keys_total", "source=listing", "Keys read from listings or inventories");
+	private static final String UPLOAD_HELP = "S3 uploads: streamed parts, single PUTs and staged files";
+	private static final ArchiveMetrics.histogram UPLOAD_PART_SECONDS = ArchiveMetrics.histogram("s3_upload_seconds", "call=part", UPLOAD_HELP, ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.histogram PUT_SECONDS = ArchiveMetrics.histogram("s3_upload_seconds", "call=put", UPLOAD_HELP, ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.histogram FILE_UPLOAD_SECONDS = ArchiveMetrics.histogram("s3_upload_seconds", "call=file", UPLOAD_HELP, ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.counter UPLOAD_BYTES = ArchiveMetrics.counter("s3_upload_bytes_total", "", "Bytes uploaded to S3");
 	
-	S3Interface(String bucket, String targetBucket, String region, String s3ArchiveFolder, int s3MaxConCount, String authType) {
+	S3Interface(ObjectStore store, String bucket, String targetBucket, String s3ArchiveFolder, int s3MaxConCount) {
+		S3Interface.store = store;
 		S3Interface.bucket = bucket;
-		S3Interface.region = region;
 		S3Interface.s3ArchiveFolder = s3ArchiveFolder;
 		S3Interface.targetBucket = targetBucket;
-		this.executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(s3MaxConCount);
-		
-		if(authType.compareTo("iam-keys")==0) {
-			// Credentials in ~/.aws/credentials
-			credentialsProvider = new ProfileCredentialsProvider();
-			try {
-				credentialsProvider.getCredentials();
-			} catch (Exception e) {
-				throw new AmazonClientException(
-						"Cannot load the credentials from the credential profiles file. " +
-						"Please make sure that your credentials file is at the correct " +
-						"location (~/.aws/credentials), and is in valid format.",e);
-			}
-	        s3 = AmazonS3ClientBuilder.standard()
-	        		.withCredentials(credentialsProvider)
-	        		.withRegion(getRegion())
-	        		.build();
-        }
-		else if(authType.compareTo("iam-role")==0) {
-	        s3 = AmazonS3ClientBuilder.standard()
-	        		.withRegion(getRegion())
-	        		.build();
-		}
+		this.maxConCount = s3MaxConCount;
+		this.executor = Executors.newFixedThreadPool(s3MaxConCount);
+		// Part uploads are bounded per stream by maxPartsInFlight
+		this.uploadExecutor = Executors.newCachedThreadPool();
+		ArchiveMetrics.executor("s3-get", (ThreadPoolExecutor) this.executor);
+		ArchiveMetrics.executor("s3-upload", (ThreadPoolExecutor) this.uploadExecutor);
+	}
+	
+	// Called by ArchiveController: every GET runs on its own virtual thread, s3MaxConCount of them at a time
+	public void setVirtualThreads(boolean virtualThreads) {
+		if(!virtualThreads)
+			return;
+		VirtualThreadExecutor executor = new VirtualThreadExecutor("s3-get", this.maxConCount);
+		ArchiveMetrics.executor("s3-get", executor);
+		this.executor.shutdown();
+		this.executor = executor;
+	}
+	
+	public int getMaxConCount() {
+		return this.maxConCount;
 	}
 	
 	private static String getBucket() {
@@ -83,79 +114,393 @@ public class S3Interface {
 		return targetBucket;
 	}
 	
-	private static String getRegion(){
-		return region;
-	}
-	
 	private static String getS3ArchiveFolder(){
 		return s3ArchiveFolder;
 	}
 	
+	// Called by ArchiveController to size Streaming Multipart Uploads
+	public void setMultipartUpload(int partSizeMB, int maxPartsInFlight) {
+		this.partSize = Math.max(MIN_PART_SIZE, partSizeMB * 1024 * 1024);
+		this.maxPartsInFlight = Math.max(1, maxPartsInFlight);
+	}
+	
+	// Called by ArchiveController: objects larger than thresholdMB are read as concurrent ranged GETs (0 disables)
+	public void setRangedGet(int thresholdMB, int rangeSizeMB, int maxRangesInFlight) {
+		this.rangedGetThreshold = thresholdMB * 1024L * 1024;
+		this.rangeSize = Math.max(1, rangeSizeMB) * 1024 * 1024;
+		this.maxRangesInFlight = Math.max(1, maxRangesInFlight);
+	}
+	
+	// Called by ArchiveController: storage class of the uploaded archives, Glacier Flexible Retrieval by default
+	public void setArchiveStorageClass(String storageClass) {
+		if(storageClass != null && !storageClass.isEmpty())
+			archiveStorageClass = StorageClass.fromValue(storageClass);
+	}
+	
+	int getPartSize() {
+		return this.partSize;
+	}
+	
+	private boolean isRangedGet(long size) {
+		return this.rangedGetThreshold > 0 && size > this.rangedGetThreshold;
+	}
+	
+	// Connections a GET of size holds open, a ranged GET keeps up to maxRangesInFlight ranges in flight
+	public int getConnections(long size) {
+		if(!isRangedGet(size))
+			return 1;
+		return (int) Math.min(this.maxRangesInFlight, (size + this.rangeSize - 1) / this.rangeSize);
+	}
+	
+	private static String getArchiveKeyName(String key) {
+		String folder = getS3ArchiveFolder();
+		if(folder.contains("/"))
+			return folder + key;
+		else
+			return folder + "/" + key;
+	}
+	
 	private class migrationCallable implements Callable<InputStream> {
 		private S3ArchiveObject obj = null;
+		private S3PrefetchWindow window = null;
 		
 		migrationCallable(S3ArchiveObject obj) {
 			this.obj = obj;
 		}
+		
+		// The GET has already reserved its connections and bytes in window
+		migrationCallable(S3ArchiveObject obj, S3PrefetchWindow window) {
+			this.obj = obj;
+			this.window = window;
+		}
 
 		@Override
 		public InputStream call() throws Exception {
-			return s3GetObject(getBucket(), obj.getKey());
+			long size = Long.valueOf(obj.getSize());
+			if(this.window == null)
+				return openObject(obj, size);
+			try {
+				InputStream inStream = openObject(obj, size);
+				if(size > this.window.getBufferObjectSize())
+					return new windowedInputStream(inStream, this.window, size, getConnections(size), null);
+				
+				// Small Object: read into a pooled buffer and give the connection back
+				byte[] buffer = this.window.takeBuffer();
+				int length = 0;
+				try {
+					int count;
+					while(length < buffer.length && (count = inStream.read(buffer, length, buffer.length - length)) != -1)
+						length += count;
+				} catch (IOException e) {
+					this.window.giveBuffer(buffer);
+					throw e;
+				} finally {
+					inStream.close();
+				}
+				this.window.releaseConnections(getConnections(size));
+				return new windowedInputStream(new ByteArrayInputStream(buffer, 0, length), this.window, size, 0, buffer);
+			} catch (Exception e) {
+				this.window.releaseConnections(getConnections(size));
+				this.window.releaseBytes(size);
+				throw e;
+			}
+		}
+	}
+	
+	// Large objects are planned into ranges up front from the listed size
+	// The GET records the MD5 of the object on obj when its ETag is one, for the archive manifest,
+	// and the ETag and version it read, for source deletion
+	private InputStream openObject(S3ArchiveObject obj, long size) throws IOException {
+		if(isRangedGet(size)) {
+			S3RangedInputStream ranged = new S3RangedInputStream(getBucket(), obj.getKey(), size, this.rangeSize, this.maxRangesInFlight, this.executor);
+			obj.setSourceMD5(ranged.getSourceMD5());
+			obj.setSourceVersion(ranged.getETag(), ranged.getVersionId());
+			return ranged;
+		}
+		S3Object s3Object = getObject(new GetObjectRequest(getBucket(), obj.getKey()));
+		obj.setSourceMD5(sourceMD5(s3Object.getObjectMetadata()));
+		obj.setSourceVersion(s3Object.getObjectMetadata().getETag(), s3Object.getObjectMetadata().getVersionId());
+		return s3Object.getObjectContent();
+	}
+	
+	// Single part uploads without SSE-KMS or SSE-C have the MD5 of the object as their ETag
+	static String sourceMD5(ObjectMetadata metadata) {
+		String eTag = metadata.getETag();
+		if(eTag == null || metadata.getSSECustomerAlgorithm() != null
+				|| (metadata.getSSEAlgorithm() != null && !"AES256".equals(metadata.getSSEAlgorithm())))
+			return null;
+		eTag = eTag.replace("\"", "").toLowerCase();
+		return eTag.matches("[0-9a-f]{32}") ? eTag : null;
+	}
+	
+	// Returns the reservation (and pooled buffer) to the window once the tar writer closes the stream
+	private class windowedInputStream extends FilterInputStream {
+		private S3PrefetchWindow window = null;
+		private long size;
+		private int connections;
+		private byte[] buffer = null;
+		private boolean closed = false;
+		
+		windowedInputStream(InputStream in, S3PrefetchWindow window, long size, int connections, byte[] buffer) {
+			super(in);
+			this.window = window;
+			this.size = size;
+			this.connections = connections;
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if(this.closed)
+				return;
+			this.closed = true;
+			try {
+				super.close();
+			} finally {
+				if(this.connections > 0)
+					this.window.releaseConnections(this.connections);
+				if(this.buffer != null)
+					this.window.giveBuffer(this.buffer);
+				this.window.releaseBytes(this.size);
+			}
 		}
 	}
 
-	public static void uploadS3Archive(SQSContext archiveCTX) {
+	// Returns the ETag of the uploaded archive, null when the upload failed
+	public static String uploadS3Archive(SQSContext archiveCTX) {
 		String localArchiveName = archiveCTX.getLocalDirectory() + archiveCTX.getLocalArchiveName();
 		String key = archiveCTX.getLocalArchiveName();
 		String folder = getS3ArchiveFolder();
-		s3PutObjectMultiPart(key, folder, localArchiveName);
+		return s3PutObjectMultiPart(key, folder, localArchiveName);
+	}
+	
+	// The index sidecar of a seekable archive is read before the archive itself, it is kept in S3 Standard
+	public static void uploadArchiveIndex(SQSContext archiveCTX, File indexFile) {
+		s3PutObjectMultiPart(archiveCTX.getLocalArchiveName() + ArchiveIndex.SUFFIX, getS3ArchiveFolder(), indexFile.getAbsolutePath(), StorageClass.Standard);
+	}
+	
+	public static void uploadArchiveManifest(SQSContext archiveCTX, File manifestFile) {
+		s3PutObjectMultiPart(archiveCTX.getLocalArchiveName() + ArchiveManifest.SUFFIX, getS3ArchiveFolder(), manifestFile.getAbsolutePath(), StorageClass.Standard);
+	}
+	
+	// Called by ArchiveExtractor: archiveName is relative to the archive folder of the target bucket
+	public static InputStream s3GetArchiveIndex(String archiveName) {
+		return s3GetObject(getTargetBucket(), getArchiveKeyName(archiveName + ArchiveIndex.SUFFIX));
+	}
+	
+	// Called by ArchiveRestorer: the manifest sidecar records the Key of every entry
+	public static InputStream s3GetArchiveManifest(String archiveName) {
+		return s3GetObject(getTargetBucket(), getArchiveKeyName(archiveName + ArchiveManifest.SUFFIX));
+	}
+	
+	public static S3Object s3GetArchiveRange(String archiveName, long start, long end) {
+		return s3GetObjectRange(getTargetBucket(), getArchiveKeyName(archiveName), start, end, null);
+	}
+	
+	// Called by ArchiveRestorer: large archives are read as concurrent ranged GETs like the objects they hold
+	public InputStream openArchive(String archiveName) throws IOException {
+		String key = getArchiveKeyName(archiveName);
+		if(this.rangedGetThreshold > 0) {
+			long size = store.getObjectMetadata(getTargetBucket(), key).getContentLength();
+			if(isRangedGet(size))
+				return new S3RangedInputStream(getTargetBucket(), key, size, this.rangeSize, this.maxRangesInFlight, this.executor);
+		}
+		return s3GetObject(getTargetBucket(), key);
+	}
+	
+	// Called by SQSProducer: archive names under archivePrefix relative to the archive folder, names without a codec
+	// extension (index and manifest sidecars) excluded
+	public List<String> listArchives(String archivePrefix) {
+		String folder = getArchiveKeyName("");
+		ListObjectsV2Request req = new ListObjectsV2Request()
+				.withBucketName(getTargetBucket())
+				.withPrefix(folder + (archivePrefix == null ? "" : archivePrefix));
+		List<String> archives = new ArrayList<String>();
+		ListObjectsV2Result listing;
+		do {
+			listing = s3ListObjects(req);
+			for(S3ObjectSummary summary : listing.getObjectSummaries()) {
+				String name = summary.getKey().substring(folder.length());
+				if(!name.isEmpty() && !name.endsWith(ArchiveIndex.SUFFIX) && !name.endsWith(ArchiveManifest.SUFFIX)
+						&& ArchiveCodecs.forArchive(name) != null)
+					archives.add(name);
+			}
+		} while(listing.isTruncated());
+		return archives;
+	}
+	
+	// Every GET is timed until its response headers arrived
+	private static S3Object getObject(GetObjectRequest req) {
+		long start = System.nanoTime();
+		S3Object obj = store.getObject(req);
+		GET_SECONDS.since(start);
+		if(obj != null)
+			GET_BYTES.add(obj.getObjectMetadata().getContentLength());
+		return obj;
 	}
 	
 	public static InputStream s3GetObject(String bucket, String key) {
-		S3Object obj = s3.getObject(bucket, key);
+		S3Object obj = getObject(new GetObjectRequest(bucket, key));
 		InputStream inStream = obj.getObjectContent();
 		return inStream;
 	}
 	
-	public static void s3PutObjectMultiPart(String key, String folder, String fileName) {
-		TransferManager tm = TransferManagerBuilder.standard()
-                .withS3Client(s3)
-                .withMinimumUploadPartSize((long) 3000000)  // Upload 3MB Parts
-                .build();
+	// Returns null when eTag is given and the object no longer matches it
+	public static S3Object s3GetObjectRange(String bucket, String key, long start, long end, String eTag) {
+		GetObjectRequest req = new GetObjectRequest(bucket, key).withRange(start, end);
+		if(eTag != null)
+			req.withMatchingETagConstraint(eTag);
+		return getObject(req);
+	}
+	
+	// Called by SQS Consumers to stream an archive into S3 while it is being built
+	public S3MultipartOutputStream createS3ArchiveStream(SQSContext archiveCTX) {
+		return createS3ArchiveStream(archiveCTX, null, 0);
+	}
+	
+	// With a journal the upload of a previous run is continued when all of its committed parts are still there,
+	// every checkpoint (one per checkpointBytes) may cut one extra short part
+	public S3MultipartOutputStream createS3ArchiveStream(SQSContext archiveCTX, ArchiveJournal journal, long checkpointBytes) {
+		String key = getArchiveKeyName(archiveCTX.getLocalArchiveName());
+		// Grow the part size when the uncompressed context would not fit into 10000 parts
+		long contextSize = 0;
+		for(S3ArchiveObject obj : archiveCTX.getS3ArchiveObjects())
+			contextSize += Long.valueOf(obj.getSize());
+		long partBudget = MAX_PART_COUNT - MAX_PART_COUNT / 10;
+		if(checkpointBytes > 0)
+			partBudget -= Math.min(partBudget / 2, contextSize / checkpointBytes + 1);
+		long requiredPartSize = contextSize / partBudget + 1;
+		int streamPartSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(this.partSize, requiredPartSize));
+		if(journal != null && journal.getUploadId() != null) {
+			if(hasParts(getTargetBucket(), key, journal.getUploadId(), journal.getCommittedParts()))
+				return new S3MultipartOutputStream(getTargetBucket(), key, archiveStorageClass, streamPartSize, this.maxPartsInFlight,
+						this.uploadExecutor, journal.getUploadId(), journal.getCommittedParts(), journal.getArchiveBytes());
+			// The archive starts over in a new upload, the old one would never be completed
+			try {
+				store.abortMultipartUpload(getTargetBucket(), key, journal.getUploadId());
+			} catch (AmazonServiceException e) {
+				// Already completed or aborted
+			}
+			try {
+				journal.reset();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return new S3MultipartOutputStream(getTargetBucket(), key, archiveStorageClass, 
+				streamPartSize, this.maxPartsInFlight, this.uploadExecutor);
+	}
+	
+	// Called by ArchiveRestorer: the part size grows with the object so it fits into 10000 parts
+	public S3MultipartOutputStream createObjectStream(String bucket, String key, long size) {
+		int streamPartSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(this.partSize, size / (MAX_PART_COUNT - 1) + 1));
+		return new S3MultipartOutputStream(bucket, key, StorageClass.Standard, streamPartSize, this.maxPartsInFlight, this.uploadExecutor);
+	}
+	
+	// False when the upload was completed, aborted or lost one of the parts
+	private static boolean hasParts(String bucket, String key, String uploadId, List<PartETag> parts) {
+		Map<Integer, String> uploaded;
+		try {
+			uploaded = store.listParts(bucket, key, uploadId);
+		} catch (AmazonServiceException e) {
+			return false;
+		}
+		for(PartETag part : parts) {
+			if(!part.getETag().equals(uploaded.get(part.getPartNumber())))
+				return false;
+		}
+		return true;
+	}
+	
+	public static String s3PutObjectMultiPart(String key, String folder, String fileName) {
+		return s3PutObjectMultiPart(key, folder, fileName, archiveStorageClass);
+	}
+	
+	public static String s3PutObjectMultiPart(String key, String folder, String fileName, StorageClass storageClass) {
 		String fullKeyName = null;
 		if(folder.contains("/"))
 			fullKeyName = folder + key;
 		else
 			fullKeyName = folder + "/" + key;
 		
-		// Set Archive Storage Class:
-		//  - DeepArchive
-		//  - Glacier
-		//  - GlacierInstantRetrieval
-		PutObjectRequest putObjectRequest = new PutObjectRequest(getTargetBucket(), fullKeyName, new File(fileName));
-		putObjectRequest.withStorageClass(StorageClass.Glacier);
-		Upload upload = tm.upload(putObjectRequest);
+		File file = new File(fileName);
+		long start = System.nanoTime();
 		try {
-			// Wait for upload to complete, when done; shutdown Transfer Manager
-			upload.waitForCompletion();
-			if(upload.isDone())
-				tm.shutdownNow(false);
+			String eTag = store.putFile(getTargetBucket(), fullKeyName, file, storageClass);
+			FILE_UPLOAD_SECONDS.since(start);
+			UPLOAD_BYTES.add(file.length());
+			return eTag;
 		} catch (AmazonServiceException e) {
 			e.printStackTrace();
 		} catch (AmazonClientException e) {
 			e.printStackTrace();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
 		}
+		return null;
+	}
+	
+	public static String s3PutObject(String bucket, String key, InputStream data, long length, StorageClass storageClass) {
+		long start = System.nanoTime();
+		String eTag = store.putObject(bucket, key, data, length, storageClass);
+		PUT_SECONDS.since(start);
+		UPLOAD_BYTES.add(length);
+		return eTag;
+	}
+	
+	public static String s3InitiateMultipartUpload(String bucket, String key, StorageClass storageClass) {
+		return store.initiateMultipartUpload(bucket, key, storageClass);
+	}
+	
+	public static PartETag s3UploadPart(String bucket, String key, String uploadId, int partNumber, InputStream data, long length) {
+		long start = System.nanoTime();
+		PartETag part = store.uploadPart(bucket, key, uploadId, partNumber, data, length);
+		UPLOAD_PART_SECONDS.since(start);
+		UPLOAD_BYTES.add(length);
+		return part;
+	}
+	
+	public static String s3CompleteMultipartUpload(String bucket, String key, String uploadId, List<PartETag> parts) {
+		return store.completeMultipartUpload(bucket, key, uploadId, parts);
+	}
+	
+	public static void s3AbortMultipartUpload(String bucket, String key, String uploadId) {
+		store.abortMultipartUpload(bucket, key, uploadId);
+	}
+	
+	// Called by SQSConsumer: archive uploads left open in the archive folder of the target bucket
+	public static List<MultipartUpload> s3ListArchiveUploads() {
+		return store.listMultipartUploads(getTargetBucket(), getArchiveKeyName(""));
+	}
+	
+	public static void s3AbortArchiveUpload(MultipartUpload upload) {
+		store.abortMultipartUpload(getTargetBucket(), upload.getKey(), upload.getUploadId());
 	}
 	
 	public static void s3DeleteObject(String bucket, String key) {
-		s3.deleteObject(bucket, key);
+		store.deleteObject(bucket, key);
+	}
+	
+	// Only the Keys that failed are returned, up to 1000 Keys per request
+	public static List<DeleteError> s3DeleteObjects(String bucket, List<KeyVersion> keys) {
+		return store.deleteObjects(bucket, keys);
+	}
+	
+	// Length of the uploaded archive, checked before its source objects are deleted
+	// Length and ETag of the archive object, see SQSConsumer.deleteSourceObjects()
+	public static ObjectMetadata s3GetArchiveMetadata(String archiveName) {
+		return store.getObjectMetadata(getTargetBucket(), getArchiveKeyName(archiveName));
+	}
+	
+	// Called by S3BatchDeleter: the ETag the object has now
+	public static String s3GetObjectETag(String bucket, String key) {
+		return store.getObjectMetadata(bucket, key).getETag();
 	}
 	
 	public ListObjectsV2Result s3ListObjects(ListObjectsV2Request req) {
         ListObjectsV2Result listing;
-        listing=s3.listObjectsV2(req);
+        long start = System.nanoTime();
+        listing=store.listObjects(req);
+        LIST_SECONDS.since(start);
+        LISTED_KEYS.add(listing.getObjectSummaries().size());
         // Set next listing Token in ListObjectV2Request req
         String token = listing.getNextContinuationToken();
         req.setContinuationToken(token);
@@ -167,4 +512,21 @@ public class S3Interface {
 		Future<InputStream> result = this.executor.submit(job);
 		return result;
 	}
+	
+	// Completion Services are fed by the S3 executor in the order GETs finish
+	public CompletionService<InputStream> createCompletionService() {
+		return new ExecutorCompletionService<InputStream>(this.executor);
+	}
+	
+	public Future<InputStream> submitObjectIntoTar(S3ArchiveObject obj, S3PrefetchWindow window) {
+		migrationCallable job = new migrationCallable(obj, window);
+		Future<InputStream> result = this.executor.submit(job);
+		return result;
+	}
+	
+	public Future<InputStream> submitObjectIntoTar(S3ArchiveObject obj, S3PrefetchWindow window, CompletionService<InputStream> completion) {
+		migrationCallable job = new migrationCallable(obj, window);
+		Future<InputStream> result = completion.submit(job);
+		return result;
+	}
 }
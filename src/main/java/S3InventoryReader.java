@@ -0,0 +1,345 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import com.google.gson.Gson;
+
+/* Reads an S3 Inventory report instead of listing the bucket
+ * 		1. manifest.json names the gzipped CSV data files and the columns they hold
+ * 		2. Data files are read concurrently, one file per thread, from a local directory or from S3
+ * 		3. Every current object of the report is handed to the ObjectHandler on the reading thread
+ * A local report keeps the S3 layout: the data files in data/ next to or one level above manifest.json.
+ */
+public class S3InventoryReader {
+	private static final Gson gson = new Gson();
+	private static final String S3_SCHEME = "s3://";
+	private static final String BUCKET_ARN = "arn:aws:s3:::";
+	private static final int READ_BUFFER_SIZE = 256 * 1024;
+	private String manifestLocation;
+	private int threads;
+	private Logger logger = null;
+	
+	// Called for every current object, concurrently from the reading threads
+	public interface ObjectHandler {
+		void object(String key, long size, long lastModified) throws IOException;
+	}
+	
+	// manifest.json fields used by the reader
+	private static class inventoryManifest {
+		private String destinationBucket;
+		private String fileFormat;
+		private String fileSchema;
+		private List<inventoryFile> files;
+	}
+	
+	private static class inventoryFile {
+		private String key;
+		private String MD5checksum;
+	}
+	
+	S3InventoryReader(String manifestLocation, int threads, Logger logger) {
+		this.manifestLocation = manifestLocation;
+		this.threads = Math.max(threads, 1);
+		this.logger = logger;
+	}
+	
+	private boolean isS3() {
+		return this.manifestLocation.startsWith(S3_SCHEME);
+	}
+	
+	// Returns the number of objects read, fails when any data file could not be read completely
+	public long read(ObjectHandler handler) throws IOException {
+		inventoryManifest manifest = readManifest();
+		if(!"CSV".equalsIgnoreCase(manifest.fileFormat))
+			throw new IOException("Unsupported S3 Inventory Format: " + manifest.fileFormat + " (only CSV is supported)");
+		inventoryColumns columns = new inventoryColumns(manifest.fileSchema);
+		this.logger.info("Reading S3 Inventory: " + this.manifestLocation + " [" + manifest.files.size() + "] Data Files");
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		List<Future<Long>> files = new ArrayList<Future<Long>>();
+		long objects = 0;
+		try {
+			for(inventoryFile file : manifest.files)
+				files.add(executor.submit(new fileCallable(manifest, file, columns, handler)));
+			for(Future<Long> file : files)
+				objects += file.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Failed Reading S3 Inventory Data File", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted Reading S3 Inventory", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		this.logger.info("Read [" + objects + "] Objects from S3 Inventory: " + this.manifestLocation);
+		return objects;
+	}
+	
+	private inventoryManifest readManifest() throws IOException {
+		InputStream in;
+		if(isS3()) {
+			String location = this.manifestLocation.substring(S3_SCHEME.length());
+			int bucketEnd = location.indexOf('/');
+			if(bucketEnd < 0)
+				throw new IOException("S3 Inventory Manifest must be s3://bucket/key: " + this.manifestLocation);
+			in = S3Interface.s3GetObject(location.substring(0, bucketEnd), location.substring(bucketEnd + 1));
+		}
+		else
+			in = new FileInputStream(getManifestFile());
+		Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+		try {
+			inventoryManifest manifest = gson.fromJson(reader, inventoryManifest.class);
+			if(manifest == null || manifest.files == null || manifest.fileSchema == null)
+				throw new IOException("Not an S3 Inventory Manifest: " + this.manifestLocation);
+			return manifest;
+		} finally {
+			reader.close();
+		}
+	}
+	
+	// A local location is manifest.json itself or the directory holding it
+	private File getManifestFile() {
+		File manifest = new File(this.manifestLocation);
+		if(manifest.isDirectory())
+			manifest = new File(manifest, "manifest.json");
+		return manifest;
+	}
+	
+	private InputStream openDataFile(inventoryManifest manifest, inventoryFile file) throws IOException {
+		if(isS3()) {
+			String bucket = manifest.destinationBucket;
+			if(bucket.startsWith(BUCKET_ARN))
+				bucket = bucket.substring(BUCKET_ARN.length());
+			return S3Interface.s3GetObject(bucket, file.key);
+		}
+		String name = file.key.substring(file.key.lastIndexOf('/') + 1);
+		File manifestDir = getManifestFile().getAbsoluteFile().getParentFile();
+		File[] candidates = { new File(manifestDir.getParentFile(), "data/" + name), new File(manifestDir, "data/" + name), new File(manifestDir, name) };
+		for(File candidate : candidates) {
+			if(candidate.isFile())
+				return new FileInputStream(candidate);
+		}
+		throw new FileNotFoundException("S3 Inventory Data File not found next to the Manifest: " + file.key);
+	}
+	
+	// Column positions from the manifest's fileSchema, e.g. "Bucket, Key, Size, LastModifiedDate"
+	private static class inventoryColumns {
+		private int count;
+		private int key = -1;
+		private int size = -1;
+		private int lastModified = -1;
+		private int isLatest = -1;
+		private int isDeleteMarker = -1;
+		
+		inventoryColumns(String fileSchema) throws IOException {
+			String[] names = fileSchema.split(",");
+			this.count = names.length;
+			for(int i=0; i<names.length; i++) {
+				String name = names[i].trim();
+				if(name.equals("Key"))
+					this.key = i;
+				else if(name.equals("Size"))
+					this.size = i;
+				else if(name.equals("LastModifiedDate"))
+					this.lastModified = i;
+				else if(name.equals("IsLatest"))
+					this.isLatest = i;
+				else if(name.equals("IsDeleteMarker"))
+					this.isDeleteMarker = i;
+			}
+			if(this.key < 0 || this.size < 0)
+				throw new IOException("S3 Inventory must include the Key and Size fields: " + fileSchema);
+		}
+	}
+	
+	private class fileCallable implements Callable<Long> {
+		private inventoryManifest manifest;
+		private inventoryFile file;
+		private inventoryColumns columns;
+		private ObjectHandler handler;
+		
+		fileCallable(inventoryManifest manifest, inventoryFile file, inventoryColumns columns, ObjectHandler handler) {
+			this.manifest = manifest;
+			this.file = file;
+			this.columns = columns;
+			this.handler = handler;
+		}
+		
+		@Override
+		public Long call() throws Exception {
+			MessageDigest md5 = newMD5();
+			DigestInputStream raw = new DigestInputStream(openDataFile(this.manifest, this.file), md5);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(raw, READ_BUFFER_SIZE), StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+			String[] fields = new String[this.columns.count];
+			long objects = 0;
+			String line;
+			try {
+				while((line = reader.readLine()) != null) {
+					if(Thread.currentThread().isInterrupted())
+						throw new IOException("Interrupted Reading S3 Inventory Data File: " + this.file.key);
+					if(!parseLine(line, fields))
+						throw new IOException("Malformed S3 Inventory Row in " + this.file.key + ": " + line);
+					// Versioned inventories list every version, only current objects are archived
+					if(this.columns.isDeleteMarker >= 0 && "true".equals(fields[this.columns.isDeleteMarker]))
+						continue;
+					if(this.columns.isLatest >= 0 && "false".equals(fields[this.columns.isLatest]))
+						continue;
+					String key = decodeKey(fields[this.columns.key]);
+					long size = Long.parseLong(fields[this.columns.size]);
+					long lastModified = 0;
+					if(this.columns.lastModified >= 0 && !fields[this.columns.lastModified].isEmpty())
+						lastModified = parseTimestamp(fields[this.columns.lastModified]);
+					this.handler.object(key, size, lastModified);
+					objects++;
+				}
+				// Drain the gzip trailer so the checksum covers the whole file
+				while(raw.read() >= 0);
+			} finally {
+				reader.close();
+			}
+			String checksum = toHex(md5.digest());
+			if(this.file.MD5checksum != null && !this.file.MD5checksum.equalsIgnoreCase(checksum))
+				throw new IOException("S3 Inventory Data File " + this.file.key + " MD5 " + checksum + " does not match the Manifest");
+			logger.info("Read [" + objects + "] Objects from S3 Inventory Data File: " + this.file.key);
+			return objects;
+		}
+	}
+	
+	// Splits one CSV row into fields, every inventory field is quoted and quotes inside are doubled
+	static boolean parseLine(String line, String[] fields) {
+		int field = 0;
+		int i = 0;
+		int length = line.length();
+		while(field < fields.length) {
+			if(i < length && line.charAt(i) == '"') {
+				int start = ++i;
+				StringBuilder unquoted = null;
+				while(true) {
+					int quote = line.indexOf('"', i);
+					if(quote < 0)
+						return false;
+					if(quote + 1 < length && line.charAt(quote + 1) == '"') {
+						if(unquoted == null)
+							unquoted = new StringBuilder();
+						unquoted.append(line, start, quote + 1);
+						i = quote + 2;
+						start = i;
+						continue;
+					}
+					if(unquoted == null)
+						fields[field] = line.substring(start, quote);
+					else
+						fields[field] = unquoted.append(line, start, quote).toString();
+					i = quote + 1;
+					break;
+				}
+			}
+			else {
+				int comma = line.indexOf(',', i);
+				int end = comma < 0 ? length : comma;
+				fields[field] = line.substring(i, end);
+				i = end;
+			}
+			field++;
+			if(i >= length)
+				break;
+			if(line.charAt(i) != ',')
+				return false;
+			i++;
+		}
+		return field == fields.length;
+	}
+	
+	// Inventory timestamps are "yyyy-MM-ddTHH:mm:ss.SSSZ", anything else goes through Instant
+	static long parseTimestamp(String value) {
+		if(value.length() != 24 || value.charAt(4) != '-' || value.charAt(10) != 'T' || value.charAt(19) != '.' || value.charAt(23) != 'Z')
+			return Instant.parse(value).toEpochMilli();
+		int year = digits(value, 0, 4);
+		int month = digits(value, 5, 7);
+		int day = digits(value, 8, 10);
+		int hour = digits(value, 11, 13);
+		int minute = digits(value, 14, 16);
+		int second = digits(value, 17, 19);
+		int millis = digits(value, 20, 23);
+		if((year | month | day | hour | minute | second | millis) < 0)
+			return Instant.parse(value).toEpochMilli();
+		long days = GroupingStrategies.daysFromCivil(year, month, day);
+		return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+	}
+	
+	// -1 when a character is not a digit
+	private static int digits(String value, int start, int end) {
+		int number = 0;
+		for(int i=start; i<end; i++) {
+			int digit = value.charAt(i) - '0';
+			if(digit < 0 || digit > 9)
+				return -1;
+			number = number * 10 + digit;
+		}
+		return number;
+	}
+	
+	// Inventory Keys are URL encoded
+	private static String decodeKey(String key) {
+		if(key.indexOf('%') < 0 && key.indexOf('+') < 0)
+			return key;
+		try {
+			return URLDecoder.decode(key, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static MessageDigest newMD5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String toHex(byte[] digest) {
+		StringBuilder hex = new StringBuilder(digest.length * 2);
+		for(byte b : digest)
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.StorageClass;
+
+/* The S3MultipartOutputStream uploads an archive while it is being written
+ * 		1. Bytes are collected into part sized buffers
+ * 		2. Every full buffer is uploaded as a multipart upload part on the upload executor
+ * 		3. At most maxPartsInFlight buffers are held, writers block until a part upload returns
+ */
+public class S3MultipartOutputStream extends OutputStream {
+	private String bucket;
+	private String key;
+	private StorageClass storageClass;
+	private int partSize;
+	private int maxPartsInFlight;
+	private ExecutorService executor;
+	private BlockingQueue<byte[]> freeBuffers;
+	private int allocatedBuffers = 0;
+	private byte[] buffer = null;
+	private int position = 0;
+	private String uploadId = null;
+	private String eTag = null;
+	private int partNumber = 1;
+	private long bytesWritten = 0;
+	private List<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+	private int checkpointedParts = 0;
+	private volatile Exception failure = null;
+	private boolean closed = false;
+	
+	S3MultipartOutputStream(String bucket, String key, StorageClass storageClass, int partSize, int maxPartsInFlight, ExecutorService executor) {
+		this.bucket = bucket;
+		this.key = key;
+		this.storageClass = storageClass;
+		this.partSize = partSize;
+		this.maxPartsInFlight = maxPartsInFlight;
+		this.executor = executor;
+		// One buffer is filled by the writer while the others are uploading
+		this.freeBuffers = new ArrayBlockingQueue<byte[]>(maxPartsInFlight + 1);
+	}
+	
+	// Continues an upload after committedBytes, the parts listed were uploaded by a previous run
+	S3MultipartOutputStream(String bucket, String key, StorageClass storageClass, int partSize, int maxPartsInFlight, ExecutorService executor,
+			String uploadId, List<PartETag> committedParts, long committedBytes) {
+		this(bucket, key, storageClass, partSize, maxPartsInFlight, executor);
+		this.uploadId = uploadId;
+		for(PartETag part : committedParts) {
+			this.parts.add(CompletableFuture.completedFuture(part));
+			this.partNumber = Math.max(this.partNumber, part.getPartNumber() + 1);
+		}
+		this.checkpointedParts = this.parts.size();
+		this.bytesWritten = committedBytes;
+	}
+	
+	private class partUploadCallable implements Callable<PartETag> {
+		private byte[] part = null;
+		private int length;
+		private int number;
+		
+		partUploadCallable(byte[] part, int length, int number) {
+			this.part = part;
+			this.length = length;
+			this.number = number;
+		}
+
+		@Override
+		public PartETag call() throws Exception {
+			try {
+				return S3Interface.s3UploadPart(bucket, key, uploadId, number, new ByteArrayInputStream(part, 0, length), length);
+			} catch (Exception e) {
+				failure = e;
+				throw e;
+			} finally {
+				// Hand the buffer back to the writer even if the part failed
+				freeBuffers.offer(part);
+			}
+		}
+	}
+	
+	public String getKey() {
+		return this.key;
+	}
+	
+	public long getBytesWritten() {
+		return this.bytesWritten;
+	}
+	
+	public String getUploadId() {
+		return this.uploadId;
+	}
+	
+	// ETag S3 returned for the completed object, null until closed successfully
+	public String getETag() {
+		return this.eTag;
+	}
+	
+	// Buffered bytes can be cut into a part now: none at all or at least the minimum part size
+	public boolean canCheckpoint() {
+		return this.buffer == null || this.position == 0 || this.position >= S3Interface.MIN_PART_SIZE;
+	}
+	
+	// Uploads the buffered bytes as a part and waits for every part in flight,
+	// returns the parts uploaded since the previous checkpoint or null when the buffer is too small to cut
+	public List<PartETag> checkpoint() throws IOException {
+		checkState();
+		if(!canCheckpoint())
+			return null;
+		if(this.buffer != null && this.position > 0)
+			submitPart();
+		List<PartETag> uploaded = new ArrayList<PartETag>();
+		try {
+			for(Future<PartETag> part : this.parts.subList(this.checkpointedParts, this.parts.size()))
+				uploaded.add(part.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for multipart upload parts: " + this.key, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Multipart upload part failed: " + this.key, e.getCause());
+		}
+		this.checkpointedParts = this.parts.size();
+		return uploaded;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		if(this.buffer == null || this.position == this.partSize)
+			nextBuffer();
+		this.buffer[this.position++] = (byte) b;
+		this.bytesWritten++;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			if(this.buffer == null || this.position == this.partSize)
+				nextBuffer();
+			int count = Math.min(len, this.partSize - this.position);
+			System.arraycopy(b, off, this.buffer, this.position, count);
+			this.position += count;
+			this.bytesWritten += count;
+			off += count;
+			len -= count;
+		}
+	}
+	
+	// Upload the current buffer (when full) and take a free buffer for the next part
+	private void nextBuffer() throws IOException {
+		checkState();
+		if(this.buffer != null) 
+			submitPart();
+		this.buffer = takeBuffer();
+		this.position = 0;
+	}
+	
+	private byte[] takeBuffer() throws IOException {
+		byte[] next = this.freeBuffers.poll();
+		if(next == null && this.allocatedBuffers <= this.maxPartsInFlight) {
+			this.allocatedBuffers++;
+			return new byte[this.partSize];
+		}
+		try {
+			while(next == null)
+				next = this.freeBuffers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for a multipart upload buffer: " + this.key, e);
+		}
+		checkState();
+		return next;
+	}
+	
+	private void submitPart() {
+		if(this.uploadId == null)
+			this.uploadId = S3Interface.s3InitiateMultipartUpload(this.bucket, this.key, this.storageClass);
+		partUploadCallable job = new partUploadCallable(this.buffer, this.position, this.partNumber++);
+		this.parts.add(this.executor.submit(job));
+		this.buffer = null;
+	}
+	
+	private void checkState() throws IOException {
+		if(this.closed)
+			throw new IOException("Multipart upload stream already closed: " + this.key);
+		if(this.failure != null)
+			throw new IOException("Multipart upload part failed: " + this.key, this.failure);
+	}
+
+	// Completes the upload, archives smaller than a single part are sent with one PutObject
+	@Override
+	public void close() throws IOException {
+		if(this.closed)
+			return;
+		try {
+			checkState();
+			if(this.uploadId == null) {
+				int length = (this.buffer == null) ? 0 : this.position;
+				byte[] data = (this.buffer == null) ? new byte[0] : this.buffer;
+				this.eTag = S3Interface.s3PutObject(this.bucket, this.key, new ByteArrayInputStream(data, 0, length), length, this.storageClass);
+			}
+			else {
+				if(this.buffer != null && this.position > 0)
+					submitPart();
+				List<PartETag> etags = new ArrayList<PartETag>();
+				for(Future<PartETag> part : this.parts)
+					etags.add(part.get());
+				this.eTag = S3Interface.s3CompleteMultipartUpload(this.bucket, this.key, this.uploadId, etags);
+			}
+			this.closed = true;
+		} catch (Exception e) {
+			abort();
+			if(e instanceof IOException)
+				throw (IOException) e;
+			if(e instanceof ExecutionException && e.getCause() != null)
+				throw new IOException("Multipart upload failed: " + this.key, e.getCause());
+			throw new IOException("Multipart upload failed: " + this.key, e);
+		} finally {
+			this.buffer = null;
+			this.freeBuffers.clear();
+		}
+	}
+	
+	// Stops writing but leaves the upload in place for a later run to resume from its last checkpoint
+	public void suspend() {
+		if(this.closed)
+			return;
+		this.closed = true;
+		drainParts();
+		this.buffer = null;
+		this.freeBuffers.clear();
+	}
+	
+	private void drainParts() {
+		for(Future<PartETag> part : this.parts) {
+			try {
+				part.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// Failure already recorded, keep draining the remaining parts
+			}
+		}
+	}
+	
+	// Abandons the upload, waiting for in-flight parts so no orphaned parts are left behind
+	public void abort() {
+		if(this.closed)
+			return;
+		this.closed = true;
+		drainParts();
+		if(this.uploadId != null) {
+			try {
+				S3Interface.s3AbortMultipartUpload(this.bucket, this.key, this.uploadId);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		this.buffer = null;
+		this.freeBuffers.clear();
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/* Groups listed S3 Objects into one SQS Context per (prefix, group), the group comes from the GroupingStrategy
+ * 		1. Objects arrive in listing order, a change of prefix completes the groups of the previous prefix
+ * 		2. Objects of the current prefix are buffered until the heap budget is exceeded,
+ * 		   then sorted by (group, date, key) and spilled as a run to local disk
+ * 		3. A completed prefix is merged back from its runs and handed out group by group
+ * Objects sharing a date are all kept, the key breaks the tie.
+ * Objects that do not arrive in listing order (e.g. read from an S3 Inventory) are grouped unordered:
+ * every prefix is buffered and spilled together and all groups are handed out on close, completed is not called.
+ */
+public class S3ObjectGrouper {
+	// Receives every completed (prefix, group), then the prefix itself with the last Key listed under it
+	// Called from the thread adding to or closing the grouper
+	public interface ContextHandler {
+		void handle(SQSContext ctx) throws IOException;
+		void completed(String prefix, String lastKey) throws IOException;
+	}
+	
+	// Rough heap footprint of an S3ArchiveObject excluding its Strings' characters
+	private static final int OBJECT_OVERHEAD = 160;
+	private static final int RUN_BUFFER_SIZE = 64 * 1024;
+	private static final Comparator<groupedObject> GROUP_DATE_KEY_ORDER = new Comparator<groupedObject>() {
+		@Override
+		public int compare(groupedObject obj1, groupedObject obj2) {
+			int order = comparePrefix(obj1.prefix, obj2.prefix);
+			if(order != 0)
+				return order;
+			order = obj1.group.compareTo(obj2.group);
+			if(order != 0)
+				return order;
+			order = obj1.obj.getDate().compareTo(obj2.obj.getDate());
+			if(order != 0)
+				return order;
+			return obj1.obj.getKey().compareTo(obj2.obj.getKey());
+		}
+	};
+	private File spillDirectory;
+	private long bufferBytes;
+	private ContextHandler handler = null;
+	private Logger logger = null;
+	private String currentPrefix = null;
+	private String lastKey = null;
+	private List<groupedObject> buffer = new ArrayList<groupedObject>();
+	private long bufferedBytes = 0;
+	private List<File> runs = new ArrayList<File>();
+	private boolean listingOrder = true;
+	
+	S3ObjectGrouper(File spillDirectory, long bufferBytes, ContextHandler handler, Logger logger) {
+		this(spillDirectory, bufferBytes, handler, logger, true);
+	}
+	
+	S3ObjectGrouper(File spillDirectory, long bufferBytes, ContextHandler handler, Logger logger, boolean listingOrder) {
+		this.spillDirectory = spillDirectory;
+		this.bufferBytes = bufferBytes;
+		this.handler = handler;
+		this.logger = logger;
+		this.listingOrder = listingOrder;
+	}
+	
+	// Listed Object with its prefix and the group the GroupingStrategy assigned to it
+	private static class groupedObject {
+		private S3ArchiveObject obj;
+		private String prefix;
+		private String group;
+		
+		groupedObject(S3ArchiveObject obj, String prefix, String group) {
+			this.obj = obj;
+			this.prefix = prefix;
+			this.group = group;
+		}
+	}
+	
+	// Objects of one listed prefix share the prefix String, null (no '/') sorts first
+	private static int comparePrefix(String prefix1, String prefix2) {
+		if(prefix1 == prefix2)
+			return 0;
+		if(prefix1 == null)
+			return -1;
+		if(prefix2 == null)
+			return 1;
+		return prefix1.compareTo(prefix2);
+	}
+	
+	// Parent "folder" of the Key, null for Keys without a '/'
+	public static String generatePrefix(String key) {
+		int end = key.lastIndexOf('/');
+		return end < 0 ? null : key.substring(0, end);
+	}
+	
+	// Compares without building the Key's prefix
+	private boolean isCurrentPrefix(String key) {
+		int end = key.lastIndexOf('/');
+		if(this.currentPrefix == null)
+			return end < 0;
+		return end == this.currentPrefix.length() && key.startsWith(this.currentPrefix);
+	}
+	
+	private boolean isEmpty() {
+		return this.buffer.isEmpty() && this.runs.isEmpty();
+	}
+	
+	private static long estimateSize(S3ArchiveObject obj, String group) {
+		int chars = obj.getKey().length() + obj.getSize().length() + obj.getLocalFileName().length() + group.length();
+		return OBJECT_OVERHEAD + 2L * chars;
+	}
+	
+	public void add(S3ArchiveObject obj, String group) throws IOException {
+		if(!this.listingOrder) {
+			buffer(new groupedObject(obj, generatePrefix(obj.getKey()), group));
+			return;
+		}
+		if(isEmpty())
+			this.currentPrefix = generatePrefix(obj.getKey());
+		else if(!isCurrentPrefix(obj.getKey())) {
+			// Got a new prefix, build contexts and send into SQS Queue
+			completePrefix();
+			this.currentPrefix = generatePrefix(obj.getKey());
+		}
+		this.lastKey = obj.getKey();
+		buffer(new groupedObject(obj, this.currentPrefix, group));
+	}
+	
+	private void buffer(groupedObject next) throws IOException {
+		this.buffer.add(next);
+		this.bufferedBytes += estimateSize(next.obj, next.group);
+		if(this.bufferedBytes > this.bufferBytes)
+			spill();
+	}
+	
+	// Completes the groups of the last prefix, or of every prefix when grouping unordered
+	public void close() throws IOException {
+		if(!isEmpty())
+			completePrefix();
+	}
+	
+	// Drops buffered objects and spilled runs without handing out any group
+	public void discard() {
+		this.buffer.clear();
+		this.bufferedBytes = 0;
+		this.currentPrefix = null;
+		for(File run : this.runs)
+			run.delete();
+		this.runs.clear();
+	}
+	
+	private void completePrefix() throws IOException {
+		try {
+			if(this.runs.isEmpty()) {
+				Collections.sort(this.buffer, GROUP_DATE_KEY_ORDER);
+				emitGroups(this.buffer.iterator());
+			}
+			else {
+				spill();
+				mergeRuns();
+			}
+			if(this.listingOrder)
+				this.handler.completed(this.currentPrefix, this.lastKey);
+		} finally {
+			discard();
+		}
+	}
+	
+	private void emitGroups(Iterator<groupedObject> sorted) throws IOException {
+		SQSContext ctx = null;
+		String prevGroup = null;
+		String prevPrefix = null;
+		while(sorted.hasNext()) {
+			groupedObject next = sorted.next();
+			if(ctx == null || !next.group.equals(prevGroup) || comparePrefix(next.prefix, prevPrefix) != 0) {
+				if(ctx != null)
+					this.handler.handle(ctx);
+				ctx = new SQSContext(next.prefix, next.group, null, null);
+			}
+			ctx.addS3ArchiveObject(next.obj);
+			prevGroup = next.group;
+			prevPrefix = next.prefix;
+		}
+		if(ctx != null)
+			this.handler.handle(ctx);
+	}
+	
+	// Writes the buffered objects as one sorted run
+	private void spill() throws IOException {
+		if(this.buffer.isEmpty())
+			return;
+		Collections.sort(this.buffer, GROUP_DATE_KEY_ORDER);
+		if(!this.spillDirectory.exists())
+			this.spillDirectory.mkdirs();
+		File run = File.createTempFile("group-", ".run", this.spillDirectory);
+		this.runs.add(run);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), RUN_BUFFER_SIZE));
+		try {
+			for(groupedObject next : this.buffer) {
+				S3ArchiveObject obj = next.obj;
+				out.writeUTF(next.group);
+				out.writeUTF(obj.getKey());
+				out.writeUTF(obj.getSize());
+				out.writeUTF(obj.getLocalFileName());
+				out.writeLong(obj.getDate().getTime());
+			}
+		} finally {
+			out.close();
+		}
+		this.logger.info("Spilled [" + this.buffer.size() + "] Objects of Prefix: " + (this.listingOrder ? this.currentPrefix : "*") + " to " + run.getName());
+		this.buffer.clear();
+		this.bufferedBytes = 0;
+	}
+	
+	private void mergeRuns() throws IOException {
+		List<spillRun> readers = new ArrayList<spillRun>();
+		try {
+			PriorityQueue<spillRun> heads = new PriorityQueue<spillRun>(this.runs.size(), new Comparator<spillRun>() {
+				@Override
+				public int compare(spillRun run1, spillRun run2) {
+					return GROUP_DATE_KEY_ORDER.compare(run1.head, run2.head);
+				}
+			});
+			for(File run : this.runs) {
+				spillRun reader = new spillRun(run, this.listingOrder ? this.currentPrefix : null);
+				readers.add(reader);
+				if(reader.advance())
+					heads.add(reader);
+			}
+			emitGroups(new mergeIterator(heads));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for(spillRun reader : readers)
+				reader.close();
+		}
+	}
+	
+	// Sequential reader over one spilled run, head is the next object in (prefix, group, date, key) order
+	// Runs of one listed prefix share its String, unordered runs rebuild the prefix of every Key
+	private static class spillRun {
+		private DataInputStream in;
+		private groupedObject head = null;
+		private String prefix;
+		
+		spillRun(File run, String prefix) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), RUN_BUFFER_SIZE));
+			this.prefix = prefix;
+		}
+		
+		boolean advance() throws IOException {
+			String group;
+			try {
+				group = this.in.readUTF();
+			} catch (EOFException e) {
+				this.head = null;
+				return false;
+			}
+			String key = this.in.readUTF();
+			String size = this.in.readUTF();
+			String fileName = this.in.readUTF();
+			Date date = new Date(this.in.readLong());
+			String prefix = this.prefix != null ? this.prefix : generatePrefix(key);
+			this.head = new groupedObject(new S3ArchiveObject(key, size, null, null, fileName, date), prefix, group);
+			return true;
+		}
+		
+		void close() throws IOException {
+			this.in.close();
+		}
+	}
+	
+	private static class mergeIterator implements Iterator<groupedObject> {
+		private PriorityQueue<spillRun> heads;
+		
+		mergeIterator(PriorityQueue<spillRun> heads) {
+			this.heads = heads;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return !this.heads.isEmpty();
+		}
+		
+		@Override
+		public groupedObject next() {
+			spillRun run = this.heads.poll();
+			if(run == null)
+				throw new NoSuchElementException();
+			groupedObject obj = run.head;
+			try {
+				if(run.advance())
+					this.heads.add(run);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return obj;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.amazonaws.services.s3.transfer.Upload;
+
+/* ObjectStore over an AmazonS3 client
+ */
+public class S3ObjectStore implements ObjectStore {
+	static ProfileCredentialsProvider credentialsProvider;
+	private AmazonS3 s3;
+	
+	// Connection pool must cover s3MaxConCount GETs plus uploads and listings
+	S3ObjectStore(String region, int s3MaxConCount, String authType) {
+		ClientConfiguration clientConfig = new ClientConfiguration()
+				.withMaxConnections(s3MaxConCount + ClientConfiguration.DEFAULT_MAX_CONNECTIONS);
+		
+		if(authType.compareTo("iam-keys")==0) {
+			// Credentials in ~/.aws/credentials
+			credentialsProvider = new ProfileCredentialsProvider();
+			try {
+				credentialsProvider.getCredentials();
+			} catch (Exception e) {
+				throw new AmazonClientException(
+						"Cannot load the credentials from the credential profiles file. " +
+						"Please make sure that your credentials file is at the correct " +
+						"location (~/.aws/credentials), and is in valid format.",e);
+			}
+	        this.s3 = AmazonS3ClientBuilder.standard()
+	        		.withCredentials(credentialsProvider)
+	        		.withRegion(region)
+	        		.withClientConfiguration(clientConfig)
+	        		.build();
+        }
+		else if(authType.compareTo("iam-role")==0) {
+	        this.s3 = AmazonS3ClientBuilder.standard()
+	        		.withRegion(region)
+	        		.withClientConfiguration(clientConfig)
+	        		.build();
+		}
+	}
+	
+	S3ObjectStore(AmazonS3 s3) {
+		this.s3 = s3;
+	}
+	
+	@Override
+	public ListObjectsV2Result listObjects(ListObjectsV2Request req) {
+		return this.s3.listObjectsV2(req);
+	}
+	
+	@Override
+	public S3Object getObject(GetObjectRequest req) {
+		return this.s3.getObject(req);
+	}
+	
+	@Override
+	public ObjectMetadata getObjectMetadata(String bucket, String key) {
+		return this.s3.getObjectMetadata(bucket, key);
+	}
+	
+	@Override
+	public String putObject(String bucket, String key, InputStream data, long length, StorageClass storageClass) {
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(length);
+		PutObjectRequest putObjectRequest = new PutObjectRequest(bucket, key, data, metadata);
+		putObjectRequest.withStorageClass(storageClass);
+		return this.s3.putObject(putObjectRequest).getETag();
+	}
+	
+	@Override
+	public String putFile(String bucket, String key, File file, StorageClass storageClass) {
+		TransferManager tm = TransferManagerBuilder.standard()
+                .withS3Client(this.s3)
+                .withMinimumUploadPartSize((long) 3000000)  // Upload 3MB Parts
+                .build();
+		PutObjectRequest putObjectRequest = new PutObjectRequest(bucket, key, file);
+		putObjectRequest.withStorageClass(storageClass);
+		Upload upload = tm.upload(putObjectRequest);
+		try {
+			// Wait for upload to complete, when done; shutdown Transfer Manager
+			String eTag = upload.waitForUploadResult().getETag();
+			if(upload.isDone())
+				tm.shutdownNow(false);
+			return eTag;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted uploading " + key, e);
+		}
+	}
+	
+	@Override
+	public String initiateMultipartUpload(String bucket, String key, StorageClass storageClass) {
+		InitiateMultipartUploadRequest req = new InitiateMultipartUploadRequest(bucket, key)
+				.withStorageClass(storageClass);
+		return this.s3.initiateMultipartUpload(req).getUploadId();
+	}
+	
+	@Override
+	public PartETag uploadPart(String bucket, String key, String uploadId, int partNumber, InputStream data, long length) {
+		UploadPartRequest req = new UploadPartRequest()
+				.withBucketName(bucket)
+				.withKey(key)
+				.withUploadId(uploadId)
+				.withPartNumber(partNumber)
+				.withInputStream(data)
+				.withPartSize(length);
+		return this.s3.uploadPart(req).getPartETag();
+	}
+	
+	@Override
+	public Map<Integer, String> listParts(String bucket, String key, String uploadId) {
+		Map<Integer, String> uploaded = new HashMap<Integer, String>();
+		ListPartsRequest req = new ListPartsRequest(bucket, key, uploadId);
+		PartListing listing;
+		do {
+			listing = this.s3.listParts(req);
+			for(PartSummary part : listing.getParts())
+				uploaded.put(part.getPartNumber(), part.getETag());
+			req.setPartNumberMarker(listing.getNextPartNumberMarker());
+		} while(listing.isTruncated());
+		return uploaded;
+	}
+	
+	@Override
+	public String completeMultipartUpload(String bucket, String key, String uploadId, List<PartETag> parts) {
+		return this.s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, parts)).getETag();
+	}
+	
+	@Override
+	public void abortMultipartUpload(String bucket, String key, String uploadId) {
+		this.s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+	}
+	
+	@Override
+	public List<MultipartUpload> listMultipartUploads(String bucket, String prefix) {
+		List<MultipartUpload> uploads = new ArrayList<MultipartUpload>();
+		ListMultipartUploadsRequest req = new ListMultipartUploadsRequest(bucket).withPrefix(prefix);
+		MultipartUploadListing listing;
+		do {
+			listing = this.s3.listMultipartUploads(req);
+			uploads.addAll(listing.getMultipartUploads());
+			req.setKeyMarker(listing.getNextKeyMarker());
+			req.setUploadIdMarker(listing.getNextUploadIdMarker());
+		} while(listing.isTruncated());
+		return uploads;
+	}
+	
+	@Override
+	public void deleteObject(String bucket, String key) {
+		this.s3.deleteObject(bucket, key);
+	}
+	
+	// Quiet requests only report the Keys that failed
+	@Override
+	public List<DeleteError> deleteObjects(String bucket, List<KeyVersion> keys) {
+		DeleteObjectsRequest req = new DeleteObjectsRequest(bucket)
+				.withKeys(keys)
+				.withQuiet(true);
+		try {
+			this.s3.deleteObjects(req);
+			return new ArrayList<DeleteError>();
+		} catch (MultiObjectDeleteException e) {
+			return e.getErrors();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/* The S3PrefetchWindow bounds the S3 GETs a consumer keeps open ahead of the tar writer
+ * 		1. Every open GET holds its connections (one, or one per range in flight of a ranged GET) and reserves the object
+ * 		   size in bytes
+ * 		2. Consumer windows chain to one process window, a GET must fit into both
+ * 		3. Small objects may be read fully into pooled buffers so their connection is released early
+ */
+public class S3PrefetchWindow {
+	private S3PrefetchWindow parent = null;
+	private long maxBytes;
+	private int maxConnections;
+	private long bytes = 0;
+	private int connections = 0;
+	private int bufferObjectSize;
+	private int maxPooledBuffers;
+	private ConcurrentLinkedQueue<byte[]> bufferPool = new ConcurrentLinkedQueue<byte[]>();
+	
+	// Process window, owns the pooled buffers for small objects
+	S3PrefetchWindow(long maxBytes, int maxConnections, int bufferObjectSize) {
+		this.maxBytes = Math.max(1, maxBytes);
+		this.maxConnections = Math.max(1, maxConnections);
+		this.bufferObjectSize = bufferObjectSize;
+		this.maxPooledBuffers = (bufferObjectSize > 0) ? (int) Math.min(1024, this.maxBytes / bufferObjectSize) : 0;
+	}
+	
+	// Consumer window, every reservation is also taken from the process window
+	S3PrefetchWindow(long maxBytes, int maxConnections, S3PrefetchWindow parent) {
+		this(maxBytes, maxConnections, 0);
+		this.parent = parent;
+	}
+	
+	private long clamp(long size) {
+		// Objects larger than the window use the whole window
+		return Math.min(Math.max(size, 0), this.maxBytes);
+	}
+	
+	private int clamp(int connections) {
+		// GETs with more ranges than the window has connections use all of them
+		return Math.min(connections, this.maxConnections);
+	}
+	
+	private boolean hasRoom(long size, int connections) {
+		return this.connections + clamp(connections) <= this.maxConnections && this.bytes + clamp(size) <= this.maxBytes;
+	}
+	
+	// Reserves connections and size bytes when both windows have room
+	public boolean tryAcquire(long size, int connections) {
+		synchronized(this) {
+			if(!hasRoom(size, connections))
+				return false;
+			this.connections += clamp(connections);
+			this.bytes += clamp(size);
+		}
+		if(this.parent != null && !this.parent.tryAcquire(size, connections)) {
+			release(size, connections, false);
+			return false;
+		}
+		return true;
+	}
+	
+	// Blocks until there is room, callers must not hold reservations they are still to release
+	public void acquire(long size, int connections) throws InterruptedException {
+		synchronized(this) {
+			while(!hasRoom(size, connections))
+				this.wait();
+			this.connections += clamp(connections);
+			this.bytes += clamp(size);
+		}
+		if(this.parent != null) {
+			try {
+				this.parent.acquire(size, connections);
+			} catch (InterruptedException e) {
+				release(size, connections, false);
+				throw e;
+			}
+		}
+	}
+	
+	public void releaseConnections(int connections) {
+		release(0, connections, true);
+	}
+	
+	public void releaseBytes(long size) {
+		release(size, 0, true);
+	}
+	
+	private void release(long size, int connections, boolean propagate) {
+		synchronized(this) {
+			this.connections -= clamp(connections);
+			this.bytes -= clamp(size);
+			this.notifyAll();
+		}
+		if(propagate && this.parent != null)
+			this.parent.release(size, connections, true);
+	}
+	
+	// Objects up to this size are buffered in memory instead of holding their connection
+	public int getBufferObjectSize() {
+		if(this.parent != null)
+			return this.parent.getBufferObjectSize();
+		return this.bufferObjectSize;
+	}
+	
+	public byte[] takeBuffer() {
+		if(this.parent != null)
+			return this.parent.takeBuffer();
+		byte[] buffer = this.bufferPool.poll();
+		if(buffer == null)
+			buffer = new byte[this.bufferObjectSize];
+		return buffer;
+	}
+	
+	public void giveBuffer(byte[] buffer) {
+		if(this.parent != null) {
+			this.parent.giveBuffer(buffer);
+			return;
+		}
+		if(this.bufferPool.size() < this.maxPooledBuffers)
+			this.bufferPool.offer(buffer);
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.amazonaws.services.s3.model.S3Object;
+
+/* The S3RangedInputStream reads one large S3 Object as concurrent ranged GETs
+ * 		1. The object is split into fixed size ranges planned from the listed object size
+ * 		2. At most maxRangesInFlight ranges are fetched (and buffered) ahead of the reader
+ * 		3. Ranges are handed out in order, a failed range is retried on its own
+ */
+public class S3RangedInputStream extends InputStream {
+	private static final int MAX_RANGE_ATTEMPTS = 4;
+	private String bucket;
+	private String key;
+	private long size;
+	private int rangeSize;
+	private int maxRangesInFlight;
+	private ExecutorService executor;
+	private String eTag = null;
+	private String sourceMD5 = null;
+	private String versionId = null;
+	private long nextRangeStart = 0;
+	private ArrayDeque<Future<byte[]>> ranges = new ArrayDeque<Future<byte[]>>();
+	private byte[] current = null;
+	private int position = 0;
+	private boolean closed = false;
+	
+	// The first range is read by the calling thread, it pins the ETag for the following ranges
+	S3RangedInputStream(String bucket, String key, long size, int rangeSize, int maxRangesInFlight, ExecutorService executor) throws IOException {
+		this.bucket = bucket;
+		this.key = key;
+		this.size = size;
+		this.rangeSize = rangeSize;
+		this.maxRangesInFlight = Math.max(1, maxRangesInFlight);
+		this.executor = executor;
+		long end = Math.min(size, rangeSize) - 1;
+		this.current = new rangeCallable(0, end).call();
+		this.nextRangeStart = end + 1;
+		fillRanges();
+	}
+	
+	private class rangeCallable implements Callable<byte[]> {
+		private long start;
+		private long end;
+		
+		rangeCallable(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public byte[] call() throws IOException {
+			IOException failure = null;
+			for(int attempt = 0; attempt < MAX_RANGE_ATTEMPTS; attempt++) {
+				if(attempt > 0) {
+					try {
+						Thread.sleep(100L << attempt);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted retrying range of " + key, e);
+					}
+				}
+				try {
+					return readRange();
+				} catch (Exception e) {
+					failure = (e instanceof IOException) ? (IOException) e : new IOException(e);
+				}
+			}
+			throw new IOException("Failed reading range " + this.start + "-" + this.end + " of " + key, failure);
+		}
+		
+		private byte[] readRange() throws IOException {
+			S3Object obj = S3Interface.s3GetObjectRange(bucket, key, this.start, this.end, eTag);
+			if(obj == null)
+				throw new IOException("S3 Object changed while reading ranges: " + key);
+			byte[] data = new byte[(int) (this.end - this.start + 1)];
+			InputStream in = obj.getObjectContent();
+			try {
+				int length = 0;
+				int count;
+				while(length < data.length && (count = in.read(data, length, data.length - length)) != -1)
+					length += count;
+				if(length != data.length)
+					throw new IOException("Short range read of " + key + ": " + length + " of " + data.length + " bytes");
+			} finally {
+				in.close();
+			}
+			if(eTag == null) {
+				eTag = obj.getObjectMetadata().getETag();
+				sourceMD5 = S3Interface.sourceMD5(obj.getObjectMetadata());
+				versionId = obj.getObjectMetadata().getVersionId();
+			}
+			return data;
+		}
+	}
+	
+	// Pinned by the first range, see S3Interface.sourceMD5()
+	public String getSourceMD5() {
+		return this.sourceMD5;
+	}
+	public String getETag() {
+		return this.eTag;
+	}
+	public String getVersionId() {
+		return this.versionId;
+	}
+	
+	private void fillRanges() {
+		while(this.ranges.size() < this.maxRangesInFlight && this.nextRangeStart < this.size) {
+			long end = Math.min(this.size, this.nextRangeStart + this.rangeSize) - 1;
+			this.ranges.add(this.executor.submit(new rangeCallable(this.nextRangeStart, end)));
+			this.nextRangeStart = end + 1;
+		}
+	}
+	
+	private boolean nextRange() throws IOException {
+		if(this.closed)
+			throw new IOException("Ranged stream already closed: " + this.key);
+		if(this.ranges.isEmpty())
+			return false;
+		Future<byte[]> head = this.ranges.poll();
+		try {
+			this.current = head.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for range of " + this.key, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed reading range of " + this.key, e.getCause());
+		}
+		this.position = 0;
+		fillRanges();
+		return true;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		while(this.position == this.current.length) {
+			if(!nextRange())
+				return -1;
+		}
+		return this.current[this.position++] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0)
+			return 0;
+		while(this.position == this.current.length) {
+			if(!nextRange())
+				return -1;
+		}
+		int count = Math.min(len, this.current.length - this.position);
+		System.arraycopy(this.current, this.position, b, off, count);
+		this.position += count;
+		return count;
+	}
+	
+	@Override
+	public int available() {
+		return this.current.length - this.position;
+	}
+	
+	@Override
+	public void close() {
+		this.closed = true;
+		for(Future<byte[]> range : this.ranges)
+			range.cancel(true);
+		this.ranges.clear();
+		this.current = new byte[0];
+		this.position = 0;
+	}
+}
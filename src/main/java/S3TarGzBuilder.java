@@ -17,67 +17,525 @@
  */
 
 import java.io.BufferedOutputStream;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 
-import com.amazonaws.util.IOUtils;
+import com.amazonaws.services.s3.model.PartETag;
 
+/* Builds the tar archive of a Context, compressed by its ArchiveCodec
+ * With an ArchiveJournal every checkpoint finishes the current codec frame and commits the entries written
+ * so far, a resumed archive appends a new frame after the last checkpoint. Concatenated frames are one stream.
+ * With ArchiveStats in "adaptive" mode the first bytes of every entry are sampled, entries that will not compress
+ * are stored by codecs that implement CompressionBypass.
+ * In the seekable layout a new frame is started once the current one holds seekableFrameBytes, the ArchiveIndex
+ * records the frame of every entry so one object can be restored with a ranged GET of its frame.
+ */
 public class S3TarGzBuilder {
 	String ArchiveName = null;
 	String ArchiveDirectory = null;
+	OutputStream ArchiveOutputStream = null;
+	ArchiveCodec Codec = null;
+	ExecutorService CompressionExecutor = null;
 	TarArchiveOutputStream TarArchiveOutPutStream = null;
+	boolean ArchiveFailed = false;
+	ArchiveJournal Journal = null;
+	long CheckpointBytes = 0;
+	FileOutputStream ArchiveFile = null;
+	frameOutputStream Frames = null;
+	List<String> EntriesSinceCheckpoint = new ArrayList<String>();
+	long BytesSinceCheckpoint = 0;
+	ArchiveStats Stats = null;
+	byte[] Sample = null;
+	ArchiveIndex Index = null;
+	long SeekableFrameBytes = 0;
+	List<ArchiveIndex.Entry> FrameEntries = new ArrayList<ArchiveIndex.Entry>();
+	List<String> IndexSinceCheckpoint = new ArrayList<String>();
+	Set<String> ArchivedEntries = new HashSet<String>();
+	ArchiveManifest Manifest = null;
+	boolean VerifySourceETags = true;
+	List<String> ManifestSinceCheckpoint = new ArrayList<String>();
+	byte[] CopyBuffer = new byte[4096];
+	private static final ArchiveMetrics.counter COMPRESSION_INPUT = ArchiveMetrics.counter("compression_input_bytes_total", "", "Tar bytes written into the codecs");
+	private static final ArchiveMetrics.counter COMPRESSION_OUTPUT = ArchiveMetrics.counter("compression_output_bytes_total", "", "Archive bytes written by the codecs");
+	
+	static {
+		ArchiveMetrics.gauge("compression_ratio", "", "Tar bytes per archive byte since start",
+				() -> COMPRESSION_OUTPUT.get() == 0 ? 0 : (double) COMPRESSION_INPUT.get() / COMPRESSION_OUTPUT.get());
+	}
 	
-	S3TarGzBuilder(SQSContext ctx) {
+	// Archive is written to archiveOut (e.g. S3MultipartOutputStream), or to the local directory of the Context when null,
+	// compressed by codec, using compressionExecutor when one is given.
+	// With a journal progress is committed every checkpointBytes, a journal with a checkpoint resumes the archive.
+	// With manifestChecksum (crc32c or sha256) every object and the archive itself are checksummed while written,
+	// see ArchiveManifest. A resumed archive continues the manifest committed to its journal
+	S3TarGzBuilder(SQSContext ctx, OutputStream archiveOut, ArchiveCodec codec, ExecutorService compressionExecutor, ArchiveJournal journal, long checkpointBytes,
+			String manifestChecksum) {
+		if(manifestChecksum != null) {
+			this.Manifest = new ArchiveManifest(ctx.getLocalArchiveName(), codec.getName(), manifestChecksum);
+			if(journal != null)
+				for(String entry : journal.getCommittedManifest())
+					this.Manifest.getEntries().add(ArchiveManifest.Entry.fromJson(entry));
+		}
 		this.ArchiveName = ctx.getLocalArchiveName();
 		this.ArchiveDirectory = ctx.getLocalDirectory();
+		this.ArchiveOutputStream = archiveOut;
+		this.Codec = codec;
+		this.CompressionExecutor = compressionExecutor;
+		this.Journal = journal;
+		this.CheckpointBytes = checkpointBytes;
 		this.TarArchiveOutPutStream = createTarGzArchive();
+		if(this.TarArchiveOutPutStream == null)
+			this.ArchiveFailed = true;
+	}
+	
+	// Writes into the current codec frame, nextFrame() finishes it and starts the next one
+	// Offsets are archive bytes, counting from the start of the archive object when resumed
+	private class frameOutputStream extends OutputStream {
+		private OutputStream out;
+		private unclosableOutputStream archiveOut;
+		private OutputStream frame;
+		private long frameStart;
+		private long frameBytes = 0;
+		
+		frameOutputStream(OutputStream out, long archiveBytes, MessageDigest digest) throws IOException {
+			this.out = out;
+			this.archiveOut = new unclosableOutputStream(out, archiveBytes, digest);
+			this.frameStart = archiveBytes;
+			this.frame = Codec.compress(this.archiveOut, CompressionExecutor);
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			this.frame.write(b);
+			this.frameBytes++;
+			COMPRESSION_INPUT.increment();
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.frame.write(b, off, len);
+			this.frameBytes += len;
+			COMPRESSION_INPUT.add(len);
+		}
+		
+		long getFrameStart() {
+			return this.frameStart;
+		}
+		
+		// Uncompressed bytes written into the current frame
+		long getFrameBytes() {
+			return this.frameBytes;
+		}
+		
+		long getPosition() {
+			return this.archiveOut.position;
+		}
+		
+		// Checksum of the whole archive, null when not computed
+		String getChecksum() {
+			return this.archiveOut.digest == null ? null : ArchiveManifest.hex(this.archiveOut.digest.digest());
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			this.frame.flush();
+		}
+		
+		// Returns false when the codec always compresses
+		boolean setBypass(boolean bypass) throws IOException {
+			if(!(this.frame instanceof CompressionBypass))
+				return false;
+			((CompressionBypass) this.frame).setBypass(bypass);
+			return true;
+		}
+		
+		// Returns the end of the finished frame, flush pushes it through to the archive file or upload
+		long nextFrame(boolean flush) throws IOException {
+			this.frame.close();
+			this.frameStart = this.archiveOut.position;
+			if(flush)
+				this.archiveOut.flush();
+			this.frameBytes = 0;
+			this.frame = Codec.compress(this.archiveOut, CompressionExecutor);
+			return this.frameStart;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			this.frame.close();
+			this.out.close();
+		}
+	}
+	
+	// Lets a finished frame release its compressor without closing the archive, counts (and digests) the archive bytes
+	private static class unclosableOutputStream extends OutputStream {
+		private OutputStream out;
+		private long position;
+		private MessageDigest digest;
+		
+		unclosableOutputStream(OutputStream out, long position, MessageDigest digest) {
+			this.out = out;
+			this.position = position;
+			this.digest = digest;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.position++;
+			COMPRESSION_OUTPUT.increment();
+			if(this.digest != null)
+				this.digest.update((byte) b);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.position += len;
+			COMPRESSION_OUTPUT.add(len);
+			if(this.digest != null)
+				this.digest.update(b, off, len);
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			this.out.flush();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			this.out.flush();
+		}
 	}
 	
 	private TarArchiveOutputStream createTarGzArchive() {
-		FileOutputStream fOut;
+		OutputStream fOut;
 		BufferedOutputStream buffOut;
-		GzipCompressorOutputStream gzOut;
-		TarArchiveOutputStream tOut;
 		try {
-			fOut = new FileOutputStream(this.ArchiveDirectory + this.ArchiveName);
-			buffOut = new BufferedOutputStream(fOut);
-			try {
-				gzOut = new GzipCompressorOutputStream(buffOut);
-				tOut = new TarArchiveOutputStream(gzOut);
-				return tOut;
-			} catch (IOException e) {
-				e.printStackTrace();
+			if(this.ArchiveOutputStream != null)
+				fOut = this.ArchiveOutputStream;
+			else {
+				this.ArchiveFile = openArchiveFile(new File(this.ArchiveDirectory + this.ArchiveName));
+				fOut = this.ArchiveFile;
 			}
-		} catch (FileNotFoundException e) {
+			buffOut = new BufferedOutputStream(fOut);
+			boolean resumed = this.Journal != null && this.Journal.hasCheckpoint();
+			// Bytes written by a previous run cannot be digested again, a resumed archive has no archive checksum
+			MessageDigest digest = this.Manifest != null && !resumed ? ArchiveManifest.newDigest(this.Manifest.getAlgorithm()) : null;
+			this.Frames = new frameOutputStream(buffOut, resumed ? this.Journal.getArchiveBytes() : 0, digest);
+			if(this.Journal != null)
+				return new TarArchiveOutputStream(this.Frames, 512);
+			return new TarArchiveOutputStream(this.Frames);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return null;
 	}
 	
+	// A resumed archive continues after the last checkpoint, a local file shorter than that starts over
+	private FileOutputStream openArchiveFile(File archive) throws IOException {
+		if(this.Journal == null || !this.Journal.hasCheckpoint())
+			return new FileOutputStream(archive);
+		if(archive.length() < this.Journal.getArchiveBytes()) {
+			this.Journal.reset();
+			return new FileOutputStream(archive);
+		}
+		RandomAccessFile file = new RandomAccessFile(archive, "rw");
+		try {
+			file.setLength(this.Journal.getArchiveBytes());
+		} finally {
+			file.close();
+		}
+		return new FileOutputStream(archive, true);
+	}
+	
+	// Entries committed by a previous run of this archive are not written again
+	public boolean isCommitted(String localFileName) {
+		return this.Journal != null && this.Journal.isCommitted(localFileName);
+	}
+	
+	// A committed object is not read again, the ETag and version ID its earlier GET read come from the journal
+	public void setCommittedSource(S3ArchiveObject obj) {
+		obj.setSourceVersion(this.Journal.getCommittedETag(obj.getLocalFileName()), this.Journal.getCommittedVersionId(obj.getLocalFileName()));
+	}
+	
+	// A failed archive is not completed, entries added from now on are only closed
+	public boolean isFailed() {
+		return this.ArchiveFailed;
+	}
+	
+	// Compression bypass decisions are recorded in stats, set before the first entry is added
+	public void setCompressionBypass(ArchiveStats stats) {
+		this.Stats = stats;
+	}
+	
+	public ArchiveStats getStats() {
+		return this.Stats;
+	}
+	
+	// Objects are copied into the tar through one buffer of copyBufferBytes, reused for every entry
+	public void setCopyBuffer(int copyBufferBytes) {
+		this.CopyBuffer = new byte[Math.max(512, copyBufferBytes)];
+	}
+	
+	// Entries are indexed and grouped into frames of at least frameBytes (0: a frame per entry),
+	// set before the first entry is added. A resumed archive continues the index committed to its journal
+	public void setSeekableLayout(long frameBytes) {
+		this.SeekableFrameBytes = frameBytes;
+		this.Index = new ArchiveIndex(this.ArchiveName, this.Codec.getName());
+		if(this.Journal != null)
+			for(String entry : this.Journal.getCommittedIndex())
+				this.Index.getEntries().add(ArchiveIndex.Entry.fromJson(entry));
+	}
+	
+	// Sources whose ETag is their MD5 are checked against it, set before the first entry is added
+	public void setVerifySourceETags(boolean verifySourceETags) {
+		this.VerifySourceETags = verifySourceETags;
+	}
+	
+	// Local copy of the manifest sidecar, null unless the archive was closed successfully with a manifest
+	public File getManifestFile() {
+		File manifestFile = new File(this.ArchiveDirectory + this.ArchiveName + ArchiveManifest.SUFFIX);
+		return this.Manifest != null && !this.ArchiveFailed && manifestFile.exists() ? manifestFile : null;
+	}
+	
+	// Local copy of the index sidecar, null unless the seekable archive was closed successfully
+	public File getIndexFile() {
+		File indexFile = new File(this.ArchiveDirectory + this.ArchiveName + ArchiveIndex.SUFFIX);
+		return this.Index != null && !this.ArchiveFailed && indexFile.exists() ? indexFile : null;
+	}
+	
 	public void addInputStreamToArchive(InputStream s3Object, String localFileName, String objSize) {
+		addInputStreamToArchive(s3Object, null, localFileName, objSize);
+	}
+	
+	// key is the S3 Key of the object, recorded in the index of a seekable archive
+	public void addInputStreamToArchive(InputStream s3Object, String key, String localFileName, String objSize) {
+		addInputStreamToArchive(s3Object, key, localFileName, objSize, null);
+	}
+	
+	// source is the object whose GET returned s3Object: its MD5 is verified and its ETag and version ID journaled
+	public void addInputStreamToArchive(InputStream s3Object, String key, String localFileName, String objSize, S3ArchiveObject source) {
+		String sourceMD5 = source == null ? null : source.getSourceMD5();
+		if(this.ArchiveFailed) {
+			closeQuietly(s3Object);
+			return;
+		}
 		//Convert Input Stream to Output Stream
 	    TarArchiveEntry tarEntry = new TarArchiveEntry(localFileName);
 	    tarEntry.setSize(Long.valueOf(objSize));
 	    try {
+	    	int sampleLength = 0;
+	    	String bypass = null;
+	    	if(this.Stats != null && ArchiveStats.ADAPTIVE.equals(this.Stats.getMode()) && tarEntry.getSize() >= CompressibilityEstimator.MIN_BYPASS_SIZE) {
+	    		if(this.Sample == null)
+	    			this.Sample = new byte[CompressibilityEstimator.SAMPLE_SIZE];
+	    		sampleLength = readSample(s3Object);
+	    		bypass = CompressibilityEstimator.classify(localFileName, this.Sample, sampleLength);
+	    		if(!this.Frames.setBypass(bypass != null))
+	    			bypass = null;
+	    	}
+	    	else if(this.Stats != null)
+	    		this.Frames.setBypass(false);
+	    	CRC32 crc = null;
+	    	InputStream in = s3Object;
+	    	if(this.Index != null) {
+	    		crc = new CRC32();
+	    		if(sampleLength > 0)
+	    			crc.update(this.Sample, 0, sampleLength);
+	    		in = new CheckedInputStream(s3Object, crc);
+	    	}
+	    	// Checksums are taken from the bytes as they are copied, the sample was read before them
+	    	MessageDigest digest = null;
+	    	MessageDigest md5 = null;
+	    	if(this.Manifest != null) {
+	    		digest = ArchiveManifest.newDigest(this.Manifest.getAlgorithm());
+	    		in = new DigestInputStream(in, digest);
+	    		if(this.VerifySourceETags && sourceMD5 != null) {
+	    			md5 = ArchiveManifest.newDigest("md5");
+	    			in = new DigestInputStream(in, md5);
+	    		}
+	    		if(sampleLength > 0) {
+	    			digest.update(this.Sample, 0, sampleLength);
+	    			if(md5 != null)
+	    				md5.update(this.Sample, 0, sampleLength);
+	    		}
+	    	}
 			this.TarArchiveOutPutStream.putArchiveEntry(tarEntry);
-			IOUtils.copy(s3Object, this.TarArchiveOutPutStream);
+			if(sampleLength > 0)
+				this.TarArchiveOutPutStream.write(this.Sample, 0, sampleLength);
+			int count;
+			while((count = in.read(this.CopyBuffer)) != -1)
+				this.TarArchiveOutPutStream.write(this.CopyBuffer, 0, count);
 			s3Object.close();
 			this.TarArchiveOutPutStream.closeArchiveEntry();
+			if(this.Manifest != null) {
+				Boolean verified = null;
+				if(md5 != null) {
+					if(!ArchiveManifest.hex(md5.digest()).equals(sourceMD5))
+						throw new IOException("Archived bytes of " + key + " do not match its ETag " + sourceMD5);
+					verified = Boolean.TRUE;
+				}
+				ArchiveManifest.Entry entry = new ArchiveManifest.Entry(localFileName, key, tarEntry.getSize(), ArchiveManifest.hex(digest.digest()),
+						sourceMD5, verified);
+				this.Manifest.getEntries().add(entry);
+				this.ManifestSinceCheckpoint.add(entry.toJson());
+			}
+			this.ArchivedEntries.add(localFileName);
+			if(this.Stats != null)
+				this.Stats.addEntry(tarEntry.getSize(), bypass);
+			if(this.Index != null) {
+				this.FrameEntries.add(new ArchiveIndex.Entry(localFileName, key, this.Frames.getFrameStart(), tarEntry.getSize(),
+						String.format("%08x", crc.getValue())));
+				if(this.Frames.getFrameBytes() >= this.SeekableFrameBytes)
+					nextFrame(false);
+			}
+			if(this.Journal != null) {
+				this.EntriesSinceCheckpoint.add(ArchiveJournal.entry(localFileName, source == null ? null : source.getSourceETag(),
+						source == null ? null : source.getSourceVersionId()));
+				this.BytesSinceCheckpoint += tarEntry.getSize();
+				if(this.BytesSinceCheckpoint >= this.CheckpointBytes)
+					checkpoint();
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
+			// A partially written entry leaves the archive unusable
+			this.ArchiveFailed = true;
+			closeQuietly(s3Object);
+		}
+	}
+	
+	// Reads the first SAMPLE_SIZE bytes of the entry, less when the object is smaller
+	private int readSample(InputStream s3Object) throws IOException {
+		int length = 0;
+		int count;
+		while(length < this.Sample.length && (count = s3Object.read(this.Sample, length, this.Sample.length - length)) > 0)
+			length += count;
+		return length;
+	}
+	
+	// Finishes the current frame, its entries are indexed now that the frame length is known
+	private void nextFrame(boolean flush) throws IOException {
+		long frameEnd = this.Frames.nextFrame(flush);
+		indexFrameEntries(frameEnd);
+	}
+	
+	private void indexFrameEntries(long frameEnd) {
+		if(this.Index == null)
+			return;
+		for(ArchiveIndex.Entry entry : this.FrameEntries) {
+			entry.length = frameEnd - entry.offset;
+			this.Index.getEntries().add(entry);
+			this.IndexSinceCheckpoint.add(entry.toJson());
 		}
+		this.FrameEntries.clear();
 	}
 	
-	public void closeTarGzArchive() {
+	// A streamed archive is only checkpointed when the buffered bytes can be cut into a part of at least 5 MB
+	private void checkpoint() throws IOException {
+		S3MultipartOutputStream upload = null;
+		if(this.ArchiveOutputStream instanceof S3MultipartOutputStream) {
+			upload = (S3MultipartOutputStream) this.ArchiveOutputStream;
+			if(!upload.canCheckpoint())
+				return;
+		}
+		nextFrame(true);
+		String uploadId = null;
+		List<PartETag> parts = Collections.emptyList();
+		long archiveBytes;
+		if(upload != null) {
+			parts = upload.checkpoint();
+			if(parts == null)
+				return;
+			uploadId = upload.getUploadId();
+			archiveBytes = upload.getBytesWritten();
+		}
+		else {
+			this.ArchiveFile.getFD().sync();
+			archiveBytes = this.ArchiveFile.getChannel().position();
+		}
+		this.Journal.checkpoint(uploadId, this.EntriesSinceCheckpoint, parts, this.IndexSinceCheckpoint, this.ManifestSinceCheckpoint, archiveBytes);
+		this.EntriesSinceCheckpoint.clear();
+		this.IndexSinceCheckpoint.clear();
+		this.ManifestSinceCheckpoint.clear();
+		this.BytesSinceCheckpoint = 0;
+	}
+	
+	// True when every object of ctx is in the closed archive, written by this run or by the run it resumed
+	public boolean holdsAll(SQSContext ctx) {
+		if(this.ArchiveFailed)
+			return false;
+		for(S3ArchiveObject obj : ctx.getS3ArchiveObjects()) {
+			if(!this.ArchivedEntries.contains(obj.getLocalFileName()) && !isCommitted(obj.getLocalFileName()))
+				return false;
+		}
+		return true;
+	}
+	
+	// Length of the archive object written so far
+	public long getArchiveBytes() {
+		return this.Frames == null ? 0 : this.Frames.getPosition();
+	}
+	
+	// Marks the archive as failed, a streaming upload is aborted instead of completed
+	public void abortTarGzArchive() {
+		this.ArchiveFailed = true;
+	}
+	
+	// Returns true only when every entry and the archive trailer were written successfully
+	public boolean closeTarGzArchive() {
+		// An upload the journal has checkpointed is kept open so the redelivered context resumes it, the local file is
+		// truncated on resume. Any other upload is aborted, a retry could never continue it
+		if(this.ArchiveFailed && this.ArchiveOutputStream instanceof S3MultipartOutputStream) {
+			S3MultipartOutputStream upload = (S3MultipartOutputStream) this.ArchiveOutputStream;
+			if(this.Journal != null && upload.getUploadId() != null && upload.getUploadId().equals(this.Journal.getUploadId()))
+				upload.suspend();
+			else
+				upload.abort();
+		}
+		if(this.TarArchiveOutPutStream == null)
+			return false;
 		try {
-			this.TarArchiveOutPutStream.flush();
-			this.TarArchiveOutPutStream.finish();
+			if(!this.ArchiveFailed) {
+				this.TarArchiveOutPutStream.flush();
+				this.TarArchiveOutPutStream.finish();
+			}
 			this.TarArchiveOutPutStream.close();
+			// The last frame also holds the tar trailer
+			if(this.Index != null && !this.ArchiveFailed) {
+				indexFrameEntries(this.Frames.getPosition());
+				this.Index.write(new File(this.ArchiveDirectory + this.ArchiveName + ArchiveIndex.SUFFIX));
+			}
+			if(this.Manifest != null && !this.ArchiveFailed) {
+				this.Manifest.setArchive(this.Frames.getChecksum(), this.Frames.getPosition());
+				this.Manifest.write(new File(this.ArchiveDirectory + this.ArchiveName + ArchiveManifest.SUFFIX));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			this.ArchiveFailed = true;
+		}
+		return !this.ArchiveFailed;
+	}
+	
+	private static void closeQuietly(InputStream in) {
+		try {
+			in.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,218 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+
+/* Output stage of the SQSProducer
+ * 		1. send() queues a serialized SQS Context and only blocks once queueSize contexts are waiting
+ * 		2. A dispatcher thread groups queued contexts into SendMessageBatch requests (10 entries / 256 KB)
+ * 		3. Up to maxBatchesInFlight batches are sent concurrently, failed entries are retried
+ * close() flushes everything queued and waits for the batches in flight.
+ */
+public class SQSBatchSender {
+	private static final int MAX_ATTEMPTS = 5;
+	// Marker queued by close() so the dispatcher stops after the last context
+	private static final queuedContext END_OF_CONTEXTS = new queuedContext("", null);
+	private SQSInterface sqs = null;
+	private Logger logger = null;
+	private LinkedBlockingQueue<queuedContext> queue = null;
+	private Semaphore batchesInFlight = null;
+	private int maxBatchesInFlight;
+	private ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+	private ExecutorService senders = null;
+	private AtomicLong sent = new AtomicLong();
+	private AtomicLong failed = new AtomicLong();
+	private static final ArchiveMetrics.counter CONTEXTS_SENT = ArchiveMetrics.counter("contexts_sent_total", "", "Contexts accepted by SQS");
+	private static final ArchiveMetrics.gauge BATCHES_IN_FLIGHT = ArchiveMetrics.gauge("sqs_send_batches_in_flight", "", "SendMessageBatch requests being sent or retried");
+	
+	SQSBatchSender(SQSInterface sqs, Logger logger, int queueSize, int maxBatchesInFlight) {
+		this.sqs = sqs;
+		this.logger = logger;
+		this.queue = new LinkedBlockingQueue<queuedContext>(Math.max(queueSize, 1));
+		this.maxBatchesInFlight = Math.max(maxBatchesInFlight, 1);
+		this.batchesInFlight = new Semaphore(this.maxBatchesInFlight);
+		this.senders = Executors.newFixedThreadPool(this.maxBatchesInFlight);
+		this.dispatcher.submit(new dispatchRunnable());
+		this.dispatcher.shutdown();
+		ArchiveMetrics.gauge("sqs_send_queue_depth", "", "Contexts queued for SendMessageBatch", () -> this.queue.size());
+	}
+	
+	// Serialized SQS Context waiting to be sent, onSent runs once SQS accepted it
+	private static class queuedContext {
+		private String body;
+		private int bytes;
+		private Runnable onSent;
+		
+		queuedContext(String body, Runnable onSent) {
+			this.body = body;
+			this.bytes = body.getBytes(StandardCharsets.UTF_8).length;
+			this.onSent = onSent;
+		}
+	}
+	
+	public void send(SQSContext ctx) throws InterruptedException {
+		send(ctx, null);
+	}
+	
+	// onSent is called on a sender thread, contexts that finally fail never call it
+	public void send(SQSContext ctx, Runnable onSent) throws InterruptedException {
+		this.queue.put(new queuedContext(SQSInterface.gson.toJson(ctx), onSent));
+	}
+	
+	public long getSentCount() {
+		return this.sent.get();
+	}
+	
+	public long getFailedCount() {
+		return this.failed.get();
+	}
+	
+	// Flushes queued contexts and waits for every batch to be sent
+	public void close() throws InterruptedException {
+		this.queue.put(END_OF_CONTEXTS);
+		while(!this.dispatcher.awaitTermination(10, TimeUnit.SECONDS))
+			this.logger.info("Flushing SQS Contexts: " + this.queue.size() + " Queued");
+		this.batchesInFlight.acquire(this.maxBatchesInFlight);
+		this.senders.shutdown();
+		this.logger.info("Sent " + this.sent.get() + " S3 Archive Contexts to SQS Queue, " + this.failed.get() + " Failed");
+	}
+	
+	private class dispatchRunnable implements Runnable {
+		@Override
+		public void run() {
+			boolean closed = false;
+			try {
+				while(!closed) {
+					// Wait for the first context, then take whatever else fits into the batch without waiting
+					queuedContext first = queue.take();
+					if(first == END_OF_CONTEXTS)
+						break;
+					if(first.bytes > SQSInterface.MAX_BATCH_BYTES) {
+						failed.incrementAndGet();
+						logger.info("S3 Archive Context Exceeds the SQS Message Size Limit: " + first.body);
+						continue;
+					}
+					List<queuedContext> batch = new ArrayList<queuedContext>();
+					batch.add(first);
+					int batchBytes = first.bytes;
+					while(batch.size() < SQSInterface.MAX_BATCH_ENTRIES) {
+						queuedContext next = queue.peek();
+						if(next == null)
+							break;
+						if(next == END_OF_CONTEXTS) {
+							queue.poll();
+							closed = true;
+							break;
+						}
+						if(batchBytes + next.bytes > SQSInterface.MAX_BATCH_BYTES)
+							break;
+						batch.add(queue.poll());
+						batchBytes += next.bytes;
+					}
+					batchesInFlight.acquire();
+					BATCHES_IN_FLIGHT.add(1);
+					senders.submit(new batchRunnable(batch));
+				}
+			} catch (InterruptedException e) {
+				logger.info("SQS Batch Dispatcher Interrupted: " + queue.size() + " Contexts Not Sent");
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private class batchRunnable implements Runnable {
+		private List<queuedContext> batch;
+		
+		batchRunnable(List<queuedContext> batch) {
+			this.batch = batch;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				Map<String, SendMessageBatchRequestEntry> pending = new HashMap<String, SendMessageBatchRequestEntry>();
+				for(int i=0; i<this.batch.size(); i++) {
+					String id = String.valueOf(i);
+					pending.put(id, new SendMessageBatchRequestEntry(id, this.batch.get(i).body));
+				}
+				for(int attempt=0; attempt<MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+					if(attempt > 0)
+						Thread.sleep(100L << attempt);
+					sendPending(pending);
+				}
+				if(!pending.isEmpty()) {
+					failed.addAndGet(pending.size());
+					for(SendMessageBatchRequestEntry entry : pending.values())
+						logger.info("Failed Sending S3 Archive Context to SQS Queue: " + entry.getMessageBody());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				BATCHES_IN_FLIGHT.add(-1);
+				batchesInFlight.release();
+			}
+		}
+		
+		// Removes the entries SQS accepted, sender faults are not retried
+		private void sendPending(Map<String, SendMessageBatchRequestEntry> pending) {
+			SendMessageBatchResult result = null;
+			try {
+				result = sqs.sendMessageBatch(new ArrayList<SendMessageBatchRequestEntry>(pending.values()));
+			} catch (Exception e) {
+				logger.info("Failed Sending SQS Batch: " + e.getMessage() + " Retrying " + pending.size() + " Contexts");
+				return;
+			}
+			Map<String, SendMessageBatchRequestEntry> retry = new HashMap<String, SendMessageBatchRequestEntry>();
+			for(BatchResultErrorEntry error : result.getFailed()) {
+				SendMessageBatchRequestEntry entry = pending.remove(error.getId());
+				if(entry == null)
+					continue;
+				if(Boolean.TRUE.equals(error.getSenderFault())) {
+					failed.incrementAndGet();
+					logger.info("SQS Rejected S3 Archive Context: " + error.getCode() + " " + error.getMessage() + " : " + entry.getMessageBody());
+				}
+				else
+					retry.put(error.getId(), entry);
+			}
+			// Whatever is left in pending was accepted
+			for(String id : pending.keySet()) {
+				Runnable onSent = this.batch.get(Integer.parseInt(id)).onSent;
+				if(onSent != null)
+					onSent.run();
+			}
+			sent.addAndGet(pending.size());
+			CONTEXTS_SENT.add(pending.size());
+			pending.clear();
+			pending.putAll(retry);
+		}
+	}
+}
@@ -16,50 +16,203 @@
  * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Logger;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.sqs.model.Message;
 import com.google.gson.Gson;
 
 public class SQSConsumer {
+	private static final Gson gson = new Gson();
 	S3Interface s3 = null;
 	SQSInterface sqs = null;
 	DISKInterface disk = null;
 	int threadNum; 
-	ThreadPoolExecutor executor = null;
+	ExecutorService executor = null;
+	ThreadPoolExecutor compressionExecutor = null;
 	Logger logger = null;
+	boolean streamingUpload = false;
+	S3ArchiveAssembler assembler = null;
+	S3PrefetchWindow processWindow = null;
+	long consumerWindowBytes = 256L * 1024 * 1024;
+	int consumerWindowConnections;
+	SQSReceiver receiver = null;
+	ExecutorService receiverExecutor = Executors.newSingleThreadExecutor();
+	long archiveCheckpointBytes = 256L * 1024 * 1024;
+	long archiveExpiryMillis = 336L * 60 * 60 * 1000;
+	ArchiveCodec archiveCodec = ArchiveCodecs.create(null, -1, 0, 0);
+	ArchiveCodec tarOnlyCodec = ArchiveCodecs.create("none", -1, 0, 0);
+	String compressionBypass = "off";
+	int tarOnlyPercent = 90;
+	boolean seekableLayout = false;
+	long seekableFrameBytes = 0;
+	ArchiveRestorer restorer = null;
+	S3BatchDeleter deleter = null;
+	String manifestChecksum = null;
+	boolean verifySourceETags = true;
+	int copyBufferBytes = 4096;
+	private static final ArchiveMetrics.gauge CONTEXTS_IN_FLIGHT = ArchiveMetrics.gauge("contexts_in_flight", "", "Contexts being archived or restored");
+	private static final String COMPLETED_HELP = "Contexts archived or restored, failed ones stay on the queue";
+	private static final ArchiveMetrics.counter CONTEXTS_SUCCEEDED = ArchiveMetrics.counter("contexts_completed_total", "result=succeeded", COMPLETED_HELP);
+	private static final ArchiveMetrics.counter CONTEXTS_FAILED = ArchiveMetrics.counter("contexts_completed_total", "result=failed", COMPLETED_HELP);
+	private static final ArchiveMetrics.histogram CONTEXT_SECONDS = ArchiveMetrics.histogram("context_seconds", "",
+			"Contexts from receive to archived or restored", ArchiveMetrics.ARCHIVE_SECONDS);
 	
 	SQSConsumer(S3Interface s3, SQSInterface sqs, DISKInterface disk, int threadNum, Logger logger) {
 		this.s3 = s3;
 		this.sqs = sqs;
 		this.disk = disk;
 		this.threadNum = threadNum;
-		this.executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(threadNum);
+		this.executor = Executors.newFixedThreadPool(threadNum);
+		ArchiveMetrics.executor("consumer", (ThreadPoolExecutor) this.executor);
 		this.logger = logger;
+		this.assembler = new S3ArchiveAssembler(s3, logger, false);
+		this.consumerWindowConnections = s3.getMaxConCount();
+		this.processWindow = new S3PrefetchWindow(1024L * 1024 * 1024, s3.getMaxConCount(), 0);
+		this.receiver = new SQSReceiver(sqs, logger, threadNum, 20, 3);
+	}
+	
+	// Called by ArchiveController: every consumer thread is a virtual thread, blocked S3 and SQS calls do not hold a platform thread
+	public void setVirtualThreads(boolean virtualThreads) {
+		if(!virtualThreads)
+			return;
+		VirtualThreadExecutor executor = new VirtualThreadExecutor("consumer", this.threadNum);
+		ArchiveMetrics.executor("consumer", executor);
+		this.executor.shutdown();
+		this.executor = executor;
+	}
+	
+	// Called by ArchiveController: long poll wait, consecutive empty receives before exiting and locally buffered contexts,
+	// at most one per thread as buffered contexts use up their visibility timeout
+	public void setReceive(int waitTimeSeconds, int maxEmptyReceives, int bufferSize) {
+		this.receiver = new SQSReceiver(this.sqs, this.logger, Math.min(bufferSize, this.threadNum), waitTimeSeconds, maxEmptyReceives);
+	}
+	
+	// Called by ArchiveController: archives are streamed into S3 instead of staged on local disk
+	public void setStreamingUpload(boolean streamingUpload) {
+		this.streamingUpload = streamingUpload;
+	}
+	
+	// Called by ArchiveController: bounds the S3 GETs opened ahead of the tar writers per consumer thread and per process
+	public void setPrefetchWindow(long consumerBytes, int consumerConnections, long processBytes, int processConnections, int bufferObjectSize) {
+		this.consumerWindowBytes = consumerBytes;
+		this.consumerWindowConnections = consumerConnections;
+		this.processWindow = new S3PrefetchWindow(processBytes, processConnections, bufferObjectSize);
+	}
+	
+	// Called by ArchiveController: "listing" writes archive entries in context order instead of completion order
+	public void setArchiveEntryOrder(String entryOrder) {
+		this.assembler = new S3ArchiveAssembler(this.s3, this.logger, "listing".equals(entryOrder));
+	}
+	
+	// Called by ArchiveController: archives are gzipped block-parallel on a pool shared by all consumer threads
+	public void setCompressionThreads(int compressionThreads) {
+		if(compressionThreads > 0) {
+			this.compressionExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(compressionThreads);
+			ArchiveMetrics.executor("compression", this.compressionExecutor);
+		}
+	}
+	
+	// Called by ArchiveController: archive progress is journaled every checkpointBytes, 0 disables resuming
+	public void setArchiveCheckpoint(long checkpointBytes) {
+		this.archiveCheckpointBytes = checkpointBytes;
+	}
+	
+	// Called by ArchiveController: journals and archive uploads older than expiryHours are removed at startup,
+	// their contexts have left the queue and are never redelivered to resume them (0 keeps them)
+	public void setArchiveExpiry(int expiryHours) {
+		this.archiveExpiryMillis = expiryHours * 60L * 60 * 1000;
+	}
+	
+	// Called by ArchiveController: archives are compressed by codec, gzip by default
+	public void setArchiveCodec(ArchiveCodec codec) {
+		this.archiveCodec = codec;
+	}
+	
+	// Called by ArchiveController: "adaptive" stores entries that will not compress instead of compressing them,
+	// a context with at least tarOnlyPercent of its bytes in compressed formats is archived as plain tar (0 disables)
+	public void setCompressionBypass(String mode, int tarOnlyPercent) {
+		this.compressionBypass = mode == null || mode.isEmpty() ? "off" : mode;
+		this.tarOnlyPercent = tarOnlyPercent;
+	}
+	
+	// Called by ArchiveController: "seekable" archives are written as independent frames of at least frameBytes
+	// (0: one per object) and uploaded with an index sidecar for single object restores
+	public void setArchiveLayout(String layout, long frameBytes) {
+		this.seekableLayout = "seekable".equals(layout);
+		this.seekableFrameBytes = frameBytes;
+	}
+	
+	// Called by ArchiveController: Contexts are restored from their archives instead of being archived
+	public void setRestore(ArchiveRestorer restorer) {
+		this.restorer = restorer;
+	}
+	
+	// Called by ArchiveController: "crc32c" or "sha256" uploads a manifest with the checksums of every object and archive,
+	// sources whose ETag is an MD5 are checked against it while they are copied
+	public void setArchiveManifest(String checksum, boolean verifySourceETags) {
+		this.manifestChecksum = checksum == null || checksum.isEmpty() || checksum.equals("off") ? null : checksum;
+		this.verifySourceETags = verifySourceETags;
+	}
+	
+	// Called by ArchiveController: objects are copied into the tar through a buffer of copyBufferBytes
+	public void setCopyBuffer(int copyBufferBytes) {
+		this.copyBufferBytes = copyBufferBytes;
+	}
+	
+	// Called by ArchiveController: source objects of every archived context are deleted (or reported in dry-run)
+	public void setSourceDeletion(S3BatchDeleter deleter) {
+		this.deleter = deleter;
+	}
+	
+	// Decided from the Keys only, so a redelivered context gets the same archive name
+	private boolean isTarOnly(SQSContext ctx) {
+		return ArchiveStats.ADAPTIVE.equals(this.compressionBypass) && this.tarOnlyPercent > 0
+				&& CompressibilityEstimator.incompressiblePercent(ctx) >= this.tarOnlyPercent;
 	}
 	
 	// Runnable Task For Consumer Threads
 	private class s3ArchiveRunnable implements Runnable {
 		@Override
 		public void run() {
+			S3PrefetchWindow window = new S3PrefetchWindow(consumerWindowBytes, consumerWindowConnections, processWindow);
 			// Thread was Not passed a CheckPoint Context
-			while(!sqs.isSqsQueueEmpty()) {
-				SQSContext ctx = getMessageFromSQS();
-	    		if(ctx != null)
-	    			processS3ArchiveContextTar(ctx);
+			SQSContext ctx = null;
+			while((ctx = getMessageFromSQS()) != null) {
+				CONTEXTS_IN_FLIGHT.add(1);
+				long start = System.nanoTime();
+				boolean completed = false;
+				try {
+					if(restorer != null)
+						completed = processRestoreContext(ctx);
+					else
+						completed = processS3ArchiveContextTar(ctx, window);
+				} finally {
+					CONTEXTS_IN_FLIGHT.add(-1);
+					CONTEXT_SECONDS.since(start);
+					if(completed)
+						CONTEXTS_SUCCEEDED.increment();
+					else
+						CONTEXTS_FAILED.increment();
+				}
 			}
 		}
 	}
 	
 	public void consume() {
+		if(this.archiveCheckpointBytes > 0 && this.restorer == null && this.archiveExpiryMillis > 0)
+			removeExpiredArchives();
+		// Single Receiver Thread Long Polls SQS on behalf of all Consumer Threads
+		this.receiverExecutor.submit(this.receiver);
+		this.receiverExecutor.shutdown();
 		for(int i=0; i<this.threadNum; i++) {
 			this.logger.info("Starting New SQS Consumer Thread ... : " + i);
 			this.submitS3ArchiveProcessing();
@@ -68,54 +221,99 @@ public class SQSConsumer {
 		this.executor.shutdown();
 	}
 	
-	private void processS3ArchiveContextTar(SQSContext ctx) {
-		List<S3InputStreamTuple> inStream3Tuple = new ArrayList<S3InputStreamTuple>();
-		S3TarGzBuilder tar = new S3TarGzBuilder(ctx);
-		this.logger.info("Received New Context from SQS ... Processing");
-		this.logger.info("Reading All S3 Objects In SQS Context and Writting To Tar Archive: " + ctx.getLocalArchiveName());
-		for(S3ArchiveObject obj : ctx.getS3ArchiveObjects()){
-			obj.setLocalDirectory(ctx.getLocalDirectory());
-			Future<InputStream> s3ObjectFuture = this.s3.submitObjectIntoTar(obj);
-			S3InputStreamTuple tuple = new S3InputStreamTuple(s3ObjectFuture, obj.getLocalFileName(), obj.getSize());
-			inStream3Tuple.add(tuple);
-		}
-			
-		// Waiting for all S3 Objects to be read and archived
-		this.logger.info("Waiting For S3 Objects To Be Written into Archive: " + ctx.getLocalArchiveName());
-		while(!inStream3Tuple.isEmpty()) {
-			Iterator<S3InputStreamTuple> futureItr = inStream3Tuple.iterator();
-			while(futureItr.hasNext()) {
-				S3InputStreamTuple entry = futureItr.next();
-				if(entry.future.isDone()) {
+	// Failed journaled archives keep their directory and, when streamed, their multipart upload for the redelivered
+	// context. Those whose context was never redelivered are removed here, on every host for its own directories
+	private void removeExpiredArchives() {
+		long cutoff = System.currentTimeMillis() - this.archiveExpiryMillis;
+		int journals = ArchiveJournal.removeExpired(this.disk.getBaseDirectory(), cutoff, this.logger);
+		int uploads = 0;
+		if(this.streamingUpload) {
+			try {
+				for(MultipartUpload upload : S3Interface.s3ListArchiveUploads()) {
+					if(upload.getInitiated().getTime() >= cutoff)
+						continue;
 					try {
-						InputStream s3In = entry.future.get();
-						tar.addInputStreamToArchive(s3In, entry.fileName, entry.objSize);
-						futureItr.remove();
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					} catch (ExecutionException e) {
-						e.printStackTrace();
+						S3Interface.s3AbortArchiveUpload(upload);
+						uploads++;
+					} catch (AmazonClientException e) {
+						this.logger.warning("Could Not Abort Expired Archive Upload: " + upload.getKey() + " " + e.getMessage());
 					}
 				}
+			} catch (AmazonClientException e) {
+				this.logger.warning("Could Not List Archive Uploads: " + e.getMessage());
 			}
-				
-			// Wait 1 second before re-checking Future Status 
-			try {
-				Thread.sleep(1000);
-				this.logger.info("Waiting For S3 Objects To Be Written into Archive: " + ctx.getLocalArchiveName());
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
 		}
-			
+		if(journals > 0 || uploads > 0)
+			this.logger.info("Removed Expired Archives: " + journals + " Journals, " + uploads + " Multipart Uploads");
+	}
+	
+	// Returns false when the context was left on the queue
+	private boolean processS3ArchiveContextTar(SQSContext ctx, S3PrefetchWindow window) {
+		ArchiveJournal journal = null;
+		if(this.archiveCheckpointBytes > 0) {
+			journal = openArchiveJournal(ctx);
+			// Another consumer is building the redelivered context, it stays on the queue
+			if(journal == null)
+				return false;
+		}
+		// An archive already under this name belongs to another context or an earlier run, its sources are kept
+		boolean sharedArchiveKey = this.deleter != null && (isSharedArchiveName(ctx) || archiveExists(ctx));
+		boolean tarOnly = isTarOnly(ctx);
+		ArchiveCodec codec = tarOnly ? this.tarOnlyCodec : this.archiveCodec;
+		S3TarGzBuilder tar = null;
+		S3MultipartOutputStream upload = null;
+		if(this.streamingUpload) {
+			upload = this.s3.createS3ArchiveStream(ctx, journal, this.archiveCheckpointBytes);
+			tar = new S3TarGzBuilder(ctx, upload, codec, this.compressionExecutor, journal, this.archiveCheckpointBytes,
+					this.manifestChecksum);
+		}
+		else
+			tar = new S3TarGzBuilder(ctx, null, codec, this.compressionExecutor, journal, this.archiveCheckpointBytes, this.manifestChecksum);
+		tar.setVerifySourceETags(this.verifySourceETags);
+		tar.setCopyBuffer(this.copyBufferBytes);
+		if(ArchiveStats.ADAPTIVE.equals(this.compressionBypass))
+			tar.setCompressionBypass(new ArchiveStats(ctx.getLocalArchiveName(), tarOnly ? ArchiveStats.TAR_ONLY : ArchiveStats.ADAPTIVE));
+		if(this.seekableLayout)
+			tar.setSeekableLayout(this.seekableFrameBytes);
+		this.logger.info("Received New Context from SQS ... Processing");
+		this.logger.info("Reading All S3 Objects In SQS Context and Writting To Tar Archive: " + ctx.getLocalArchiveName());
 		
-		// Close Tar Archives OutputStream
+		// Objects are written into the Archive as soon as their S3 Streams are ready
+		if(!this.assembler.assemble(ctx, tar, window))
+			tar.abortTarGzArchive();
+		
+		// Close Tar Archives OutputStream (Completes the Multipart Upload when Streaming)
 		this.logger.info("Finished Building Tar Archive: " + ctx.getLocalArchiveName());
-		tar.closeTarGzArchive();
+		boolean archived = tar.closeTarGzArchive();
+		if(tar.getStats() != null)
+			this.logger.info("Compression Bypass: " + tar.getStats());
 		
 		// Uploading Archive File to S3
-		this.logger.info("Uploading Tar Archive: " + ctx.getLocalArchiveName() + " -> To S3 Bucket");
-		S3Interface.uploadS3Archive(ctx);
+		String archiveETag = upload != null ? upload.getETag() : null;
+		if(archived && !this.streamingUpload) {
+			this.logger.info("Uploading Tar Archive: " + ctx.getLocalArchiveName() + " -> To S3 Bucket");
+			archiveETag = S3Interface.uploadS3Archive(ctx);
+		}
+		if(archived && tar.getIndexFile() != null) {
+			this.logger.info("Uploading Archive Index: " + ctx.getLocalArchiveName() + ArchiveIndex.SUFFIX + " -> To S3 Bucket");
+			S3Interface.uploadArchiveIndex(ctx, tar.getIndexFile());
+		}
+		if(archived && tar.getManifestFile() != null) {
+			this.logger.info("Uploading Archive Manifest: " + ctx.getLocalArchiveName() + ArchiveManifest.SUFFIX + " -> To S3 Bucket");
+			S3Interface.uploadArchiveManifest(ctx, tar.getManifestFile());
+		}
+		
+		if(journal != null)
+			journal.close();
+		
+		// Failed Archives are left on the Queue to be redelivered after the visibility timeout
+		// A journaled archive keeps its directory, the redelivered context resumes from the last checkpoint
+		if(!archived) {
+			if(journal == null)
+				DISKInterface.cleanArchiveContextDirectory(ctx);
+			this.logger.info("Failed Building Tar Archive: " + ctx.getLocalArchiveName() + " Context left on SQS Queue");
+			return false;
+		}
 		
 		// Cleaning Up Local Directory Structure
 		this.logger.info("Cleaning Up Directory: " + ctx.getLocalDirectory());
@@ -124,27 +322,117 @@ public class SQSConsumer {
 		// Delete Message From SQS Queue
 		String deleteRequestHandle = ctx.getDeleteRequestHandle();
 		sqs.deleteSQSMessage(deleteRequestHandle);
+		
+		// Sources are deleted last, stopping before this point leaves them in place instead of losing them
+		if(this.deleter != null) {
+			if(sharedArchiveKey)
+				this.logger.warning("Tar Archive: " + ctx.getLocalArchiveName() + " May Share Its Key With Another Archive ... Keeping Source Objects");
+			else
+				deleteSourceObjects(ctx, tar, archiveETag);
+		}
+		return true;
+	}
+	
+	// Archive names hold the device, the first folder of the prefix. Contexts of deeper prefixes of one device share the
+	// name unless the producer numbered them as planned parts
+	private static boolean isSharedArchiveName(SQSContext ctx) {
+		String prefix = ctx.getPrefix() == null ? "" : ctx.getPrefix();
+		if(prefix.endsWith("/"))
+			prefix = prefix.substring(0, prefix.length() - 1);
+		return ctx.getPart() == 0 && prefix.indexOf('/') >= 0;
 	}
 	
-	// For FIFO Queue this Function Declaration Must Be:
-	// private synchronized S3ArchiveContext getMessageFromSQS() {
+	// True unless S3 answers that no archive has this name yet
+	private boolean archiveExists(SQSContext ctx) {
+		try {
+			S3Interface.s3GetArchiveMetadata(ctx.getLocalArchiveName());
+			return true;
+		} catch (AmazonServiceException e) {
+			return e.getStatusCode() != 404;
+		} catch (AmazonClientException e) {
+			return true;
+		}
+	}
+	
+	// Only the archive this consumer uploaded, found in S3 with the length written and the ETag the upload returned and
+	// holding every object of the context, frees its sources
+	private void deleteSourceObjects(SQSContext ctx, S3TarGzBuilder tar, String archiveETag) {
+		if(!tar.holdsAll(ctx)) {
+			this.logger.info("Tar Archive: " + ctx.getLocalArchiveName() + " Does Not Hold Every Source Object ... Keeping Them");
+			return;
+		}
+		if(archiveETag == null) {
+			this.logger.info("Tar Archive: " + ctx.getLocalArchiveName() + " Upload Returned No ETag ... Keeping Source Objects");
+			return;
+		}
+		try {
+			ObjectMetadata uploaded = S3Interface.s3GetArchiveMetadata(ctx.getLocalArchiveName());
+			if(uploaded.getContentLength() != tar.getArchiveBytes()) {
+				this.logger.info("Tar Archive: " + ctx.getLocalArchiveName() + " Is " + uploaded.getContentLength() + " Bytes In S3, " + tar.getArchiveBytes() + " Were Written ... Keeping Source Objects");
+				return;
+			}
+			if(!archiveETag.equals(uploaded.getETag())) {
+				this.logger.warning("Tar Archive: " + ctx.getLocalArchiveName() + " Has ETag " + uploaded.getETag() + " In S3, The Upload Returned " + archiveETag + " ... Keeping Source Objects");
+				return;
+			}
+		} catch (AmazonClientException e) {
+			this.logger.info("Could Not Confirm Upload Of Tar Archive: " + ctx.getLocalArchiveName() + " ... Keeping Source Objects: " + e.getMessage());
+			return;
+		}
+		this.deleter.delete(ctx.getS3ArchiveObjects(), ctx.getLocalArchiveName());
+	}
+	
+	private boolean processRestoreContext(SQSContext ctx) {
+		this.logger.info("Received New Restore Context from SQS ... Restoring Archive: " + ctx.getLocalArchiveName());
+		boolean restored = this.restorer.restore(ctx);
+		DISKInterface.cleanArchiveContextDirectory(ctx);
+		
+		// Failed Restores are left on the Queue, the redelivered context uploads every object of the archive again
+		if(!restored) {
+			this.logger.info("Failed Restoring Archive: " + ctx.getLocalArchiveName() + " Context left on SQS Queue");
+			return false;
+		}
+		sqs.deleteSQSMessage(ctx.getDeleteRequestHandle());
+		return true;
+	}
+	
+	// Returns null when the journal is held by another consumer or cannot be opened
+	private ArchiveJournal openArchiveJournal(SQSContext ctx) {
+		try {
+			ArchiveJournal journal = ArchiveJournal.open(ctx.getLocalDirectory(), this.logger);
+			if(journal == null)
+				this.logger.info("Tar Archive: " + ctx.getLocalArchiveName() + " Is Being Built By Another Consumer ... Skipping");
+			return journal;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	// Messages are received by the single SQSReceiver Thread, so FIFO Queues need no extra synchronization here
+	// Returns null once the Queue has been drained
 	private SQSContext getMessageFromSQS() {
 		SQSContext ctx = null;
-		List<Message> messages = this.sqs.readSQSMessages();
-		ListIterator<Message> itr = messages.listIterator();
-    	if(itr.hasNext()) {
+		Message message = null;
+		try {
+			message = this.receiver.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+    	if(message != null) {
     		this.logger.info("Got Work Context From SQS Queue ...");
     		// Get SQS Message for Local Processing    	    		
-    		Message message = itr.next();
     		String jsonCTX = message.getBody();
     		
     		// Convert to ArchiveConsumerContext using GSON
-    		Gson gson = new Gson();
     		ctx = gson.fromJson(jsonCTX, SQSContext.class);
     		
     		// Set Directory Name and Archive Name
-    		String localDirectory = this.disk.createLocalDirectory();
-    		String localArchiveName = this.disk.generateArchiveName(ctx);
+    		// Restore Contexts may name their archive, otherwise it gets the name the archiving consumer gave it
+    		String localDirectory = this.archiveCheckpointBytes > 0 && this.restorer == null ? this.disk.createLocalDirectory(ctx) : this.disk.createLocalDirectory();
+    		String localArchiveName = ctx.getLocalArchiveName();
+    		if(this.restorer == null || localArchiveName == null)
+    			localArchiveName = isTarOnly(ctx) ? this.disk.generateArchiveName(ctx, this.tarOnlyCodec.getExtension()) : this.disk.generateArchiveName(ctx);
     		ctx.setLocalDirectory(localDirectory);
     		ctx.setLocalArchiveName(localArchiveName);
     		
@@ -28,6 +28,8 @@ public class SQSContext implements Serializable {
 	private String localDirectory;
 	private String localArchiveName;
 	private String deleteRequestHandle;
+	private int part;
+	private long totalBytes;
 	
 	// Constructor
 	SQSContext(String prefix, String year, String localDirectory, String localArchiveName) {
@@ -57,6 +59,13 @@ public class SQSContext implements Serializable {
 	public String getDeleteRequestHandle() {
 		return this.deleteRequestHandle;
 	}
+	// Part number of a planned archive, 0 for archives that are not planned against a target size
+	public int getPart() {
+		return this.part;
+	}
+	public long getTotalBytes() {
+		return this.totalBytes;
+	}
 	
 	// Set Methods for S3ArchiveControllerContext
 	public void setPrefix(String prefix) {
@@ -74,12 +83,16 @@ public class SQSContext implements Serializable {
 	public void setDeleteRequestHandle(String deleteRequestHandle) {
 		this.deleteRequestHandle = deleteRequestHandle;
 	}
+	public void setPart(int part) {
+		this.part = part;
+	}
 	
 	// S3ArchiveObject List Methods
 	public void addS3ArchiveObject(S3ArchiveObject object) {
 		this.s3ArchiveObjects.add(object);
+		this.totalBytes += Long.parseLong(object.getSize());
 	}
 	public void removeS3ArchiveObject(int index) {
-		this.s3ArchiveObjects.remove(index);
+		this.totalBytes -= Long.parseLong(this.s3ArchiveObjects.remove(index).getSize());
 	}
 }
@@ -30,15 +30,28 @@ import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.MessageAttributeValue;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.google.gson.Gson;
 
 public class SQSInterface {
+	// SendMessageBatch Limits: 10 entries and 256 KB of message bodies per request
+	public static final int MAX_BATCH_ENTRIES = 10;
+	public static final int MAX_BATCH_BYTES = 256 * 1024;
+	static final Gson gson = new Gson();
 	private String queueURL;
 	private AmazonSQS sqs;
 	private ProfileCredentialsProvider credentialsProvider;
 	private String region;
 	private int maxMessages = 1;
+	private static final String REQUEST_HELP = "SQS requests";
+	private static final ArchiveMetrics.histogram RECEIVE_SECONDS = ArchiveMetrics.histogram("sqs_request_seconds", "call=receive", REQUEST_HELP, ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.histogram DELETE_SECONDS = ArchiveMetrics.histogram("sqs_request_seconds", "call=delete", REQUEST_HELP, ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.histogram SEND_SECONDS = ArchiveMetrics.histogram("sqs_request_seconds", "call=send", REQUEST_HELP, ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.histogram SEND_BATCH_SECONDS = ArchiveMetrics.histogram("sqs_request_seconds", "call=send_batch", REQUEST_HELP, ArchiveMetrics.LATENCY_SECONDS);
+	private static final ArchiveMetrics.histogram ATTRIBUTES_SECONDS = ArchiveMetrics.histogram("sqs_request_seconds", "call=get_attributes", REQUEST_HELP, ArchiveMetrics.LATENCY_SECONDS);
 	
 	SQSInterface(String queueURL, String region, String authType) {
 		this.queueURL = queueURL;
@@ -67,6 +80,12 @@ public class SQSInterface {
 		}
 	}
 	
+	// Queue of an existing client, the load test passes its SimulatedSQS
+	SQSInterface(String queueURL, AmazonSQS sqs) {
+		this.queueURL = queueURL;
+		this.sqs = sqs;
+	}
+	
 	private String getQueueURL() {
 		return queueURL;
 	}
@@ -83,11 +102,29 @@ public class SQSInterface {
     	ReceiveMessageRequest rcv = new ReceiveMessageRequest()
     		.withQueueUrl(getQueueURL())
     		.withMaxNumberOfMessages(getMaxMessages());
-    	return sqs.receiveMessage(rcv).getMessages();
+    	long start = System.nanoTime();
+    	List<Message> messages = sqs.receiveMessage(rcv).getMessages();
+    	RECEIVE_SECONDS.since(start);
+    	return messages;
+    }
+	
+	// Long Poll: waits up to waitTimeSeconds for messages to arrive, SQS returns at most 10 per receive
+	public List<Message> readSQSMessages(int maxMessages, int waitTimeSeconds) {
+    	ReceiveMessageRequest rcv = new ReceiveMessageRequest()
+    		.withQueueUrl(getQueueURL())
+    		.withMaxNumberOfMessages(Math.min(maxMessages, 10))
+    		.withWaitTimeSeconds(waitTimeSeconds);
+    	// Long polls include the wait for messages
+    	long start = System.nanoTime();
+    	List<Message> messages = sqs.receiveMessage(rcv).getMessages();
+    	RECEIVE_SECONDS.since(start);
+    	return messages;
     }
 	
 	public void deleteSQSMessage(String requestHanderID) {
-		sqs.deleteMessage(getQueueURL(), requestHanderID);	
+		long start = System.nanoTime();
+		sqs.deleteMessage(getQueueURL(), requestHanderID);
+		DELETE_SECONDS.since(start);
 	}
 	
     public void sendMessage(String body, long attrSize, Date attrDate) {
@@ -103,23 +140,39 @@ public class SQSInterface {
         		//.withMessageGroupId(getGroupID())
         		.withMessageBody(body)
         		.withMessageAttributes(message);
+       long start = System.nanoTime();
        sqs.sendMessage(req);
+       SEND_SECONDS.since(start);
     }
     
     public void sendMessage(SQSContext ctx) {
-    	Gson gson = new Gson();
     	String jsonCTX = gson.toJson(ctx);
         SendMessageRequest req = new SendMessageRequest()
         		.withQueueUrl(getQueueURL())
         		.withMessageBody(jsonCTX);
+        long start = System.nanoTime();
         sqs.sendMessage(req);
+        SEND_SECONDS.since(start);
+    }
+    
+    // Entries that failed are listed in the result, the request itself only throws when no entry was accepted
+    public SendMessageBatchResult sendMessageBatch(List<SendMessageBatchRequestEntry> entries) {
+        SendMessageBatchRequest req = new SendMessageBatchRequest()
+        		.withQueueUrl(getQueueURL())
+        		.withEntries(entries);
+        long start = System.nanoTime();
+        SendMessageBatchResult result = sqs.sendMessageBatch(req);
+        SEND_BATCH_SECONDS.since(start);
+        return result;
     }
 	
 	public boolean isSqsQueueEmpty() {
 		GetQueueAttributesRequest getQueueAttributesRequest = new GetQueueAttributesRequest()
 				.withQueueUrl(getQueueURL())
 				.withAttributeNames("ApproximateNumberOfMessages");
+		long start = System.nanoTime();
 		GetQueueAttributesResult getQueueAttributes = sqs.getQueueAttributes(getQueueAttributesRequest);
+		ATTRIBUTES_SECONDS.since(start);
 		String queueLengthString = getQueueAttributes.getAttributes().get("ApproximateNumberOfMessages");
 		long queueLengthLong = Long.parseLong(queueLengthString);
 		if(queueLengthLong == 0)
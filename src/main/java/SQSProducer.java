@@ -19,24 +19,30 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
-import com.google.gson.Gson;
 
 /* The SQSProducer has a dual function
  * 		1. Lists an S3 Bucket and
  * 		2. Writes results to AWS SQS Queue
  */
 public class SQSProducer {
+	// The whole inventory is tracked as one journal partition, it is done once every context was accepted
+	private static final String INVENTORY_PARTITION = "inventory";
+	private static final ArchiveMetrics.counter INVENTORY_KEYS = ArchiveMetrics.counter("listed_keys_total", "source=inventory", "Keys read from listings or inventories");
 	private Logger logger = null; //Logger.getLogger("SQSProducerLogger");
 	private Logger listLogger = null;
 	private Logger contextLogger = null;
@@ -44,131 +50,171 @@ public class SQSProducer {
 	private S3Interface s3 = null;
 	private SQSInterface sqs = null;
 	private String command;
-	private SortedSet<S3ArchiveObject> dateSortedSet = null; 
+	private SQSBatchSender sender = null;
+	private int sendQueueSize = 100;
+	private int sendBatchesInFlight = 4;
+	private int listingConcurrency = 4;
+	private ExecutorService pageExecutor = Executors.newCachedThreadPool();
+	private File spillDirectory = null;
+	private long groupingBufferBytes = 64L * 1024 * 1024;
+	private GroupingStrategy groupingStrategy = GroupingStrategies.compile(null, null);
+	private String logPath;
+	private boolean journalEnabled = true;
+	private ProducerJournal journal = null;
+	private String inventoryManifest = null;
+	private int inventoryThreads = 1;
+	private ArchivePlanner planner = null;
+	private boolean archiveInput = false;
+	private AtomicInteger failedPartitions = new AtomicInteger();
 	
-	@SuppressWarnings("unchecked")
 	SQSProducer(String bucket, S3Interface s3, SQSInterface sqs, Logger logger, String logPath, String command) {
 		this.bucket = bucket;
 		this.s3 = s3;
 		this.sqs = sqs;
 		this.logger = logger;
 		this.command = command;
-		this.dateSortedSet = new TreeSet<S3ArchiveObject>(new DateComparator());
 		this.listLogger = new ArchiveLogger("sqs-listing-results", logPath + "/").getLogger();
+		this.spillDirectory = new File(logPath + "/spill/");
+		this.logPath = logPath;
 		
 		// Log Contexts only for Dry-Runs
 		if(command.compareTo("run") != 0)
 			this.contextLogger = new ArchiveLogger("sqs-contexts-results", logPath + "/").getLogger();
 	}
 	
+	// Called by ArchiveController: contexts queued ahead of SQS before listing blocks and concurrent SendMessageBatch requests
+	public void setSendPipeline(int queueSize, int maxBatchesInFlight) {
+		this.sendQueueSize = queueSize;
+		this.sendBatchesInFlight = maxBatchesInFlight;
+	}
+	
+	// Called by ArchiveController: number of top-level partitions listed concurrently
+	public void setListingConcurrency(int listingConcurrency) {
+		this.listingConcurrency = Math.max(listingConcurrency, 1);
+	}
+	
+	// Called by ArchiveController: heap each listing partition buffers before spilling sorted runs to disk
+	public void setGroupingBuffer(long groupingBufferBytes) {
+		this.groupingBufferBytes = groupingBufferBytes;
+	}
+	
+	// Called by ArchiveController: compiled once, shared by every listing partition
+	public void setGroupingStrategy(GroupingStrategy groupingStrategy) {
+		this.groupingStrategy = groupingStrategy;
+	}
+	
+	// Called by ArchiveController: journal listing progress and sent contexts so a restarted run resumes where it stopped
+	public void setJournal(boolean journalEnabled) {
+		this.journalEnabled = journalEnabled;
+	}
+	
+	// Called by ArchiveController: objects are read from an S3 Inventory report (local path or s3:// URI) instead of listing the bucket
+	public void setInventory(String manifestLocation, int threads) {
+		this.inventoryManifest = manifestLocation;
+		this.inventoryThreads = Math.max(threads, 1);
+	}
+	
+	// Called by ArchiveController: archives are planned against a target size and object count, 0 leaves a target unbounded
+	public void setArchivePlan(long targetBytes, long targetObjects, String packPolicy) {
+		if(targetBytes > 0 || targetObjects > 0)
+			this.planner = new ArchivePlanner(targetBytes, targetObjects, packPolicy);
+	}
+	
+	// Called by ArchiveController: one restore context is sent per archive of the target bucket instead of listing objects
+	public void setArchiveInput(boolean archiveInput) {
+		this.archiveInput = archiveInput;
+	}
+	
 	private String getCommand() {
 		return this.command;
 	}
 	
-	@SuppressWarnings("rawtypes")
-	private class DateComparator implements Comparator {  
-		@Override
-		public int compare(Object o1, Object o2) {
-			S3ArchiveObject obj1 = (S3ArchiveObject)o1;
-			S3ArchiveObject obj2 = (S3ArchiveObject)o2;
-			if(obj1.getDate().equals(obj2.getDate()))  
-				return 0;  
-			else if(obj1.getDate().after(obj2.getDate()))
-				return 1;  
-			else  
-				return -1; 
-		}
-	}  
-    
-    private String generatePrefix(String key) {
-    	File absPath = new File(key);
-    	return absPath.getParent();
-    }
-    
-    private String generateFileName(String key) {
-    	File absPath = new File(key);
-    	return absPath.getName();
-    }
-    
-    @SuppressWarnings("deprecation")
-	private Date generateDate(String fileName) {
-    	Date date = new Date();
-    	String dateString = fileName.split("[.]")[0];
-    	String dateValues [] = dateString.split("-");
-    	// Build Date Object for S3ArchiveObject
-    	date.setMonth(Integer.valueOf(dateValues[0]));
-    	date.setDate(Integer.valueOf(dateValues[1]));
-    	date.setYear(Integer.valueOf(dateValues[2]));
-    	return date;
-    }
-    
     private S3ArchiveObject generateS3ArchiveObject(String key, long size, String fileName, Date date) {
     	S3ArchiveObject obj = new S3ArchiveObject(key, String.valueOf(size), null, null, fileName, date);
     	return obj;
     }
     
-	private void insertSortedSet(S3ArchiveObject obj) {
-		if(this.dateSortedSet.isEmpty())
-			this.dateSortedSet.add(obj);
-		else {
-			S3ArchiveObject lastObj = this.dateSortedSet.last();
-			String lastPrefix = generatePrefix(lastObj.getKey());
-			String curPrefix = generatePrefix(obj.getKey());
-			if(lastPrefix.compareTo(curPrefix) != 0) {
-				// Got a new prefix, build context and send into SQS Queue
-				try {
-					buildSendS3ArchiveContext();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}		
-		}
-		this.dateSortedSet.add(obj);
+	// Every listing partition groups its objects in its own S3ObjectGrouper
+	private S3ObjectGrouper newGrouper(contextHandler handler) {
+		return new S3ObjectGrouper(this.spillDirectory, this.groupingBufferBytes, handler, this.logger);
 	}
-    
-	@SuppressWarnings("deprecation")
-	private void buildSendS3ArchiveContext() throws IOException {
-		S3ArchiveObject first = this.dateSortedSet.first();
-		String prefix = generatePrefix(first.getKey());
-		String year = String.valueOf(first.getDate().getYear());
-		SQSContext ctx = new SQSContext(prefix, year, null, null);
-		String prevYear = year;
-				
-		// Build S3 Archive Context 
-		Iterator<S3ArchiveObject> itr = this.dateSortedSet.iterator();
-		while(itr.hasNext()) {
-			S3ArchiveObject obj = itr.next();
-			String curYear = String.valueOf(obj.getDate().getYear());
-			if(curYear.compareTo(prevYear)!=0){
-				if(this.getCommand().compareTo("run") == 0) {              
-					sqs.sendMessage(ctx);
-					logger.info("Sent S3 Archive Context to SQS Queue");
-				}
-				else
-					printContext(ctx);
-				prefix = generatePrefix(obj.getKey());
-				ctx = new SQSContext(prefix, curYear, null, null);
+	
+	// Planned archives are split and packed per partition, flush() sends the packs still open once the grouper closed
+	private class contextHandler implements S3ObjectGrouper.ContextHandler, ArchivePlanner.PlannedContextHandler {
+		private ProducerJournal.PartitionCheckpoint checkpoint;
+		private ArchivePlanner.Packer packer = null;
+		
+		contextHandler(ProducerJournal.PartitionCheckpoint checkpoint) {
+			this.checkpoint = checkpoint;
+			if(planner != null)
+				this.packer = planner.newPacker(this);
+		}
+		
+		// Contexts rebuilt after a restart that SQS already accepted
+		private boolean isSent(SQSContext ctx) {
+			if(journal != null && journal.isSent(ctx)) {
+				logger.info("Skipping S3 Archive Context Already Sent: " + ctx.getPrefix() + " " + ctx.getYear());
+				return true;
 			}
-			ctx.addS3ArchiveObject(obj);
-			prevYear = curYear;
+			return false;
 		}
 		
-		if(!ctx.getS3ArchiveObjects().isEmpty()) {
-			if(this.getCommand().compareTo("run") == 0) {
-				sqs.sendMessage(ctx);
-				logger.info("Sent S3 Archive Context to SQS Queue");
+		@Override
+		public void handle(SQSContext ctx) throws IOException {
+			if(planner == null) {
+				if(!isSent(ctx))
+					sendContext(ctx, this.checkpoint == null ? null : this.checkpoint.queued(ctx));
+				return;
+			}
+			for(SQSContext part : planner.split(ctx)) {
+				if(!isSent(part))
+					this.packer.add(part, this.checkpoint == null ? null : this.checkpoint.queued(part));
 			}
-			else
-				printContext(ctx);
-		}	
+		}
+		
+		@Override
+		public void send(SQSContext ctx, Runnable onSent) throws IOException {
+			sendContext(ctx, onSent);
+		}
+		
+		public void flush() throws IOException {
+			if(this.packer != null)
+				this.packer.flush();
+		}
 		
-		// Clear the current TreeSort List
-		this.dateSortedSet.clear();
+		@Override
+		public void completed(String prefix, String lastKey) {
+			if(this.checkpoint != null)
+				this.checkpoint.prefixCompleted(lastKey);
+		}
+	}
+	
+	// The later of two listing positions, null meaning the start
+	private static String later(String key1, String key2) {
+		if(key1 == null)
+			return key2;
+		if(key2 == null)
+			return key1;
+		return key1.compareTo(key2) >= 0 ? key1 : key2;
+	}
+	
+	// Contexts are queued on the SQSBatchSender, listing only blocks here when its queue is full
+	private void sendContext(SQSContext ctx, Runnable onSent) throws IOException {
+		if(this.getCommand().compareTo("run") != 0) {
+			printContext(ctx);
+			return;
+		}
+		try {
+			this.sender.send(ctx, onSent);
+			logger.info("Queued S3 Archive Context for SQS Queue");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted Queueing S3 Archive Context", e);
+		}
 	}
 	
 	private void printContext(SQSContext ctx) throws IOException {
-		Gson gson = new Gson();
-		String ctx_string = gson.toJson(ctx);
+		String ctx_string = SQSInterface.gson.toJson(ctx);
 		this.contextLogger.info(ctx_string);
 	}
 	
@@ -179,49 +225,392 @@ public class SQSProducer {
 		}
 	}
     
+    // Groups the Keys of one listing page after startAfter, returns the number of Keys that passed the filter
+    private long processListingPage(ListObjectsV2Result listing, S3ObjectGrouper grouper, ParsedKey parsed, String listingFilter,
+    		String startAfter) throws IOException {
+        List<S3ObjectSummary> results = listing.getObjectSummaries();
+        logger.info("Got: [" + results.size() + "] Keys in listing response from S3");
+        List<String> listLog = new ArrayList<String>();
+        int skipped = 0;
+    	for(S3ObjectSummary summary : results) {
+    		// Get Parameters of Listing Response
+    		String key = summary.getKey();
+    		if(startAfter != null && key.compareTo(startAfter) <= 0)
+    			continue;
+    		if(key.contains(listingFilter)) {
+    			Date lastModified = summary.getLastModified();
+    			if(!this.groupingStrategy.parse(key, lastModified == null ? 0 : lastModified.getTime(), parsed)) {
+    				skipped++;
+    				continue;
+    			}
+    			long size = summary.getSize();
+    			String fileName = key.substring(parsed.getFileNameStart());
+    			S3ArchiveObject obj = generateS3ArchiveObject(key, size, fileName, new Date(parsed.getDate()));
+    			grouper.add(obj, parsed.getGroup());
+    			listLog.add(key);
+    		}
+    	}  
+    	if(skipped > 0)
+    		logger.info("Skipped: [" + skipped + "] Keys not matching the Grouping Strategy");
+    	try {
+			writeListingLog(listLog);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+    	return listLog.size();
+    }
+    
+    private class pageCallable implements Callable<ListObjectsV2Result> {
+    	private ListObjectsV2Request req;
+    	
+    	pageCallable(ListObjectsV2Request req) {
+    		this.req = req;
+    	}
+    	
+		@Override
+		public ListObjectsV2Result call() throws Exception {
+			return s3.s3ListObjects(this.req);
+		}
+    }
+    
+    // Lists one top-level partition in key order, the next page is requested while the current one is grouped
+    private class partitionCallable implements Callable<Long> {
+    	private String partition;
+    	private String startAfter;
+    	private String listingFilter;
+    	
+    	partitionCallable(String partition, String startAfter, String listingFilter) {
+    		this.partition = partition;
+    		this.startAfter = startAfter;
+    		this.listingFilter = listingFilter;
+    	}
+    	
+		@Override
+		public Long call() throws Exception {
+			// Resume after the journal's checkpoint
+			if(journal != null && journal.getCheckpoint(this.partition) != null) {
+				this.startAfter = later(this.startAfter, journal.getCheckpoint(this.partition));
+				logger.info("Resuming Listing Partition: " + this.partition + " after Key: " + this.startAfter);
+			}
+	        ListObjectsV2Request req = new ListObjectsV2Request()
+	        		.withBucketName(bucket)
+	        		.withPrefix(this.partition)
+	        		.withStartAfter(this.startAfter);
+	        ProducerJournal.PartitionCheckpoint checkpoint = journal == null ? null : journal.partition(this.partition);
+	        contextHandler handler = new contextHandler(checkpoint);
+	        S3ObjectGrouper grouper = newGrouper(handler);
+	        ParsedKey parsed = new ParsedKey();
+	        long keys = 0;
+	        ListObjectsV2Result listing = s3.s3ListObjects(req);
+	        while(true) {
+	        	// s3ListObjects left the continuation token in req
+	        	Future<ListObjectsV2Result> next = null;
+	        	if(listing.isTruncated())
+	        		next = pageExecutor.submit(new pageCallable(req));
+	        	try {
+	        		keys += processListingPage(listing, grouper, parsed, this.listingFilter, null);
+	        	} catch (IOException | RuntimeException e) {
+	        		if(next != null)
+	        			next.cancel(true);
+	        		throw e;
+	        	}
+	        	if(next == null)
+	        		break;
+	        	listing = next.get();
+	        }
+	        // Send the groups of the last prefix
+	        grouper.close();
+	        handler.flush();
+	        if(checkpoint != null)
+	        	checkpoint.finish();
+	        logger.info("Finished Listing Partition: " + this.partition + " [" + keys + "] Keys");
+			return keys;
+		}
+    }
+    
+    // Objects of an S3 Inventory pass the same prefix, marker and filter checks as listed Keys
+    private class inventoryHandler implements S3InventoryReader.ObjectHandler {
+    	private S3ObjectGrouper[] groupers;
+    	private String listingPrefix;
+    	private String listingMarker;
+    	private String listingFilter;
+    	private AtomicLong grouped = new AtomicLong();
+    	private ThreadLocal<ParsedKey> parsed = new ThreadLocal<ParsedKey>() {
+    		@Override
+    		protected ParsedKey initialValue() {
+    			return new ParsedKey();
+    		}
+    	};
+    	
+    	inventoryHandler(S3ObjectGrouper[] groupers, String listingPrefix, String listingMarker, String listingFilter) {
+    		this.groupers = groupers;
+    		this.listingPrefix = listingPrefix == null ? "" : listingPrefix;
+    		this.listingMarker = listingMarker;
+    		this.listingFilter = listingFilter;
+    	}
+    	
+		@Override
+		public void object(String key, long size, long lastModified) throws IOException {
+			INVENTORY_KEYS.increment();
+			if(!key.startsWith(this.listingPrefix) || !key.contains(this.listingFilter))
+				return;
+			if(this.listingMarker != null && key.compareTo(this.listingMarker) <= 0)
+				return;
+			ParsedKey parsed = this.parsed.get();
+			if(!groupingStrategy.parse(key, lastModified, parsed))
+				return;
+			String fileName = key.substring(parsed.getFileNameStart());
+			S3ArchiveObject obj = generateS3ArchiveObject(key, size, fileName, new Date(parsed.getDate()));
+			// Every prefix is grouped by exactly one grouper
+			S3ObjectGrouper grouper = this.groupers[shard(key, this.groupers.length)];
+			synchronized(grouper) {
+				grouper.add(obj, parsed.getGroup());
+			}
+			this.grouped.incrementAndGet();
+		}
+    }
+    
+    private static int shard(String key, int shards) {
+    	int end = key.lastIndexOf('/');
+    	int hash = 0;
+    	for(int i=0; i<end; i++)
+    		hash = 31 * hash + key.charAt(i);
+    	return (hash & Integer.MAX_VALUE) % shards;
+    }
+    
+    private class closeCallable implements Callable<Void> {
+    	private S3ObjectGrouper grouper;
+    	private contextHandler handler;
+    	
+    	closeCallable(S3ObjectGrouper grouper, contextHandler handler) {
+    		this.grouper = grouper;
+    		this.handler = handler;
+    	}
+    	
+		@Override
+		public Void call() throws Exception {
+			this.grouper.close();
+			this.handler.flush();
+			return null;
+		}
+    }
+    
+    // The report is not in Key order, so every prefix is grouped unordered and sent once the whole report was read.
+    // A report that fails to read sends nothing, objects missing from a context would never be archived.
+    // Restore contexts only name their archive, consumers map its entries back to Keys through the archive index
+    // or the entry names. Restores are idempotent so no journal is kept
+    private void produceFromArchives(String archivePrefix, String listingFilter) {
+        logger.info("Starting Archive Listing on the Target Bucket including only Archives containing: " + listingFilter);
+        long sent = 0;
+        try {
+        	for(String archiveName : this.s3.listArchives(archivePrefix)) {
+        		if(listingFilter != null && !archiveName.contains(listingFilter))
+        			continue;
+        		SQSContext ctx = new SQSContext(null, null, null, archiveName);
+        		sendContext(ctx, null);
+        		sent++;
+        	}
+        } catch (IOException | AmazonClientException e) {
+        	logger.info("Failed Listing Archives After [" + sent + "] Restore Contexts: " + e.getMessage());
+        }
+        logger.info("Sent [" + sent + "] Archive Restore Contexts");
+    }
+    
+    private void produceFromInventory(String listingPrefix, String listingMarker, String listingFilter) {
+        logger.info("Starting S3 Inventory Read on: [" + bucket + "] including only Keys containing: " + listingFilter);
+        if(this.sender != null && this.journalEnabled) {
+        	try {
+        		// The journal of an inventory run belongs to its manifest
+        		this.journal = new ProducerJournal(new File(this.logPath + "/inventory.journal"), this.bucket,
+        				this.inventoryManifest + " " + (listingPrefix == null ? "" : listingPrefix), this.logger);
+        	} catch (IOException e) {
+        		logger.info("Failed Opening Producer Journal, Reading Without Resume: " + e.getMessage());
+        	}
+        }
+        if(this.planner != null)
+        	this.planner.setJournal(this.journal);
+        if(this.journal != null && this.journal.isDone(INVENTORY_PARTITION)) {
+        	logger.info("Skipping S3 Inventory Sent in a Previous Run: " + this.inventoryManifest);
+        	return;
+        }
+        ProducerJournal.PartitionCheckpoint checkpoint = this.journal == null ? null : this.journal.partition(INVENTORY_PARTITION);
+        S3ObjectGrouper[] groupers = new S3ObjectGrouper[this.inventoryThreads];
+        contextHandler[] handlers = new contextHandler[this.inventoryThreads];
+        for(int i=0; i<groupers.length; i++) {
+        	handlers[i] = new contextHandler(checkpoint);
+        	groupers[i] = new S3ObjectGrouper(this.spillDirectory, this.groupingBufferBytes / groupers.length, handlers[i], this.logger, false);
+        }
+        inventoryHandler handler = new inventoryHandler(groupers, listingPrefix, listingMarker, listingFilter);
+        S3InventoryReader reader = new S3InventoryReader(this.inventoryManifest, this.inventoryThreads, this.logger);
+        try {
+        	reader.read(handler);
+        } catch (IOException e) {
+        	logger.info("Failed Reading S3 Inventory, No Contexts Sent: " + e.getMessage());
+        	for(S3ObjectGrouper grouper : groupers)
+        		grouper.discard();
+        	return;
+        }
+        logger.info("Grouping [" + handler.grouped.get() + "] Keys from S3 Inventory");
+        
+        // Groupers merge their spilled runs and send their contexts concurrently
+        ExecutorService closeExecutor = Executors.newFixedThreadPool(groupers.length);
+        List<Future<Void>> closed = new ArrayList<Future<Void>>();
+        for(int i=0; i<groupers.length; i++)
+        	closed.add(closeExecutor.submit(new closeCallable(groupers[i], handlers[i])));
+        closeExecutor.shutdown();
+        boolean complete = true;
+        for(Future<Void> grouper : closed) {
+        	try {
+        		grouper.get();
+        	} catch (ExecutionException e) {
+        		logger.info("Failed Grouping S3 Inventory: " + e.getCause());
+        		complete = false;
+        	} catch (InterruptedException e) {
+        		logger.info("Interrupted Grouping S3 Inventory");
+        		closeExecutor.shutdownNow();
+        		complete = false;
+        		break;
+        	}
+        }
+        if(checkpoint != null && complete) {
+        	checkpoint.prefixCompleted(null);
+        	checkpoint.finish();
+        }
+    }
+    
     public void produce(String listingPrefix, String listingMarker, String listingFilter) {
+    	// The sender's dispatcher thread runs until close(), so it is only started once the producer runs
+    	if(this.command.compareTo("run") == 0)
+    		this.sender = new SQSBatchSender(this.sqs, this.logger, this.sendQueueSize, this.sendBatchesInFlight);
+    	if(this.archiveInput)
+    		produceFromArchives(listingPrefix, listingFilter);
+    	else if(this.inventoryManifest != null)
+    		produceFromInventory(listingPrefix, listingMarker, listingFilter);
+    	else
+    		produceFromListing(listingPrefix, listingMarker, listingFilter);
+        
+        // Flush Contexts still queued for SQS
+        if(this.sender != null)
+        	try {
+        		this.sender.close();
+        	} catch (InterruptedException e) {
+        		logger.info("Interrupted Flushing S3 Archive Contexts to SQS Queue");
+        	}
+        if(getFailedContexts() > 0)
+        	logger.severe(getFailedContexts() + " S3 Archive Contexts Were Rejected By SQS And Not Queued. Run the producer again to resend them"
+        			+ (this.journalEnabled ? "" : ", without the producer journal every Context is sent again"));
+        if(this.journal != null)
+        	try {
+        		this.journal.close();
+        	} catch (IOException e) {
+        		e.printStackTrace();
+        	}
+        
+        this.s3.executor.shutdown();
+        logger.info("Finished Listing from S3 Bucket ...");
+    }
+    
+    private void produceFromListing(String listingPrefix, String listingMarker, String listingFilter) {
     	//S3 list files by lexigraphic sorting
     	//If files are named as 8-14-2018, then 8-14-2019 will come before 8-15-2018
-    	//As it is desired to archive a years worth of data these structures need to be sorted locally
+    	//As it is desired to archive a years worth of data each prefix is sorted locally by S3ObjectGrouper
+    	//Top-level partitions (device prefixes) are discovered with a delimiter listing and listed concurrently,
+    	//each partition has its own S3ObjectGrouper so grouping never spans partitions
         ListObjectsV2Request req = new ListObjectsV2Request()
         		.withBucketName(this.bucket)
         		.withPrefix(listingPrefix)
+        		.withDelimiter("/")
         		.withStartAfter(listingMarker);
         ListObjectsV2Result listing;
         logger.info("Starting S3 Object Listing on: [" + bucket + "] including only Keys containing: " + listingFilter);
+        if(this.sender != null && this.journalEnabled) {
+        	try {
+        		this.journal = new ProducerJournal(new File(this.logPath + "/producer.journal"), this.bucket, listingPrefix, this.logger);
+        	} catch (IOException e) {
+        		logger.info("Failed Opening Producer Journal, Listing Without Resume: " + e.getMessage());
+        	}
+        }
+        if(this.planner != null)
+        	this.planner.setJournal(this.journal);
+        ExecutorService listingExecutor = Executors.newFixedThreadPool(this.listingConcurrency);
+        List<Future<Long>> partitions = new ArrayList<Future<Long>>();
+        // Keys directly under the listing prefix form their own partition "", listed by this thread
+        String rootPartition = "";
+        ProducerJournal.PartitionCheckpoint checkpoint = null;
+        String rootStartAfter = null;
+        if(this.journal != null && !this.journal.isDone(rootPartition)) {
+        	checkpoint = this.journal.partition(rootPartition);
+        	rootStartAfter = this.journal.getCheckpoint(rootPartition);
+        }
+        contextHandler handler = new contextHandler(checkpoint);
+        S3ObjectGrouper grouper = newGrouper(handler);
+        ParsedKey parsed = new ParsedKey();
+        boolean rootFailed = false;
         do {	
         	listing=s3.s3ListObjects(req);
-            List<S3ObjectSummary> results = listing.getObjectSummaries();
-            logger.info("Got: [" + results.size() + "] Keys in listing response from S3");
-            List<String> listLog = new ArrayList<String>();
-        	for(S3ObjectSummary summary : results) {
-        		// Get Parameters of Listing Response
-        		String key = summary.getKey();
-        		if(key.contains(listingFilter)) {
-        			long size = summary.getSize();
-        			String fileName = generateFileName(key);
-        			Date date = generateDate(fileName);
-        			S3ArchiveObject obj = generateS3ArchiveObject(key, size, fileName, date);
-        			insertSortedSet(obj);
-        			listLog.add(key);
+        	for(String partition : listing.getCommonPrefixes()) {
+        		// Only the partition holding the marker resumes after it, earlier partitions are skipped
+        		String startAfter = null;
+        		if(listingMarker != null && listingMarker.startsWith(partition))
+        			startAfter = listingMarker;
+        		else if(listingMarker != null && partition.compareTo(listingMarker) < 0)
+        			continue;
+        		if(this.journal != null && this.journal.isDone(partition)) {
+        			logger.info("Skipping Listing Partition Done in a Previous Run: " + partition);
+        			continue;
         		}
-        	}  
+        		logger.info("Discovered Listing Partition: " + partition);
+        		partitions.add(listingExecutor.submit(new partitionCallable(partition, startAfter, listingFilter)));
+        	}
+        	// Pages of a failed root partition are still listed for their partitions
+        	if(rootFailed || (this.journal != null && this.journal.isDone(rootPartition)))
+        		continue;
         	try {
-				writeListingLog(listLog);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+        		processListingPage(listing, grouper, parsed, listingFilter, rootStartAfter);
+        	} catch (IOException e) {
+        		rootFailed = true;
+        		failedPartitions.incrementAndGet();
+        		logger.severe("Failed Listing Partition: [" + rootPartition + "] " + e);
+        	}
         } while (listing.isTruncated());
+        try {
+        	grouper.close();
+        	handler.flush();
+        	// A failed root partition is resumed from its checkpoint by the next run
+        	if(checkpoint != null && !rootFailed)
+        		checkpoint.finish();
+        } catch (IOException e) {
+        	e.printStackTrace();
+        }
+        listingExecutor.shutdown();
         
-        // Send the last element if the current Tree is noe Empty
-        if(!this.dateSortedSet.isEmpty())
-			try {
-				buildSendS3ArchiveContext();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-        
-        this.s3.executor.shutdown();
-        logger.info("Finished Listing from S3 Bucket ...");
+        // Wait for every Partition to be Listed
+        long keys = 0;
+        for(Future<Long> partition : partitions) {
+        	try {
+        		keys += partition.get();
+        	} catch (ExecutionException e) {
+        		failedPartitions.incrementAndGet();
+        		logger.severe("Failed Listing Partition: " + e.getCause());
+        	} catch (InterruptedException e) {
+        		logger.info("Interrupted Waiting on Listing Partitions");
+        		listingExecutor.shutdownNow();
+        		break;
+        	}
+        }
+        this.pageExecutor.shutdown();
+        logger.info("Listed [" + keys + "] Keys from " + partitions.size() + " Partitions");
+        if(failedPartitions.get() > 0)
+        	logger.severe(failedPartitions.get() + " Listing Partitions Failed, their Keys were not queued. Run the producer again to resume them");
+    }
+    
+    // Partitions whose listing failed, ArchiveController exits non-zero when there are any
+    public int getFailedPartitions() {
+    	return this.failedPartitions.get();
+    }
+    
+    // Contexts SQS still rejected after every retry, ArchiveController exits non-zero when there are any
+    public long getFailedContexts() {
+    	return this.sender == null ? 0 : this.sender.getFailedCount();
     }
 }
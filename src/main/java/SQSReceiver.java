@@ -0,0 +1,118 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import com.amazonaws.services.sqs.model.Message;
+
+// Receives SQS Messages with Long Polling into a small Local Buffer the Consumer Threads take from.
+// A slot is reserved for every message before it is requested, so the buffer never holds more than
+// its capacity. Buffered messages use up their visibility timeout while every consumer thread is busy,
+// so SQSConsumer keeps the buffer at most as large as its number of threads.
+// The Queue is considered drained after maxEmptyReceives consecutive empty long polls. Failed receives
+// are retried with backoff and do not count as empty, up to MAX_RECEIVE_ERRORS in a row.
+public class SQSReceiver implements Runnable {
+	private static final int MAX_RECEIVE_BATCH = 10;
+	private static final int MAX_RECEIVE_ERRORS = 10;
+	private static final long BASE_BACKOFF_MILLIS = 500;
+	private static final long MAX_BACKOFF_MILLIS = 30000;
+	// Marker handed to every Consumer Thread once the Queue is drained
+	private static final Message END_OF_QUEUE = new Message();
+	private SQSInterface sqs = null;
+	private Logger logger = null;
+	private LinkedBlockingQueue<Message> buffer = new LinkedBlockingQueue<Message>();
+	private Semaphore slots = null;
+	private int waitTimeSeconds;
+	private int maxEmptyReceives;
+	
+	SQSReceiver(SQSInterface sqs, Logger logger, int bufferSize, int waitTimeSeconds, int maxEmptyReceives) {
+		this.sqs = sqs;
+		this.logger = logger;
+		this.slots = new Semaphore(Math.max(bufferSize, 1));
+		this.waitTimeSeconds = waitTimeSeconds;
+		this.maxEmptyReceives = Math.max(maxEmptyReceives, 1);
+		ArchiveMetrics.gauge("sqs_receive_buffer_depth", "", "Received contexts waiting for a consumer thread", () -> this.buffer.size());
+	}
+	
+	@Override
+	public void run() {
+		int emptyReceives = 0;
+		int errors = 0;
+		try {
+			while(emptyReceives < this.maxEmptyReceives && errors < MAX_RECEIVE_ERRORS) {
+				// Wait for one free slot, then take as many more as are free up to a full batch
+				this.slots.acquire();
+				int requested = 1;
+				while(requested < MAX_RECEIVE_BATCH && this.slots.tryAcquire())
+					requested++;
+				
+				List<Message> messages = null;
+				try {
+					messages = this.sqs.readSQSMessages(requested, this.waitTimeSeconds);
+				} catch (Exception e) {
+					// Throttling and network errors are not an empty queue
+					this.slots.release(requested);
+					errors++;
+					long backoff = backoffMillis(errors);
+					this.logger.warning("Failed Receiving From SQS Queue (" + errors + " of " + MAX_RECEIVE_ERRORS + "), Retrying in "
+							+ backoff + " ms: " + e.getMessage());
+					Thread.sleep(backoff);
+					continue;
+				}
+				errors = 0;
+				int received = messages == null ? 0 : messages.size();
+				this.slots.release(requested - received);
+				if(received == 0) {
+					emptyReceives++;
+					this.logger.info("Empty SQS Receive: " + emptyReceives + " of " + this.maxEmptyReceives);
+					continue;
+				}
+				emptyReceives = 0;
+				this.buffer.addAll(messages);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if(errors >= MAX_RECEIVE_ERRORS)
+				this.logger.severe("SQS Queue Unreachable After " + errors + " Failed Receives ... Stopping Consumer Threads");
+		} finally {
+			this.logger.info("SQS Queue Drained ... Stopping Consumer Threads");
+			this.buffer.add(END_OF_QUEUE);
+		}
+	}
+	
+	// Exponential backoff with equal jitter
+	static long backoffMillis(int errors) {
+		long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(errors - 1, 16));
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+	
+	// Blocks until a Message is buffered, returns null once the Queue is drained
+	public Message take() throws InterruptedException {
+		Message message = this.buffer.take();
+		if(message == END_OF_QUEUE) {
+			// Put the Marker back for the next Consumer Thread
+			this.buffer.add(END_OF_QUEUE);
+			return null;
+		}
+		this.slots.release();
+		return message;
+	}
+}
@@ -0,0 +1,622 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.StorageClass;
+
+/* In-process stand-in for S3 used by the load test, see LoadHarness
+ * The source bucket is generated: devices x keysPerDevice Keys device-NNNNNN/MM-DD-YYYY-NNNNNN.log spread over
+ * years, sized by a fixed, uniform (0 to twice the mean) or lognormal (sigma 1) distribution around the mean size.
+ * Key, size and content derive from the Key's position, so millions of Keys cost no memory. Contents are log-like
+ * text that compresses about 4:1. Every other bucket keeps the Keys and sizes written to it, not their contents.
+ * Every request waits a lognormal latency (sigma 0.6 around latencyMillis), a request above requestRate per second
+ * on one prefix is answered with 503 SlowDown and retried like the SDK does, and all GETs share one bandwidth
+ * cap as do all uploads.
+ */
+public class SimulatedObjectStore implements ObjectStore {
+	private static final int FIRST_YEAR = 2015;
+	private static final int MAX_KEYS = 1000;
+	private static final int PATTERN_SIZE = 4 * 1024 * 1024;
+	private static final int CHUNK_SIZE = 64 * 1024;
+	// The SDK's default retry policy for throttled requests: 3 retries, exponential backoff from 500 ms with equal jitter
+	private static final int MAX_RETRIES = 3;
+	private static final long THROTTLED_BASE_DELAY_MILLIS = 500;
+	private static final long MAX_BACKOFF_MILLIS = 20000;
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	private static final ArchiveMetrics.counter THROTTLED = ArchiveMetrics.counter("simulated_s3_throttled_total", "",
+			"503 SlowDown answers of the simulated S3, retried");
+	private static final ArchiveMetrics.counter SLOWDOWN_FAILURES = ArchiveMetrics.counter("simulated_s3_slowdown_failures_total", "",
+			"Simulated S3 requests still throttled after all retries");
+	private static final ArchiveMetrics.counter OBJECTS_READ = ArchiveMetrics.counter("simulated_s3_objects_read_total", "",
+			"GETs of the simulated source bucket starting at the first byte of an object");
+	private String bucket;
+	private int devices;
+	private int keysPerDevice;
+	private int years;
+	private int keysPerDay;
+	private String sizeDistribution;
+	private long meanSize;
+	private byte[] pattern;
+	private double latencyMillis = 0;
+	private throttle requestRate = new throttle(0);
+	private bandwidth getBandwidth = new bandwidth(0);
+	private bandwidth putBandwidth = new bandwidth(0);
+	private Set<String> deleted = ConcurrentHashMap.newKeySet();
+	private Map<String, ConcurrentSkipListMap<String, Long>> written = new ConcurrentHashMap<String, ConcurrentSkipListMap<String, Long>>();
+	private Map<String, ConcurrentSkipListMap<Integer, Long>> uploads = new ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, Long>>();
+	private Map<String, MultipartUpload> initiated = new ConcurrentHashMap<String, MultipartUpload>();
+	
+	SimulatedObjectStore(String bucket, int devices, int keysPerDevice, int years, String sizeDistribution, long meanSize) {
+		this.bucket = bucket;
+		this.devices = Math.max(1, devices);
+		this.keysPerDevice = Math.max(1, keysPerDevice);
+		this.years = Math.max(1, years);
+		this.keysPerDay = (this.keysPerDevice + 12 * 28 * this.years - 1) / (12 * 28 * this.years);
+		this.sizeDistribution = sizeDistribution == null || sizeDistribution.isEmpty() ? "lognormal" : sizeDistribution;
+		if(!this.sizeDistribution.equals("fixed") && !this.sizeDistribution.equals("uniform") && !this.sizeDistribution.equals("lognormal"))
+			throw new IllegalArgumentException("Unsupported loadSizeDistribution: " + sizeDistribution);
+		this.meanSize = Math.max(1, meanSize);
+		this.pattern = logLines(PATTERN_SIZE);
+	}
+	
+	// Called by LoadHarness: latency of every request, requests per second and prefix before 503 SlowDown (0: unlimited),
+	// bytes per second of all GETs and of all uploads (0: unlimited)
+	public void setSimulation(double latencyMillis, int requestRate, long bytesPerSecond) {
+		this.latencyMillis = latencyMillis;
+		this.requestRate = new throttle(requestRate);
+		this.getBandwidth = new bandwidth(bytesPerSecond);
+		this.putBandwidth = new bandwidth(bytesPerSecond);
+	}
+	
+	public long getKeyCount() {
+		return (long) this.devices * this.keysPerDevice;
+	}
+	
+	public long getTotalSize() {
+		long total = 0;
+		for(long index=0; index<getKeyCount(); index++)
+			total += size(index);
+		return total;
+	}
+	
+	// Same seed for every run, so results of two builds are comparable
+	private static byte[] logLines(int size) {
+		String[] words = {"GET", "PUT", "INFO", "WARN", "ERROR", "device", "sensor", "reading", "temperature", "status", "ok", "retry"};
+		Random random = new Random(42);
+		StringBuilder lines = new StringBuilder(size + 256);
+		while(lines.length() < size) {
+			lines.append("2020-").append(1 + random.nextInt(12)).append('-').append(1 + random.nextInt(28)).append(' ');
+			for(int i=0; i<6; i++)
+				lines.append(words[random.nextInt(words.length)]).append(' ');
+			lines.append(random.nextInt(1000000)).append('\n');
+		}
+		byte[] bytes = new byte[size];
+		for(int i=0; i<size; i++)
+			bytes[i] = (byte) lines.charAt(i);
+		return bytes;
+	}
+	
+	private static void pad(StringBuilder key, int value, int width) {
+		String digits = Integer.toString(value);
+		for(int i=digits.length(); i<width; i++)
+			key.append('0');
+		key.append(digits);
+	}
+	
+	// Keys sort in index order: device, month, day, year, then the number of the Key on that day
+	private String key(long index) {
+		int device = (int) (index / this.keysPerDevice);
+		int i = (int) (index % this.keysPerDevice);
+		int rest = i / this.keysPerDay;
+		StringBuilder key = new StringBuilder(40).append("device-");
+		pad(key, device, 6);
+		key.append('/');
+		pad(key, rest / this.years / 28 + 1, 2);
+		key.append('-');
+		pad(key, rest / this.years % 28 + 1, 2);
+		key.append('-');
+		pad(key, FIRST_YEAR + rest % this.years, 4);
+		key.append('-');
+		pad(key, i % this.keysPerDay, 6);
+		return key.append(".log").toString();
+	}
+	
+	private long lastModified(long index) {
+		int rest = (int) (index % this.keysPerDevice) / this.keysPerDay;
+		return GroupingStrategies.daysFromCivil(FIRST_YEAR + rest % this.years, rest / this.years / 28 + 1, rest / this.years % 28 + 1) * MILLIS_PER_DAY;
+	}
+	
+	private long size(long index) {
+		if(this.sizeDistribution.equals("fixed"))
+			return this.meanSize;
+		SplittableRandom random = new SplittableRandom(index * 0x9E3779B97F4A7C15L);
+		if(this.sizeDistribution.equals("uniform"))
+			return 1 + (long) (random.nextDouble() * 2 * this.meanSize);
+		// Box-Muller, the median of a lognormal with sigma 1 is its mean / e^0.5
+		double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+		return 1 + (long) (this.meanSize * Math.exp(gaussian - 0.5));
+	}
+	
+	// First index whose Key sorts after key (inclusive: at or after)
+	private long search(String key, boolean inclusive) {
+		long low = 0;
+		long high = getKeyCount();
+		while(low < high) {
+			long middle = (low + high) >>> 1;
+			int compared = key(middle).compareTo(key);
+			if(compared < 0 || (compared == 0 && !inclusive))
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+	
+	// Index of a Key of the source bucket, -1 when there is no such Key
+	private long indexOf(String bucket, String key) {
+		if(!this.bucket.equals(bucket) || this.deleted.contains(key))
+			return -1;
+		long index = search(key, true);
+		return index < getKeyCount() && key(index).equals(key) ? index : -1;
+	}
+	
+	private static AmazonS3Exception notFound(String code, String message) {
+		AmazonS3Exception e = new AmazonS3Exception(message);
+		e.setStatusCode(404);
+		e.setErrorCode(code);
+		return e;
+	}
+	
+	// Sleeps or throws AmazonClientException when interrupted
+	static void pause(long nanos) {
+		long deadline = System.nanoTime() + nanos;
+		long remaining;
+		while((remaining = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+			if(Thread.interrupted()) {
+				Thread.currentThread().interrupt();
+				throw new AmazonClientException("Interrupted during a simulated request");
+			}
+		}
+	}
+	
+	// Lognormal latency with sigma 0.6 around medianMillis, the 99th percentile is about 4 times the median
+	static void latency(double medianMillis) {
+		if(medianMillis > 0)
+			pause((long) (medianMillis * 1e6 * Math.exp(0.6 * ThreadLocalRandom.current().nextGaussian())));
+	}
+	
+	// A round trip per attempt, throttled attempts are retried after the SDK's backoff
+	private void request(String key) {
+		String prefix = key.substring(0, key.lastIndexOf('/') + 1);
+		for(int attempt=0; ; attempt++) {
+			latency(this.latencyMillis);
+			if(this.requestRate.tryAcquire(prefix))
+				return;
+			THROTTLED.increment();
+			if(attempt == MAX_RETRIES) {
+				SLOWDOWN_FAILURES.increment();
+				AmazonS3Exception e = new AmazonS3Exception("Please reduce your request rate.");
+				e.setStatusCode(503);
+				e.setErrorCode("SlowDown");
+				throw e;
+			}
+			long delay = Math.min(MAX_BACKOFF_MILLIS, THROTTLED_BASE_DELAY_MILLIS << attempt);
+			pause((delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1)) * 1000000L);
+		}
+	}
+	
+	// Token bucket per prefix holding up to one second of requests
+	private static class throttle {
+		private int rate;
+		private Map<String, long[]> prefixes = new ConcurrentHashMap<String, long[]>();
+		
+		throttle(int rate) {
+			this.rate = rate;
+		}
+		
+		boolean tryAcquire(String prefix) {
+			if(this.rate <= 0)
+				return true;
+			// {tokens in millionths, last refill}
+			long[] bucket = this.prefixes.computeIfAbsent(prefix, p -> new long[] {this.rate * 1000000L, System.nanoTime()});
+			synchronized(bucket) {
+				long now = System.nanoTime();
+				bucket[0] = Math.min(this.rate * 1000000L, bucket[0] + (now - bucket[1]) * this.rate / 1000);
+				bucket[1] = now;
+				if(bucket[0] < 1000000L)
+					return false;
+				bucket[0] -= 1000000L;
+				return true;
+			}
+		}
+	}
+	
+	// Transfers reserve the link in turn, concurrent streams share its rate
+	private static class bandwidth {
+		private long bytesPerSecond;
+		private long busyUntil = 0;
+		private long transferred = 0;
+		
+		bandwidth(long bytesPerSecond) {
+			this.bytesPerSecond = bytesPerSecond;
+		}
+		
+		void transfer(long bytes) {
+			long done;
+			synchronized(this) {
+				this.transferred += bytes;
+				if(this.bytesPerSecond <= 0)
+					return;
+				this.busyUntil = Math.max(System.nanoTime(), this.busyUntil) + (long) (bytes * 1e9 / this.bytesPerSecond);
+				done = this.busyUntil;
+			}
+			pause(done - System.nanoTime());
+		}
+		
+		synchronized long getTransferred() {
+			return this.transferred;
+		}
+	}
+	
+	public long getBandwidth() {
+		return this.getBandwidth.bytesPerSecond;
+	}
+	
+	public long getBytesRead() {
+		return this.getBandwidth.getTransferred();
+	}
+	
+	public long getBytesWritten() {
+		return this.putBandwidth.getTransferred();
+	}
+	
+	// length bytes of the object's content from offset, paced by the GET bandwidth
+	private class objectInputStream extends InputStream {
+		private int position;
+		private long remaining;
+		
+		objectInputStream(long index, long offset, long length) {
+			this.position = (int) ((index * 7919 + offset) % pattern.length);
+			this.remaining = length;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(this.remaining == 0)
+				return -1;
+			int count = (int) Math.min(Math.min(Math.min(len, CHUNK_SIZE), this.remaining), pattern.length - this.position);
+			System.arraycopy(pattern, this.position, b, off, count);
+			this.position = (this.position + count) % pattern.length;
+			this.remaining -= count;
+			getBandwidth.transfer(count);
+			return count;
+		}
+	}
+	
+	// Reads the uploaded data through the upload bandwidth and returns its length
+	private long drain(InputStream data) {
+		byte[] buffer = new byte[CHUNK_SIZE];
+		long length = 0;
+		int count;
+		try {
+			while((count = data.read(buffer)) != -1) {
+				this.putBandwidth.transfer(count);
+				length += count;
+			}
+		} catch (IOException e) {
+			throw new AmazonClientException("Failed reading upload data", e);
+		}
+		return length;
+	}
+	
+	private ConcurrentSkipListMap<String, Long> written(String bucket) {
+		return this.written.computeIfAbsent(bucket, b -> new ConcurrentSkipListMap<String, Long>());
+	}
+	
+	// Continuation tokens start with k: after a Key and p: after a common prefix
+	@Override
+	public ListObjectsV2Result listObjects(ListObjectsV2Request req) {
+		String prefix = req.getPrefix() == null ? "" : req.getPrefix();
+		request(prefix == null ? "" : prefix);
+		String token = req.getContinuationToken();
+		String after = token != null ? token.substring(2) : req.getStartAfter() == null ? "" : req.getStartAfter();
+		int maxKeys = req.getMaxKeys() == null ? MAX_KEYS : Math.min(MAX_KEYS, req.getMaxKeys());
+		String delimiter = req.getDelimiter() == null || req.getDelimiter().isEmpty() ? null : req.getDelimiter();
+		ListObjectsV2Result listing = new ListObjectsV2Result();
+		listing.setBucketName(req.getBucketName());
+		listing.setPrefix(req.getPrefix());
+		listing.setDelimiter(req.getDelimiter());
+		listing.setStartAfter(req.getStartAfter());
+		listing.setContinuationToken(token);
+		listing.setMaxKeys(maxKeys);
+		List<String> commonPrefixes = new ArrayList<String>();
+		String last = null;
+		if(this.bucket.equals(req.getBucketName())) {
+			long index = Math.max(search(prefix, true), token != null && token.startsWith("p:") ? search(after + '\uffff', false) : search(after, false));
+			while(index < getKeyCount()) {
+				String key = key(index);
+				if(!key.startsWith(prefix))
+					break;
+				int end = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+				if(this.deleted.contains(key) && end < 0) {
+					index++;
+					continue;
+				}
+				if(listing.getObjectSummaries().size() + commonPrefixes.size() == maxKeys) {
+					listing.setTruncated(true);
+					break;
+				}
+				if(end >= 0) {
+					String commonPrefix = key.substring(0, end + delimiter.length());
+					commonPrefixes.add(commonPrefix);
+					last = "p:" + commonPrefix;
+					index = search(commonPrefix + '\uffff', false);
+					continue;
+				}
+				S3ObjectSummary summary = new S3ObjectSummary();
+				summary.setBucketName(this.bucket);
+				summary.setKey(key);
+				summary.setSize(size(index));
+				summary.setLastModified(new Date(lastModified(index)));
+				summary.setStorageClass(StorageClass.Standard.toString());
+				listing.getObjectSummaries().add(summary);
+				last = "k:" + key;
+				index++;
+			}
+		}
+		else {
+			// Written Keys are listed without delimiter
+			for(Map.Entry<String, Long> entry : written(req.getBucketName()).tailMap(after, false).entrySet()) {
+				if(!entry.getKey().startsWith(prefix))
+					continue;
+				if(listing.getObjectSummaries().size() == maxKeys) {
+					listing.setTruncated(true);
+					break;
+				}
+				S3ObjectSummary summary = new S3ObjectSummary();
+				summary.setBucketName(req.getBucketName());
+				summary.setKey(entry.getKey());
+				summary.setSize(entry.getValue());
+				listing.getObjectSummaries().add(summary);
+				last = "k:" + entry.getKey();
+			}
+		}
+		listing.setCommonPrefixes(commonPrefixes);
+		listing.setKeyCount(listing.getObjectSummaries().size() + commonPrefixes.size());
+		if(listing.isTruncated())
+			listing.setNextContinuationToken(last);
+		return listing;
+	}
+	
+	// Only source objects can be read, written objects keep no content
+	@Override
+	public S3Object getObject(GetObjectRequest req) {
+		long index = indexOf(req.getBucketName(), req.getKey());
+		if(index < 0)
+			throw notFound("NoSuchKey", "No simulated object " + req.getKey());
+		request(req.getKey());
+		ObjectMetadata metadata = metadata(index);
+		if(!req.getMatchingETagConstraints().isEmpty() && !req.getMatchingETagConstraints().contains(metadata.getETag()))
+			return null;
+		long size = size(index);
+		long start = 0;
+		long length = size;
+		long[] range = req.getRange();
+		if(range != null) {
+			start = range[0];
+			length = Math.min(range[1], size - 1) - start + 1;
+		}
+		if(start == 0)
+			OBJECTS_READ.increment();
+		metadata.setContentLength(length);
+		S3Object obj = new S3Object();
+		obj.setBucketName(req.getBucketName());
+		obj.setKey(req.getKey());
+		obj.setObjectMetadata(metadata);
+		obj.setObjectContent(new objectInputStream(index, start, length));
+		return obj;
+	}
+	
+	// ETags are no MD5, sources are not verified by verifySourceETags
+	private ObjectMetadata metadata(long index) {
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(size(index));
+		metadata.setLastModified(new Date(lastModified(index)));
+		metadata.setHeader("ETag", "simulated-" + Long.toHexString(index));
+		return metadata;
+	}
+	
+	@Override
+	public ObjectMetadata getObjectMetadata(String bucket, String key) {
+		long index = indexOf(bucket, key);
+		if(index >= 0) {
+			request(key);
+			return metadata(index);
+		}
+		Long size = written(bucket).get(key);
+		if(size == null)
+			throw notFound("NoSuchKey", "No simulated object " + key);
+		request(key);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(size);
+		metadata.setHeader("ETag", writtenETag(size));
+		return metadata;
+	}
+	
+	// Written objects keep no content, their ETag derives from the size
+	private static String writtenETag(long size) {
+		return "simulated-written-" + Long.toHexString(size);
+	}
+	
+	@Override
+	public String putObject(String bucket, String key, InputStream data, long length, StorageClass storageClass) {
+		request(key);
+		long size = drain(data);
+		written(bucket).put(key, size);
+		return writtenETag(size);
+	}
+	
+	// The staged file is not read, only its length passes the upload bandwidth
+	@Override
+	public String putFile(String bucket, String key, File file, StorageClass storageClass) {
+		request(key);
+		this.putBandwidth.transfer(file.length());
+		written(bucket).put(key, file.length());
+		return writtenETag(file.length());
+	}
+	
+	@Override
+	public String initiateMultipartUpload(String bucket, String key, StorageClass storageClass) {
+		request(key);
+		String uploadId = UUID.randomUUID().toString();
+		MultipartUpload upload = new MultipartUpload();
+		upload.setKey(bucket + "/" + key);
+		upload.setUploadId(uploadId);
+		upload.setInitiated(new Date());
+		this.initiated.put(uploadId, upload);
+		this.uploads.put(uploadId, new ConcurrentSkipListMap<Integer, Long>());
+		return uploadId;
+	}
+	
+	private ConcurrentSkipListMap<Integer, Long> upload(String uploadId) {
+		ConcurrentSkipListMap<Integer, Long> parts = this.uploads.get(uploadId);
+		if(parts == null)
+			throw notFound("NoSuchUpload", "No simulated upload " + uploadId);
+		return parts;
+	}
+	
+	@Override
+	public PartETag uploadPart(String bucket, String key, String uploadId, int partNumber, InputStream data, long length) {
+		ConcurrentSkipListMap<Integer, Long> parts = upload(uploadId);
+		request(key);
+		long size = drain(data);
+		parts.put(partNumber, size);
+		return new PartETag(partNumber, "simulated-" + partNumber + "-" + Long.toHexString(size));
+	}
+	
+	@Override
+	public Map<Integer, String> listParts(String bucket, String key, String uploadId) {
+		request(key);
+		Map<Integer, String> uploaded = new ConcurrentHashMap<Integer, String>();
+		for(Map.Entry<Integer, Long> part : upload(uploadId).entrySet())
+			uploaded.put(part.getKey(), "simulated-" + part.getKey() + "-" + Long.toHexString(part.getValue()));
+		return uploaded;
+	}
+	
+	@Override
+	public String completeMultipartUpload(String bucket, String key, String uploadId, List<PartETag> parts) {
+		ConcurrentSkipListMap<Integer, Long> uploaded = upload(uploadId);
+		request(key);
+		long size = 0;
+		for(PartETag part : parts) {
+			Long partSize = uploaded.get(part.getPartNumber());
+			if(partSize == null) {
+				AmazonS3Exception e = new AmazonS3Exception("Part " + part.getPartNumber() + " of " + key + " was not uploaded");
+				e.setStatusCode(400);
+				e.setErrorCode("InvalidPart");
+				throw e;
+			}
+			size += partSize;
+		}
+		written(bucket).put(key, size);
+		this.uploads.remove(uploadId);
+		this.initiated.remove(uploadId);
+		return writtenETag(size);
+	}
+	
+	@Override
+	public void abortMultipartUpload(String bucket, String key, String uploadId) {
+		request(key);
+		this.uploads.remove(uploadId);
+		this.initiated.remove(uploadId);
+	}
+	
+	@Override
+	public List<MultipartUpload> listMultipartUploads(String bucket, String prefix) {
+		request(prefix == null ? "" : prefix);
+		List<MultipartUpload> uploads = new ArrayList<MultipartUpload>();
+		String bucketPrefix = bucket + "/" + (prefix == null ? "" : prefix);
+		for(MultipartUpload upload : this.initiated.values()) {
+			if(!upload.getKey().startsWith(bucketPrefix))
+				continue;
+			MultipartUpload listed = new MultipartUpload();
+			listed.setKey(upload.getKey().substring(bucket.length() + 1));
+			listed.setUploadId(upload.getUploadId());
+			listed.setInitiated(upload.getInitiated());
+			uploads.add(listed);
+		}
+		return uploads;
+	}
+	
+	@Override
+	public void deleteObject(String bucket, String key) {
+		request(key);
+		if(this.bucket.equals(bucket))
+			this.deleted.add(key);
+		else
+			written(bucket).remove(key);
+	}
+	
+	// One request for all Keys
+	@Override
+	public List<DeleteError> deleteObjects(String bucket, List<KeyVersion> keys) {
+		if(keys.isEmpty())
+			return new ArrayList<DeleteError>();
+		request(keys.get(0).getKey());
+		for(KeyVersion key : keys) {
+			if(this.bucket.equals(bucket))
+				this.deleted.add(key.getKey());
+			else
+				written(bucket).remove(key.getKey());
+		}
+		return new ArrayList<DeleteError>();
+	}
+}
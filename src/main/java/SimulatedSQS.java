@@ -0,0 +1,213 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+/* In-process stand-in for the SQS queue used by the load test, see LoadHarness
+ * Received messages are invisible for the visibility timeout and delivered again when they were not deleted
+ * by then, like a consumer that crashed or took too long. Every request waits a lognormal latency around
+ * latencyMillis, long polls wait for messages up to their WaitTimeSeconds. While the producer is still
+ * listing, an empty long poll keeps waiting instead of returning, so consumers do not give up on the queue
+ * before the first contexts were sent.
+ */
+public class SimulatedSQS extends AbstractAmazonSQS {
+	private static final ArchiveMetrics.counter REDELIVERIES = ArchiveMetrics.counter("simulated_sqs_redeliveries_total", "",
+			"Messages of the simulated queue received again after their visibility timeout");
+	private double latencyMillis;
+	private long visibilityTimeoutNanos;
+	private ReentrantLock lock = new ReentrantLock();
+	private Condition changed = this.lock.newCondition();
+	private ArrayDeque<message> visible = new ArrayDeque<message>();
+	// Received messages by the time they become visible again, deleted ones are dropped when they come up
+	private PriorityQueue<message> invisible = new PriorityQueue<message>((a, b) -> Long.compare(a.visibleAt, b.visibleAt));
+	private Map<String, message> messages = new HashMap<String, message>();
+	private boolean producing = true;
+	private long lastDelete = 0;
+	
+	private static class message {
+		private String id = UUID.randomUUID().toString();
+		private String body;
+		private int receives = 0;
+		private long visibleAt;
+		
+		message(String body) {
+			this.body = body;
+		}
+	}
+	
+	SimulatedSQS(double latencyMillis, int visibilityTimeoutSeconds) {
+		this.latencyMillis = latencyMillis;
+		this.visibilityTimeoutNanos = TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+	}
+	
+	// Called by LoadHarness once the producer finished, empty long polls return from now on
+	public void setProducing(boolean producing) {
+		this.lock.lock();
+		try {
+			this.producing = producing;
+			this.changed.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+	
+	// System.nanoTime() of the last deleted message, 0 before the first
+	public long getLastDelete() {
+		this.lock.lock();
+		try {
+			return this.lastDelete;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+	
+	private void send(String body) {
+		message m = new message(body);
+		this.lock.lock();
+		try {
+			this.messages.put(m.id, m);
+			this.visible.add(m);
+			this.changed.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+	
+	@Override
+	public SendMessageResult sendMessage(SendMessageRequest req) {
+		SimulatedObjectStore.latency(this.latencyMillis);
+		send(req.getMessageBody());
+		return new SendMessageResult();
+	}
+	
+	@Override
+	public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest req) {
+		SimulatedObjectStore.latency(this.latencyMillis);
+		SendMessageBatchResult result = new SendMessageBatchResult();
+		for(SendMessageBatchRequestEntry entry : req.getEntries()) {
+			send(entry.getMessageBody());
+			result.getSuccessful().add(new SendMessageBatchResultEntry().withId(entry.getId()));
+		}
+		return result;
+	}
+	
+	// Moves messages whose visibility timeout expired back into the queue, returns the nanoTime of the next expiry
+	private long expire(long now) {
+		message m;
+		while((m = this.invisible.peek()) != null && m.visibleAt <= now) {
+			this.invisible.poll();
+			if(this.messages.containsKey(m.id)) {
+				this.visible.add(m);
+				REDELIVERIES.increment();
+			}
+		}
+		return m == null ? Long.MAX_VALUE : m.visibleAt;
+	}
+	
+	@Override
+	public ReceiveMessageResult receiveMessage(ReceiveMessageRequest req) {
+		SimulatedObjectStore.latency(this.latencyMillis);
+		int maxMessages = req.getMaxNumberOfMessages() == null ? 1 : Math.min(10, req.getMaxNumberOfMessages());
+		long waitNanos = TimeUnit.SECONDS.toNanos(req.getWaitTimeSeconds() == null ? 0 : req.getWaitTimeSeconds());
+		long deadline = System.nanoTime() + waitNanos;
+		ReceiveMessageResult result = new ReceiveMessageResult();
+		List<Message> received = result.getMessages();
+		this.lock.lock();
+		try {
+			while(true) {
+				long now = System.nanoTime();
+				long nextExpiry = expire(now);
+				while(received.size() < maxMessages && !this.visible.isEmpty()) {
+					message m = this.visible.poll();
+					if(!this.messages.containsKey(m.id))
+						continue;
+					m.receives++;
+					m.visibleAt = now + this.visibilityTimeoutNanos;
+					this.invisible.add(m);
+					received.add(new Message().withMessageId(m.id).withBody(m.body).withReceiptHandle(m.id + "#" + m.receives)
+							.addAttributesEntry("ApproximateReceiveCount", Integer.toString(m.receives)));
+				}
+				if(!received.isEmpty() || (now >= deadline && !this.producing))
+					return result;
+				long wait = Math.min(nextExpiry, this.producing ? now + Math.max(waitNanos, TimeUnit.SECONDS.toNanos(1)) : deadline) - now;
+				this.changed.awaitNanos(Math.max(wait, 1));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted receiving from the simulated queue", e);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+	
+	// Receipt handles of a message stay valid after it was delivered again
+	@Override
+	public DeleteMessageResult deleteMessage(DeleteMessageRequest req) {
+		SimulatedObjectStore.latency(this.latencyMillis);
+		String handle = req.getReceiptHandle();
+		this.lock.lock();
+		try {
+			if(this.messages.remove(handle.substring(0, handle.indexOf('#'))) != null)
+				this.lastDelete = System.nanoTime();
+		} finally {
+			this.lock.unlock();
+		}
+		return new DeleteMessageResult();
+	}
+	
+	@Override
+	public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest req) {
+		SimulatedObjectStore.latency(this.latencyMillis);
+		this.lock.lock();
+		try {
+			expire(System.nanoTime());
+			int visible = 0;
+			for(message m : this.visible)
+				if(this.messages.containsKey(m.id))
+					visible++;
+			return new GetQueueAttributesResult()
+					.addAttributesEntry("ApproximateNumberOfMessages", Integer.toString(visible))
+					.addAttributesEntry("ApproximateNumberOfMessagesNotVisible", Integer.toString(this.messages.size() - visible));
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* executionMode "virtual": every task runs on its own virtual thread, at most maxConcurrency of them at a time
+ * 		1. Tasks waiting for a permit are parked virtual threads, not queued Runnables, and cost a few hundred bytes
+ * 		2. The semaphore takes the place of the pool size, so thousands of blocking S3 GETs can be in flight
+ * 		3. Virtual threads need Java 21, they are created through reflection as the build targets Java 8
+ * Compression stays on a bounded platform pool, virtual threads only pay off for blocking I/O.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+	private ThreadFactory factory;
+	private Semaphore permits;
+	private int maxConcurrency;
+	private Set<Thread> threads = ConcurrentHashMap.newKeySet();
+	private AtomicInteger waiting = new AtomicInteger();
+	private AtomicInteger running = new AtomicInteger();
+	private volatile boolean shutdown = false;
+	
+	VirtualThreadExecutor(String name, int maxConcurrency) {
+		this.factory = virtualThreadFactory(name + "-");
+		this.maxConcurrency = Math.max(1, maxConcurrency);
+		this.permits = new Semaphore(this.maxConcurrency, true);
+	}
+	
+	// Thread.ofVirtual().name(prefix, 0).factory(), resolved on the public Thread.Builder interfaces
+	private static ThreadFactory virtualThreadFactory(String prefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			Method factory = builderClass.getMethod("factory");
+			return (ThreadFactory) factory.invoke(name.invoke(builder, prefix, 0L));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("executionMode virtual requires Java 21 or later, running on Java "
+					+ System.getProperty("java.version"), e);
+		}
+	}
+	
+	public int getMaxConcurrency() {
+		return this.maxConcurrency;
+	}
+	
+	// Tasks parked on a permit, the queue depth of a pool
+	public int getWaitingCount() {
+		return this.waiting.get();
+	}
+	
+	public int getActiveCount() {
+		return this.running.get();
+	}
+	
+	// Live virtual threads, waiting and running
+	public int getThreadCount() {
+		return this.threads.size();
+	}
+	
+	@Override
+	public void execute(Runnable task) {
+		if(this.shutdown)
+			throw new RejectedExecutionException("Virtual thread executor is shut down");
+		Thread thread = this.factory.newThread(() -> runTask(task));
+		this.threads.add(thread);
+		thread.start();
+	}
+	
+	private void runTask(Runnable task) {
+		boolean acquired = false;
+		try {
+			this.waiting.incrementAndGet();
+			try {
+				this.permits.acquire();
+				acquired = true;
+			} finally {
+				this.waiting.decrementAndGet();
+			}
+			this.running.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				this.running.decrementAndGet();
+			}
+		} catch (InterruptedException e) {
+			// shutdownNow() cancelled the task before it got a permit
+		} finally {
+			if(acquired)
+				this.permits.release();
+			synchronized(this) {
+				this.threads.remove(Thread.currentThread());
+				notifyAll();
+			}
+		}
+	}
+	
+	@Override
+	public void shutdown() {
+		this.shutdown = true;
+	}
+	
+	// Interrupts running tasks and cancels waiting ones, their threads are already started so none is returned
+	@Override
+	public List<Runnable> shutdownNow() {
+		this.shutdown = true;
+		for(Thread thread : this.threads)
+			thread.interrupt();
+		return Collections.emptyList();
+	}
+	
+	@Override
+	public boolean isShutdown() {
+		return this.shutdown;
+	}
+	
+	@Override
+	public boolean isTerminated() {
+		return this.shutdown && this.threads.isEmpty();
+	}
+	
+	@Override
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(!isTerminated()) {
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				return false;
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+}
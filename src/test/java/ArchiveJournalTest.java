@@ -0,0 +1,143 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.amazonaws.services.s3.model.PartETag;
+
+public class ArchiveJournalTest {
+	private static final Logger logger = Logger.getLogger(ArchiveJournalTest.class.getName());
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File journalFile() {
+		return new File(this.folder.getRoot(), "archive.journal");
+	}
+	
+	private ArchiveJournal open(String records) throws IOException {
+		FileUtils.writeStringToFile(journalFile(), records, StandardCharsets.UTF_8);
+		return ArchiveJournal.open(this.folder.getRoot().getPath(), logger);
+	}
+	
+	@Test
+	public void replaysUpToTheLastCheckpoint() throws IOException {
+		ArchiveJournal journal = open("U\tupload-1\nE\ta.log\nP\t1\tetag-1\nC\t100\nE\tb.log\nP\t2\tetag-2\nC\t200\nE\tc.log\nP\t3\tetag-3\n");
+		journal.close();
+		assertTrue(journal.hasCheckpoint());
+		assertEquals("upload-1", journal.getUploadId());
+		assertEquals(200, journal.getArchiveBytes());
+		assertTrue(journal.isCommitted("a.log"));
+		assertTrue(journal.isCommitted("b.log"));
+		assertFalse(journal.isCommitted("c.log"));
+		assertEquals(2, journal.getCommittedParts().size());
+		assertEquals("etag-2", journal.getCommittedParts().get(1).getETag());
+	}
+	
+	@Test
+	public void truncatesAfterTheLastCheckpoint() throws IOException {
+		open("U\tupload-1\nE\ta.log\nP\t1\tetag-1\nC\t100\nE\tb.log\nP\t2\tetag-2\n").close();
+		assertEquals("U\tupload-1\nE\ta.log\nP\t1\tetag-1\nC\t100\n", FileUtils.readFileToString(journalFile(), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void keepsACommittedJournal() throws IOException {
+		String records = "U\tupload-1\nE\ta.log\tetag-a\t\nP\t1\tetag-1\nC\t100\n";
+		open(records).close();
+		assertEquals(records, FileUtils.readFileToString(journalFile(), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void ignoresTornCheckpoint() throws IOException {
+		// The run died while writing the checkpoint at 12345, only "123" reached the disk
+		ArchiveJournal journal = open("E\ta.log\nC\t100\nE\tb.log\nC\t123");
+		journal.close();
+		assertEquals(100, journal.getArchiveBytes());
+		assertFalse(journal.isCommitted("b.log"));
+	}
+	
+	@Test
+	public void ignoresEmptyTornCheckpoint() throws IOException {
+		ArchiveJournal journal = open("E\ta.log\nC\t");
+		journal.close();
+		assertFalse(journal.hasCheckpoint());
+		assertFalse(journal.isCommitted("a.log"));
+		assertEquals(0, journalFile().length());
+	}
+	
+	@Test
+	public void skipsMalformedRecords() throws IOException {
+		ArchiveJournal journal = open("E\ta.log\nP\tx\tetag-1\nC\t\nC\t-1\nX\nP\t1\tetag-1\nC\t100\n");
+		journal.close();
+		assertEquals(100, journal.getArchiveBytes());
+		assertEquals(1, journal.getCommittedParts().size());
+		assertEquals(1, journal.getCommittedParts().get(0).getPartNumber());
+		assertTrue(journal.isCommitted("a.log"));
+	}
+	
+	@Test
+	public void checkpointsSurviveReopen() throws IOException {
+		ArchiveJournal journal = ArchiveJournal.open(this.folder.getRoot().getPath(), logger);
+		assertFalse(journal.hasCheckpoint());
+		journal.checkpoint("upload-1", Arrays.asList(ArchiveJournal.entry("a\tb.log", "etag-a", "version-a")), Arrays.asList(new PartETag(1, "etag-1")),
+				Collections.<String>emptyList(), Collections.<String>emptyList(), 100);
+		journal.close();
+		journal = ArchiveJournal.open(this.folder.getRoot().getPath(), logger);
+		journal.close();
+		assertTrue(journal.isCommitted("a\tb.log"));
+		assertEquals("etag-a", journal.getCommittedETag("a\tb.log"));
+		assertEquals("version-a", journal.getCommittedVersionId("a\tb.log"));
+		assertEquals(100, journal.getArchiveBytes());
+	}
+	
+	@Test
+	public void replaysSourceVersions() throws IOException {
+		ArchiveJournal journal = open("E\ta.log\tetag-a\tversion-a\nE\tb.log\tetag-b\t\nE\tc.log\nC\t100\n");
+		journal.close();
+		assertEquals("etag-a", journal.getCommittedETag("a.log"));
+		assertEquals("version-a", journal.getCommittedVersionId("a.log"));
+		assertEquals("etag-b", journal.getCommittedETag("b.log"));
+		assertNull(journal.getCommittedVersionId("b.log"));
+		assertTrue(journal.isCommitted("c.log"));
+		assertNull(journal.getCommittedETag("c.log"));
+		assertNull(journal.getCommittedETag("d.log"));
+	}
+	
+	@Test
+	public void resetForgetsProgress() throws IOException {
+		ArchiveJournal journal = open("U\tupload-1\nE\ta.log\nC\t100\n");
+		journal.reset();
+		journal.close();
+		assertFalse(journal.hasCheckpoint());
+		assertNull(journal.getUploadId());
+		assertEquals(0, journalFile().length());
+	}
+}
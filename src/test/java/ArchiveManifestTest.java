@@ -0,0 +1,82 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Checksum;
+import org.junit.Test;
+
+public class ArchiveManifestTest {
+	
+	private static long crc32c(byte[] data) {
+		Checksum checksum = new ArchiveManifest.crc32c();
+		checksum.update(data, 0, data.length);
+		return checksum.getValue();
+	}
+	
+	// Check values of RFC 3720 (iSCSI) B.4 and the CRC catalogue
+	@Test
+	public void matchesKnownVectors() {
+		assertEquals(0x00000000L, crc32c(new byte[0]));
+		assertEquals(0xE3069283L, crc32c("123456789".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals(0x8A9136AAL, crc32c(new byte[32]));
+		byte[] ones = new byte[32];
+		byte[] ascending = new byte[32];
+		byte[] descending = new byte[32];
+		for(int i=0; i<32; i++) {
+			ones[i] = (byte) 0xff;
+			ascending[i] = (byte) i;
+			descending[i] = (byte) (31 - i);
+		}
+		assertEquals(0x62A8AB43L, crc32c(ones));
+		assertEquals(0x46DD794EL, crc32c(ascending));
+		assertEquals(0x113FDB5CL, crc32c(descending));
+	}
+	
+	// The 8 byte loop, the byte tail and single byte updates give the same value for any split of the input
+	@Test
+	public void matchesBytewiseUpdates() {
+		byte[] data = new byte[1031];
+		new Random(42).nextBytes(data);
+		long expected = crc32c(data);
+		for(int split=0; split<=17; split++) {
+			Checksum checksum = new ArchiveManifest.crc32c();
+			for(int i=0; i<split; i++)
+				checksum.update(data[i]);
+			checksum.update(data, split, data.length - split);
+			assertEquals("split " + split, expected, checksum.getValue());
+		}
+	}
+	
+	@Test
+	public void resets() {
+		Checksum checksum = new ArchiveManifest.crc32c();
+		checksum.update(new byte[] {1, 2, 3}, 0, 3);
+		checksum.reset();
+		checksum.update("123456789".getBytes(StandardCharsets.US_ASCII), 0, 9);
+		assertEquals(0xE3069283L, checksum.getValue());
+	}
+	
+	@Test
+	public void digestsBigEndian() {
+		byte[] digest = ArchiveManifest.newDigest("crc32c").digest("123456789".getBytes(StandardCharsets.US_ASCII));
+		assertEquals("e3069283", ArchiveManifest.hex(digest));
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProducerJournalTest {
+	private static final Logger logger = Logger.getLogger(ProducerJournalTest.class.getName());
+	private static final String HEADER = "H\tbucket\tlogs/\n";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File journal(String records) throws IOException {
+		File file = new File(this.folder.getRoot(), "producer.journal");
+		FileUtils.writeStringToFile(file, HEADER + records, StandardCharsets.UTF_8);
+		return file;
+	}
+	
+	private static String read(File file) throws IOException {
+		return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+	}
+	
+	@Test
+	public void replaysCheckpointsDonePartitionsAndParts() throws IOException {
+		File file = journal("C\tdevice-a/\tdevice-a/0002.log\nD\tdevice-b/\nN\tArchive_device-a_2020\t3\nN\tArchive_device-a_2020\t2\n");
+		ProducerJournal journal = new ProducerJournal(file, "bucket", "logs/", logger);
+		journal.close();
+		assertEquals("device-a/0002.log", journal.getCheckpoint("device-a/"));
+		assertNull(journal.getCheckpoint("device-b/"));
+		assertTrue(journal.isDone("device-b/"));
+		assertFalse(journal.isDone("device-a/"));
+		assertEquals(3, journal.getLastPart("Archive_device-a_2020"));
+	}
+	
+	@Test
+	public void ignoresTornLastRecord() throws IOException {
+		// The run died while writing the part number 12, only "1" reached the disk
+		File file = journal("N\tArchive_device-a_2020\t9\nC\tdevice-a/\tdevice-a/0001.log\nN\tArchive_device-a_2020\t1");
+		ProducerJournal journal = new ProducerJournal(file, "bucket", "logs/", logger);
+		journal.close();
+		assertEquals(9, journal.getLastPart("Archive_device-a_2020"));
+		assertEquals("device-a/0001.log", journal.getCheckpoint("device-a/"));
+	}
+	
+	@Test
+	public void ignoresTornCheckpoint() throws IOException {
+		File file = journal("C\tdevice-a/\tdevice-a/0001.log\nC\tdevice-a/\tdevice-a/00");
+		ProducerJournal journal = new ProducerJournal(file, "bucket", "logs/", logger);
+		journal.close();
+		assertEquals("device-a/0001.log", journal.getCheckpoint("device-a/"));
+	}
+	
+	@Test
+	public void skipsMalformedRecords() throws IOException {
+		File file = journal("N\tArchive_device-a_2020\t\nN\tArchive_device-a_2020\t99999999999\nN\tArchive_device-a_2020\tx1\nX\tunknown\nD\nN\tArchive_device-a_2020\t4\n");
+		ProducerJournal journal = new ProducerJournal(file, "bucket", "logs/", logger);
+		journal.close();
+		assertEquals(4, journal.getLastPart("Archive_device-a_2020"));
+		assertFalse(journal.isDone(""));
+	}
+	
+	@Test
+	public void compactsSentRecordsUpToTheCheckpoint() throws IOException {
+		File file = journal("S\tdevice-a/\tdevice-a/0001.log\nS\tdevice-a/\tdevice-a/0003.log\nC\tdevice-a/\tdevice-a/0002.log\n"
+				+ "S\tdevice-b/\tdevice-b/0001.log\nD\tdevice-b/\n");
+		new ProducerJournal(file, "bucket", "logs/", logger).close();
+		String compacted = read(file);
+		assertTrue(compacted.startsWith(HEADER));
+		assertTrue(compacted.contains("S\tdevice-a/\tdevice-a/0003.log\n"));
+		assertFalse(compacted.contains("device-a/0001.log"));
+		assertFalse(compacted.contains("S\tdevice-b/"));
+		assertTrue(compacted.contains("D\tdevice-b/\n"));
+		assertTrue(compacted.contains("C\tdevice-a/\tdevice-a/0002.log\n"));
+	}
+	
+	@Test
+	public void movesJournalOfAnotherListing() throws IOException {
+		File file = journal("D\tdevice-a/\n");
+		ProducerJournal journal = new ProducerJournal(file, "bucket", "other/", logger);
+		journal.close();
+		assertFalse(journal.isDone("device-a/"));
+		assertTrue(new File(file.getPath() + ".old").isFile());
+		assertEquals("H\tbucket\tother/\n", read(file));
+	}
+	
+	@Test
+	public void escapesKeys() {
+		String key = "a\tb\nc\\d\re";
+		assertEquals("a\\tb\\nc\\\\d\\re", ProducerJournal.escape(key));
+		assertEquals(key, ProducerJournal.unescape(ProducerJournal.escape(key)));
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import org.junit.Test;
+
+public class S3InventoryReaderTest {
+	
+	private static String[] parse(String line, int columns) {
+		String[] fields = new String[columns];
+		assertTrue(line, S3InventoryReader.parseLine(line, fields));
+		return fields;
+	}
+	
+	@Test
+	public void parsesQuotedFields() {
+		assertArrayEquals(new String[] {"bucket", "logs/a.log", "1024", "2021-03-04T05:06:07.089Z"},
+				parse("\"bucket\",\"logs/a.log\",\"1024\",\"2021-03-04T05:06:07.089Z\"", 4));
+	}
+	
+	@Test
+	public void parsesCommasAndDoubledQuotesInsideQuotes() {
+		assertArrayEquals(new String[] {"bucket", "a,b \"c\" d", ""}, parse("\"bucket\",\"a,b \"\"c\"\" d\",\"\"", 3));
+		assertArrayEquals(new String[] {"\"", "x"}, parse("\"\"\"\",\"x\"", 2));
+	}
+	
+	@Test
+	public void parsesUnquotedAndEmptyFields() {
+		assertArrayEquals(new String[] {"bucket", "", "12"}, parse("bucket,,12", 3));
+		assertArrayEquals(new String[] {"bucket", "key", ""}, parse("\"bucket\",\"key\",", 3));
+	}
+	
+	@Test
+	public void ignoresColumnsBeyondTheSchema() {
+		assertArrayEquals(new String[] {"bucket", "key"}, parse("\"bucket\",\"key\",\"1\",\"2\"", 2));
+	}
+	
+	@Test
+	public void rejectsMalformedLines() {
+		assertFalse(S3InventoryReader.parseLine("\"bucket\",\"key", new String[2]));
+		assertFalse(S3InventoryReader.parseLine("\"bucket\"x,\"key\"", new String[2]));
+		assertFalse(S3InventoryReader.parseLine("\"bucket\"", new String[2]));
+	}
+	
+	@Test
+	public void parsesInventoryTimestamps() {
+		for(String value : new String[] {"2021-03-04T05:06:07.089Z", "1970-01-01T00:00:00.000Z", "2020-02-29T23:59:59.999Z", "1969-12-31T23:59:59.999Z"})
+			assertEquals(value, Instant.parse(value).toEpochMilli(), S3InventoryReader.parseTimestamp(value));
+	}
+	
+	@Test
+	public void parsesOtherTimestampsThroughInstant() {
+		assertEquals(Instant.parse("2021-03-04T05:06:07Z").toEpochMilli(), S3InventoryReader.parseTimestamp("2021-03-04T05:06:07Z"));
+		assertEquals(Instant.parse("2021-03-04T05:06:07.1Z").toEpochMilli(), S3InventoryReader.parseTimestamp("2021-03-04T05:06:07.1Z"));
+	}
+	
+	@Test(expected = DateTimeParseException.class)
+	public void rejectsMalformedTimestamps() {
+		S3InventoryReader.parseTimestamp("2021-03-04T05:0x:07.089Z");
+	}
+}